@@ -27,6 +27,14 @@ import static java.lang.Integer.parseInt;
 public class SettingLoader {
 
     public static final String BASE_PATH = "src/main/resources/it/polimi/ingsw/";
+    /**
+     * The configurations of the personal goals, once they have been parsed.
+     */
+    private static JSONArray personalGoalConfigurations;
+    /**
+     * The usable cells of the board, once they have been parsed.
+     */
+    private static JSONObject usableCells;
 
     /**
      * Loads the settings of the common goals from the JSON file.
@@ -38,11 +46,7 @@ public class SettingLoader {
      */
     public static PersonalGoal loadSpecificPersonalGoal(int randomPersonalGoalIndex) throws IOException, ParseException {
 
-        JSONParser parser = new JSONParser();
-
-        JSONObject personalGoalCards = (JSONObject) parser.parse(new InputStreamReader(SettingLoader.class.getResource("personal_goals.json").openStream()));
-        JSONArray personalGoalConfigurations = (JSONArray) personalGoalCards.get("personal_goal_configurations");
-        JSONObject personalGoalCard = (JSONObject) personalGoalConfigurations.get(randomPersonalGoalIndex);
+        JSONObject personalGoalCard = (JSONObject) loadPersonalGoalConfigurations().get(randomPersonalGoalIndex);
         JSONArray configuration = (JSONArray) personalGoalCard.get("configuration");
 
         List<Coordinates> loadedCoordinates = new ArrayList<>();
@@ -56,6 +60,24 @@ public class SettingLoader {
         return new PersonalGoal(loadedCoordinates, loadedColors, randomPersonalGoalIndex);
     }
 
+    /**
+     * Parses the personal goals file the first time it is needed, so that loading the players
+     * of many saved games doesn't read it again for each of them.
+     *
+     * @return the configurations of all the personal goals, not to be changed
+     * @throws IOException    if the file is not found
+     * @throws ParseException if the file is not in JSON format
+     */
+    private static synchronized JSONArray loadPersonalGoalConfigurations() throws IOException, ParseException {
+        if (personalGoalConfigurations == null) {
+            try (InputStreamReader file = new InputStreamReader(SettingLoader.class.getResource("personal_goals.json").openStream())) {
+                JSONObject personalGoalCards = (JSONObject) new JSONParser().parse(file);
+                personalGoalConfigurations = (JSONArray) personalGoalCards.get("personal_goal_configurations");
+            }
+        }
+        return personalGoalConfigurations;
+    }
+
     public static @NotNull List<CommonGoal> commonGoalLoader(int numOfPlayers) {
         List<CommonGoal> loadedCommonGoals = new ArrayList<>();
         // Parsing JSON file for common goals configurations
@@ -165,13 +187,22 @@ public class SettingLoader {
         Bookshelf.setColumns(colsSetting);
     }
 
-    public static JSONObject loadUsableCells(){
-        JSONParser parser = new JSONParser();
-        try {
-            return (JSONObject) parser.parse(new InputStreamReader(SettingLoader.class.getResource("usable_cells.json").openStream()));
-        } catch (IOException | ParseException e) {
-            throw new RuntimeException(e);
+    /**
+     * Parses the usable cells file the first time it is needed, since a board is created
+     * for every game, and for every saved game loaded.
+     *
+     * @return the usable cells of the board for each number of players, not to be changed
+     */
+    public static synchronized JSONObject loadUsableCells(){
+        if (usableCells == null) {
+            JSONParser parser = new JSONParser();
+            try (InputStreamReader file = new InputStreamReader(SettingLoader.class.getResource("usable_cells.json").openStream())) {
+                usableCells = (JSONObject) parser.parse(file);
+            } catch (IOException | ParseException e) {
+                throw new RuntimeException(e);
+            }
         }
+        return usableCells;
     }
 
 
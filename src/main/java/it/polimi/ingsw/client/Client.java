@@ -2,7 +2,15 @@ package it.polimi.ingsw.client;
 
 import it.polimi.ingsw.client.view.GameView;
 import it.polimi.ingsw.commons.Message;
+import it.polimi.ingsw.commons.MessageType;
+import it.polimi.ingsw.commons.RmiSocketFactory;
+import it.polimi.ingsw.commons.StartGame;
+import it.polimi.ingsw.commons.StateDelta;
+import it.polimi.ingsw.commons.StateUpdate;
+import it.polimi.ingsw.server.model.Board;
 import it.polimi.ingsw.server.model.Bookshelf;
+import it.polimi.ingsw.server.model.Item;
+import it.polimi.ingsw.utils.Coordinates;
 
 import java.io.IOException;
 import java.io.Serializable;
@@ -10,8 +18,17 @@ import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class represents the client. It is abstract (non instantiable) because each client will either be an RMI client or a Socket client.
@@ -19,10 +36,19 @@ import java.util.ResourceBundle;
 
 public abstract class Client extends UnicastRemoteObject implements Serializable, ClientCommunicationInterface {
 
-    private final Object lock;
-    private final Object lock1;
-    private final Object lock2;
-    private final Object insertRearrangeLock;
+    /**
+     * Handles the messages received from the server, one at a time, in the order they arrive.
+     */
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(daemonThread("client-dispatcher"));
+    /**
+     * Asks the player for input, one request at a time, so that waiting for the player
+     * never stops the handling of the messages.
+     */
+    private final ExecutorService prompts = Executors.newSingleThreadExecutor(daemonThread("client-prompts"));
+    /**
+     * Sends the pings and runs the timeouts of the client.
+     */
+    private final ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor(daemonThread("client-timer"));
     /**
      * The <code>GameView</code> associated with this client.
      */
@@ -42,15 +68,39 @@ public abstract class Client extends UnicastRemoteObject implements Serializable
     /**
      * This boolean is true if the players are all reconnected, false otherwise.
      */
-    private Boolean allReconnected = false; // Whether all the players have reconnected
+    private volatile boolean allReconnected = false; // Whether all the players have reconnected
     /**
      * This boolean is true if the player is the only one, false otherwise.
      */
-    private Boolean theOnlyOne = false; // Whether this client is the only one in the game
+    private volatile boolean theOnlyOne = false; // Whether this client is the only one in the game
     /**
      * This boolean is true if there is a connection to the server, false otherwise.
      */
-    private Boolean serverConnection = false; // Whether there is a connection to the server
+    private volatile boolean serverConnection = false; // Whether there is a connection to the server
+    /**
+     * Sends the pings to the server and checks that it answers, <code>null</code> until the player logs in.
+     */
+    private ScheduledFuture<?> heartbeat;
+    /**
+     * Ends the game if nobody reconnects while the player is alone, <code>null</code> if the player is not alone.
+     */
+    private ScheduledFuture<?> aloneTimeout;
+    /**
+     * The copy of the game kept by the client, updated by the delta messages of the server.
+     */
+    private final Object stateLock = new Object();
+    private Board board;
+    private HashMap<String, Bookshelf> bookshelves;
+    private List<Integer> score;
+    private List<Integer> topOfScoring;
+    /**
+     * The version of the copy of the game, -1 until the game is received.
+     */
+    private long stateVersion = -1;
+    /**
+     * True if the whole game has been asked to the server and has not arrived yet.
+     */
+    private boolean snapshotRequested;
 
     /**
      * Constructor for the class.
@@ -58,7 +108,7 @@ public abstract class Client extends UnicastRemoteObject implements Serializable
      * @throws RemoteException if the remote object cannot be exported
      */
     public Client() throws RemoteException {
-        super();
+        super(0, RmiSocketFactory.INSTANCE, RmiSocketFactory.INSTANCE);
         gameView = MyShelfie.gameView;
 
         gameView.initiateConnection();
@@ -87,10 +137,20 @@ public abstract class Client extends UnicastRemoteObject implements Serializable
             gameView.connectionError();
             System.exit(1);
         }
-        lock = new Object();
-        lock1 = new Object();
-        lock2 = new Object();
-        insertRearrangeLock = new Object();
+    }
+
+    /**
+     * Creates a thread factory for a daemon thread, so that it doesn't prevent the client from exiting.
+     *
+     * @param name the name of the thread
+     * @return the thread factory
+     */
+    private static ThreadFactory daemonThread(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 
     /**
@@ -151,37 +211,95 @@ public abstract class Client extends UnicastRemoteObject implements Serializable
     }
 
     /**
-     * This is the parser method, called when a message is received from the server.
+     * Parses the messages received together from the server, in order.
+     *
+     * @param messages the messages to parse.
+     */
+    @Override
+    public void callBackSendMessages(List<Message> messages) {
+        for (Message message : messages) {
+            callBackSendMessage(message);
+        }
+    }
+
+    /**
+     * Called when a message is received from the server. The message is handled by the
+     * dispatcher of the client, so this method returns without waiting for it.
      *
      * @param message the message to parse.
      */
     @Override
     public void callBackSendMessage(Message message) {
-        String category = message.getCategory();
+        MessageType type = message.getType();
+        if (type == MessageType.PING || type == MessageType.PONG) {
+            // Handled right away, so that a busy dispatcher is never mistaken for a server that is down
+            serverConnection = true;
+            return;
+        }
+        dispatcher.execute(() -> {
+            try {
+                handle(message);
+            } catch (RuntimeException e) {
+                System.err.println("Error while handling message from server: " + e);
+            }
+        });
+    }
 
-        switch (category) {
-            case "ping", "pong" -> serverConnection = true;
-            case "username" -> {
+    /**
+     * Asks the player for input, after the requests made before.
+     *
+     * @param prompt the request to the player
+     */
+    private void prompt(Runnable prompt) {
+        prompts.execute(() -> {
+            try {
+                prompt.run();
+            } catch (RuntimeException e) {
+                System.err.println("Error while asking for input: " + e);
+            }
+        });
+    }
+
+    /**
+     * This is the parser method, run by the dispatcher for each message received from the server.
+     *
+     * @param message the message to parse.
+     */
+    private void handle(Message message) {
+        MessageType type = message.getType();
+        if (type == null) {
+            throw new IllegalArgumentException("Invalid message category: " + message.getCategory());
+        }
+
+        switch (type) {
+            case USERNAME -> {
                 setUsername(message.getUsername());
                 checkServerConnection();
             }
-            case "UsernameRetry" -> gameView.usernameError();
-            case "UsernameRetryCompleteLogin" -> gameView.completeLoginError();
-            case "chooseNumOfPlayer" -> gameView.playerChoice();
-            case "numOfPlayersNotOK" -> gameView.playerNumberError();
-            case "update" -> {
-                HashMap<String, Bookshelf> bookshelves = message.getAllBookshelves();
-                gameView.pickMyBookshelf(bookshelves);
-                gameView.pickOtherBookshelf(bookshelves);
-                gameView.showCurrentScore(message.getScore().get(3));
-                gameView.showBoard(message.getBoard());
-                gameView.updateScore(message.getTopOfScoringList(), message.getScore());
+            case USERNAME_RETRY -> prompt(gameView::usernameError);
+            case USERNAME_RETRY_COMPLETE_LOGIN -> prompt(gameView::completeLoginError);
+            case CHOOSE_NUMBER_OF_PLAYERS -> prompt(gameView::playerChoice);
+            case NUMBER_OF_PLAYERS_NOT_OK -> prompt(gameView::playerNumberError);
+            case UPDATE -> {
+                StateUpdate update = message.getStateUpdate();
+                synchronized (stateLock) {
+                    setState(update.version(), update.board(), new HashMap<>(update.bookshelves()), update.score(), update.topOfScoringList());
+                    showState();
+                }
+            }
+            case DELTA -> applyDelta(message.getStateDelta());
+            case START_GAME -> {
+                StartGame startGame = message.getStartGame();
+                synchronized (stateLock) {
+                    setState(startGame.version(), startGame.board(), new HashMap<>(startGame.bookshelves()), startGame.scores().get(username), startGame.topOfScoringList());
+                }
+                gameView.startGame(message);
             }
-            case "startGame" -> gameView.startGame(message);
-            case "turn" -> myTurn();
-            case "otherTurn" -> gameView.showMessage(otherTurnMessage(message.getArgument()));
-            case "picked" -> {
+            case TURN -> myTurn();
+            case OTHER_TURN -> gameView.showMessage(otherTurnMessage(message.getArgument()));
+            case PICKED -> prompt(() -> {
                 try {
+                    // The rearrangement and the insertion are asked after this question, in order
                     if (gameView.showRearrange(message.getPicked())) {
                         rearrange(message);
                     }
@@ -189,30 +307,30 @@ public abstract class Client extends UnicastRemoteObject implements Serializable
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
-            }
-            case "pickRetry" -> {
+            });
+            case PICK_RETRY -> {
                 gameView.showMessage("Invalid pick. Retry.\n");
 
                 // showPick() sends the message to the server
-                gameView.showPick();
+                prompt(gameView::showPick);
             }
-            case "winners" -> gameView.showEndGame(message.getWinners(), message.getLosers());
-            case "waitingRoom" -> waitingRoom();
-            case "lastRound" -> gameView.showLastRound();
-            case "gameAlreadyStarted" -> gameView.showGameAlreadyStarted();
-            case "removePlayer" -> // stop();
+            case WINNERS -> gameView.showEndGame(message.getWinners(), message.getLosers());
+            case WAITING_ROOM -> waitingRoom();
+            case LAST_ROUND -> gameView.showLastRound();
+            case GAME_ALREADY_STARTED -> gameView.showGameAlreadyStarted();
+            case REMOVE_PLAYER -> // stop();
                     gameView.showRemovePlayer();
-            case "insertRetry" -> {
+            case INSERT_RETRY -> {
                 String argument = message.getArgument();
                 if (argument.equals("notValidNumber")) {
                     gameView.showMessage("Invalid column. Retry.");
                 } else {
                     gameView.showMessage("There are not enough free cells in the column. Retry.\n");
                 }
-                gameView.promptInsert();
+                prompt(gameView::promptInsert);
             }
-            case "checkingDisconnection" -> gameView.showWaiting();
-            case "reconnected" -> {
+            case CHECKING_DISCONNECTION -> gameView.showWaiting();
+            case RECONNECTED -> {
                 theOnlyOne = false;
                 gameView.setTheOnlyOne(false);
                 String username = message.getArgument();
@@ -220,19 +338,84 @@ public abstract class Client extends UnicastRemoteObject implements Serializable
                 gameView.enableGame(isMyTurn);
                 gameView.showMessage(reconnectionMessage(username));
             }
-            case "youAloneBitch" -> {
+            case ALONE -> {
                 gameView.showMessage(onlyPlayerMessage());
                 theOnlyOne = true;
                 gameView.setTheOnlyOne(true);
                 gameView.disableGame();
                 waitForReconnection();
             }
-            case "waitingRoomForReconnect" -> {
+            case WAITING_ROOM_FOR_RECONNECT -> {
                 gameView.showMessage("Waiting for other players to reconnect...\n");
                 waitForReconnectionAfterServerDown();
             }
-            case "AllIn" -> allReconnected = true;
-            default -> throw new IllegalArgumentException("Invalid message category: " + category);
+            case ALL_IN -> allReconnected = true;
+            default -> throw new IllegalArgumentException("Invalid message category: " + type.getCategory());
+        }
+    }
+
+    /**
+     * Replaces the copy of the game with the one received from the server.
+     */
+    private void setState(long version, Board board, HashMap<String, Bookshelf> bookshelves, List<Integer> score, List<Integer> topOfScoring) {
+        this.board = board;
+        this.bookshelves = bookshelves;
+        this.score = score;
+        this.topOfScoring = topOfScoring;
+        stateVersion = version;
+        snapshotRequested = false;
+    }
+
+    /**
+     * Shows the copy of the game.
+     */
+    private void showState() {
+        gameView.pickMyBookshelf(bookshelves);
+        gameView.pickOtherBookshelf(bookshelves);
+        gameView.showCurrentScore(score.get(3));
+        gameView.showBoard(board);
+        gameView.updateScore(topOfScoring, score);
+    }
+
+    /**
+     * Applies the changes of a delta message to the copy of the game and shows it.
+     * If some delta has been missed, the whole game is asked to the server instead.
+     *
+     * @param delta the changes of the delta message
+     */
+    private void applyDelta(StateDelta delta) {
+        synchronized (stateLock) {
+            long version = delta.version();
+            if (stateVersion >= 0 && version <= stateVersion) {
+                // Already included in the copy of the game
+                return;
+            }
+            if (stateVersion < 0 || version != stateVersion + 1) {
+                if (!snapshotRequested) {
+                    snapshotRequested = true;
+                    sendMessage(new Message("snapshotRequest"));
+                }
+                return;
+            }
+
+            for (Map.Entry<Coordinates, Item> cell : delta.boardChanges().entrySet()) {
+                board.setItem(cell.getKey().x(), cell.getKey().y(), cell.getValue());
+            }
+            for (Map.Entry<String, Map<Coordinates, Item>> changes : delta.bookshelfChanges().entrySet()) {
+                Bookshelf bookshelf = bookshelves.computeIfAbsent(changes.getKey(), name -> new Bookshelf());
+                for (Map.Entry<Coordinates, Item> cell : changes.getValue().entrySet()) {
+                    bookshelf.setItem(cell.getKey().x(), cell.getKey().y(), Optional.ofNullable(cell.getValue()));
+                }
+            }
+            if (!delta.score().isEmpty()) {
+                score = delta.score();
+            }
+            List<Integer> changedTopOfScoring = delta.topOfScoringList();
+            if (!changedTopOfScoring.isEmpty()) {
+                topOfScoring = changedTopOfScoring;
+            }
+            stateVersion = version;
+            showState();
         }
     }
 
@@ -245,68 +428,51 @@ public abstract class Client extends UnicastRemoteObject implements Serializable
     }
 
     /**
-     * Waits 60 seconds for other players to reconnect.
+     * Waits 120 seconds for other players to reconnect.
      * If nobody reconnects, player wins the game and exits.
      */
-    public void waitForReconnection() {
-        new Thread(() -> {
-            synchronized (lock1) {
-                try {
-                    Thread.sleep(120000);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                if (theOnlyOne) {
-                    gameView.endAlone();
-                }
+    public synchronized void waitForReconnection() {
+        if (aloneTimeout != null) {
+            aloneTimeout.cancel(false);
+        }
+        aloneTimeout = timers.schedule(() -> {
+            if (theOnlyOne) {
+                gameView.endAlone();
             }
-            Thread.currentThread().interrupt();
-        }).start();
+        }, 120, TimeUnit.SECONDS);
     }
 
     /**
      * Waits 120 seconds for reconnection after the server is down.
      */
     public void waitForReconnectionAfterServerDown() {
-        Thread wait = new Thread(() -> {
-            synchronized (lock2) {
-                try {
-                    Thread.sleep(120000);
-                    if (!allReconnected) {
-                        gameView.showMessage("Other players didn't reconnect. Exiting...");
-                        System.exit(0);
-                    }
-                    allReconnected = false;
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
+        timers.schedule(() -> {
+            if (!allReconnected) {
+                gameView.showMessage("Other players didn't reconnect. Exiting...");
+                System.exit(0);
             }
-        });
-        wait.start();
+            allReconnected = false;
+        }, 120, TimeUnit.SECONDS);
     }
 
     /**
      * Checks if the server is still connected.
-     * If it's not, exits the game.
+     * If it's not, exits the game. A ping is sent every 20 seconds by the timer of the client.
      */
-    public void checkServerConnection() {
-        new Thread(() -> {
-            while (true) {
-                try {
-                    sendMessage(new Message("ping"));
-                    synchronized (lock) {
-                        Thread.sleep(20000);
-                        if (!serverConnection) {
-                            System.err.println("Server is down. Exiting...");
-                            System.exit(0);
-                        }
-                        serverConnection = false;
-                    }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+    public synchronized void checkServerConnection() {
+        if (heartbeat != null) {
+            // Already checking
+            return;
+        }
+        sendMessage(new Message("ping"));
+        heartbeat = timers.scheduleAtFixedRate(() -> {
+            if (!serverConnection) {
+                System.err.println("Server is down. Exiting...");
+                System.exit(0);
             }
-        }).start();
+            serverConnection = false;
+            sendMessage(new Message("ping"));
+        }, 20, 20, TimeUnit.SECONDS);
     }
 
     /**
@@ -314,8 +480,7 @@ public abstract class Client extends UnicastRemoteObject implements Serializable
      */
     public void myTurn() {
         gameView.showMessage(yourTurnMessage());
-        Thread turnThread = new Thread(() -> gameView.showPick());
-        turnThread.start();
+        prompt(gameView::showPick);
     }
 
     /**
@@ -323,12 +488,7 @@ public abstract class Client extends UnicastRemoteObject implements Serializable
      * and sends the message to the server.
      */
     public void insert() {
-        Thread insThread = new Thread(() -> {
-            synchronized (insertRearrangeLock) {
-                gameView.promptInsert();
-            }
-        });
-        insThread.start();
+        prompt(gameView::promptInsert);
     }
 
     /**
@@ -338,12 +498,7 @@ public abstract class Client extends UnicastRemoteObject implements Serializable
      * @param message the message containing the tiles to rearrange.
      */
     public void rearrange(Message message) {
-        Thread threadRearrange = new Thread(() -> {
-            synchronized (insertRearrangeLock) {
-                gameView.rearrangeProcedure(message.getPicked());
-            }
-        });
-        threadRearrange.start();
+        prompt(() -> gameView.rearrangeProcedure(message.getPicked()));
     }
 
     /**
@@ -4,6 +4,7 @@ import it.polimi.ingsw.commons.Message;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
 
 /**
  * This class defines the methods that a client must implement independently of the
@@ -21,6 +22,14 @@ public interface ClientCommunicationInterface extends Remote {
      */
     void callBackSendMessage(Message message) throws RemoteException;
 
+    /**
+     * Parses some messages, in order, with a single remote call.
+     *
+     * @param messages the messages to parse.
+     * @throws RemoteException if the connection is lost.
+     */
+    void callBackSendMessages(List<Message> messages) throws RemoteException;
+
     /**
      * Gets the Username.
      * @return the username.
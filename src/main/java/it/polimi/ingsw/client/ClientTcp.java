@@ -1,14 +1,12 @@
 package it.polimi.ingsw.client;
 
+import it.polimi.ingsw.commons.Compression;
+import it.polimi.ingsw.commons.Framing;
 import it.polimi.ingsw.commons.Message;
-import org.json.simple.JSONObject;
+import it.polimi.ingsw.commons.MessageCodec;
 import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.*;
 import java.net.Socket;
 import java.rmi.RemoteException;
 
@@ -28,7 +26,25 @@ public class ClientTcp extends Client implements ClientCommunicationInterface {
     /**
      * Used to read messages from the server.
      */
-    public final BufferedReader serverBufferedReader;
+    public final DataInputStream serverInputStream;
+    /**
+     * Parses the messages coming from the server. Only used by the listening thread.
+     */
+    private final JSONParser parser;
+    /**
+     * True if the client and the server have agreed to exchange frames instead of lines.
+     *
+     * @see Framing
+     */
+    private volatile boolean framed;
+    /**
+     * The codec of the frames, agreed with the handshake.
+     */
+    private volatile MessageCodec codec = MessageCodec.JSON;
+    /**
+     * The compression of the frames, <code>null</code> if they are not compressed.
+     */
+    private volatile Compression compression;
     /**
      * The socket used to communicate with the server.
      */
@@ -47,7 +63,7 @@ public class ClientTcp extends Client implements ClientCommunicationInterface {
 
         // This is to send data to the server
         try {
-            dataOutputStream = new DataOutputStream(socket.getOutputStream());
+            dataOutputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
         } catch (IOException e) {
             System.err.println("Unable to create output stream");
             throw new RuntimeException(e);
@@ -55,39 +71,67 @@ public class ClientTcp extends Client implements ClientCommunicationInterface {
 
         // This is used to read data coming from the server
         try {
-            serverBufferedReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            serverInputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
         } catch (IOException e) {
             System.err.println("Unable to create input stream");
             throw new RuntimeException(e);
         }
 
-        // Listen for messages coming from the server
+        parser = new JSONParser();
+        // Lines are used until the server accepts frames, if it ever does
+        sendMessage(Framing.handshake(true, true));
+
+        // Listen for messages coming from the server: they are decoded here and handled by the dispatcher of the client
         listenThread = new Thread(() -> {
             while (true) {
+                Message receivedMessage;
+                try {
+                    receivedMessage = receiveMessage();
+                } catch (IOException e) {
+                    System.err.println("Server is down. Exiting...");
+                    System.exit(0);
+                    return;
+                }
+                if (receivedMessage == null) {
+                    // The message could not be parsed, or it was the answer to the handshake: wait for the next one
+                    continue;
+                }
                 try {
-                    Message receivedMessage = receiveMessage();
                     callBackSendMessage(receivedMessage);
                 } catch (Exception e) {
-                    // Don't do anything: if the server is down, the client will
-                    // notice itself and will exit.
+                    System.err.println("Error while handling message from server: " + e);
                 }
             }
-        });
+        }, "client-listener");
         listenThread.start();
     }
 
+    /**
+     * Starts exchanging frames, once the server has answered the handshake. The server sends frames
+     * right after the answer, and it reads lines until the first frame of the client.
+     *
+     * @param answer the answer of the server
+     */
+    private void acceptFrames(Message answer) {
+        synchronized (dataOutputStream) {
+            codec = Framing.codec(answer);
+            compression = Framing.isCompressed(answer) ? new Compression() : null;
+            framed = true;
+        }
+    }
+
     /**
      * Used to send a message.
      * @param message the message to send.
      */
     @Override
     public void sendMessage(Message message) {
-        String stringMessage = message.getJSONstring();
-
         try {
             synchronized (dataOutputStream) {
+                byte[] bytes = Framing.encode(message, framed, codec);
+                Compression current = compression;
+                dataOutputStream.write(current == null ? bytes : current.compress(bytes));
                 dataOutputStream.flush();
-                dataOutputStream.writeBytes(stringMessage + "\n"); // Send the message to the server (with newline)
             }
         } catch (IOException e) {
             // Don't do anything: if the server is down, the client will
@@ -97,34 +141,26 @@ public class ClientTcp extends Client implements ClientCommunicationInterface {
 
     /**
      * Receives a message from the server by reading it from the
-     * <code>serverBufferedReader</code>.
-     * If the message is not a valid JSON string, it is returned as a <code>String</code> object.
-     * If <code>serverBufferedReader.readLine()</code> throws an exception, the client is closed.
+     * <code>serverInputStream</code>, either as a line or as a frame.
      *
-     * @return the message received from the server.
+     * @return the message received from the server, or <code>null</code> if it is not a valid message
+     * or if it is the answer to the handshake.
+     * @throws IOException if the connection with the server is lost.
      */
-    public Message receiveMessage() {
-        String serverMessageString;
-        try {
-            serverMessageString = serverBufferedReader.readLine(); // Read a message from the server
-
-            try {
-                JSONParser parser = new JSONParser();
-                JSONObject messageFromClient = (JSONObject) parser.parse(serverMessageString);
-                return new Message(messageFromClient);
-            } catch (ParseException e) {
-                System.err.println("Unable to parse message from server.");
-                System.out.println(serverMessageString);
-                return new Message(serverMessageString);
-            } catch (NullPointerException e) {
-                // Don't do anything: if the server is down, the client will
-                // notice itself and will exit.
-            }
-        } catch (IOException e) {
-            // Don't do anything: if the server is down, the client will
-            // notice itself and will exit.
+    public Message receiveMessage() throws IOException {
+        if (framed) {
+            return Framing.readMessage(serverInputStream, compression);
+        }
+        String serverMessageString = Framing.readLine(serverInputStream);
+        if (serverMessageString == null) {
+            throw new EOFException();
+        }
+        Message message = Framing.parse(serverMessageString, parser);
+        if (message != null && Framing.isHandshake(message)) {
+            acceptFrames(message);
+            return null;
         }
-        return null;
+        return message;
     }
 
     /**
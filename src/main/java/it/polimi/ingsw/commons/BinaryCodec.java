@@ -0,0 +1,495 @@
+package it.polimi.ingsw.commons;
+
+import it.polimi.ingsw.utils.Color;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary encoding of the messages, used on the TCP connections that negotiate it
+ * (see {@link Framing}).
+ * <p>
+ * The codec encodes the JSON object of a message and decodes it back to an equal object, so the
+ * getters of {@link Message} work the same way whatever the encoding. Compared to JSON:
+ * <ul>
+ *     <li>numbers, and the strings containing a number (like the scores), are encoded as varints;</li>
+ *     <li>the most common keys are encoded as a single byte;</li>
+ *     <li>the cells of the board and of the bookshelves are encoded as one byte each, holding the
+ *     color and the number of the item, so the board takes 81 bytes and a bookshelf 30.</li>
+ * </ul>
+ * Numbers are decoded as {@link Long}, like the JSON parser does.
+ */
+@SuppressWarnings("unchecked")
+public final class BinaryCodec {
+
+    /**
+     * The name of this version of the codec, sent in the handshake.
+     */
+    public static final String NAME = "binary-1";
+
+    static final byte NULL = 0;
+    static final byte FALSE = 1;
+    static final byte TRUE = 2;
+    static final byte STRING = 3;
+    static final byte NUMERIC_STRING = 4;
+    static final byte NUMBER = 5;
+    static final byte DECIMAL = 6;
+    static final byte OBJECT = 7;
+    static final byte ARRAY = 8;
+    static final byte CELLS = 9;
+
+    /**
+     * The keys encoded as their index in this list (plus one, zero meaning that the key follows as a string).
+     * Changing this list requires a new {@link #NAME}.
+     */
+    private static final List<String> KEYS = List.of("category", "argument", "username", "bool", "board", "bookshelves",
+            "bookshelf", "pgScore", "cgScore", "bookshelfScore", "totalScore", "row", "column", "item", "color", "value",
+            "index", "name", "score", "firstPlayer", "currentPlayer", "personal_goal", "picked", "items");
+    private static final Map<String, Integer> KEY_INDEXES = new HashMap<>();
+    /**
+     * The maximum number of nested objects and arrays, so that a broken peer can't overflow the stack.
+     */
+    private static final int MAX_DEPTH = 32;
+    /**
+     * The number of values of an item that fit in a cell.
+     */
+    private static final int CELL_NUMBERS = 16;
+    private static final Color[] COLORS = Color.values();
+
+    static {
+        for (int i = 0; i < KEYS.size(); i++) {
+            KEY_INDEXES.put(KEYS.get(i), i + 1);
+        }
+    }
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * Encodes a message.
+     *
+     * @param message the message to encode
+     * @return the encoded message
+     * @throws IllegalArgumentException if the message contains values that JSON can't represent either
+     */
+    public static byte[] encode(Message message) {
+        Broadcast broadcast = message.getBroadcast();
+        if (broadcast != null) {
+            return broadcast.encodeBinary(message.getPersonalFields());
+        }
+        Output out = new Output();
+        writeObject(out, message.getJson());
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes the fields of an object, without the tag and the size that precede them.
+     *
+     * @param object the object
+     * @return the encoded fields
+     * @see #object(int, byte[], byte[])
+     */
+    static byte[] fields(Map<?, ?> object) {
+        Output out = new Output();
+        writeFields(out, object);
+        return out.toByteArray();
+    }
+
+    /**
+     * Joins the fields of two objects, encoded by {@link #fields(Map)}, into one object.
+     *
+     * @param size   the total number of fields
+     * @param first  the fields of the first object
+     * @param second the fields of the second object
+     * @return the encoded object
+     */
+    static byte[] object(int size, byte[] first, byte[] second) {
+        Output out = new Output();
+        out.write(OBJECT);
+        out.writeVarLong(size);
+        out.write(first, 0, first.length);
+        out.write(second, 0, second.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a message.
+     *
+     * @param bytes the encoded message
+     * @return the message
+     * @throws IllegalArgumentException if the bytes are not a valid message
+     */
+    public static Message decode(byte[] bytes) {
+        return decode(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Decodes a message.
+     *
+     * @param bytes  an array containing the encoded message
+     * @param offset the first byte of the message
+     * @param length the length of the message
+     * @return the message
+     * @throws IllegalArgumentException if the bytes are not a valid message
+     */
+    public static Message decode(byte[] bytes, int offset, int length) {
+        ByteBuffer in = ByteBuffer.wrap(bytes, offset, length);
+        try {
+            if (in.get() != OBJECT) {
+                throw new IllegalArgumentException("The message is not an object");
+            }
+            JSONObject json = readObject(in, 0);
+            if (in.hasRemaining()) {
+                throw new IllegalArgumentException("Unexpected bytes after the message");
+            }
+            return new Message(json);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated message");
+        }
+    }
+
+    /**
+     * @param key a key
+     * @return the index the key is encoded as, or 0 if the key is encoded as a string
+     */
+    static int keyIndex(String key) {
+        return KEY_INDEXES.getOrDefault(key, 0);
+    }
+
+    /**
+     * @return the number of keys encoded as an index
+     */
+    static int keyCount() {
+        return KEYS.size();
+    }
+
+    ///////////////////////////////////////////////////////ENCODING////////////////////////////////////////////////////////
+
+    private static void writeValue(Output out, Object value) {
+        if (value == null) {
+            out.write(NULL);
+        } else if (value instanceof Boolean bool) {
+            out.write(bool ? TRUE : FALSE);
+        } else if (value instanceof String string) {
+            if (isNumeric(string)) {
+                out.write(NUMERIC_STRING);
+                out.writeVarLong(Long.parseLong(string));
+            } else {
+                out.write(STRING);
+                out.writeString(string);
+            }
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            out.write(NUMBER);
+            out.writeVarLong(((Number) value).longValue());
+        } else if (value instanceof Number number) {
+            out.write(DECIMAL);
+            out.writeLong(Double.doubleToLongBits(number.doubleValue()));
+        } else if (value instanceof Map<?, ?> map) {
+            writeObject(out, map);
+        } else if (value instanceof List<?> list) {
+            if (!writeCells(out, list)) {
+                out.write(ARRAY);
+                out.writeVarLong(list.size());
+                for (Object element : list) {
+                    writeValue(out, element);
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Can't encode " + value.getClass().getSimpleName());
+        }
+    }
+
+    private static void writeObject(Output out, Map<?, ?> object) {
+        out.write(OBJECT);
+        out.writeVarLong(object.size());
+        writeFields(out, object);
+    }
+
+    private static void writeFields(Output out, Map<?, ?> object) {
+        for (Map.Entry<?, ?> entry : object.entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            Integer index = KEY_INDEXES.get(key);
+            if (index != null) {
+                out.writeVarLong(index);
+            } else {
+                out.writeVarLong(0);
+                out.writeString(key);
+            }
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    /**
+     * Encodes a list of cells, as created by {@link Message#boardJson} and {@link Message#bookshelfJson},
+     * one byte per cell.
+     *
+     * @param out  the output
+     * @param list the list to encode
+     * @return false if the list is not a grid of cells, in which case nothing is written
+     */
+    private static boolean writeCells(Output out, List<?> list) {
+        if (list.isEmpty() || !(list.get(list.size() - 1) instanceof Map<?, ?> last)) {
+            return false;
+        }
+        int rows = cellCoordinate(last.get("row")) + 1;
+        int columns = cellCoordinate(last.get("column")) + 1;
+        if (rows <= 0 || columns <= 0 || (long) rows * columns != list.size()) {
+            return false;
+        }
+
+        byte[] cells = new byte[list.size()];
+        for (int i = 0; i < cells.length; i++) {
+            if (!(list.get(i) instanceof Map<?, ?> cell) || cell.size() != 3 || !cell.containsKey("item")
+                    || cellCoordinate(cell.get("row")) != i / columns || cellCoordinate(cell.get("column")) != i % columns) {
+                return false;
+            }
+            int encoded = encodeCell(cell.get("item"));
+            if (encoded < 0) {
+                return false;
+            }
+            cells[i] = (byte) encoded;
+        }
+        out.write(CELLS);
+        out.writeVarLong(rows);
+        out.writeVarLong(columns);
+        out.write(cells, 0, cells.length);
+        return true;
+    }
+
+    /**
+     * @param value the row or the column of a cell
+     * @return the row or the column, or -1 if it is not a coordinate written by {@link Message}
+     */
+    private static int cellCoordinate(Object value) {
+        if (value instanceof String string && string.length() <= 4 && isNumeric(string)) {
+            return Integer.parseInt(string);
+        }
+        return -1;
+    }
+
+    /**
+     * @param item the item of a cell: <code>null</code> or an array with an object holding the color and the value
+     * @return 0 for an empty cell, the index of the color (plus one) in the high bits and the value in the
+     * low ones for an item, -1 if the item can't be encoded in a byte
+     */
+    private static int encodeCell(Object item) {
+        if (item == null) {
+            return 0;
+        }
+        if (!(item instanceof List<?> list) || list.size() != 1 || !(list.get(0) instanceof Map<?, ?> map) || map.size() != 2) {
+            return -1;
+        }
+        int color = -1;
+        for (Color c : COLORS) {
+            if (c.toString().equals(map.get("color"))) {
+                color = c.ordinal();
+            }
+        }
+        int value = cellCoordinate(map.get("value"));
+        if (color < 0 || value < 0 || value >= CELL_NUMBERS) {
+            return -1;
+        }
+        return (color + 1) * CELL_NUMBERS + value;
+    }
+
+    /**
+     * @param string a string
+     * @return true if the string is a number that is written back the same way, so that it can be encoded as a varint
+     */
+    private static boolean isNumeric(String string) {
+        int length = string.length();
+        int start = length > 1 && string.charAt(0) == '-' ? 1 : 0;
+        if (length == start || length - start > 18 || (string.charAt(start) == '0' && length - start > 1)) {
+            return false;
+        }
+        for (int i = start; i < length; i++) {
+            char c = string.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        // "-0" would be decoded as "0"
+        return !(start == 1 && string.charAt(1) == '0');
+    }
+
+    ///////////////////////////////////////////////////////DECODING////////////////////////////////////////////////////////
+
+    private static Object readValue(ByteBuffer in, int depth) {
+        byte tag = in.get();
+        return switch (tag) {
+            case NULL -> null;
+            case FALSE -> false;
+            case TRUE -> true;
+            case STRING -> readString(in);
+            case NUMERIC_STRING -> Long.toString(readVarLong(in));
+            case NUMBER -> readVarLong(in);
+            case DECIMAL -> Double.longBitsToDouble(in.getLong());
+            case OBJECT -> readObject(in, depth + 1);
+            case ARRAY -> readArray(in, depth + 1);
+            case CELLS -> readCells(in);
+            default -> throw new IllegalArgumentException("Unknown tag " + tag);
+        };
+    }
+
+    private static JSONObject readObject(ByteBuffer in, int depth) {
+        checkDepth(depth);
+        int size = readLength(in);
+        JSONObject object = new JSONObject();
+        for (int i = 0; i < size; i++) {
+            long index = readVarLong(in);
+            String key;
+            if (index == 0) {
+                key = readString(in);
+            } else if (index > 0 && index <= KEYS.size()) {
+                key = KEYS.get((int) index - 1);
+            } else {
+                throw new IllegalArgumentException("Unknown key " + index);
+            }
+            object.put(key, readValue(in, depth));
+        }
+        return object;
+    }
+
+    private static JSONArray readArray(ByteBuffer in, int depth) {
+        checkDepth(depth);
+        int size = readLength(in);
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < size; i++) {
+            array.add(readValue(in, depth));
+        }
+        return array;
+    }
+
+    private static JSONArray readCells(ByteBuffer in) {
+        int rows = readLength(in);
+        int columns = readLength(in);
+        if ((long) rows * columns > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        JSONArray cells = new JSONArray();
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                int encoded = in.get() & 0xFF;
+                JSONObject cell = new JSONObject();
+                cell.put("row", String.valueOf(i));
+                cell.put("column", String.valueOf(j));
+                if (encoded == 0) {
+                    cell.put("item", null);
+                } else {
+                    int color = encoded / CELL_NUMBERS - 1;
+                    if (color >= COLORS.length) {
+                        throw new IllegalArgumentException("Unknown color " + color);
+                    }
+                    JSONObject item = new JSONObject();
+                    item.put("color", COLORS[color].toString());
+                    item.put("value", Integer.toString(encoded % CELL_NUMBERS));
+                    JSONArray itemThings = new JSONArray();
+                    itemThings.add(item);
+                    cell.put("item", itemThings);
+                }
+                cells.add(cell);
+            }
+        }
+        return cells;
+    }
+
+    private static void checkDepth(int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Too many nested values");
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readLength(in);
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String string = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return string;
+    }
+
+    /**
+     * Reads a size, which can't be larger than the bytes left since every element takes at least one byte.
+     */
+    private static int readLength(ByteBuffer in) {
+        long length = readVarLong(in);
+        if (length < 0 || length > in.remaining() + 1L) {
+            throw new IllegalArgumentException("Invalid length " + length);
+        }
+        return (int) length;
+    }
+
+    /**
+     * Reads a zig-zag encoded varint: 7 bits per byte, the least significant first,
+     * with the highest bit set on all the bytes but the last.
+     */
+    private static long readVarLong(ByteBuffer in) {
+        long zigZag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            zigZag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    /**
+     * A growable array of bytes, without the synchronization of {@link java.io.ByteArrayOutputStream}.
+     */
+    private static final class Output {
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        private void ensureCapacity(int more) {
+            if (size + more > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + more));
+            }
+        }
+
+        void write(int b) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) b;
+        }
+
+        void write(byte[] source, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(source, offset, bytes, size, length);
+            size += length;
+        }
+
+        void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (value >>> shift));
+            }
+        }
+
+        void writeVarLong(long value) {
+            long zigZag = (value << 1) ^ (value >> 63);
+            while ((zigZag & ~0x7FL) != 0) {
+                write((int) ((zigZag & 0x7F) | 0x80));
+                zigZag >>>= 7;
+            }
+            write((int) zigZag);
+        }
+
+        void writeString(String string) {
+            byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(utf8.length);
+            write(utf8, 0, utf8.length);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
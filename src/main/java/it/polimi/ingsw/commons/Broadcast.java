@@ -0,0 +1,151 @@
+package it.polimi.ingsw.commons;
+
+import org.json.simple.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A message sent to many clients, encoded only once.
+ * <p>
+ * Most of the messages sent to the players of a game are the same for all of them, or differ only in
+ * a few fields (like the personal goal or the score of the player). A broadcast holds the fields that
+ * are the same for everyone, and creates a message for each recipient with just the fields that are
+ * only for them. When the messages are sent over TCP, the shared fields are encoded the first time
+ * and the same bytes are reused for all the other recipients, so only the personal fields are encoded
+ * again. The messages still contain all the fields, so they can be read and sent over RMI as usual.
+ * <p>
+ * The fields of a broadcast can't be changed, and neither can the messages it creates.
+ */
+public final class Broadcast {
+
+    private final JSONObject shared;
+    /**
+     * The shared fields encoded as JSON, without the braces. <code>null</code> until they are first needed.
+     */
+    private volatile byte[] jsonFields;
+    /**
+     * The shared fields encoded by the {@link BinaryCodec}. <code>null</code> until they are first needed.
+     */
+    private volatile byte[] binaryFields;
+    /**
+     * The message for the recipients that don't have any personal field.
+     */
+    private final Message toAll;
+
+    /**
+     * Creates a broadcast of a message.
+     *
+     * @param message      the message
+     * @param personalKeys the keys of the fields that are different for each recipient,
+     *                     which are left out of the shared ones
+     */
+    public Broadcast(Message message, Collection<String> personalKeys) {
+        shared = new JSONObject(message.getJson());
+        fields(shared).keySet().removeAll(personalKeys);
+        toAll = new Message(this, new JSONObject(), shared);
+    }
+
+    /**
+     * Creates a broadcast of a message that is the same for all the recipients.
+     *
+     * @param message the message
+     */
+    public Broadcast(Message message) {
+        this(message, List.of());
+    }
+
+    /**
+     * @return the message for the recipients that don't have any personal field
+     */
+    public Message toAll() {
+        return toAll;
+    }
+
+    /**
+     * Creates the message for a recipient.
+     *
+     * @param personal the fields only for that recipient
+     * @return the message with both the shared fields and the personal ones
+     * @throws IllegalArgumentException if a personal field is also a shared one
+     */
+    public Message to(JSONObject personal) {
+        for (Object key : personal.keySet()) {
+            if (shared.containsKey(key)) {
+                throw new IllegalArgumentException(key + " is a shared field");
+            }
+        }
+        JSONObject json = new JSONObject(shared);
+        fields(json).putAll(fields(personal));
+        return new Message(this, personal, json);
+    }
+
+    /**
+     * Encodes a message of this broadcast as JSON.
+     *
+     * @param personal the personal fields of the message
+     * @return the message, encoded in UTF-8
+     */
+    byte[] encodeJson(JSONObject personal) {
+        byte[] fields = jsonFields;
+        if (fields == null) {
+            fields = innerJson(shared);
+            jsonFields = fields;
+        }
+        if (personal.isEmpty()) {
+            return join(new byte[0], fields);
+        }
+        return join(innerJson(personal), fields);
+    }
+
+    /**
+     * Encodes a message of this broadcast with the {@link BinaryCodec}.
+     *
+     * @param personal the personal fields of the message
+     * @return the encoded message
+     */
+    byte[] encodeBinary(JSONObject personal) {
+        byte[] fields = binaryFields;
+        if (fields == null) {
+            fields = BinaryCodec.fields(shared);
+            binaryFields = fields;
+        }
+        byte[] personalFields = personal.isEmpty() ? new byte[0] : BinaryCodec.fields(personal);
+        return BinaryCodec.object(shared.size() + personal.size(), personalFields, fields);
+    }
+
+    /**
+     * @return the fields of a JSON object, whose keys are always strings
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> fields(JSONObject object) {
+        return (Map<String, Object>) object;
+    }
+
+    /**
+     * @return the fields of an object encoded as JSON, without the braces around them
+     */
+    private static byte[] innerJson(JSONObject object) {
+        String json = object.toJSONString();
+        return json.substring(1, json.length() - 1).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the JSON object with the given fields
+     */
+    private static byte[] join(byte[] personal, byte[] shared) {
+        boolean comma = personal.length > 0 && shared.length > 0;
+        byte[] json = new byte[personal.length + shared.length + (comma ? 3 : 2)];
+        json[0] = '{';
+        System.arraycopy(personal, 0, json, 1, personal.length);
+        int offset = 1 + personal.length;
+        if (comma) {
+            json[offset++] = ',';
+        }
+        System.arraycopy(shared, 0, json, offset, shared.length);
+        json[json.length - 1] = '}';
+        return json;
+    }
+}
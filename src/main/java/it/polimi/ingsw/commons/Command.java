@@ -0,0 +1,117 @@
+package it.polimi.ingsw.commons;
+
+import java.util.List;
+
+/**
+ * A message sent by a client while playing, with its fields already decoded.
+ * <p>
+ * These are the messages the server receives most often, so they are decoded by the
+ * {@link CommandDecoder} straight from the bytes received, without building a {@link Message}.
+ * Each type of command is an immutable record, so its fields are read without decoding anything.
+ */
+public sealed interface Command {
+
+    /**
+     * @return the type of the messages this command is sent as
+     */
+    MessageType getType();
+
+    /**
+     * Creates the command of a message that has already been decoded.
+     *
+     * @param message the message
+     * @return the command, or <code>null</code> if the message is not a command
+     * @throws RuntimeException if the fields of the command are missing or not valid
+     */
+    static Command of(Message message) {
+        MessageType type = message.getType();
+        if (type == null || !type.isCommand()) {
+            return null;
+        }
+        return switch (type) {
+            case PING -> new Ping();
+            case SNAPSHOT_REQUEST -> new SnapshotRequest();
+            case PICK -> {
+                List<Integer> pick = message.getPick();
+                yield new Pick(pick.get(0), pick.get(1), pick.get(2), pick.get(3));
+            }
+            case INSERT -> new Insert(message.getInsert());
+            case SORT -> new Sort(message.getSort());
+            case NUMBER_OF_PLAYERS -> new NumberOfPlayers(message.getNumPlayer());
+            default -> throw new IllegalStateException("Not a command: " + type);
+        };
+    }
+
+    /**
+     * Tells the server that the client is still connected.
+     */
+    record Ping() implements Command {
+        @Override
+        public MessageType getType() {
+            return MessageType.PING;
+        }
+    }
+
+    /**
+     * Picks the items of the board from the start cell to the final one.
+     */
+    record Pick(int startRow, int startColumn, int finalRow, int finalColumn) implements Command {
+        @Override
+        public MessageType getType() {
+            return MessageType.PICK;
+        }
+
+        /**
+         * @return the start row, the start column, the final row and the final column
+         */
+        public List<Integer> coordinates() {
+            return List.of(startRow, startColumn, finalRow, finalColumn);
+        }
+    }
+
+    /**
+     * Inserts the items picked in a column of the bookshelf.
+     */
+    record Insert(int column) implements Command {
+        @Override
+        public MessageType getType() {
+            return MessageType.INSERT;
+        }
+    }
+
+    /**
+     * Rearranges the items picked.
+     *
+     * @param order the new order of the items
+     */
+    record Sort(List<Integer> order) implements Command {
+        public Sort {
+            order = List.copyOf(order);
+        }
+
+        @Override
+        public MessageType getType() {
+            return MessageType.SORT;
+        }
+    }
+
+    /**
+     * Chooses the number of players of the game.
+     */
+    record NumberOfPlayers(int numberOfPlayers) implements Command {
+        @Override
+        public MessageType getType() {
+            return MessageType.NUMBER_OF_PLAYERS;
+        }
+    }
+
+    /**
+     * Asks for the whole game, after the client has missed a {@link StateDelta}.
+     */
+    record SnapshotRequest() implements Command {
+        @Override
+        public MessageType getType() {
+            return MessageType.SNAPSHOT_REQUEST;
+        }
+    }
+}
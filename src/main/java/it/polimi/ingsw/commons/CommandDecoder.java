@@ -0,0 +1,514 @@
+package it.polimi.ingsw.commons;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decodes the {@link Command commands} sent by the clients straight from the bytes received,
+ * either JSON or encoded by the {@link BinaryCodec}.
+ * <p>
+ * The decoder scans the message once, without building its JSON object: as soon as it reads the
+ * category it looks it up in the table of the {@link MessageType types}, and stops if the message is
+ * not a command. The fields of the commands are read straight into integers, whether they are sent
+ * as numbers or as strings containing a number; all the other fields are skipped.
+ * <p>
+ * Anything the decoder doesn't expect, including a message that is not valid, makes it give up:
+ * the caller then decodes the message as a whole, exactly as before, so the messages that are not
+ * commands (and the broken ones) are handled the same way whatever the decoder does with them.
+ * <p>
+ * A decoder keeps its state between the messages, so each connection needs its own,
+ * used by a single thread, like the {@link org.json.simple.parser.JSONParser}.
+ */
+public final class CommandDecoder {
+
+    private static final int CATEGORY = 0;
+    private static final int START_ROW = 1;
+    private static final int START_COLUMN = 2;
+    private static final int FINAL_ROW = 3;
+    private static final int FINAL_COLUMN = 4;
+    private static final int INSERT = 5;
+    private static final int NUM_OF_PLAYERS = 6;
+    private static final int SORT = 7;
+    /**
+     * A field that is not part of any command.
+     */
+    private static final int OTHER = -1;
+    /**
+     * The keys of the fields, encoded in UTF-8 and indexed by the constants above.
+     */
+    private static final byte[][] FIELDS = {utf8("category"), utf8("startRow"), utf8("startColumn"),
+            utf8("finalRow"), utf8("finalColumn"), utf8("insert"), utf8("numOfPlayers"), utf8("sort")};
+    private static final int PICK_FIELDS = 1 << START_ROW | 1 << START_COLUMN | 1 << FINAL_ROW | 1 << FINAL_COLUMN;
+    private static final int CATEGORY_INDEX = BinaryCodec.keyIndex("category");
+    /**
+     * The maximum number of nested objects and arrays skipped.
+     */
+    private static final int MAX_DEPTH = 32;
+    /**
+     * Thrown when the decoder gives up. It is always the same instance, without a stack trace,
+     * so giving up costs no more than returning.
+     */
+    private static final GiveUp GIVE_UP = new GiveUp();
+
+    private byte[] in;
+    private int position;
+    private int end;
+    private MessageType type;
+    /**
+     * The values of the fields read, indexed by the constants above.
+     */
+    private final int[] values = new int[SORT];
+    /**
+     * The bits of the fields read.
+     */
+    private int found;
+    private int[] sort = new int[8];
+    private int sortLength;
+
+    /**
+     * Decodes the command in the body of a frame, as returned by {@link Framing#readBody}.
+     *
+     * @param body the type of the frame, either {@link Framing#JSON} or {@link Framing#BINARY}, followed by its payload
+     * @return the command, or <code>null</code> if the frame doesn't contain a valid command
+     */
+    public Command decode(byte[] body) {
+        return body[0] == Framing.BINARY ? decodeBinary(body, 1, body.length) : decodeJson(body, 1, body.length);
+    }
+
+    /**
+     * Decodes the command in a JSON message.
+     *
+     * @param bytes  an array containing the message, encoded in UTF-8
+     * @param offset the first byte of the message
+     * @param end    the end of the message
+     * @return the command, or <code>null</code> if the message is not a valid command
+     */
+    public Command decodeJson(byte[] bytes, int offset, int end) {
+        start(bytes, offset, end);
+        try {
+            skipWhitespace();
+            expect('{');
+            skipWhitespace();
+            if (peek() != '}') {
+                do {
+                    skipWhitespace();
+                    int field = readJsonKey();
+                    skipWhitespace();
+                    expect(':');
+                    skipWhitespace();
+                    readJsonValue(field);
+                    skipWhitespace();
+                } while (accept(','));
+            }
+            expect('}');
+            skipWhitespace();
+            return command();
+        } catch (GiveUp e) {
+            return null;
+        }
+    }
+
+    /**
+     * Decodes the command in a message encoded by the {@link BinaryCodec}.
+     *
+     * @param bytes  an array containing the message
+     * @param offset the first byte of the message
+     * @param end    the end of the message
+     * @return the command, or <code>null</code> if the message is not a valid command
+     */
+    public Command decodeBinary(byte[] bytes, int offset, int end) {
+        start(bytes, offset, end);
+        try {
+            if (next() != BinaryCodec.OBJECT) {
+                return null;
+            }
+            int size = readSize();
+            for (int i = 0; i < size; i++) {
+                readBinaryValue(readBinaryKey());
+            }
+            return command();
+        } catch (GiveUp e) {
+            return null;
+        }
+    }
+
+    private void start(byte[] bytes, int offset, int end) {
+        this.in = bytes;
+        this.position = offset;
+        this.end = end;
+        this.type = null;
+        this.found = 0;
+        this.sortLength = 0;
+    }
+
+    /**
+     * @return the command read, if the whole message has been read and all the fields of the command were found
+     */
+    private Command command() {
+        if (position != end || type == null) {
+            throw GIVE_UP;
+        }
+        return switch (type) {
+            case PING -> new Command.Ping();
+            case SNAPSHOT_REQUEST -> new Command.SnapshotRequest();
+            case PICK -> {
+                require(PICK_FIELDS);
+                yield new Command.Pick(values[START_ROW], values[START_COLUMN], values[FINAL_ROW], values[FINAL_COLUMN]);
+            }
+            case INSERT -> {
+                require(1 << INSERT);
+                yield new Command.Insert(values[INSERT]);
+            }
+            case SORT -> {
+                require(1 << SORT);
+                Integer[] order = new Integer[sortLength];
+                for (int i = 0; i < sortLength; i++) {
+                    order[i] = sort[i];
+                }
+                yield new Command.Sort(List.of(order));
+            }
+            case NUMBER_OF_PLAYERS -> {
+                require(1 << NUM_OF_PLAYERS);
+                yield new Command.NumberOfPlayers(values[NUM_OF_PLAYERS]);
+            }
+            default -> throw GIVE_UP;
+        };
+    }
+
+    private void require(int fields) {
+        if ((found & fields) != fields) {
+            throw GIVE_UP;
+        }
+    }
+
+    /**
+     * Sets the type of the command, giving up right away if the category is not one of a command.
+     */
+    private void readCategory(int offset, int length) {
+        type = MessageType.of(in, offset, length);
+        if (type == null || !type.isCommand()) {
+            throw GIVE_UP;
+        }
+    }
+
+    private void addSort(int value) {
+        if (sortLength == sort.length) {
+            sort = Arrays.copyOf(sort, sortLength * 2);
+        }
+        sort[sortLength++] = value;
+    }
+
+    /**
+     * @return the field whose key is the given bytes, or {@link #OTHER}
+     */
+    private int field(int offset, int length) {
+        for (int field = 0; field < FIELDS.length; field++) {
+            byte[] key = FIELDS[field];
+            if (key.length == length && Arrays.equals(key, 0, length, in, offset, offset + length)) {
+                return field;
+            }
+        }
+        return OTHER;
+    }
+
+    ///////////////////////////////////////////////////////JSON////////////////////////////////////////////////////////
+
+    private int readJsonKey() {
+        expect('"');
+        int start = position;
+        boolean escaped = false;
+        byte b;
+        while ((b = next()) != '"') {
+            if (b == '\\') {
+                escaped = true;
+                next();
+            }
+        }
+        // None of the keys of the commands contains escapes
+        return escaped ? OTHER : field(start, position - 1 - start);
+    }
+
+    private void readJsonValue(int field) {
+        switch (field) {
+            case CATEGORY -> {
+                expect('"');
+                int start = position;
+                byte b;
+                while ((b = next()) != '"') {
+                    if (b == '\\') {
+                        throw GIVE_UP;
+                    }
+                }
+                readCategory(start, position - 1 - start);
+            }
+            case SORT -> {
+                expect('[');
+                skipWhitespace();
+                sortLength = 0;
+                if (!accept(']')) {
+                    do {
+                        skipWhitespace();
+                        addSort(readJsonInt());
+                        skipWhitespace();
+                    } while (accept(','));
+                    expect(']');
+                }
+                found |= 1 << SORT;
+            }
+            case OTHER -> skipJson(0);
+            default -> {
+                values[field] = readJsonInt();
+                found |= 1 << field;
+            }
+        }
+    }
+
+    /**
+     * Reads an integer, either as a number or as a string containing it.
+     */
+    private int readJsonInt() {
+        if (accept('"')) {
+            int value = readDigits();
+            expect('"');
+            return value;
+        }
+        int value = readDigits();
+        if (position < end && (in[position] == '.' || in[position] == 'e' || in[position] == 'E')) {
+            throw GIVE_UP;
+        }
+        return value;
+    }
+
+    private int readDigits() {
+        boolean negative = accept('-');
+        int start = position;
+        long value = 0;
+        while (position < end && in[position] >= '0' && in[position] <= '9') {
+            value = value * 10 + (in[position++] - '0');
+            if (position - start > 10) {
+                throw GIVE_UP;
+            }
+        }
+        if (position == start) {
+            throw GIVE_UP;
+        }
+        value = negative ? -value : value;
+        if (value != (int) value) {
+            throw GIVE_UP;
+        }
+        return (int) value;
+    }
+
+    private void skipJson(int depth) {
+        if (depth > MAX_DEPTH) {
+            throw GIVE_UP;
+        }
+        byte b = peek();
+        if (b == '"') {
+            readJsonKey();
+        } else if (b == '{' || b == '[') {
+            char close = b == '{' ? '}' : ']';
+            position++;
+            skipWhitespace();
+            if (accept(close)) {
+                return;
+            }
+            do {
+                skipWhitespace();
+                if (b == '{') {
+                    readJsonKey();
+                    skipWhitespace();
+                    expect(':');
+                    skipWhitespace();
+                }
+                skipJson(depth + 1);
+                skipWhitespace();
+            } while (accept(','));
+            expect(close);
+        } else {
+            // A number, true, false or null
+            int start = position;
+            while (position < end && isLiteral(in[position])) {
+                position++;
+            }
+            if (position == start) {
+                throw GIVE_UP;
+            }
+        }
+    }
+
+    private static boolean isLiteral(byte b) {
+        return (b >= '0' && b <= '9') || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '-' || b == '+' || b == '.';
+    }
+
+    private void skipWhitespace() {
+        while (position < end && (in[position] == ' ' || in[position] == '\t' || in[position] == '\r' || in[position] == '\n')) {
+            position++;
+        }
+    }
+
+    private boolean accept(char c) {
+        if (position < end && in[position] == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if (!accept(c)) {
+            throw GIVE_UP;
+        }
+    }
+
+    private byte peek() {
+        if (position >= end) {
+            throw GIVE_UP;
+        }
+        return in[position];
+    }
+
+    private byte next() {
+        if (position >= end) {
+            throw GIVE_UP;
+        }
+        return in[position++];
+    }
+
+    ///////////////////////////////////////////////////////BINARY//////////////////////////////////////////////////////
+
+    private int readBinaryKey() {
+        long index = readVarLong();
+        if (index == CATEGORY_INDEX) {
+            return CATEGORY;
+        }
+        if (index == 0) {
+            int length = readSize();
+            int field = field(position, length);
+            position += length;
+            return field;
+        }
+        if (index < 0 || index > BinaryCodec.keyCount()) {
+            throw GIVE_UP;
+        }
+        return OTHER;
+    }
+
+    private void readBinaryValue(int field) {
+        byte tag = next();
+        switch (field) {
+            case CATEGORY -> {
+                if (tag != BinaryCodec.STRING) {
+                    throw GIVE_UP;
+                }
+                int length = readSize();
+                readCategory(position, length);
+                position += length;
+            }
+            case SORT -> {
+                if (tag != BinaryCodec.ARRAY) {
+                    throw GIVE_UP;
+                }
+                int size = readSize();
+                sortLength = 0;
+                for (int i = 0; i < size; i++) {
+                    addSort(readBinaryInt(next()));
+                }
+                found |= 1 << SORT;
+            }
+            case OTHER -> skipBinary(tag, 0);
+            default -> {
+                values[field] = readBinaryInt(tag);
+                found |= 1 << field;
+            }
+        }
+    }
+
+    /**
+     * Reads an integer, either encoded as a number or as a string containing it.
+     */
+    private int readBinaryInt(byte tag) {
+        if (tag != BinaryCodec.NUMBER && tag != BinaryCodec.NUMERIC_STRING) {
+            throw GIVE_UP;
+        }
+        long value = readVarLong();
+        if (value != (int) value) {
+            throw GIVE_UP;
+        }
+        return (int) value;
+    }
+
+    private void skipBinary(byte tag, int depth) {
+        if (depth > MAX_DEPTH) {
+            throw GIVE_UP;
+        }
+        switch (tag) {
+            case BinaryCodec.NULL, BinaryCodec.FALSE, BinaryCodec.TRUE -> {
+            }
+            case BinaryCodec.STRING -> position += readSize();
+            case BinaryCodec.NUMERIC_STRING, BinaryCodec.NUMBER -> readVarLong();
+            case BinaryCodec.DECIMAL -> skip(8);
+            case BinaryCodec.OBJECT -> {
+                int size = readSize();
+                for (int i = 0; i < size; i++) {
+                    readBinaryKey();
+                    skipBinary(next(), depth + 1);
+                }
+            }
+            case BinaryCodec.ARRAY -> {
+                int size = readSize();
+                for (int i = 0; i < size; i++) {
+                    skipBinary(next(), depth + 1);
+                }
+            }
+            case BinaryCodec.CELLS -> skip((long) readSize() * readSize());
+            default -> throw GIVE_UP;
+        }
+    }
+
+    private void skip(long length) {
+        if (length > end - position) {
+            throw GIVE_UP;
+        }
+        position += (int) length;
+    }
+
+    /**
+     * Reads a size, which can't be larger than the bytes left.
+     */
+    private int readSize() {
+        long size = readVarLong();
+        if (size < 0 || size > end - position) {
+            throw GIVE_UP;
+        }
+        return (int) size;
+    }
+
+    /**
+     * Reads a zig-zag encoded varint, like the {@link BinaryCodec}.
+     */
+    private long readVarLong() {
+        long zigZag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = next();
+            zigZag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+            }
+        }
+        throw GIVE_UP;
+    }
+
+    private static byte[] utf8(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class GiveUp extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        GiveUp() {
+            super(null, null, false, false);
+        }
+    }
+}
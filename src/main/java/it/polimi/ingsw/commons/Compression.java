@@ -0,0 +1,190 @@
+package it.polimi.ingsw.commons;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The compression of the frames of a TCP connection, used when both sides negotiate it (see {@link Framing}).
+ * <p>
+ * Each side compresses the frames it sends with one deflate stream, and decompresses the frames it
+ * receives with another one, both kept for the whole connection. Since the streams remember what has
+ * already been sent, the messages that repeat the same structure (like the board and the bookshelves)
+ * compress much better than they would one by one. The frames whose payload is shorter than
+ * {@value #THRESHOLD} bytes, like pings and turns, are sent as they are.
+ * <p>
+ * A compressed frame has the type {@link Framing#DEFLATED}, and its payload holds the type of the
+ * original frame followed by its payload, compressed. Because of the streams, the frames must be
+ * compressed in the same order they are sent, and decompressed in the same order they are received.
+ */
+public final class Compression {
+
+    /**
+     * The name of this version of the compression, sent in the handshake.
+     */
+    public static final String NAME = "deflate-1";
+    /**
+     * The minimum length of a payload to compress it.
+     */
+    public static final int THRESHOLD = 256;
+
+    private final Deflater deflater;
+    private final Inflater inflater;
+    /**
+     * The buffer the streams write into. Both are only used while holding their own lock.
+     */
+    private final byte[] deflateBuffer;
+    private final byte[] inflateBuffer;
+    private boolean ended;
+
+    /**
+     * Creates the streams of a connection.
+     */
+    public Compression() {
+        deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        inflater = new Inflater(true);
+        deflateBuffer = new byte[8192];
+        inflateBuffer = new byte[8192];
+    }
+
+    /**
+     * Compresses a frame, if it is long enough.
+     *
+     * @param frame the frame, as returned by {@link Framing#frame(byte, byte[])}
+     * @return the compressed frame, or the same frame if it is too short or the connection has ended
+     */
+    public byte[] compress(byte[] frame) {
+        if (frame.length - Framing.HEADER_LENGTH < THRESHOLD) {
+            return frame;
+        }
+        synchronized (deflater) {
+            if (ended) {
+                return frame;
+            }
+            Output out = new Output(frame.length / 4 + Framing.HEADER_LENGTH + 1);
+            out.skip(Framing.HEADER_LENGTH);
+            out.write(frame[Framing.HEADER_LENGTH - 1]);
+            deflater.setInput(frame, Framing.HEADER_LENGTH, frame.length - Framing.HEADER_LENGTH);
+            int written;
+            do {
+                // SYNC_FLUSH writes out everything, so the other side can decompress the frame right away
+                written = deflater.deflate(deflateBuffer, 0, deflateBuffer.length, Deflater.SYNC_FLUSH);
+                out.write(deflateBuffer, written);
+            } while (written == deflateBuffer.length);
+            byte[] compressed = out.toByteArray();
+            Framing.writeHeader(compressed, compressed.length - Framing.HEADER_LENGTH, Framing.DEFLATED);
+            return compressed;
+        }
+    }
+
+    /**
+     * Decompresses the payload of a {@link Framing#DEFLATED} frame.
+     *
+     * @param payload the payload of the frame
+     * @return the type of the original frame, followed by its payload
+     * @throws IOException if the payload is not valid, which means the peer is broken
+     */
+    public byte[] decompress(byte[] payload) throws IOException {
+        return decompress(payload, 0, payload.length);
+    }
+
+    /**
+     * Decompresses the payload of a {@link Framing#DEFLATED} frame.
+     *
+     * @param bytes  an array containing the payload of the frame
+     * @param offset the first byte of the payload
+     * @param length the length of the payload
+     * @return the type of the original frame, followed by its payload
+     * @throws IOException if the payload is not valid, which means the peer is broken
+     */
+    public byte[] decompress(byte[] bytes, int offset, int length) throws IOException {
+        if (length < 1) {
+            throw new IOException("Empty compressed frame");
+        }
+        synchronized (inflater) {
+            if (ended) {
+                throw new IOException("The connection has ended");
+            }
+            Output out = new Output(length * 4);
+            out.write(bytes[offset]);
+            inflater.setInput(bytes, offset + 1, length - 1);
+            try {
+                while (true) {
+                    int read = inflater.inflate(inflateBuffer);
+                    out.write(inflateBuffer, read);
+                    if (out.size() > Framing.MAX_LENGTH + 1) {
+                        throw new IOException("Compressed frame too long");
+                    }
+                    if (read == 0) {
+                        if (inflater.needsInput()) {
+                            break;
+                        }
+                        throw new IOException("Invalid compressed stream");
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Invalid compressed frame", e);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Releases the streams. Called when the connection is closed.
+     */
+    public void end() {
+        synchronized (deflater) {
+            synchronized (inflater) {
+                if (!ended) {
+                    ended = true;
+                    deflater.end();
+                    inflater.end();
+                }
+            }
+        }
+    }
+
+    /**
+     * A growable array of bytes.
+     */
+    private static final class Output {
+        private byte[] bytes;
+        private int size;
+
+        Output(int capacity) {
+            bytes = new byte[Math.max(capacity, 16)];
+        }
+
+        private void ensureCapacity(int more) {
+            if (size + more > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + more));
+            }
+        }
+
+        void skip(int length) {
+            ensureCapacity(length);
+            size += length;
+        }
+
+        void write(byte b) {
+            ensureCapacity(1);
+            bytes[size++] = b;
+        }
+
+        void write(byte[] source, int length) {
+            ensureCapacity(length);
+            System.arraycopy(source, 0, bytes, size, length);
+            size += length;
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
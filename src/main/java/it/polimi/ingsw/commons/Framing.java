@@ -0,0 +1,436 @@
+package it.polimi.ingsw.commons;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The formats of the messages exchanged over TCP.
+ * <p>
+ * A connection starts with one JSON message per line. A client that supports frames sends
+ * a {@value #HANDSHAKE} message with the version {@value #VERSION}: if the server supports
+ * it too, it answers with the same message and from then on both sides exchange frames.
+ * Clients that don't send the handshake, and servers that don't answer it, keep using lines.
+ * <p>
+ * Neither side waits for the other: the client keeps sending lines until the answer arrives, however
+ * late, and the server reads lines until the first frame of the client (see {@link #startsFrame(int)}).
+ * <p>
+ * A frame is made of:
+ * <ul>
+ *     <li>the length of the payload, as a 4 bytes big-endian integer;</li>
+ *     <li>the type of the payload, as a single byte;</li>
+ *     <li>the payload.</li>
+ * </ul>
+ * Frames whose type is unknown are skipped, so new types can be added without breaking older peers.
+ * Text payloads are always encoded in UTF-8.
+ * <p>
+ * The handshake of the client can also offer a {@link MessageCodec}, like the {@link BinaryCodec}, in its
+ * {@value #CODEC} field: if the server answers with the same codec, both sides send the frames of that codec
+ * instead of JSON ones.
+ * In the same way, the {@value #COMPRESSION} field offers the {@link Compression} of the frames.
+ */
+public final class Framing {
+
+    /**
+     * The category of the message used to negotiate frames.
+     */
+    public static final String HANDSHAKE = "framing";
+    /**
+     * The version of the frame format.
+     */
+    public static final String VERSION = "length-prefixed-1";
+    /**
+     * The type of the frames containing a JSON message.
+     */
+    public static final byte JSON = 1;
+    /**
+     * The type of the frames containing a message encoded by the {@link BinaryCodec}.
+     */
+    public static final byte BINARY = 2;
+    /**
+     * The type of the frames containing another frame, compressed by the {@link Compression} of the connection.
+     */
+    public static final byte DEFLATED = 3;
+    /**
+     * The field of the handshake holding the codec offered by the client, or accepted by the server.
+     */
+    public static final String CODEC = "codec";
+    /**
+     * The field of the handshake holding the compression offered by the client, or accepted by the server.
+     */
+    public static final String COMPRESSION = "compression";
+    /**
+     * The length of the header of a frame: the length and the type of the payload.
+     */
+    public static final int HEADER_LENGTH = 5;
+    /**
+     * The maximum length of a payload. Longer frames mean that the peer is broken.
+     */
+    public static final int MAX_LENGTH = 16 * 1024 * 1024;
+
+    private Framing() {
+    }
+
+    /**
+     * @return the message used to negotiate frames, with JSON payloads
+     */
+    public static Message handshake() {
+        return new Message(HANDSHAKE, VERSION);
+    }
+
+    /**
+     * @param binary true to offer (or accept) the {@link BinaryCodec}
+     * @return the message used to negotiate frames
+     */
+    public static Message handshake(boolean binary) {
+        return handshake(binary, false);
+    }
+
+    /**
+     * @param binary     true to offer (or accept) the {@link BinaryCodec}
+     * @param compressed true to offer (or accept) the {@link Compression}
+     * @return the message used to negotiate frames
+     */
+    @SuppressWarnings("unchecked")
+    public static Message handshake(boolean binary, boolean compressed) {
+        return handshake(binary ? MessageCodec.BINARY : MessageCodec.JSON, compressed);
+    }
+
+    /**
+     * @param codec      the codec to offer (or accept)
+     * @param compressed true to offer (or accept) the {@link Compression}
+     * @return the message used to negotiate frames
+     */
+    @SuppressWarnings("unchecked")
+    public static Message handshake(MessageCodec codec, boolean compressed) {
+        Message handshake = handshake();
+        if (codec != MessageCodec.JSON) {
+            handshake.getJson().put(CODEC, codec.getName());
+        }
+        if (compressed) {
+            handshake.getJson().put(COMPRESSION, Compression.NAME);
+        }
+        return handshake;
+    }
+
+    /**
+     * @param handshake a handshake message
+     * @return true if the handshake offers (or accepts) the {@link BinaryCodec}
+     */
+    public static boolean isBinary(Message handshake) {
+        return codec(handshake) == MessageCodec.BINARY;
+    }
+
+    /**
+     * @param handshake a handshake message
+     * @return the codec offered (or accepted) by the handshake, {@link MessageCodec#JSON} if none or an unknown one
+     */
+    public static MessageCodec codec(Message handshake) {
+        MessageCodec codec = MessageCodec.ofName(handshake.getJson().get(CODEC));
+        return codec == null ? MessageCodec.JSON : codec;
+    }
+
+    /**
+     * @param handshake a handshake message
+     * @return true if the handshake offers (or accepts) the {@link Compression}
+     */
+    public static boolean isCompressed(Message handshake) {
+        return Compression.NAME.equals(handshake.getJson().get(COMPRESSION));
+    }
+
+    /**
+     * @param message a message
+     * @return true if the message asks for (or accepts) the frames of this version
+     */
+    public static boolean isHandshake(Message message) {
+        return HANDSHAKE.equals(message.getCategory()) && VERSION.equals(message.getArgument());
+    }
+
+    /**
+     * Encodes a message, either as a line or as a frame.
+     *
+     * @param message the message to encode
+     * @param framed  true to encode the message as a frame
+     * @return the bytes to send
+     */
+    public static byte[] encode(Message message, boolean framed) {
+        return encode(message, framed, false);
+    }
+
+    /**
+     * Encodes a message, either as a line or as a frame.
+     *
+     * @param message the message to encode
+     * @param framed  true to encode the message as a frame
+     * @param binary  true to encode the frame with the {@link BinaryCodec}, ignored for lines
+     * @return the bytes to send
+     */
+    public static byte[] encode(Message message, boolean framed, boolean binary) {
+        return encode(message, framed, binary ? MessageCodec.BINARY : MessageCodec.JSON);
+    }
+
+    /**
+     * Encodes a message, either as a line or as a frame.
+     *
+     * @param message the message to encode
+     * @param framed  true to encode the message as a frame
+     * @param codec   the codec of the frame, ignored for lines, which are always JSON
+     * @return the bytes to send
+     */
+    public static byte[] encode(Message message, boolean framed, MessageCodec codec) {
+        if (framed) {
+            return frame(codec.getFrameType(), codec.encode(message));
+        }
+        byte[] json = MessageCodec.JSON.encode(message);
+        byte[] line = new byte[json.length + 1];
+        System.arraycopy(json, 0, line, 0, json.length);
+        line[json.length] = '\n';
+        return line;
+    }
+
+    /**
+     * Wraps a payload in a frame.
+     *
+     * @param type    the type of the payload
+     * @param payload the payload
+     * @return the frame
+     */
+    public static byte[] frame(byte type, byte[] payload) {
+        byte[] frame = new byte[HEADER_LENGTH + payload.length];
+        writeHeader(frame, payload.length, type);
+        System.arraycopy(payload, 0, frame, HEADER_LENGTH, payload.length);
+        return frame;
+    }
+
+    /**
+     * Writes the header of a frame at the beginning of an array.
+     *
+     * @param bytes  the array, at least {@value #HEADER_LENGTH} bytes long
+     * @param length the length of the payload
+     * @param type   the type of the payload
+     */
+    public static void writeHeader(byte[] bytes, int length, byte type) {
+        bytes[0] = (byte) (length >>> 24);
+        bytes[1] = (byte) (length >>> 16);
+        bytes[2] = (byte) (length >>> 8);
+        bytes[3] = (byte) length;
+        bytes[4] = type;
+    }
+
+    /**
+     * Reads the length of the payload from the header of a frame.
+     *
+     * @param header the header of the frame
+     * @return the length of the payload
+     * @throws IOException if the length is not valid, which means the peer is broken
+     */
+    public static int readLength(byte[] header) throws IOException {
+        int length = ((header[0] & 0xFF) << 24) | ((header[1] & 0xFF) << 16) | ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
+        checkLength(length);
+        return length;
+    }
+
+    /**
+     * @param length the length of a payload
+     * @throws IOException if the length is not valid, which means the peer is broken
+     */
+    public static void checkLength(int length) throws IOException {
+        if (length < 0 || length > MAX_LENGTH) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+    }
+
+    /**
+     * Reads the next message sent as a frame, skipping the frames of unknown types.
+     *
+     * @param in the stream to read from
+     * @return the message, or <code>null</code> if the frame doesn't contain a valid message
+     * @throws IOException if the stream is closed or the peer is broken
+     */
+    public static Message readMessage(DataInputStream in) throws IOException {
+        return readMessage(in, null);
+    }
+
+    /**
+     * Reads the next message sent as a frame, skipping the frames of unknown types.
+     *
+     * @param in          the stream to read from
+     * @param compression the compression of the connection, <code>null</code> if the frames are not compressed
+     * @return the message, or <code>null</code> if the frame doesn't contain a valid message
+     * @throws IOException if the stream is closed or the peer is broken
+     */
+    public static Message readMessage(DataInputStream in, Compression compression) throws IOException {
+        return decode(readBody(in, compression));
+    }
+
+    /**
+     * Reads the next frame, skipping the frames of unknown types, and returns its body:
+     * the type of the frame followed by its payload, already decompressed.
+     * Reading the body instead of the message lets the caller look at the payload
+     * before deciding how to decode it (see {@link CommandDecoder}).
+     *
+     * @param in          the stream to read from
+     * @param compression the compression of the connection, <code>null</code> if the frames are not compressed
+     * @return the body of the frame, whose type is the one of a {@link MessageCodec}
+     * @throws IOException if the stream is closed or the peer is broken
+     */
+    public static byte[] readBody(DataInputStream in, Compression compression) throws IOException {
+        while (true) {
+            int length = in.readInt();
+            byte type = in.readByte();
+            checkLength(length);
+            if (!isKnown(type, compression)) {
+                in.skipNBytes(length);
+                continue;
+            }
+            byte[] body = new byte[length + 1];
+            body[0] = type;
+            in.readFully(body, 1, length);
+            body = unwrap(body, compression);
+            if (body != null) {
+                return body;
+            }
+        }
+    }
+
+    /**
+     * Decompresses the body of a frame, if it is compressed.
+     *
+     * @param body        the type of a known frame followed by its payload
+     * @param compression the compression of the connection, <code>null</code> if the frames are not compressed
+     * @return the body of the original frame, or <code>null</code> if it has a type that can't be decoded
+     * @throws IOException if the payload can't be decompressed, which means the peer is broken
+     */
+    public static byte[] unwrap(byte[] body, Compression compression) throws IOException {
+        if (body[0] == DEFLATED && compression != null) {
+            body = compression.decompress(body, 1, body.length - 1);
+        }
+        return MessageCodec.ofFrameType(body[0]) != null ? body : null;
+    }
+
+    /**
+     * Decodes the body of a frame, as returned by {@link #readBody}, with the codec of its type.
+     *
+     * @param body the type of the frame followed by its payload
+     * @return the message, or <code>null</code> if the payload is not a valid message
+     */
+    public static Message decode(byte[] body) {
+        try {
+            return MessageCodec.ofFrameType(body[0]).decode(body, 1, body.length - 1);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unable to decode message: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @param type        the type of a frame
+     * @param compression the compression of the connection, <code>null</code> if the frames are not compressed
+     * @return true if frames of the given type can be decoded, false if they have to be skipped
+     */
+    public static boolean isKnown(byte type, Compression compression) {
+        return MessageCodec.ofFrameType(type) != null || (type == DEFLATED && compression != null);
+    }
+
+    /**
+     * Decodes the payload of a frame.
+     *
+     * @param type    the type of the payload
+     * @param payload the payload
+     * @return the message, or <code>null</code> if the payload is not a valid message
+     */
+    public static Message decode(byte type, byte[] payload) {
+        MessageCodec codec = MessageCodec.ofFrameType(type);
+        if (codec == null) {
+            return null;
+        }
+        try {
+            return codec.decode(payload, 0, payload.length);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unable to decode message: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Tells the first byte of a frame from the first byte of a line. A frame starts with the highest byte
+     * of its length, which is at most {@value #MAX_LENGTH}, while a JSON line starts with a character.
+     *
+     * @param first the first byte of a frame or of a line
+     * @return true if it is the first byte of a frame
+     */
+    public static boolean startsFrame(int first) {
+        return (first & 0xFF) <= MAX_LENGTH >>> 24;
+    }
+
+    /**
+     * Reads a line encoded in UTF-8.
+     *
+     * @param in the stream to read from
+     * @return the line, without the line terminator, or <code>null</code> if the stream has ended
+     * @throws IOException if the stream is closed or the line is too long
+     */
+    public static String readLine(InputStream in) throws IOException {
+        byte[] line = readLineBytes(in);
+        return line == null ? null : new String(line, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a line, without decoding it. Lines can end with <code>'\n'</code> or <code>"\r\n"</code>.
+     *
+     * @param in the stream to read from
+     * @return the bytes of the line, without the line terminator, or <code>null</code> if the stream has ended
+     * @throws IOException if the stream is closed or the line is too long
+     */
+    public static byte[] readLineBytes(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int read;
+        while ((read = in.read()) != '\n') {
+            if (read < 0) {
+                return line.size() == 0 ? null : lineContent(line.toByteArray());
+            }
+            line.write(read);
+            if (line.size() > MAX_LENGTH) {
+                throw new IOException("Line too long");
+            }
+        }
+        return lineContent(line.toByteArray());
+    }
+
+    /**
+     * @param line the bytes of a line, without the <code>'\n'</code> that ends it
+     * @return the bytes of the line without the <code>'\r'</code> that ends it, if any
+     */
+    public static byte[] lineContent(byte[] line) {
+        if (line.length > 0 && line[line.length - 1] == '\r') {
+            return Arrays.copyOf(line, line.length - 1);
+        }
+        return line;
+    }
+
+    /**
+     * Parses a JSON message.
+     *
+     * @param json   the text of the message
+     * @param parser the parser to use
+     * @return the message, or <code>null</code> if the text is not a valid message
+     */
+    public static Message parse(String json, JSONParser parser) {
+        try {
+            if (parser.parse(json) instanceof JSONObject object) {
+                return new Message(object);
+            }
+        } catch (ParseException e) {
+            // Handled below
+        }
+        System.err.println("Unable to parse message: " + json);
+        return null;
+    }
+}
@@ -14,22 +14,72 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-
-import static it.polimi.ingsw.server.ServerController.BACKUP_FILE;
+import java.util.Set;
 
 /**
  * This class represents a message.
  * It's also the parser for both client and server.
  * It parses a message to be sent or received with a set of constructors and getters.
+ * <p>
+ * Over RMI a message is written with the {@link BinaryCodec}, like the binary frames of the
+ * TCP protocol, instead of serializing its JSON object entry by entry.
+ * <p>
+ * The messages of the turn are also available as typed records ({@link Command}, {@link StartGame},
+ * {@link StateUpdate}, {@link StateDelta}), decoded from the JSON object only once: their fields are then
+ * plain reads. The other getters read the JSON object every time they are called.
  */
 @SuppressWarnings("unchecked")
-public class Message implements Serializable {
+public class Message implements Externalizable {
 
     private JSONObject json;
+    /**
+     * The broadcast this message is part of, <code>null</code> if it is not part of one.
+     */
+    private transient Broadcast broadcast;
+    /**
+     * The fields of the message that are not shared with the rest of the broadcast.
+     */
+    private transient JSONObject personalFields;
+    /**
+     * The type of the message, looked up the first time it is needed.
+     */
+    private transient MessageType type;
+    /**
+     * The record decoded from the message, if any, so that it is decoded only once.
+     */
+    private transient Record decoded;
+
+    /**
+     * The keys of the fields returned by {@link #personalGoalFields(int)}.
+     */
+    public static final Set<String> PERSONAL_GOAL_KEYS = Set.of("personal_goal");
+    /**
+     * The keys of the fields returned by {@link #scoreFields(List)}.
+     */
+    public static final Set<String> SCORE_KEYS = Set.of("pgScore", "cgScore", "bookshelfScore", "totalScore");
+
+    private static final IndexedKey TOP_SCORING = new IndexedKey("topScoring");
+    private static final IndexedKey COMMON_GOAL_LAYOUT = new IndexedKey("commonGoalLayout ");
+    private static final IndexedKey OCCURRENCES = new IndexedKey("occurrences ");
+    private static final IndexedKey HORIZONTAL = new IndexedKey("horizontal ");
+    private static final IndexedKey SIZE = new IndexedKey("size ");
+    private static final IndexedKey SCORING_LIST = new IndexedKey("scoringList");
+    private static final IndexedKey NAME = new IndexedKey("name");
+    private static final IndexedKey SCORE = new IndexedKey("score");
 
     ///////////////////////////////////////////////////////CONSTRUCTORS////////////////////////////////////////////////////////
 
+    /**
+     * Constructor for an empty message, used to read a message received over RMI.
+     *
+     * @see #readExternal(ObjectInput)
+     */
+    public Message() {
+        this.json = new JSONObject();
+    }
+
     /**
      * Constructor for a normal json message.
      *
@@ -39,6 +89,20 @@ public class Message implements Serializable {
         this.json = json;
     }
 
+    /**
+     * Constructor for a message of a broadcast.
+     *
+     * @param broadcast      the broadcast the message is part of.
+     * @param personalFields the fields of the message that are not shared with the rest of the broadcast.
+     * @param json           all the fields of the message.
+     * @see Broadcast#to(JSONObject)
+     */
+    Message(Broadcast broadcast, JSONObject personalFields, JSONObject json) {
+        this.broadcast = broadcast;
+        this.personalFields = personalFields;
+        this.json = json;
+    }
+
     /**
      * Constructor for a normal json message from a file.
      *
@@ -96,20 +160,20 @@ public class Message implements Serializable {
 
         for (int i = 0; i < commonGoalList.size(); i++) {
             Layout layout = commonGoalList.get(i).getLayout();
-            json.put("commonGoalLayout " + i, layout.getName());
+            json.put(COMMON_GOAL_LAYOUT.get(i), layout.getName());
 
             if ("fullLine".equals(commonGoalList.get(i).getLayout().getName())) {
-                json.put("occurrences " + i, layout.getOccurrences());
-                json.put("horizontal " + i, layout.isHorizontal());
-                json.put("size " + i, 0);
+                json.put(OCCURRENCES.get(i), layout.getOccurrences());
+                json.put(HORIZONTAL.get(i), layout.isHorizontal());
+                json.put(SIZE.get(i), 0);
             } else if ("group".equals(layout.getName())) {
-                json.put("occurrences " + i, layout.getOccurrences());
-                json.put("horizontal " + i, false);
-                json.put("size " + i, layout.getSize());
+                json.put(OCCURRENCES.get(i), layout.getOccurrences());
+                json.put(HORIZONTAL.get(i), false);
+                json.put(SIZE.get(i), layout.getSize());
             } else {
-                json.put("occurrences " + i, 0);
-                json.put("horizontal " + i, false);
-                json.put("size " + i, 0);
+                json.put(OCCURRENCES.get(i), 0);
+                json.put(HORIZONTAL.get(i), false);
+                json.put(SIZE.get(i), 0);
             }
             JSONArray scoringListJson = new JSONArray();
             for (int j = 0; j < commonGoalList.get(i).getScoringList().size(); j++) {
@@ -118,17 +182,11 @@ public class Message implements Serializable {
                 scoringJson.put("score", integerString);
                 scoringListJson.add(scoringJson);
             }
-            json.put("scoringList" + i, scoringListJson);
+            json.put(SCORING_LIST.get(i), scoringListJson);
         }
         json.put("board", boardJson(board));
         json.put("items", itemBagFill(board.getItemBag()));
         json.put("currentPlayer", currentPlayer);
-
-        try (PrintWriter out = new PrintWriter(new FileWriter(BACKUP_FILE))) {
-            out.write(json.toString());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
     }
 
     /**
@@ -177,26 +235,25 @@ public class Message implements Serializable {
      */
     public Message(int personalGoal, List<CommonGoal> commonGoalList, HashMap<String, Bookshelf> bookshelves, Board board, List<Integer> topOfScoringList, String firstPlayer, HashMap<String, List<Integer>> currentScores) {
         json = new JSONObject();
-        String personalGoalString = Integer.toString(personalGoal);
         SettingLoader.loadBookshelfSettings();
         json.put("category", "startGame");
-        json.put("personal_goal", personalGoalString);
+        json.putAll(personalGoalFields(personalGoal));
         for (int i = 0; i < commonGoalList.size(); i++) {
             Layout layout = commonGoalList.get(i).getLayout();
-            json.put("commonGoalLayout " + i, layout.getName());
+            json.put(COMMON_GOAL_LAYOUT.get(i), layout.getName());
 
             if ("fullLine".equals(commonGoalList.get(i).getLayout().getName())) {
-                json.put("occurrences " + i, layout.getOccurrences());
-                json.put("horizontal " + i, layout.isHorizontal());
-                json.put("size " + i, 0);
+                json.put(OCCURRENCES.get(i), layout.getOccurrences());
+                json.put(HORIZONTAL.get(i), layout.isHorizontal());
+                json.put(SIZE.get(i), 0);
             } else if ("group".equals(layout.getName())) {
-                json.put("occurrences " + i, layout.getOccurrences());
-                json.put("horizontal " + i, false);
-                json.put("size " + i, layout.getSize());
+                json.put(OCCURRENCES.get(i), layout.getOccurrences());
+                json.put(HORIZONTAL.get(i), false);
+                json.put(SIZE.get(i), layout.getSize());
             } else {
-                json.put("occurrences " + i, 0);
-                json.put("horizontal " + i, false);
-                json.put("size " + i, 0);
+                json.put(OCCURRENCES.get(i), 0);
+                json.put(HORIZONTAL.get(i), false);
+                json.put(SIZE.get(i), 0);
             }
         }
         JSONArray bookshelfArray = new JSONArray();
@@ -215,7 +272,7 @@ public class Message implements Serializable {
         json.put("board", boardJson(board));
         for (int i = 0; i < topOfScoringList.size(); i++) {
             String integerString = Integer.toString(topOfScoringList.get(i));
-            json.put("topScoring" + i, integerString);
+            json.put(TOP_SCORING.get(i), integerString);
         }
         json.put("firstPlayer", firstPlayer);
     }
@@ -241,17 +298,60 @@ public class Message implements Serializable {
         json.put("bookshelves", bookshelfArray);
 
         json.put("board", boardJson(board));
-        json.put("pgScore", Integer.toString(score.get(0)));
-        json.put("cgScore", Integer.toString(score.get(1)));
-        json.put("bookshelfScore", Integer.toString(score.get(2)));
-        json.put("totalScore", Integer.toString(score.get(3)));
+        json.putAll(scoreFields(score));
 
         for (int i = 0; i < topOfScoringList.size(); i++) {
             String integerString = Integer.toString(topOfScoringList.get(i));
-            json.put("topScoring" + i, integerString);
+            json.put(TOP_SCORING.get(i), integerString);
         }
     }
 
+    /**
+     * Constructor for the delta message, sent after every turn instead of the whole game.
+     * It only contains what has changed since the previous update: the cells of the board,
+     * the cells of the bookshelves, the score of the recipient and the top of the scoring lists.
+     *
+     * @param version          version of the state of the game after the changes.
+     * @param boardChanges     the new items of the changed cells of the board (<code>null</code> for empty cells).
+     * @param bookshelfChanges the new items of the changed cells of each bookshelf (<code>null</code> for empty cells).
+     * @param score            the new score of the recipient, or <code>null</code> if it hasn't changed.
+     * @param topOfScoringList the new top of the scoring lists, or <code>null</code> if they haven't changed.
+     */
+    public Message(long version, Map<Coordinates, Item> boardChanges, Map<String, Map<Coordinates, Item>> bookshelfChanges, List<Integer> score, List<Integer> topOfScoringList) {
+        this(new StateDelta(version, boardChanges, bookshelfChanges, score, topOfScoringList));
+    }
+
+    /**
+     * Constructor for the delta message, sent after every turn instead of the whole game.
+     *
+     * @param delta the changes to the game since the previous update.
+     */
+    public Message(StateDelta delta) {
+        json = new JSONObject();
+        json.put("category", "delta");
+        json.put("version", Long.toString(delta.version()));
+        json.put("boardChanges", cellsJson(delta.boardChanges()));
+
+        JSONArray bookshelfArray = new JSONArray();
+        for (Map.Entry<String, Map<Coordinates, Item>> bookshelf : delta.bookshelfChanges().entrySet()) {
+            JSONObject bookshelfJson = new JSONObject();
+            bookshelfJson.put("username", bookshelf.getKey());
+            bookshelfJson.put("cells", cellsJson(bookshelf.getValue()));
+            bookshelfArray.add(bookshelfJson);
+        }
+        json.put("bookshelfChanges", bookshelfArray);
+
+        if (!delta.score().isEmpty()) {
+            json.putAll(scoreFields(delta.score()));
+        }
+
+        List<Integer> topOfScoringList = delta.topOfScoringList();
+        for (int i = 0; i < topOfScoringList.size(); i++) {
+            json.put(TOP_SCORING.get(i), Integer.toString(topOfScoringList.get(i)));
+        }
+        decoded = delta;
+    }
+
     /**
      * Constructor for an int content message.
      *
@@ -290,9 +390,9 @@ public class Message implements Serializable {
         json.put("size", sizeString);
         System.out.println(scores);
         for (int i = 0; i < size; i++) {
-            json.put("name" + i, names.get(i));
+            json.put(NAME.get(i), names.get(i));
             String scoreString = Integer.toString(scores.get(i));
-            json.put("score" + i, scoreString);
+            json.put(SCORE.get(i), scoreString);
         }
     }
 
@@ -431,8 +531,8 @@ public class Message implements Serializable {
      */
     public JSONArray bookshelfJson(Bookshelf bookshelf) {
         JSONArray bookshelfItemList = new JSONArray();
-        for (int i = 0; i < Bookshelf.getRows(); i++) {
-            for (int j = 0; j < Bookshelf.getColumns(); j++) {
+        for (int i = 0; i < bookshelf.getNumberOfRows(); i++) {
+            for (int j = 0; j < bookshelf.getNumberOfColumns(); j++) {
                 JSONObject bookshelfItem = new JSONObject();
                 String rowString = String.valueOf(i);
                 String columnString = String.valueOf(j);
@@ -489,6 +589,87 @@ public class Message implements Serializable {
         return boardMatrix;
     }
 
+    /**
+     * Returns the fields of the start game message that are different for each player.
+     *
+     * @param personalGoal personal goal of the player.
+     * @return the fields with the personal goal, whose keys are {@link #PERSONAL_GOAL_KEYS}.
+     */
+    public static JSONObject personalGoalFields(int personalGoal) {
+        JSONObject fields = new JSONObject();
+        fields.put("personal_goal", Integer.toString(personalGoal));
+        return fields;
+    }
+
+    /**
+     * Returns the fields of the update message that are different for each player.
+     *
+     * @param score list of current scoring of the player where each element is a different scoring.
+     * @return the fields with the score, whose keys are {@link #SCORE_KEYS}.
+     */
+    public static JSONObject scoreFields(List<Integer> score) {
+        JSONObject fields = new JSONObject();
+        fields.put("pgScore", Integer.toString(score.get(0)));
+        fields.put("cgScore", Integer.toString(score.get(1)));
+        fields.put("bookshelfScore", Integer.toString(score.get(2)));
+        fields.put("totalScore", Integer.toString(score.get(3)));
+        return fields;
+    }
+
+    /**
+     * Given some cells and their items, returns their JSON representation,
+     * with the same format used by {@link #boardJson(Board)}.
+     *
+     * @param cells the items of the cells, <code>null</code> for empty cells
+     * @return the JSON representation of the cells
+     */
+    public JSONArray cellsJson(Map<Coordinates, Item> cells) {
+        JSONArray cellArray = new JSONArray();
+        for (Map.Entry<Coordinates, Item> cell : cells.entrySet()) {
+            JSONObject cellJson = new JSONObject();
+            cellJson.put("row", String.valueOf(cell.getKey().x()));
+            cellJson.put("column", String.valueOf(cell.getKey().y()));
+            if (cell.getValue() == null) {
+                cellJson.put("item", null);
+            } else {
+                JSONObject item = new JSONObject();
+                item.put("color", cell.getValue().color().toString());
+                item.put("value", Integer.toString(cell.getValue().number()));
+                JSONArray itemThings = new JSONArray();
+                itemThings.add(item);
+                cellJson.put("item", itemThings);
+            }
+            cellArray.add(cellJson);
+        }
+        return cellArray;
+    }
+
+    /**
+     * Given the JSON representation of some cells, returns their items.
+     *
+     * @param cellArray the JSON representation of the cells
+     * @return the items of the cells, <code>null</code> for empty cells
+     * @see #cellsJson(Map)
+     */
+    public Map<Coordinates, Item> getCells(JSONArray cellArray) {
+        Map<Coordinates, Item> cells = new HashMap<>();
+        for (Object obj : cellArray) {
+            JSONObject cellJson = (JSONObject) obj;
+            int row = Integer.parseInt((String) cellJson.get("row"));
+            int column = Integer.parseInt((String) cellJson.get("column"));
+            JSONArray itemJson = (JSONArray) cellJson.get("item");
+            if (itemJson == null) {
+                cells.put(new Coordinates(row, column), null);
+            } else {
+                JSONObject item = (JSONObject) itemJson.get(0);
+                String color = (String) item.get("color");
+                int value = Integer.parseInt((String) item.get("value"));
+                cells.put(new Coordinates(row, column), new Item(Color.valueOf(color), value));
+            }
+        }
+        return cells;
+    }
+
     /**
      * Creates a layout for a common goal
      *
@@ -499,7 +680,7 @@ public class Message implements Serializable {
      * @return the layout
      */
 
-    public Layout createCommonGoalLayout(String cardType, int occurrences, int size, boolean horizontal) {
+    public static Layout createCommonGoalLayout(String cardType, int occurrences, int size, boolean horizontal) {
         Layout layout = null;
         switch (cardType) {
             case "corners" -> layout = new Corners(1, 1);
@@ -523,7 +704,7 @@ public class Message implements Serializable {
      * @param horizontal  whether the layout is horizontal
      * @return the layout
      */
-    public Layout createFullLine(int occurrences, int size, boolean horizontal) {
+    public static Layout createFullLine(int occurrences, int size, boolean horizontal) {
         if (occurrences == 3 || occurrences == 4) {
             return new FullLine(1, 3, occurrences, horizontal);
         }
@@ -602,6 +783,20 @@ public class Message implements Serializable {
         return players;
     }
 
+    /**
+     * Getter for the usernames of the players of a backUp message, without loading the players
+     *
+     * @return the list of the usernames of the players
+     */
+    public List<String> getPlayersUsernames() {
+        List<String> usernames = new ArrayList<>();
+        JSONArray array = (JSONArray) json.get("players");
+        for (Object o : array) {
+            usernames.add((String) ((JSONObject) o).get("username"));
+        }
+        return usernames;
+    }
+
     /**
      * Getter for players names
      *
@@ -713,6 +908,20 @@ public class Message implements Serializable {
         return (String) json.get("category");
     }
 
+    /**
+     * Getter for the type of the message, looked up only the first time.
+     *
+     * @return the type of the message, or <code>null</code> if its category is unknown.
+     */
+    public MessageType getType() {
+        MessageType current = type;
+        if (current == null) {
+            current = MessageType.of(getCategory());
+            type = current;
+        }
+        return current;
+    }
+
     /**
      * Getter for the username of the json.
      *
@@ -759,8 +968,8 @@ public class Message implements Serializable {
 
         List<Integer> topScoringList = new ArrayList<>();
         for (int i = 0; i <= 1; i++) {
-            if (json.get("topScoring" + i) != null) {
-                String topScoring = (String) json.get("topScoring" + i);
+            if (json.get(TOP_SCORING.get(i)) != null) {
+                String topScoring = (String) json.get(TOP_SCORING.get(i));
                 topScoringList.add(Integer.parseInt(topScoring));
             } else {
                 break;
@@ -829,7 +1038,7 @@ public class Message implements Serializable {
     }
 
     /**
-     * Getter for all bookshelves of the json.
+     * Getter for all bookshelves of the json, which are built again at every call.
      *
      * @return the bookshelves of the json.
      */
@@ -865,7 +1074,7 @@ public class Message implements Serializable {
     }
 
     /**
-     * Getter for the board of the json.
+     * Getter for the board of the json, which is built again at every call.
      *
      * @return the board of the json.
      */
@@ -901,8 +1110,8 @@ public class Message implements Serializable {
     public List<String> getCardType() {
         List<String> cardType = new ArrayList<>();
         int i = 0;
-        while (json.get("commonGoalLayout " + i) != null) {
-            cardType.add((String) json.get("commonGoalLayout " + i));
+        while (json.get(COMMON_GOAL_LAYOUT.get(i)) != null) {
+            cardType.add((String) json.get(COMMON_GOAL_LAYOUT.get(i)));
             i++;
         }
         return cardType;
@@ -917,8 +1126,8 @@ public class Message implements Serializable {
     public List<Integer> getCardOccurrences() {
         List<Integer> cardOccurrences = new ArrayList<>();
         int j = 0;
-        while (json.get("occurrences " + j) != null) {
-            cardOccurrences.add(Integer.parseInt(json.get("occurrences " + j).toString()));
+        while (json.get(OCCURRENCES.get(j)) != null) {
+            cardOccurrences.add(Integer.parseInt(json.get(OCCURRENCES.get(j)).toString()));
             j++;
         }
         return cardOccurrences;
@@ -933,8 +1142,8 @@ public class Message implements Serializable {
     public List<Integer> getCardSize() {
         List<Integer> cardSize = new ArrayList<>();
         int j = 0;
-        while (json.get("size " + j) != null) {
-            cardSize.add(Integer.parseInt(json.get("size " + j).toString()));
+        while (json.get(SIZE.get(j)) != null) {
+            cardSize.add(Integer.parseInt(json.get(SIZE.get(j)).toString()));
             j++;
         }
         return cardSize;
@@ -949,8 +1158,8 @@ public class Message implements Serializable {
     public List<Boolean> getCardHorizontal() {
         List<Boolean> cardHorizontal = new ArrayList<>();
         int i = 0;
-        while (json.get("horizontal " + i) != null) {
-            cardHorizontal.add((boolean) json.get("horizontal " + i));
+        while (json.get(HORIZONTAL.get(i)) != null) {
+            cardHorizontal.add((boolean) json.get(HORIZONTAL.get(i)));
             i++;
         }
         return cardHorizontal;
@@ -987,7 +1196,7 @@ public class Message implements Serializable {
      */
     public List<Integer> getScoring(int i) {
         List<Integer> scoring = new ArrayList<>();
-        JSONArray topScoringJson = (JSONArray) json.get("scoringList" + i);
+        JSONArray topScoringJson = (JSONArray) json.get(SCORING_LIST.get(i));
         for (Object obj : topScoringJson) {
             JSONObject topScoringItem = (JSONObject) obj;
             String scoreString = (String) topScoringItem.get("score");
@@ -1021,6 +1230,157 @@ public class Message implements Serializable {
         return null;
     }
 
+    /**
+     * Sets the version of the state of the game this message is about.
+     *
+     * @param version the version of the state of the game.
+     */
+    public void setVersion(long version) {
+        if (broadcast != null) {
+            throw new IllegalStateException("The messages of a broadcast can't be changed");
+        }
+        json.put("version", Long.toString(version));
+        decoded = null;
+    }
+
+    /**
+     * Getter for the version of the state of the game.
+     *
+     * @return the version of the state of the game, or -1 if the message doesn't have one.
+     */
+    public long getVersion() {
+        String version = (String) json.get("version");
+        return version == null ? -1 : Long.parseLong(version);
+    }
+
+    /**
+     * Getter for the changes of a delta message, decoded only the first time.
+     *
+     * @return the changes to the game.
+     */
+    public StateDelta getStateDelta() {
+        if (decoded instanceof StateDelta delta) {
+            return delta;
+        }
+        Map<String, Map<Coordinates, Item>> bookshelfChanges = new HashMap<>();
+        for (Object obj : (JSONArray) json.get("bookshelfChanges")) {
+            JSONObject bookshelfJson = (JSONObject) obj;
+            bookshelfChanges.put((String) bookshelfJson.get("username"), getCells((JSONArray) bookshelfJson.get("cells")));
+        }
+        List<Integer> score = json.containsKey("totalScore") ? getScore() : List.of();
+        StateDelta delta = new StateDelta(getVersion(), getCells((JSONArray) json.get("boardChanges")), bookshelfChanges, score, getTopOfScoringList());
+        decoded = delta;
+        return delta;
+    }
+
+    /**
+     * Getter for the whole game of an update message, decoded only the first time.
+     *
+     * @return the state of the game.
+     */
+    public StateUpdate getStateUpdate() {
+        if (decoded instanceof StateUpdate update) {
+            return update;
+        }
+        StateUpdate update = new StateUpdate(getVersion(), getBoard(), getAllBookshelves(), getScore(), getTopOfScoringList());
+        decoded = update;
+        return update;
+    }
+
+    /**
+     * Getter for the state of the game of a start game message, decoded only the first time.
+     *
+     * @return the state of the game when it starts.
+     */
+    public StartGame getStartGame() {
+        if (decoded instanceof StartGame startGame) {
+            return startGame;
+        }
+        Map<String, List<Integer>> scores = new HashMap<>();
+        for (Object obj : (JSONArray) json.get("bookshelves")) {
+            String username = (String) ((JSONObject) obj).get("username");
+            scores.put(username, getStartingScores(username));
+        }
+        StartGame startGame = new StartGame(getVersion(), getPersonalGoal(), getBoard(), getAllBookshelves(), scores, getTopOfScoringList(), getFirstPlayer());
+        decoded = startGame;
+        return startGame;
+    }
+
+    /**
+     * Getter for the changed cells of the board of a delta message.
+     *
+     * @return the new items of the changed cells, <code>null</code> for empty cells.
+     */
+    public Map<Coordinates, Item> getBoardChanges() {
+        return getStateDelta().boardChanges();
+    }
+
+    /**
+     * Getter for the changed cells of the bookshelves of a delta message.
+     *
+     * @return the new items of the changed cells of each bookshelf, <code>null</code> for empty cells.
+     */
+    public Map<String, Map<Coordinates, Item>> getBookshelfChanges() {
+        return getStateDelta().bookshelfChanges();
+    }
+
+    /**
+     * Getter for the changed score of a delta message.
+     *
+     * @return the new score of the recipient (a list of 4 integers), empty if it hasn't changed.
+     */
+    public List<Integer> getChangedScore() {
+        return getStateDelta().score();
+    }
+
+    /**
+     * @return the broadcast this message is part of, <code>null</code> if it is not part of one.
+     */
+    Broadcast getBroadcast() {
+        return broadcast;
+    }
+
+    /**
+     * @return the fields of the message that are not shared with the rest of its broadcast.
+     */
+    JSONObject getPersonalFields() {
+        return personalFields;
+    }
+
+    /**
+     * Writes the message with the {@link BinaryCodec}, reusing the encoded fields of its broadcast.
+     *
+     * @param out the stream to write to.
+     * @throws IOException if the message can't be written.
+     */
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        byte[] bytes = BinaryCodec.encode(this);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a message written by {@link #writeExternal(ObjectOutput)}.
+     *
+     * @param in the stream to read from.
+     * @throws IOException if the message is not valid.
+     */
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        int length = in.readInt();
+        Framing.checkLength(length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        try {
+            json = BinaryCodec.decode(bytes).getJson();
+            type = null;
+            decoded = null;
+        } catch (IllegalArgumentException e) {
+            throw new InvalidObjectException("Invalid message: " + e.getMessage());
+        }
+    }
+
     public JSONObject getJson() {
         return json;
     }
@@ -1124,4 +1484,25 @@ public class Message implements Serializable {
     public String getPlayerTurn() {
         return (String) json.get("playerTurn");
     }
+
+    /**
+     * The keys of a field repeated for each common goal or each scoring list, built once
+     * instead of every time the field is written or read.
+     */
+    private static final class IndexedKey {
+        private final String prefix;
+        private final String[] keys;
+
+        IndexedKey(String prefix) {
+            this.prefix = prefix;
+            keys = new String[4];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = prefix + i;
+            }
+        }
+
+        String get(int index) {
+            return index < keys.length ? keys[index] : prefix + index;
+        }
+    }
 }
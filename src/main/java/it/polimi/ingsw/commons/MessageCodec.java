@@ -0,0 +1,142 @@
+package it.polimi.ingsw.commons;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * An encoding of the messages in the frames of a TCP connection (see {@link Framing}).
+ * <p>
+ * Each codec has its own type of frame, so a peer can always decode what it receives, and its own name,
+ * offered in the handshake: {@link #JSON} is understood by every client, {@link #BINARY} is smaller and faster
+ * and used when both sides support it. A new codec only needs a new name and a new type of frame.
+ */
+public interface MessageCodec {
+
+    /**
+     * The JSON encoding of the messages, the same used by the lines.
+     */
+    MessageCodec JSON = new MessageCodec() {
+        /**
+         * The parsers are not thread-safe, so each thread decoding frames has its own.
+         */
+        private final ThreadLocal<JSONParser> parsers = ThreadLocal.withInitial(JSONParser::new);
+
+        @Override
+        public String getName() {
+            return "json";
+        }
+
+        @Override
+        public byte getFrameType() {
+            return Framing.JSON;
+        }
+
+        @Override
+        public byte[] encode(Message message) {
+            Broadcast broadcast = message.getBroadcast();
+            return broadcast != null ? broadcast.encodeJson(message.getPersonalFields()) : message.getJSONstring().getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Message decode(byte[] bytes, int offset, int length) {
+            String json = new String(bytes, offset, length, StandardCharsets.UTF_8);
+            try {
+                if (parsers.get().parse(json) instanceof JSONObject object) {
+                    return new Message(object);
+                }
+            } catch (ParseException e) {
+                // Handled below
+            }
+            throw new IllegalArgumentException("Not a JSON object: " + json);
+        }
+    };
+
+    /**
+     * The encoding of the {@link BinaryCodec}.
+     */
+    MessageCodec BINARY = new MessageCodec() {
+        @Override
+        public String getName() {
+            return BinaryCodec.NAME;
+        }
+
+        @Override
+        public byte getFrameType() {
+            return Framing.BINARY;
+        }
+
+        @Override
+        public byte[] encode(Message message) {
+            return BinaryCodec.encode(message);
+        }
+
+        @Override
+        public Message decode(byte[] bytes, int offset, int length) {
+            return BinaryCodec.decode(bytes, offset, length);
+        }
+    };
+
+    /**
+     * All the codecs, the preferred ones last.
+     */
+    List<MessageCodec> CODECS = List.of(JSON, BINARY);
+
+    /**
+     * @return the name of the codec, sent in the handshake
+     */
+    String getName();
+
+    /**
+     * @return the type of the frames encoded with this codec
+     */
+    byte getFrameType();
+
+    /**
+     * Encodes a message.
+     *
+     * @param message the message to encode
+     * @return the payload of the frame
+     */
+    byte[] encode(Message message);
+
+    /**
+     * Decodes a message.
+     *
+     * @param bytes  an array containing the payload of a frame
+     * @param offset the first byte of the payload
+     * @param length the length of the payload
+     * @return the message
+     * @throws IllegalArgumentException if the payload is not a valid message
+     */
+    Message decode(byte[] bytes, int offset, int length);
+
+    /**
+     * @param frameType the type of a frame
+     * @return the codec of the frame, or <code>null</code> if no codec has that type of frame
+     */
+    static MessageCodec ofFrameType(byte frameType) {
+        for (MessageCodec codec : CODECS) {
+            if (codec.getFrameType() == frameType) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param name the name of a codec
+     * @return the codec, or <code>null</code> if there is no codec with that name
+     */
+    static MessageCodec ofName(Object name) {
+        for (MessageCodec codec : CODECS) {
+            if (codec.getName().equals(name)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,132 @@
+package it.polimi.ingsw.commons;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The types of the messages exchanged by the clients and the server, each one with the category
+ * it is sent as. Messages are dispatched on their type, looked up once per message, instead of
+ * comparing their category with every string they could be.
+ *
+ * @see Message#getType()
+ */
+public enum MessageType {
+    // Sent by the clients
+    COMPLETE_LOGIN("completeLogin"),
+    PING("ping", true),
+    PICK("pick", true),
+    INSERT("insertMessage", true),
+    SORT("sort", true),
+    NUMBER_OF_PLAYERS("numOfPlayersMessage", true),
+    SNAPSHOT_REQUEST("snapshotRequest", true),
+    FRAMING(Framing.HANDSHAKE),
+    // Sent by the server
+    PONG("pong"),
+    USERNAME("username"),
+    USERNAME_RETRY("UsernameRetry"),
+    USERNAME_RETRY_COMPLETE_LOGIN("UsernameRetryCompleteLogin"),
+    CHOOSE_NUMBER_OF_PLAYERS("chooseNumOfPlayer"),
+    NUMBER_OF_PLAYERS_NOT_OK("numOfPlayersNotOK"),
+    WAITING_ROOM("waitingRoom"),
+    GAME_ALREADY_STARTED("gameAlreadyStarted"),
+    START_GAME("startGame"),
+    UPDATE("update"),
+    DELTA("delta"),
+    TURN("turn"),
+    OTHER_TURN("otherTurn"),
+    PICKED("picked"),
+    PICK_RETRY("pickRetry"),
+    INSERT_RETRY("insertRetry"),
+    LAST_ROUND("lastRound"),
+    WINNERS("winners"),
+    REMOVE_PLAYER("removePlayer"),
+    CHECKING_DISCONNECTION("checkingDisconnection"),
+    RECONNECTED("reconnected"),
+    ALONE("youAloneBitch"),
+    WAITING_ROOM_FOR_RECONNECT("waitingRoomForReconnect"),
+    ALL_IN("AllIn");
+
+    private static final Map<String, MessageType> BY_CATEGORY = new HashMap<>();
+    /**
+     * The types by the length of their category encoded in UTF-8, to look a category up
+     * in the bytes received without decoding it.
+     */
+    private static final MessageType[][] BY_LENGTH;
+
+    static {
+        int longest = 0;
+        for (MessageType type : values()) {
+            BY_CATEGORY.put(type.category, type);
+            longest = Math.max(longest, type.name.length);
+        }
+        List<List<MessageType>> byLength = new ArrayList<>();
+        for (int length = 0; length <= longest; length++) {
+            byLength.add(new ArrayList<>());
+        }
+        for (MessageType type : values()) {
+            byLength.get(type.name.length).add(type);
+        }
+        BY_LENGTH = new MessageType[longest + 1][];
+        for (int length = 0; length <= longest; length++) {
+            BY_LENGTH[length] = byLength.get(length).toArray(new MessageType[0]);
+        }
+    }
+
+    private final String category;
+    private final byte[] name;
+    private final boolean command;
+
+    MessageType(String category) {
+        this(category, false);
+    }
+
+    MessageType(String category, boolean command) {
+        this.category = category;
+        this.name = category.getBytes(StandardCharsets.UTF_8);
+        this.command = command;
+    }
+
+    /**
+     * @return the category of the messages of this type
+     */
+    public String getCategory() {
+        return category;
+    }
+
+    /**
+     * @return true if the messages of this type are {@link Command commands}
+     */
+    public boolean isCommand() {
+        return command;
+    }
+
+    /**
+     * @param category the category of a message
+     * @return the type of the message, or <code>null</code> if the category is unknown
+     */
+    public static MessageType of(String category) {
+        return category == null ? null : BY_CATEGORY.get(category);
+    }
+
+    /**
+     * @param bytes  an array containing the category of a message, encoded in UTF-8
+     * @param offset the first byte of the category
+     * @param length the length of the category
+     * @return the type of the message, or <code>null</code> if the category is unknown
+     */
+    static MessageType of(byte[] bytes, int offset, int length) {
+        if (length >= BY_LENGTH.length) {
+            return null;
+        }
+        for (MessageType type : BY_LENGTH[length]) {
+            if (Arrays.equals(type.name, 0, length, bytes, offset, offset + length)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,69 @@
+package it.polimi.ingsw.commons;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.server.RMIClientSocketFactory;
+import java.rmi.server.RMIServerSocketFactory;
+
+/**
+ * The sockets used by the RMI objects of both the server and the clients.
+ * <p>
+ * Messages are small and each one is written with a single remote call, so the sockets
+ * have Nagle's algorithm disabled: otherwise a call could wait for the acknowledgement
+ * of the previous one before being sent. The streams of the sockets are already buffered
+ * by the RMI runtime, which flushes them once per call.
+ * <p>
+ * The factory is sent to the other side together with the stubs of the exported objects,
+ * so it must be serializable, and two factories are equal so that the connections to the
+ * same host can be reused.
+ */
+public final class RmiSocketFactory implements RMIClientSocketFactory, RMIServerSocketFactory, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The factory used by all the exported objects.
+     */
+    public static final RmiSocketFactory INSTANCE = new RmiSocketFactory();
+
+    private RmiSocketFactory() {
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        Socket socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        return socket;
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port) throws IOException {
+        return new ServerSocket(port) {
+            @Override
+            public Socket accept() throws IOException {
+                Socket socket = super.accept();
+                socket.setTcpNoDelay(true);
+                return socket;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof RmiSocketFactory;
+    }
+
+    @Override
+    public int hashCode() {
+        return RmiSocketFactory.class.hashCode();
+    }
+
+    /**
+     * Keeps a single instance after deserialization.
+     */
+    private Object readResolve() {
+        return INSTANCE;
+    }
+}
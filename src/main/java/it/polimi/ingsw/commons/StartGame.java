@@ -0,0 +1,30 @@
+package it.polimi.ingsw.commons;
+
+import it.polimi.ingsw.server.model.Board;
+import it.polimi.ingsw.server.model.Bookshelf;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The state of the game when it starts, as seen by a player. The common goals are only shown once,
+ * so they are still read from the message.
+ *
+ * @param version          the version of the state of the game
+ * @param personalGoal     the personal goal of the player
+ * @param board            the board
+ * @param bookshelves      the bookshelves, by the username of their owner
+ * @param scores           the starting scores of the players, by username (a list of 4 integers each)
+ * @param topOfScoringList the top of the scoring lists of the common goals
+ * @param firstPlayer      the username of the first player
+ * @see Message#getStartGame()
+ */
+public record StartGame(long version, int personalGoal, Board board, Map<String, Bookshelf> bookshelves,
+                        Map<String, List<Integer>> scores, List<Integer> topOfScoringList, String firstPlayer) {
+
+    public StartGame {
+        bookshelves = Map.copyOf(bookshelves);
+        scores = Map.copyOf(scores);
+        topOfScoringList = List.copyOf(topOfScoringList);
+    }
+}
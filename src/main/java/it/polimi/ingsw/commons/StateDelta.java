@@ -0,0 +1,43 @@
+package it.polimi.ingsw.commons;
+
+import it.polimi.ingsw.server.model.Item;
+import it.polimi.ingsw.utils.Coordinates;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The changes to the game since the previous update, sent after every turn instead of the whole game.
+ * The maps can contain <code>null</code> items, for the cells that have been emptied.
+ *
+ * @param version          the version of the state of the game after the changes
+ * @param boardChanges     the new items of the changed cells of the board
+ * @param bookshelfChanges the new items of the changed cells of each bookshelf
+ * @param score            the new score of the player who receives the delta (a list of 4 integers), empty if it hasn't changed:
+ *                         the scores are personal, so they are never part of the delta shared by all the players
+ * @param topOfScoringList the new top of the scoring lists, empty if they haven't changed
+ * @see Message#getStateDelta()
+ */
+public record StateDelta(long version, Map<Coordinates, Item> boardChanges, Map<String, Map<Coordinates, Item>> bookshelfChanges,
+                         List<Integer> score, List<Integer> topOfScoringList) {
+
+    public StateDelta {
+        boardChanges = copyOf(boardChanges);
+        Map<String, Map<Coordinates, Item>> bookshelves = new HashMap<>();
+        for (Map.Entry<String, Map<Coordinates, Item>> bookshelf : bookshelfChanges.entrySet()) {
+            bookshelves.put(bookshelf.getKey(), copyOf(bookshelf.getValue()));
+        }
+        bookshelfChanges = Map.copyOf(bookshelves);
+        score = score == null ? List.of() : List.copyOf(score);
+        topOfScoringList = topOfScoringList == null ? List.of() : List.copyOf(topOfScoringList);
+    }
+
+    /**
+     * @return an unmodifiable copy of the changed cells, which {@link Map#copyOf} can't make because of the empty cells
+     */
+    private static Map<Coordinates, Item> copyOf(Map<Coordinates, Item> cells) {
+        return Collections.unmodifiableMap(new HashMap<>(cells));
+    }
+}
@@ -0,0 +1,28 @@
+package it.polimi.ingsw.commons;
+
+import it.polimi.ingsw.server.model.Board;
+import it.polimi.ingsw.server.model.Bookshelf;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The whole state of the game, as seen by a player: sent when a player needs it all,
+ * like after a reconnection or a missed {@link StateDelta}.
+ *
+ * @param version          the version of the state of the game, -1 if unknown
+ * @param board            the board
+ * @param bookshelves      the bookshelves, by the username of their owner
+ * @param score            the score of the player (a list of 4 integers)
+ * @param topOfScoringList the top of the scoring lists of the common goals
+ * @see Message#getStateUpdate()
+ */
+public record StateUpdate(long version, Board board, Map<String, Bookshelf> bookshelves, List<Integer> score,
+                          List<Integer> topOfScoringList) {
+
+    public StateUpdate {
+        bookshelves = Map.copyOf(bookshelves);
+        score = List.copyOf(score);
+        topOfScoringList = List.copyOf(topOfScoringList);
+    }
+}
@@ -0,0 +1,69 @@
+package it.polimi.ingsw.server;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of direct byte buffers of the same size, so that the socket server
+ * doesn't allocate a new buffer for every message it reads or writes.
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final Queue<ByteBuffer> free;
+    private final AtomicInteger pooled;
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param bufferSize the size of the buffers
+     * @param maxPooled  the maximum number of free buffers kept in the pool
+     */
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        free = new ConcurrentLinkedQueue<>();
+        pooled = new AtomicInteger(0);
+    }
+
+    /**
+     * @return the size of the buffers of the pool
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Takes a buffer from the pool, allocating a new one if the pool is empty.
+     *
+     * @return an empty buffer
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        pooled.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer back to the pool. Buffers that don't come from the pool are ignored.
+     *
+     * @param buffer the buffer, that must not be used anymore
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || !buffer.isDirect()) {
+            return;
+        }
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet();
+            return;
+        }
+        buffer.clear();
+        free.add(buffer);
+    }
+}
@@ -0,0 +1,148 @@
+package it.polimi.ingsw.server;
+
+import it.polimi.ingsw.client.ClientCommunicationInterface;
+import it.polimi.ingsw.commons.Message;
+
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * The way the server reaches a client, whatever the protocol the client is using.
+ */
+public interface ClientConnection {
+
+    /**
+     * Sends a message to the client.
+     *
+     * @param message the message to send
+     * @throws RemoteException if the client can't be reached
+     */
+    void send(Message message) throws RemoteException;
+
+    /**
+     * Sends some messages to the client, one after the other. Protocols that
+     * can write them all at once override this method.
+     *
+     * @param messages the messages to send, in order
+     * @throws RemoteException if the client can't be reached
+     */
+    default void sendAll(List<Message> messages) throws RemoteException {
+        for (Message message : messages) {
+            send(message);
+        }
+    }
+
+    /**
+     * Creates the outbox the messages for this client wait in.
+     *
+     * @param username the username of the player
+     * @return the outbox of the client
+     */
+    default Outbox openOutbox(String username) {
+        return new Outbox(username, this, Outbox.CAPACITY);
+    }
+
+    /**
+     * Called when the connection is no longer used to reach the player.
+     */
+    default void release() {
+    }
+
+    /**
+     * Closes the connection, if the protocol allows the server to do it.
+     */
+    default void close() {
+    }
+
+    /**
+     * Wraps an RMI client.
+     *
+     * @param client the RMI client
+     * @return the connection to the client
+     */
+    static ClientConnection of(ClientCommunicationInterface client) {
+        return new Rmi(client);
+    }
+
+    /**
+     * Wraps a TCP client.
+     *
+     * @param client the handler of the socket of the client
+     * @return the connection to the client
+     */
+    static ClientConnection of(SocketClientHandler client) {
+        return new Tcp(client);
+    }
+
+    /**
+     * A client connected with RMI. The remote calls are made by the sender of the
+     * {@link RmiCallbacks}, never by the thread of a game.
+     *
+     * @param client the remote object of the client
+     */
+    record Rmi(ClientCommunicationInterface client) implements ClientConnection {
+        @Override
+        public void send(Message message) throws RemoteException {
+            client.callBackSendMessage(message);
+        }
+
+        @Override
+        public void sendAll(List<Message> messages) throws RemoteException {
+            if (messages.size() == 1) {
+                client.callBackSendMessage(messages.get(0));
+            } else {
+                client.callBackSendMessages(messages);
+            }
+        }
+
+        /**
+         * The client shares its outbox with the messages sent to it outside its session,
+         * so that they are all delivered in order.
+         */
+        @Override
+        public Outbox openOutbox(String username) {
+            return ServerCommunicationInterface.callbacks.outbox(client);
+        }
+
+        @Override
+        public void release() {
+            ServerCommunicationInterface.callbacks.forget(client);
+        }
+
+        @Override
+        public void close() {
+            release();
+        }
+    }
+
+    /**
+     * A client connected with a socket.
+     *
+     * @param handler the handler of the socket of the client
+     */
+    record Tcp(SocketClientHandler handler) implements ClientConnection {
+        @Override
+        public void send(Message message) {
+            handler.sendMessageToClient(message);
+        }
+
+        @Override
+        public void sendAll(List<Message> messages) {
+            handler.sendMessagesToClient(messages);
+        }
+
+        /**
+         * The client shares its outbox with the messages sent to it before it had a session,
+         * so that they are all delivered in order.
+         */
+        @Override
+        public Outbox openOutbox(String username) {
+            return handler.outbox();
+        }
+
+        @Override
+        public void close() {
+            handler.close();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package it.polimi.ingsw.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The mailbox of a game.
+ * <p>
+ * Every change to the state of a game (picks, inserts, logins, disconnections...)
+ * is submitted to the executor of that game, which runs the commands one at a time,
+ * in the order they were submitted. This way the controller and the model of a
+ * game are only ever modified by one thread at a time and don't need any lock.
+ * <p>
+ * The executors of all the games share a pool with one thread per core,
+ * so different games run in parallel while each game stays single-threaded.
+ * The messages sent to the players while a command runs are sent together
+ * when it ends (see {@link OutboundBatch}).
+ */
+public class GameExecutor implements Executor {
+
+    /**
+     * The maximum number of commands run in a row before letting other games use the thread.
+     */
+    private static final int BATCH_SIZE = 64;
+    /**
+     * The threads that run the commands of all the games.
+     */
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), daemonThreads("game-worker-"));
+    /**
+     * The thread that submits delayed commands when they are due.
+     */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(daemonThreads("game-timer-"));
+
+    private final Queue<Runnable> mailbox;
+    /**
+     * True if the mailbox is being drained or is about to be.
+     */
+    private final AtomicBoolean scheduled;
+
+    /**
+     * Creates an empty mailbox.
+     */
+    public GameExecutor() {
+        mailbox = new ConcurrentLinkedQueue<>();
+        scheduled = new AtomicBoolean(false);
+    }
+
+    /**
+     * Creates a thread factory for daemon threads, so that they don't prevent the server from stopping.
+     *
+     * @param prefix the prefix of the names of the threads
+     * @return the thread factory
+     */
+    static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Adds a command to the mailbox. It will be run after all the commands submitted before it.
+     *
+     * @param command the command to run
+     */
+    @Override
+    public void execute(Runnable command) {
+        mailbox.add(command);
+        if (scheduled.compareAndSet(false, true)) {
+            WORKERS.execute(this::drain);
+        }
+    }
+
+    /**
+     * Adds a command to the mailbox after the given delay.
+     *
+     * @param command the command to run
+     * @param delay   the delay
+     * @param unit    the unit of the delay
+     * @return the future that can be used to cancel the command before it is submitted
+     */
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return TIMER.schedule(() -> execute(command), delay, unit);
+    }
+
+    /**
+     * Keeps the commands submitted in the mailbox, without running them, until the executor is
+     * {@link #resume() resumed}. Used for a saved game that has not been loaded yet.
+     *
+     * @throws IllegalStateException if commands are already being run
+     */
+    public void suspend() {
+        if (!scheduled.compareAndSet(false, true)) {
+            throw new IllegalStateException("The mailbox is already running");
+        }
+    }
+
+    /**
+     * Runs the commands submitted since the executor was {@link #suspend() suspended}, and the next ones as usual.
+     */
+    public void resume() {
+        scheduled.set(false);
+        if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true)) {
+            WORKERS.execute(this::drain);
+        }
+    }
+
+    /**
+     * Runs the commands in the mailbox. If there are too many of them, the rest
+     * are left for a later run, so that a busy game doesn't starve the others.
+     */
+    private void drain() {
+        Runnable command;
+        int processed = 0;
+        while (processed < BATCH_SIZE && (command = mailbox.poll()) != null) {
+            try {
+                OutboundBatch.run(command);
+            } catch (RuntimeException e) {
+                System.err.println("Error while running a game command: " + e);
+            }
+            processed++;
+        }
+        scheduled.set(false);
+        if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true)) {
+            WORKERS.execute(this::drain);
+        }
+    }
+}
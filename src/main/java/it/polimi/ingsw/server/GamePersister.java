@@ -0,0 +1,368 @@
+package it.polimi.ingsw.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Writes the saved games to a {@link SnapshotStore} on its own thread, so that the games never wait for the disk.
+ * <p>
+ * The games hand over the bytes to write, which are not changed afterwards: a game can be
+ * {@link #save saved} as a whole, or have the turns of its {@link TurnJournal} {@link #append appended}.
+ * The writes of a game are done in the order they are submitted. If the disk falls behind, the writes
+ * waiting for a game that is saved again are dropped, since only its latest state matters.
+ * When there is nothing left to write, the store is compacted.
+ * <p>
+ * How much a write survives depends on the {@link Durability} of the persister.
+ */
+public class GamePersister {
+
+    /**
+     * How far the bytes are pushed before a write is considered done.
+     */
+    public enum Durability {
+        /**
+         * The bytes are buffered by the persister, and may be lost if the server stops.
+         */
+        NONE,
+        /**
+         * The bytes are handed to the operating system: they survive the server, not the machine.
+         */
+        FLUSH,
+        /**
+         * The bytes are written to the disk before the next write: they survive the machine too.
+         */
+        FSYNC
+    }
+
+    /**
+     * The turns of a journal, with the version of the snapshot they follow.
+     */
+    private record Turns(long version, byte[] bytes) {
+    }
+
+    /**
+     * The writes waiting for a game, in order.
+     */
+    private static class Pending {
+        boolean delete;
+        long version;
+        byte[] snapshot;
+        final List<Turns> turns = new ArrayList<>();
+    }
+
+    private final SnapshotStore store;
+    private final ExecutorService writer;
+    /**
+     * The writes waiting, by game, in the order they have to be done.
+     */
+    private Map<Integer, Pending> pending;
+    private int queueDepth;
+    /**
+     * True if the writer thread is about to write what is waiting.
+     */
+    private boolean scheduled;
+    private volatile Durability durability;
+    /**
+     * The games whose last write has failed, until they are saved again.
+     */
+    private final Set<Integer> failed;
+
+    private volatile long written;
+    private volatile long coalesced;
+    private volatile long totalWriteNanos;
+    private volatile long maxWriteNanos;
+
+    /**
+     * Creates a persister with its own writer thread.
+     *
+     * @param store      the store the games are saved in, only used by the persister from now on
+     * @param durability how far the bytes are pushed before a write is considered done
+     */
+    public GamePersister(SnapshotStore store, Durability durability) {
+        this.store = store;
+        this.durability = durability;
+        writer = Executors.newSingleThreadExecutor(GameExecutor.daemonThreads("game-persister-"));
+        pending = new LinkedHashMap<>();
+        failed = new HashSet<>();
+    }
+
+    /**
+     * @param durability how far the bytes are pushed before a write is considered done
+     */
+    public void setDurability(Durability durability) {
+        this.durability = durability;
+    }
+
+    /**
+     * @return how far the bytes are pushed before a write is considered done
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Saves a game as a whole, making the writes waiting for it useless.
+     *
+     * @param game     the id of the game
+     * @param version  the version of the snapshot
+     * @param snapshot the snapshot, not changed afterwards
+     */
+    public synchronized void save(int game, long version, byte[] snapshot) {
+        Pending writes = pending.remove(game);
+        if (writes != null) {
+            drop(writes);
+        }
+        // Moved after the writes of the other games submitted before
+        writes = new Pending();
+        writes.version = version;
+        writes.snapshot = snapshot;
+        pending.put(game, writes);
+        submitted();
+    }
+
+    /**
+     * Appends some turns to the journal of a game.
+     *
+     * @param game    the id of the game
+     * @param version the version of the snapshot the turns follow
+     * @param turns   the turns, not changed afterwards
+     */
+    public synchronized void append(int game, long version, byte[] turns) {
+        pending.computeIfAbsent(game, g -> new Pending()).turns.add(new Turns(version, turns));
+        submitted();
+    }
+
+    /**
+     * Deletes a saved game, making the writes waiting for it useless.
+     *
+     * @param game the id of the game
+     */
+    public synchronized void delete(int game) {
+        Pending writes = pending.remove(game);
+        if (writes != null) {
+            drop(writes);
+        }
+        writes = new Pending();
+        writes.delete = true;
+        pending.put(game, writes);
+        submitted();
+    }
+
+    /**
+     * @return the ids of the saved games, once everything submitted so far has been written
+     * @throws IOException if the store can't be read
+     */
+    public Set<Integer> getSavedGames() throws IOException {
+        return call(store::games);
+    }
+
+    /**
+     * Returns the snapshots of the saved games, once everything submitted so far has been written.
+     * Only finding them runs on the thread of the persister: they can then be read by any thread,
+     * while the persister goes on writing.
+     *
+     * @return the last snapshot of each saved game, by id (see {@link SnapshotStore#snapshots()})
+     * @throws IOException if the store can't be read
+     */
+    public Map<Integer, ByteBuffer> getSavedSnapshots() throws IOException {
+        return call(store::snapshots);
+    }
+
+    /**
+     * Reads a saved game, once everything submitted so far has been written.
+     *
+     * @param game the id of the game
+     * @return the game, or <code>null</code> if it is not saved
+     * @throws IOException if the store can't be read
+     */
+    public SnapshotStore.SavedGame load(int game) throws IOException {
+        return call(() -> store.load(game));
+    }
+
+    /**
+     * Waits until everything submitted so far has been written.
+     */
+    public void sync() {
+        try {
+            call(() -> null);
+        } catch (IOException e) {
+            System.err.println("Error while saving the games: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes everything submitted so far and closes the store, when the server stops.
+     */
+    public void close() {
+        try {
+            call(() -> {
+                store.close();
+                return null;
+            });
+        } catch (IOException e) {
+            System.err.println("Error while closing the saved games: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param game the id of a game
+     * @return true if the last write of the game has failed, so that what is appended to it is useless until it is saved again
+     */
+    public synchronized boolean hasFailed(int game) {
+        return failed.contains(game);
+    }
+
+    /**
+     * @return the number of writes waiting to be done
+     */
+    public synchronized int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return the number of batches of writes done so far
+     */
+    public long getWrites() {
+        return written;
+    }
+
+    /**
+     * @return the number of writes dropped because their game was saved again before they were done
+     */
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * @return the average time taken to write a batch, in microseconds
+     */
+    public double getAverageWriteMicros() {
+        long count = written;
+        return count == 0 ? 0 : totalWriteNanos / 1000.0 / count;
+    }
+
+    /**
+     * @return the longest time taken to write a batch, in microseconds
+     */
+    public double getMaxWriteMicros() {
+        return maxWriteNanos / 1000.0;
+    }
+
+    /**
+     * Runs a task on the writer thread, after writing everything submitted so far.
+     */
+    private <T> T call(Callable<T> task) throws IOException {
+        try {
+            return writer.submit(() -> {
+                writePending();
+                return task.call();
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the saved games", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void submitted() {
+        queueDepth++;
+        if (!scheduled) {
+            scheduled = true;
+            writer.execute(this::writeAndCompact);
+        }
+    }
+
+    private void drop(Pending writes) {
+        int dropped = writes.turns.size() + (writes.snapshot != null || writes.delete ? 1 : 0);
+        queueDepth -= dropped;
+        coalesced += dropped;
+    }
+
+    private void writeAndCompact() {
+        writePending();
+        try {
+            store.compact();
+        } catch (IOException e) {
+            System.err.println("Unable to compact the saved games: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Does the writes waiting, on the writer thread.
+     */
+    private void writePending() {
+        Map<Integer, Pending> writes;
+        synchronized (this) {
+            writes = pending;
+            pending = new LinkedHashMap<>();
+            queueDepth = 0;
+            scheduled = false;
+        }
+        if (writes.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        for (Map.Entry<Integer, Pending> entry : writes.entrySet()) {
+            write(entry.getKey(), entry.getValue());
+        }
+        Durability durability = this.durability;
+        try {
+            if (durability != Durability.NONE) {
+                store.flush(durability == Durability.FSYNC);
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to save the games: " + e.getMessage());
+            for (int game : writes.keySet()) {
+                setFailed(game, true);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        written++;
+        totalWriteNanos += elapsed;
+        maxWriteNanos = Math.max(maxWriteNanos, elapsed);
+    }
+
+    private void write(int game, Pending writes) {
+        try {
+            if (writes.delete) {
+                store.delete(game);
+                setFailed(game, false);
+            }
+            if (writes.snapshot != null) {
+                store.save(game, writes.version, writes.snapshot);
+                setFailed(game, false);
+            }
+            if (hasFailed(game)) {
+                return;
+            }
+            for (Turns turns : writes.turns) {
+                store.append(game, turns.version(), turns.bytes());
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to save game " + game + ": " + e.getMessage());
+            setFailed(game, true);
+        }
+    }
+
+    private synchronized void setFailed(int game, boolean failed) {
+        if (failed) {
+            this.failed.add(game);
+        } else {
+            this.failed.remove(game);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package it.polimi.ingsw.server;
+
+import it.polimi.ingsw.client.ClientCommunicationInterface;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps track of all the games hosted by this server.
+ * <p>
+ * Each game has its own {@link ServerController} (and therefore its own
+ * {@link it.polimi.ingsw.server.model.GameModel}), identified by a game id.
+ * Players are routed to their game by username: a player who is already part
+ * of a game (for example because they are reconnecting) is sent back to it,
+ * while new players join the game that is still waiting for players, called
+ * the lobby. When the lobby starts, a new one is created for the next players.
+ */
+public class GameRegistry {
+
+    /**
+     * The threads that load the saved games, shared by all the registries.
+     */
+    private static final ExecutorService LOADERS = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), GameExecutor.daemonThreads("game-loader-"));
+
+    /**
+     * Where a game that has not been loaded yet has been saved.
+     */
+    private record SavedGame(int id, GamePersister persister) {
+    }
+
+    /**
+     * The games hosted by this server, by game id.
+     */
+    private final Map<Integer, ServerController> games;
+    /**
+     * The game each player is part of, by username.
+     */
+    private final Map<String, ServerController> gamesByUsername;
+    /**
+     * The game each RMI client is part of.
+     * TCP clients keep a reference to their game in their {@link SocketClientHandler}.
+     */
+    private final Map<ClientCommunicationInterface, ServerController> gamesByRmiClient;
+    private final AtomicInteger nextGameId;
+    /**
+     * The game that new players join.
+     */
+    private ServerController lobby;
+    /**
+     * The saved games that have not been loaded yet.
+     */
+    private final Map<ServerController, SavedGame> unloaded;
+    /**
+     * The loads of the saved games that have been started, so that each game is loaded only once.
+     * They are kept even if the game is removed, so that a player who has found the game just before
+     * learns whether it has been loaded.
+     */
+    private final Map<ServerController, CompletableFuture<Boolean>> loads;
+    /**
+     * Completes once the saved games have been indexed.
+     */
+    private volatile CompletableFuture<Void> indexed;
+
+    /**
+     * Creates an empty registry.
+     */
+    public GameRegistry() {
+        games = new ConcurrentHashMap<>();
+        gamesByUsername = new ConcurrentHashMap<>();
+        gamesByRmiClient = new ConcurrentHashMap<>();
+        nextGameId = new AtomicInteger();
+        unloaded = new ConcurrentHashMap<>();
+        loads = new ConcurrentHashMap<>();
+        indexed = CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Returns the game that a player with the given username has to join.
+     * If the player is already part of a game, that game is returned,
+     * otherwise the player is sent to the lobby.
+     *
+     * <p>
+     * Until the saved games are indexed, the game is not known yet, so that the player is not sent to a new
+     * game: the future completes once they are. The thread that received the login doesn't wait for it,
+     * since it may be serving other clients.
+     *
+     * @param username the username of the player
+     * @return the game the player has to join, completed at once if the saved games are already indexed
+     */
+    public CompletableFuture<ServerController> join(String username) {
+        return indexed.thenCompose(done -> {
+            ServerController game = gamesByUsername.get(username);
+            if (game == null) {
+                return CompletableFuture.completedFuture(lobby());
+            }
+            SavedGame saved = unloaded.get(game);
+            CompletableFuture<Boolean> loading = saved == null ? loads.get(game) : loads.computeIfAbsent(game, unloadedGame -> load(unloadedGame, saved));
+            if (loading == null) {
+                return CompletableFuture.completedFuture(game);
+            }
+            // The player joins the saved game once it is loaded, or a new one if it can't be
+            return loading.thenApply(loaded -> loaded ? game : lobby());
+        });
+    }
+
+    /**
+     * Returns the game that is waiting for players, creating a new one
+     * if the previous lobby has already started.
+     *
+     * @return the game that new players join
+     */
+    public synchronized ServerController lobby() {
+        if (lobby == null || lobby.isGameStarted()) {
+            lobby = new ServerController(nextGameId.getAndIncrement());
+            games.put(lobby.getId(), lobby);
+            System.out.println("Game " + lobby.getId() + " created.");
+        }
+        return lobby;
+    }
+
+    /**
+     * Indexes the saved games in the background, so that the server starts at once however many they are.
+     * The players of a saved game are bound to it, but the game is only loaded when the first of them
+     * comes back, on the loader pool; the commands submitted to it in the meantime wait for it.
+     * A game keeps the id it was saved with, unless a game with that id has already been created.
+     * <p>
+     * Only the snapshots are read, without the journals, and they are read by the loader pool in parallel:
+     * the thread of the persister only finds where they are.
+     * <p>
+     * Until the saved games are indexed, the players logging in wait, so that none of them is sent to a new game.
+     *
+     * @param persister the persister the games have been saved with
+     */
+    public void restore(GamePersister persister) {
+        long start = System.nanoTime();
+        indexed = CompletableFuture.supplyAsync(() -> {
+            try {
+                return persister.getSavedSnapshots();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, LOADERS).thenCompose(snapshots -> {
+            int last = snapshots.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1);
+            nextGameId.updateAndGet(next -> Math.max(next, last + 1));
+            return CompletableFuture.allOf(snapshots.entrySet().stream()
+                    .map(snapshot -> CompletableFuture.runAsync(() -> index(persister, snapshot.getKey(), snapshot.getValue()), LOADERS))
+                    .toArray(CompletableFuture[]::new));
+        }).handle((done, e) -> {
+            if (e != null) {
+                System.err.println("Unable to read the saved games: " + e.getMessage());
+            } else if (!unloaded.isEmpty()) {
+                System.out.printf("%d saved games indexed in %d ms.%n", unloaded.size(), (System.nanoTime() - start) / 1_000_000);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Binds the players of a saved game to a game that is not loaded yet, reading them from its snapshot.
+     */
+    private void index(GamePersister persister, int savedId, ByteBuffer snapshot) {
+        List<String> usernames;
+        try {
+            byte[] bytes = new byte[snapshot.remaining()];
+            snapshot.get(snapshot.position(), bytes);
+            usernames = GameSnapshot.usernames(bytes);
+        } catch (RuntimeException e) {
+            System.err.println("Unable to read game " + savedId + ": " + e.getMessage());
+            return;
+        }
+        if (usernames.isEmpty()) {
+            return;
+        }
+        ServerController game;
+        synchronized (this) {
+            game = new ServerController(games.containsKey(savedId) ? nextGameId.getAndIncrement() : savedId);
+            game.suspendCommands();
+            games.put(game.getId(), game);
+        }
+        unloaded.put(game, new SavedGame(savedId, persister));
+        for (String username : usernames) {
+            bind(username, game);
+        }
+    }
+
+    /**
+     * Loads a saved game on the loader pool, then runs the commands that have been waiting for it.
+     * If it can't be loaded, it is removed, and its players join a new game instead.
+     *
+     * @return completes with true once the game is loaded, with false if it can't be
+     */
+    private CompletableFuture<Boolean> load(ServerController game, SavedGame saved) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                SnapshotStore.SavedGame loaded = saved.persister().load(saved.id());
+                if (loaded == null) {
+                    throw new IOException("Game " + saved.id() + " is not saved");
+                }
+                game.loadGame(saved.id(), loaded);
+                unloaded.remove(game);
+                return true;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Unable to load game " + saved.id() + ": " + e.getMessage());
+                remove(game);
+                return false;
+            } finally {
+                game.resumeCommands();
+            }
+        }, LOADERS);
+    }
+
+    /**
+     * Binds a player to the game they are part of.
+     *
+     * @param username the username of the player
+     * @param game     the game the player is part of
+     */
+    public void bind(String username, ServerController game) {
+        gamesByUsername.put(username, game);
+    }
+
+    /**
+     * Binds an RMI client to the game its player is part of.
+     *
+     * @param client the RMI client
+     * @param game   the game the player is part of
+     */
+    public void bind(ClientCommunicationInterface client, ServerController game) {
+        gamesByRmiClient.put(client, game);
+    }
+
+    /**
+     * Removes a player from the game they were part of.
+     *
+     * @param username the username of the player
+     */
+    public void unbind(String username) {
+        gamesByUsername.remove(username);
+    }
+
+    /**
+     * Returns the game an RMI client is part of.
+     *
+     * @param client the RMI client
+     * @return the game of the client, or <code>null</code> if the client has not logged in yet
+     */
+    public ServerController getController(ClientCommunicationInterface client) {
+        return gamesByRmiClient.get(client);
+    }
+
+    /**
+     * Returns the game with the given id.
+     *
+     * @param gameId the id of the game
+     * @return the game, or <code>null</code> if there is no game with that id
+     */
+    public ServerController getController(int gameId) {
+        return games.get(gameId);
+    }
+
+    /**
+     * Removes a game that has ended, together with its players.
+     *
+     * @param game the game to remove
+     */
+    public void remove(ServerController game) {
+        games.remove(game.getId());
+        unloaded.remove(game);
+        gamesByUsername.values().removeIf(g -> g == game);
+        gamesByRmiClient.values().removeIf(g -> g == game);
+        System.out.println("Game " + game.getId() + " removed.");
+    }
+
+    /**
+     * @return the games hosted by this server
+     */
+    public Collection<ServerController> getGames() {
+        return Collections.unmodifiableCollection(games.values());
+    }
+}
@@ -0,0 +1,331 @@
+package it.polimi.ingsw.server;
+
+import it.polimi.ingsw.SettingLoader;
+import it.polimi.ingsw.commons.Message;
+import it.polimi.ingsw.commons.MessageCodec;
+import it.polimi.ingsw.server.model.*;
+import it.polimi.ingsw.server.model.layouts.Layout;
+import it.polimi.ingsw.utils.Color;
+import org.json.simple.parser.ParseException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * Everything needed to go on playing a saved game: the players with their bookshelves, personal goals and
+ * common goal tokens, the common goals with the tokens left, the board, the bag and the current player.
+ * <p>
+ * Snapshots are saved in a versioned binary format, where every cell and every item of the bag takes one byte
+ * (the color in the high bits and the number in the low bits, zero for an empty cell), and which ends with a
+ * CRC32 of the rest. The backUp messages saved as JSON before this format are still {@link #decode decoded}.
+ * <p>
+ * There is no random state to save: the items drawn to refill the board are written in the {@link TurnJournal}.
+ *
+ * @param players       the players, in turn order
+ * @param commonGoals   the common goals of the game
+ * @param board         the board, with the bag
+ * @param currentPlayer the username of the current player
+ * @param lastRound     true if the last round has started
+ */
+public record GameSnapshot(List<Player> players, List<CommonGoal> commonGoals, Board board, String currentPlayer,
+                           boolean lastRound) {
+
+    /**
+     * The first bytes of a snapshot, "MSsn".
+     */
+    private static final int MAGIC = 0x4D53736E;
+    /**
+     * The version of the format, to be changed with the format.
+     */
+    private static final byte VERSION = 1;
+    private static final int CHECKSUM_LENGTH = 4;
+    private static final int FIRST_PLAYER = 1;
+    private static final int END_GAME_CARD = 2;
+    private static final int NO_PLAYER = 0xFF;
+    private static final Color[] COLORS = Color.values();
+
+    /**
+     * Takes a snapshot of a game. The snapshot shares the objects of the game, so it has to be
+     * {@link #encode() encoded} before the game goes on.
+     *
+     * @param model the model of the game
+     * @return the snapshot
+     */
+    public static GameSnapshot of(GameModel model) {
+        Player current = model.getCurrentPlayer();
+        return new GameSnapshot(model.getPlayers(), model.getCommonGoals(), model.getBoard(),
+                current == null ? null : current.getUsername(), model.isLastRound());
+    }
+
+    /**
+     * Encodes the snapshot.
+     *
+     * @return the bytes of the snapshot, checksum included
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+
+            out.writeByte(players.size());
+            int current = NO_PLAYER;
+            for (int i = 0; i < players.size(); i++) {
+                Player player = players.get(i);
+                if (player.getUsername().equals(currentPlayer)) {
+                    current = i;
+                }
+                out.writeUTF(player.getUsername());
+                out.writeByte((player.isFirstPlayer() ? FIRST_PLAYER : 0) | (player.hasEndGameCard() ? END_GAME_CARD : 0));
+                out.writeByte(player.getPersonalGoal().getIndex());
+                Bookshelf bookshelf = player.getBookshelf();
+                out.writeByte(bookshelf.getNumberOfRows());
+                out.writeByte(bookshelf.getNumberOfColumns());
+                for (int row = 0; row < bookshelf.getNumberOfRows(); row++) {
+                    for (int column = 0; column < bookshelf.getNumberOfColumns(); column++) {
+                        out.writeByte(encodeItem(bookshelf.getItemAt(row, column).orElse(null)));
+                    }
+                }
+                writeList(out, player.getCommonGoalScoreList());
+                out.writeByte(player.getCommonGoalCompleted().size());
+                for (boolean completed : player.getCommonGoalCompleted()) {
+                    out.writeBoolean(completed);
+                }
+            }
+            out.writeByte(current);
+            out.writeBoolean(lastRound);
+
+            out.writeByte(commonGoals.size());
+            for (CommonGoal commonGoal : commonGoals) {
+                Layout layout = commonGoal.getLayout();
+                out.writeUTF(layout.getName());
+                out.writeByte(layout.getOccurrences());
+                out.writeByte(layout.getSize());
+                out.writeBoolean(layout.isHorizontal());
+                writeList(out, commonGoal.getScoringList());
+            }
+
+            out.writeByte(Board.boardSize);
+            for (int row = 0; row < Board.boardSize; row++) {
+                for (int column = 0; column < Board.boardSize; column++) {
+                    out.writeByte(encodeItem(board.getItem(row, column)));
+                }
+            }
+            // The order of the bag matters, since the journal refills the board with the indexes drawn from it
+            List<Item> bag = board.getItemBag();
+            out.writeShort(bag.size());
+            for (Item item : bag) {
+                out.writeByte(encodeItem(item));
+            }
+
+            CRC32 checksum = new CRC32();
+            checksum.update(bytes.toByteArray());
+            out.writeInt((int) checksum.getValue());
+        } catch (IOException e) {
+            // A ByteArrayOutputStream doesn't throw
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a snapshot, or a backUp message saved as JSON.
+     *
+     * @param bytes the bytes of the snapshot
+     * @return the snapshot
+     * @throws IllegalArgumentException if the bytes are not a valid snapshot
+     */
+    public static GameSnapshot decode(byte[] bytes) {
+        if (!isBinary(bytes)) {
+            return fromBackUp(MessageCodec.JSON.decode(bytes, 0, bytes.length));
+        }
+        ByteBuffer in = checked(bytes);
+        try {
+            int count = in.get() & 0xFF;
+            List<Player> players = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String username = readUTF(in);
+                int flags = in.get();
+                int personalGoal = in.get();
+                Bookshelf bookshelf = new Bookshelf(in.get(), in.get());
+                for (int row = 0; row < bookshelf.getNumberOfRows(); row++) {
+                    for (int column = 0; column < bookshelf.getNumberOfColumns(); column++) {
+                        bookshelf.setItem(row, column, Optional.ofNullable(decodeItem(in.get())));
+                    }
+                }
+                List<Integer> commonPoints = readList(in);
+                List<Boolean> commonGoalCompleted = new ArrayList<>();
+                for (int completed = in.get(); completed > 0; completed--) {
+                    commonGoalCompleted.add(in.get() != 0);
+                }
+                Player player = new Player(username, false, (flags & FIRST_PLAYER) != 0, (flags & END_GAME_CARD) != 0, commonGoalCompleted);
+                player.setBookshelf(bookshelf);
+                player.setPersonalGoal(loadPersonalGoal(personalGoal));
+                player.setCommonGoalPoints(commonPoints);
+                players.add(player);
+            }
+            int current = in.get() & 0xFF;
+            boolean lastRound = in.get() != 0;
+
+            List<CommonGoal> commonGoals = new ArrayList<>();
+            for (int goals = in.get(); goals > 0; goals--) {
+                Layout layout = Message.createCommonGoalLayout(readUTF(in), in.get(), in.get(), in.get() != 0);
+                if (layout == null) {
+                    throw new IllegalArgumentException("Unknown common goal in the snapshot");
+                }
+                CommonGoal commonGoal = new CommonGoal(layout, players.size());
+                commonGoal.setScoringList(readList(in));
+                commonGoals.add(commonGoal);
+            }
+
+            int size = in.get();
+            Item[][] matrix = new Item[size][size];
+            for (int row = 0; row < size; row++) {
+                for (int column = 0; column < size; column++) {
+                    matrix[row][column] = decodeItem(in.get());
+                }
+            }
+            int bagSize = in.getShort();
+            List<Item> bag = new ArrayList<>(bagSize);
+            for (int i = 0; i < bagSize; i++) {
+                bag.add(decodeItem(in.get()));
+            }
+            String currentPlayer = current == NO_PLAYER ? null : players.get(current).getUsername();
+            return new GameSnapshot(players, commonGoals, new Board(matrix, bag, players.size()), currentPlayer, lastRound);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("The snapshot is not valid", e);
+        }
+    }
+
+    /**
+     * Reads the usernames of the players of a snapshot, without loading the rest of the game.
+     *
+     * @param bytes the bytes of the snapshot, or a backUp message saved as JSON
+     * @return the usernames of the players
+     * @throws IllegalArgumentException if the bytes are not a valid snapshot
+     */
+    public static List<String> usernames(byte[] bytes) {
+        if (!isBinary(bytes)) {
+            return MessageCodec.JSON.decode(bytes, 0, bytes.length).getPlayersUsernames();
+        }
+        ByteBuffer in = checked(bytes);
+        try {
+            List<String> usernames = new ArrayList<>();
+            for (int count = in.get() & 0xFF; count > 0; count--) {
+                usernames.add(readUTF(in));
+                // Flags and personal goal
+                skip(in, 2);
+                skip(in, in.get() * in.get());
+                // Common goal points and completed common goals
+                skip(in, in.get());
+                skip(in, in.get());
+            }
+            return usernames;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("The snapshot is not valid", e);
+        }
+    }
+
+    /**
+     * Reads a backUp message saved as JSON by the versions before the binary snapshots.
+     */
+    private static GameSnapshot fromBackUp(Message backUp) {
+        List<Player> players = backUp.getPlayers();
+        Board board = new Board(backUp.getBoard().getBoardMatrix(), backUp.getItemBag(), players.size());
+        return new GameSnapshot(players, backUp.getCommonGoals(players.size()), board, backUp.getCurrentPlayer(), false);
+    }
+
+    private static boolean isBinary(byte[] bytes) {
+        return bytes.length >= Integer.BYTES && ByteBuffer.wrap(bytes).getInt() == MAGIC;
+    }
+
+    /**
+     * Checks the version and the checksum of a snapshot.
+     *
+     * @return the content of the snapshot, after the magic and the version
+     */
+    private static ByteBuffer checked(byte[] bytes) {
+        int length = bytes.length - CHECKSUM_LENGTH;
+        if (length < Integer.BYTES + 1) {
+            throw new IllegalArgumentException("The snapshot is too short");
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes, 0, length);
+        in.getInt();
+        byte version = in.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unknown version of the snapshot: " + version);
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes, 0, length);
+        if ((int) checksum.getValue() != ByteBuffer.wrap(bytes, length, CHECKSUM_LENGTH).getInt()) {
+            throw new IllegalArgumentException("The checksum of the snapshot doesn't match");
+        }
+        return in;
+    }
+
+    private static void skip(ByteBuffer in, int length) {
+        in.position(in.position() + length);
+    }
+
+    private static PersonalGoal loadPersonalGoal(int index) {
+        try {
+            return SettingLoader.loadSpecificPersonalGoal(index);
+        } catch (IOException | ParseException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return 0 for no item, the index of the color (plus one) in the high bits and the number in the low bits otherwise
+     */
+    private static int encodeItem(Item item) {
+        return item == null ? 0 : (item.color().ordinal() + 1) << 4 | item.number();
+    }
+
+    private static Item decodeItem(byte cell) {
+        int color = (cell & 0xFF) >> 4;
+        return color == 0 ? null : new Item(COLORS[color - 1], cell & 0x0F);
+    }
+
+    private static void writeList(DataOutputStream out, List<Integer> values) throws IOException {
+        out.writeByte(values.size());
+        for (int value : values) {
+            out.writeByte(value);
+        }
+    }
+
+    private static List<Integer> readList(ByteBuffer in) {
+        List<Integer> values = new ArrayList<>();
+        for (int count = in.get(); count > 0; count--) {
+            values.add((int) in.get());
+        }
+        return values;
+    }
+
+    /**
+     * Reads a string written by {@link DataOutputStream#writeUTF}, with {@link DataInputStream#readUTF}:
+     * its modified UTF-8 differs from the standard one for <code>'\0'</code> and the characters outside the BMP,
+     * which can be in a username.
+     */
+    private static String readUTF(ByteBuffer in) {
+        int start = in.position();
+        try {
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(in.array(), in.arrayOffset() + start, in.remaining()));
+            String string = data.readUTF();
+            skip(in, Short.BYTES + (in.getShort(start) & 0xFFFF));
+            return string;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid string in the snapshot", e);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package it.polimi.ingsw.server;
+
+import it.polimi.ingsw.commons.Message;
+import it.polimi.ingsw.commons.StateDelta;
+import it.polimi.ingsw.server.model.Board;
+import it.polimi.ingsw.server.model.Bookshelf;
+import it.polimi.ingsw.server.model.Item;
+import it.polimi.ingsw.utils.Coordinates;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Remembers the state of a game that was last sent to the clients, so that after
+ * every turn only what has changed is sent, in a delta message.
+ * <p>
+ * Every delta has a version, one more than the previous one. A client that receives a delta
+ * whose version is not the next one has missed something and asks for the whole game again.
+ * Deltas contain the new values of what has changed, not the changes themselves, so a delta
+ * can be applied to a state that already includes some of its changes.
+ * <p>
+ * Only used by the thread of the game, like the rest of the controller.
+ */
+public class GameStateTracker {
+
+    private long version;
+    /**
+     * The items of the board that was last sent, <code>null</code> if nothing has been sent yet.
+     */
+    private Item[][] board;
+    private final Map<String, Item[][]> bookshelves;
+    private final Map<String, List<Integer>> points;
+    private List<Integer> topOfScoring;
+    /**
+     * The scores that have changed with the last delta, by username.
+     */
+    private Map<String, List<Integer>> changedScores;
+
+    /**
+     * Creates a tracker that has not sent anything yet.
+     */
+    public GameStateTracker() {
+        bookshelves = new HashMap<>();
+        points = new HashMap<>();
+        changedScores = Map.of();
+    }
+
+    /**
+     * @return the version of the state that was last sent
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * The scores are personal, so they are not part of the delta shared by all the players:
+     * each player must be sent their own score, if it is here.
+     *
+     * @return the scores that have changed with the last delta, by username
+     */
+    public Map<String, List<Integer>> getChangedScores() {
+        return changedScores;
+    }
+
+    /**
+     * @return true if a whole state has been sent, so that deltas can be computed
+     */
+    public boolean hasBaseline() {
+        return board != null;
+    }
+
+    /**
+     * Remembers a state sent as a whole to the clients, with a new version.
+     *
+     * @param board        the board
+     * @param bookshelves  the bookshelves, by username
+     * @param points       the points of the players, by username
+     * @param topOfScoring the top of the scoring lists of the common goals
+     * @return the version of the state
+     */
+    public long snapshot(Board board, Map<String, Bookshelf> bookshelves, Map<String, List<Integer>> points, List<Integer> topOfScoring) {
+        capture(board, bookshelves, points, topOfScoring);
+        return ++version;
+    }
+
+    /**
+     * Computes the delta between the state that was last sent and the given one, which becomes the new baseline.
+     *
+     * @param board        the board
+     * @param bookshelves  the bookshelves, by username
+     * @param points       the points of the players, by username
+     * @param topOfScoring the top of the scoring lists of the common goals
+     * @return the delta message without the scores (see {@link #getChangedScores()}), or <code>null</code>
+     * if there is no baseline, in which case the state has to be sent as a whole with {@link #snapshot}
+     */
+    public Message delta(Board board, Map<String, Bookshelf> bookshelves, Map<String, List<Integer>> points, List<Integer> topOfScoring) {
+        if (!hasBaseline()) {
+            return null;
+        }
+
+        Map<Coordinates, Item> boardChanges = new HashMap<>();
+        for (int row = 0; row < Board.boardSize; row++) {
+            for (int column = 0; column < Board.boardSize; column++) {
+                Item item = board.getItem(row, column);
+                if (!Objects.equals(item, this.board[row][column])) {
+                    boardChanges.put(new Coordinates(row, column), item);
+                }
+            }
+        }
+
+        Map<String, Map<Coordinates, Item>> bookshelfChanges = new HashMap<>();
+        for (Map.Entry<String, Bookshelf> entry : bookshelves.entrySet()) {
+            Bookshelf bookshelf = entry.getValue();
+            Item[][] sent = this.bookshelves.get(entry.getKey());
+            Map<Coordinates, Item> changes = new HashMap<>();
+            for (int row = 0; row < bookshelf.getNumberOfRows(); row++) {
+                for (int column = 0; column < bookshelf.getNumberOfColumns(); column++) {
+                    Item item = bookshelf.getItemAt(row, column).orElse(null);
+                    // A bookshelf that was not sent before is sent as a whole
+                    if (sent == null || !Objects.equals(item, sent[row][column])) {
+                        changes.put(new Coordinates(row, column), item);
+                    }
+                }
+            }
+            if (!changes.isEmpty()) {
+                bookshelfChanges.put(entry.getKey(), changes);
+            }
+        }
+
+        Map<String, List<Integer>> scoreChanges = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> entry : points.entrySet()) {
+            if (!entry.getValue().equals(this.points.get(entry.getKey()))) {
+                scoreChanges.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        List<Integer> topOfScoringChanges = topOfScoring.equals(this.topOfScoring) ? null : topOfScoring;
+
+        capture(board, bookshelves, points, topOfScoring);
+        changedScores = scoreChanges;
+        return new Message(new StateDelta(++version, boardChanges, bookshelfChanges, null, topOfScoringChanges));
+    }
+
+    /**
+     * Forgets the state that was sent, so that the next one is sent as a whole.
+     */
+    public void reset() {
+        board = null;
+        bookshelves.clear();
+        points.clear();
+        topOfScoring = null;
+        changedScores = Map.of();
+    }
+
+    private void capture(Board board, Map<String, Bookshelf> bookshelves, Map<String, List<Integer>> points, List<Integer> topOfScoring) {
+        this.board = new Item[Board.boardSize][Board.boardSize];
+        for (int row = 0; row < Board.boardSize; row++) {
+            for (int column = 0; column < Board.boardSize; column++) {
+                this.board[row][column] = board.getItem(row, column);
+            }
+        }
+
+        this.bookshelves.clear();
+        for (Map.Entry<String, Bookshelf> entry : bookshelves.entrySet()) {
+            Bookshelf bookshelf = entry.getValue();
+            Item[][] items = new Item[bookshelf.getNumberOfRows()][bookshelf.getNumberOfColumns()];
+            for (int row = 0; row < items.length; row++) {
+                for (int column = 0; column < items[row].length; column++) {
+                    items[row][column] = bookshelf.getItemAt(row, column).orElse(null);
+                }
+            }
+            this.bookshelves.put(entry.getKey(), items);
+        }
+
+        this.points.clear();
+        for (Map.Entry<String, List<Integer>> entry : points.entrySet()) {
+            this.points.put(entry.getKey(), List.copyOf(entry.getValue()));
+        }
+        this.topOfScoring = List.copyOf(topOfScoring);
+    }
+}
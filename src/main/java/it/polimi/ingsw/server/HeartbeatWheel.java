@@ -0,0 +1,170 @@
+package it.polimi.ingsw.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks if the clients of all the games are still alive, using a single thread.
+ * <p>
+ * This is a hashed timing wheel: time is divided into ticks and every watched
+ * session is put in the slot of the tick at which it will time out if no pong
+ * arrives, so every tick only looks at the sessions that are due. When a session
+ * is due but has sent a pong in the meantime, it is simply moved to the slot of
+ * its new deadline, computed from the last time it was seen.
+ *
+ * @see Session#getLastSeen()
+ */
+public class HeartbeatWheel {
+
+    private final long tickNanos;
+    private final List<Queue<Heartbeat>> wheel;
+    /**
+     * The heartbeats added since the last tick, put in their slot at the next tick.
+     * The slots are only accessed by the thread of the wheel.
+     */
+    private final Queue<Heartbeat> pending;
+    private final ScheduledExecutorService timer;
+    private final long startTime;
+    /**
+     * The number of ticks since the wheel started.
+     */
+    private long tick;
+
+    /**
+     * Creates and starts a wheel.
+     *
+     * @param tickDuration the duration of a tick
+     * @param unit         the unit of the duration of a tick
+     * @param wheelSize    the number of slots of the wheel
+     */
+    public HeartbeatWheel(long tickDuration, TimeUnit unit, int wheelSize) {
+        tickNanos = unit.toNanos(tickDuration);
+        List<Queue<Heartbeat>> slots = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            slots.add(new ArrayDeque<>());
+        }
+        wheel = List.copyOf(slots);
+        pending = new ConcurrentLinkedQueue<>();
+        startTime = System.nanoTime();
+        timer = Executors.newSingleThreadScheduledExecutor(GameExecutor.daemonThreads("heartbeat-"));
+        timer.scheduleAtFixedRate(this::tick, tickDuration, tickDuration, unit);
+    }
+
+    /**
+     * Starts watching a session. If nothing is received from the client for longer
+     * than the timeout, the callback is run on the thread of the wheel, so it should
+     * only hand the work over to the game.
+     *
+     * @param session   the session to watch
+     * @param timeout   how long the client can stay silent
+     * @param unit      the unit of the timeout
+     * @param onTimeout what to do when the client times out
+     * @return the heartbeat, that can be used to stop watching the session
+     */
+    public Heartbeat watch(Session session, long timeout, TimeUnit unit, Runnable onTimeout) {
+        Heartbeat heartbeat = new Heartbeat(session, unit.toNanos(timeout), onTimeout);
+        pending.add(heartbeat);
+        return heartbeat;
+    }
+
+    /**
+     * Stops the wheel. The callbacks that have not fired yet never will.
+     */
+    public void stop() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Moves the wheel forward by one tick, firing the heartbeats that are due.
+     */
+    private void tick() {
+        long now = System.nanoTime();
+        Heartbeat heartbeat;
+        while ((heartbeat = pending.poll()) != null) {
+            place(heartbeat);
+        }
+
+        Iterator<Heartbeat> slot = wheel.get((int) (tick % wheel.size())).iterator();
+        while (slot.hasNext()) {
+            heartbeat = slot.next();
+            if (heartbeat.cancelled) {
+                slot.remove();
+            } else if (heartbeat.remainingRounds > 0) {
+                heartbeat.remainingRounds--;
+            } else {
+                slot.remove();
+                if (now - heartbeat.deadline() >= 0) {
+                    heartbeat.cancelled = true;
+                    try {
+                        heartbeat.onTimeout.run();
+                    } catch (RuntimeException e) {
+                        System.err.println("Error while handling a heartbeat timeout: " + e);
+                    }
+                } else {
+                    // A pong arrived in the meantime, wait for the new deadline
+                    pending.add(heartbeat);
+                }
+            }
+        }
+        tick++;
+    }
+
+    /**
+     * Puts a heartbeat in the slot of its deadline.
+     *
+     * @param heartbeat the heartbeat to place
+     */
+    private void place(Heartbeat heartbeat) {
+        long ticks = Math.max(tick, (heartbeat.deadline() - startTime + tickNanos - 1) / tickNanos);
+        heartbeat.remainingRounds = (ticks - tick) / wheel.size();
+        wheel.get((int) (ticks % wheel.size())).add(heartbeat);
+    }
+
+    /**
+     * A session watched by the wheel.
+     */
+    public static class Heartbeat {
+        private final Session session;
+        private final long timeoutNanos;
+        private final Runnable onTimeout;
+        private volatile boolean cancelled;
+        /**
+         * The number of full turns of the wheel left before the deadline.
+         */
+        private long remainingRounds;
+
+        private Heartbeat(Session session, long timeoutNanos, Runnable onTimeout) {
+            this.session = session;
+            this.timeoutNanos = timeoutNanos;
+            this.onTimeout = onTimeout;
+        }
+
+        /**
+         * @return the time at which the session times out if nothing else is received
+         */
+        private long deadline() {
+            return session.getLastSeen() + timeoutNanos;
+        }
+
+        /**
+         * Stops watching the session.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * @return true if the session is not watched anymore
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
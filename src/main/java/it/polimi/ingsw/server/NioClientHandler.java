@@ -0,0 +1,367 @@
+package it.polimi.ingsw.server;
+
+import it.polimi.ingsw.commons.CommandDecoder;
+import it.polimi.ingsw.commons.Compression;
+import it.polimi.ingsw.commons.Framing;
+import it.polimi.ingsw.commons.Message;
+import it.polimi.ingsw.commons.MessageCodec;
+import org.json.simple.parser.JSONParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The handler of a client connected to the {@link ServerTcpNio}.
+ * <p>
+ * The client speaks the same protocol as with the {@link ServerTcp}: one JSON
+ * message per line, or frames if the client asks for them (see {@link Framing}).
+ * Bytes are read by the selector thread the connection belongs to, which splits
+ * them into messages and hands them over to the game, exactly like the listening
+ * thread of a {@link SocketClientHandler} does. Messages to the
+ * client are queued and written by the selector thread when the socket can take them,
+ * so a message may be written in several parts.
+ */
+public class NioClientHandler extends SocketClientHandler {
+
+    /**
+     * The maximum length of a line received from the client.
+     */
+    private static final int MAX_LINE_LENGTH = 1 << 20;
+    /**
+     * The maximum number of bytes waiting to be written before the client is considered too slow.
+     */
+    private static final long MAX_PENDING_BYTES = 4L << 20;
+
+    private final SocketChannel channel;
+    private final ServerTcpNio.SelectorLoop loop;
+    private final BufferPool pool;
+    /**
+     * The buffers waiting to be written, the first one may have been partially written.
+     */
+    private final Queue<ByteBuffer> writeQueue;
+    private final AtomicLong pendingBytes;
+    /**
+     * True if the selector thread has been asked to write the queue.
+     */
+    private final AtomicBoolean flushRequested;
+    /**
+     * The bytes of the line being received. Only used by the selector thread.
+     */
+    private final ByteArrayOutputStream line;
+    private final JSONParser parser;
+    private final CommandDecoder decoder;
+    /**
+     * The header of the frame being received. Only used by the selector thread, like the following fields.
+     */
+    private final byte[] header;
+    private int headerLength;
+    /**
+     * The type and the payload of the frame being received, <code>null</code> while reading a header.
+     */
+    private byte[] payload;
+    private int payloadLength;
+    /**
+     * The number of bytes still to skip of a frame of unknown type.
+     */
+    private int toSkip;
+    /**
+     * True if the client and the server have agreed to exchange frames instead of lines.
+     */
+    private volatile boolean framed;
+    /**
+     * True once the client has sent its first frame: until then it may still send lines, even if
+     * frames have been agreed. Only used by the selector thread.
+     */
+    private boolean framedInput;
+    /**
+     * The codec of the frames, agreed with the handshake.
+     */
+    private volatile MessageCodec codec = MessageCodec.JSON;
+    /**
+     * The compression of the frames, <code>null</code> if they are not compressed.
+     */
+    private volatile Compression compression;
+    private SelectionKey key;
+    private volatile boolean closed;
+
+    /**
+     * Creates the handler of a client.
+     *
+     * @param channel the channel connected to the client, in non-blocking mode
+     * @param loop    the selector thread that will serve the client
+     * @param pool    the pool of the buffers to write
+     */
+    public NioClientHandler(SocketChannel channel, ServerTcpNio.SelectorLoop loop, BufferPool pool) {
+        this.channel = channel;
+        this.loop = loop;
+        this.pool = pool;
+        writeQueue = new ConcurrentLinkedQueue<>();
+        pendingBytes = new AtomicLong(0);
+        flushRequested = new AtomicBoolean(false);
+        line = new ByteArrayOutputStream();
+        parser = new JSONParser();
+        decoder = new CommandDecoder();
+        header = new byte[Framing.HEADER_LENGTH];
+    }
+
+    /**
+     * Registers the client with its selector thread. Must be called by that thread.
+     *
+     * @throws IOException if the channel can't be registered
+     */
+    void register() throws IOException {
+        key = channel.register(loop.getSelector(), SelectionKey.OP_READ, this);
+    }
+
+    @Override
+    public void run() {
+        // Nothing to start, the selector thread reads for us
+    }
+
+    /**
+     * Reads what the client has sent and handles the complete messages.
+     * Must be called by the selector thread.
+     *
+     * @param buffer  an empty buffer to read into
+     * @param scratch an array at least as large as the buffer
+     * @throws IOException if the connection fails or the client is broken
+     */
+    void read(ByteBuffer buffer, byte[] scratch) throws IOException {
+        int read;
+        while ((read = channel.read(buffer)) > 0) {
+            buffer.flip();
+            buffer.get(scratch, 0, read);
+            buffer.clear();
+            int offset = 0;
+            while (offset < read && !closed) {
+                if (framed && !framedInput && line.size() == 0 && Framing.startsFrame(scratch[offset])) {
+                    framedInput = true;
+                }
+                offset = framedInput ? readFrame(scratch, offset, read) : readLine(scratch, offset, read);
+            }
+        }
+        if (read < 0) {
+            System.err.println("Error while reading from client.");
+            close();
+        }
+    }
+
+    /**
+     * Reads the bytes of a line, handling the line if it is complete.
+     *
+     * @param bytes  the bytes received
+     * @param offset the first byte to read
+     * @param end    the end of the bytes received
+     * @return the first byte not read
+     * @throws IOException if the line is too long
+     */
+    private int readLine(byte[] bytes, int offset, int end) throws IOException {
+        for (int i = offset; i < end; i++) {
+            if (bytes[i] == '\n') {
+                line.write(bytes, offset, i - offset);
+                byte[] jsonLine = Framing.lineContent(line.toByteArray());
+                line.reset();
+                if (!receiveCommand(decoder.decodeJson(jsonLine, 0, jsonLine.length))) {
+                    handle(Framing.parse(new String(jsonLine, StandardCharsets.UTF_8), parser));
+                }
+                return i + 1;
+            }
+        }
+        line.write(bytes, offset, end - offset);
+        if (line.size() > MAX_LINE_LENGTH) {
+            throw new IOException("Line too long");
+        }
+        return end;
+    }
+
+    /**
+     * Reads the bytes of a frame, handling the frame if it is complete.
+     * The payload is allocated once, as soon as its length is known.
+     *
+     * @param bytes  the bytes received
+     * @param offset the first byte to read
+     * @param end    the end of the bytes received
+     * @return the first byte not read
+     * @throws IOException if the length of the frame is not valid
+     */
+    private int readFrame(byte[] bytes, int offset, int end) throws IOException {
+        if (toSkip > 0) {
+            int skipped = Math.min(toSkip, end - offset);
+            toSkip -= skipped;
+            return offset + skipped;
+        }
+        if (payload == null) {
+            int read = Math.min(Framing.HEADER_LENGTH - headerLength, end - offset);
+            System.arraycopy(bytes, offset, header, headerLength, read);
+            headerLength += read;
+            offset += read;
+            if (headerLength < Framing.HEADER_LENGTH) {
+                return offset;
+            }
+            headerLength = 0;
+            int length = Framing.readLength(header);
+            byte type = header[Framing.HEADER_LENGTH - 1];
+            if (!Framing.isKnown(type, compression)) {
+                toSkip = length;
+                return offset;
+            }
+            // The payload follows the type, like in the bodies read by Framing
+            payload = new byte[length + 1];
+            payload[0] = type;
+            payloadLength = 1;
+        }
+        int read = Math.min(payload.length - payloadLength, end - offset);
+        System.arraycopy(bytes, offset, payload, payloadLength, read);
+        payloadLength += read;
+        if (payloadLength == payload.length) {
+            byte[] body = Framing.unwrap(payload, compression);
+            payload = null;
+            if (body != null && !receiveCommand(decoder.decode(body))) {
+                handle(Framing.decode(body));
+            }
+        }
+        return offset + read;
+    }
+
+    /**
+     * Hands a message received from the client over to the game.
+     *
+     * @param message the message, <code>null</code> if it could not be parsed
+     */
+    private void handle(Message message) {
+        if (message == null) {
+            return;
+        }
+        if (!framed && Framing.isHandshake(message)) {
+            // The answer is still a line, the following messages will be frames
+            MessageCodec acceptCodec = Framing.codec(message);
+            boolean acceptCompression = Framing.isCompressed(message);
+            sendMessageToClient(Framing.handshake(acceptCodec, acceptCompression));
+            codec = acceptCodec;
+            compression = acceptCompression ? new Compression() : null;
+            framed = true;
+            return;
+        }
+        try {
+            receiveMessage(message, this);
+        } catch (IllegalAccessException | RemoteException | RuntimeException e) {
+            // The selector thread serves other clients too, it must not die
+            System.err.println("Error while handling message from client: " + e);
+        }
+    }
+
+    /**
+     * Queues some messages for the client. They are written by the selector thread as soon as possible,
+     * together with the other messages in the queue.
+     *
+     * @param messages the messages to send, in order
+     */
+    @Override
+    public void sendMessagesToClient(List<Message> messages) {
+        if (closed) {
+            return;
+        }
+        int length = 0;
+        Compression current = compression;
+        synchronized (writeQueue) {
+            if (closed) {
+                return;
+            }
+            // The frames must be queued in the same order they are compressed
+            for (Message message : messages) {
+                byte[] bytes = Framing.encode(message, framed, codec);
+                if (current != null) {
+                    bytes = current.compress(bytes);
+                }
+                ByteBuffer buffer = bytes.length <= pool.getBufferSize() ? pool.acquire() : ByteBuffer.allocate(bytes.length);
+                buffer.put(bytes).flip();
+                writeQueue.add(buffer);
+                length += bytes.length;
+            }
+        }
+        if (pendingBytes.addAndGet(length) > MAX_PENDING_BYTES) {
+            System.err.println(getUsername() + " can't keep up with the game. Disconnecting.");
+            close();
+            return;
+        }
+        if (flushRequested.compareAndSet(false, true)) {
+            loop.execute(this, this::flush);
+        }
+    }
+
+    /**
+     * Writes as much of the queue as the socket can take. Must be called by the selector thread.
+     */
+    void flush() {
+        flushRequested.set(false);
+        if (closed || key == null || !key.isValid()) {
+            return;
+        }
+        try {
+            while (!writeQueue.isEmpty()) {
+                // All the queued frames are written with a single gathering write
+                ByteBuffer[] buffers = writeQueue.toArray(new ByteBuffer[0]);
+                long written = channel.write(buffers);
+                pendingBytes.addAndGet(-written);
+                for (ByteBuffer buffer : buffers) {
+                    if (buffer.hasRemaining()) {
+                        // The socket is full, wait until it can take more
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    writeQueue.poll();
+                    pool.release(buffer);
+                }
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            System.err.println("Error while writing to client.");
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error while closing the channel.");
+        }
+        // The selector thread may be writing the buffers, so it is the one that gives them back
+        loop.execute(this, this::releaseBuffers);
+        Compression current = compression;
+        if (current != null) {
+            current.end();
+        }
+        loop.closed(this);
+        connectionLost();
+    }
+
+    /**
+     * Gives the buffers still waiting to be written back to the pool. Must be called by the selector thread,
+     * once the client is closed.
+     */
+    private void releaseBuffers() {
+        synchronized (writeQueue) {
+            ByteBuffer buffer;
+            while ((buffer = writeQueue.poll()) != null) {
+                pool.release(buffer);
+            }
+            pendingBytes.set(0);
+        }
+    }
+}
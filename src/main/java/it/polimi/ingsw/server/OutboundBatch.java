@@ -0,0 +1,82 @@
+package it.polimi.ingsw.server;
+
+import it.polimi.ingsw.commons.Message;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The messages produced while a command of a game is running, held back until the command ends.
+ * <p>
+ * A single command can send many messages to the same player: an insert, for example, sends the
+ * update, maybe the last round and then the turn. Instead of writing each of them on its own, the
+ * messages are collected by session while the command runs, and each session gets all of its
+ * messages at once when the command ends, so that they are written to the client together and
+ * flushed only once.
+ * <p>
+ * Batches belong to the thread running the command, so they don't need any lock. A command
+ * run while another one is running on the same thread joins the batch of the outer one.
+ *
+ * @see GameExecutor
+ * @see Session#send(Message)
+ */
+public final class OutboundBatch {
+
+    private static final ThreadLocal<OutboundBatch> CURRENT = new ThreadLocal<>();
+
+    /**
+     * The messages held back, by session, in the order the sessions were first sent something.
+     */
+    private final Map<Session, List<Message>> messages;
+
+    private OutboundBatch() {
+        messages = new LinkedHashMap<>();
+    }
+
+    /**
+     * Runs a command, holding back the messages it sends until it ends.
+     *
+     * @param command the command to run
+     */
+    public static void run(Runnable command) {
+        if (CURRENT.get() != null) {
+            command.run();
+            return;
+        }
+        OutboundBatch batch = new OutboundBatch();
+        CURRENT.set(batch);
+        try {
+            command.run();
+        } finally {
+            CURRENT.remove();
+            batch.release();
+        }
+    }
+
+    /**
+     * Holds back a message, if a command is running on this thread.
+     *
+     * @param session the session the message is for
+     * @param message the message
+     * @return false if no command is running, so the message has to be sent right away
+     */
+    static boolean hold(Session session, Message message) {
+        OutboundBatch batch = CURRENT.get();
+        if (batch == null) {
+            return false;
+        }
+        batch.messages.computeIfAbsent(session, key -> new ArrayList<>()).add(message);
+        return true;
+    }
+
+    /**
+     * Gives each session the messages held back for it.
+     */
+    private void release() {
+        for (Map.Entry<Session, List<Message>> entry : messages.entrySet()) {
+            entry.getKey().sendAll(entry.getValue());
+        }
+    }
+}
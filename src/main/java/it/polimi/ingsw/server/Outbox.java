@@ -0,0 +1,127 @@
+package it.polimi.ingsw.server;
+
+import it.polimi.ingsw.commons.Message;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The messages waiting to be sent to a client.
+ * <p>
+ * Messages are sent in the order they are added by a sender thread,
+ * so the game that adds them never waits for a slow client. The messages
+ * are added in batches, and all the batches waiting when the sender thread
+ * gets to them are sent to the client together. The outbox is bounded:
+ * if a client can't keep up with its messages the outbox refuses new
+ * ones, and the client is considered a slow consumer.
+ */
+public class Outbox {
+
+    /**
+     * The maximum number of batches of messages waiting to be sent to a client.
+     */
+    public static final int CAPACITY = 128;
+    /**
+     * The threads that send the messages of all the clients.
+     * Threads are created when needed, so that a client blocked on a send doesn't stop the others.
+     */
+    private static final ExecutorService SENDERS = Executors.newCachedThreadPool(GameExecutor.daemonThreads("session-sender-"));
+
+    private final String username;
+    private final ClientConnection connection;
+    private final BlockingQueue<List<Message>> queue;
+    /**
+     * True if the outbox is being drained or is about to be.
+     */
+    private final AtomicBoolean scheduled;
+
+    /**
+     * Creates an empty outbox.
+     *
+     * @param username   the username of the player the messages are for
+     * @param connection the connection the messages are sent through
+     * @param capacity   the maximum number of batches waiting to be sent
+     */
+    public Outbox(String username, ClientConnection connection, int capacity) {
+        this.username = username;
+        this.connection = connection;
+        queue = new ArrayBlockingQueue<>(capacity);
+        scheduled = new AtomicBoolean(false);
+    }
+
+    /**
+     * Adds a message to the outbox, without waiting for it to be sent.
+     *
+     * @param message the message to send
+     * @return false if the outbox is full
+     */
+    public boolean offer(Message message) {
+        return offer(List.of(message));
+    }
+
+    /**
+     * Adds a batch of messages to the outbox, without waiting for them to be sent.
+     *
+     * @param messages the messages to send, in order
+     * @return false if the outbox is full
+     */
+    public boolean offer(List<Message> messages) {
+        if (!queue.offer(messages)) {
+            return false;
+        }
+        if (scheduled.compareAndSet(false, true)) {
+            SENDERS.execute(this::drain);
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of batches waiting to be sent
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Drops the messages waiting to be sent.
+     */
+    public void clear() {
+        queue.clear();
+    }
+
+    /**
+     * Sends the messages in the outbox, until it is empty.
+     */
+    private void drain() {
+        List<List<Message>> batches = new ArrayList<>();
+        while (queue.drainTo(batches) > 0) {
+            List<Message> messages;
+            if (batches.size() == 1) {
+                messages = batches.get(0);
+            } else {
+                messages = new ArrayList<>();
+                for (List<Message> batch : batches) {
+                    messages.addAll(batch);
+                }
+            }
+            batches.clear();
+            try {
+                connection.sendAll(messages);
+            } catch (RemoteException e) {
+                System.err.println("Impossible to send message to " + username + " because they probably disconnected.");
+            } catch (RuntimeException e) {
+                System.err.println("Error while sending message to " + username + ": " + e);
+            }
+        }
+        scheduled.set(false);
+        if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+            SENDERS.execute(this::drain);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package it.polimi.ingsw.server;
+
+import it.polimi.ingsw.client.ClientCommunicationInterface;
+import it.polimi.ingsw.commons.Message;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The messages sent by the server to the RMI clients.
+ * <p>
+ * A remote call blocks until the client has handled the message, so the server never calls
+ * an RMI client from the thread of a game. Every client has its own {@link Outbox}, used both
+ * by its session and by the messages sent to it before it has one: a sender thread delivers
+ * them in order, all the messages waiting at once with a single remote call. The calls time
+ * out after {@value #CALL_TIMEOUT} milliseconds, so a client that stops answering only blocks
+ * its own messages, and one that can't keep up fills its outbox and is dropped.
+ */
+public class RmiCallbacks {
+
+    /**
+     * The maximum time, in milliseconds, a remote call to a client can take.
+     */
+    public static final int CALL_TIMEOUT = 10_000;
+
+    private final Map<ClientCommunicationInterface, Outbox> outboxes;
+
+    /**
+     * Creates the senders of the RMI clients, none of which is known yet.
+     */
+    public RmiCallbacks() {
+        outboxes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Makes the remote calls of this JVM time out after {@value #CALL_TIMEOUT} milliseconds,
+     * unless a different timeout has been set on the command line. Must be called before
+     * the first remote call.
+     */
+    public static void setCallTimeout() {
+        if (System.getProperty("sun.rmi.transport.tcp.responseTimeout") == null) {
+            System.setProperty("sun.rmi.transport.tcp.responseTimeout", String.valueOf(CALL_TIMEOUT));
+        }
+    }
+
+    /**
+     * @param client the RMI client
+     * @return the outbox of the client, created if there was none
+     */
+    public Outbox outbox(ClientCommunicationInterface client) {
+        return outboxes.computeIfAbsent(client, key -> new Outbox("an RMI client", new ClientConnection.Rmi(key), Outbox.CAPACITY));
+    }
+
+    /**
+     * Sends a message to a client, without waiting for it to be delivered.
+     * A client that can't keep up with its messages is forgotten.
+     *
+     * @param client  the RMI client
+     * @param message the message to send
+     * @return true if the message will be sent
+     */
+    public boolean send(ClientCommunicationInterface client, Message message) {
+        if (outbox(client).offer(message)) {
+            return true;
+        }
+        System.err.println("An RMI client can't keep up with its messages. Dropping them.");
+        forget(client);
+        return false;
+    }
+
+    /**
+     * Drops the messages waiting to be sent to a client and forgets it.
+     *
+     * @param client the RMI client
+     */
+    public void forget(ClientCommunicationInterface client) {
+        Outbox outbox = outboxes.remove(client);
+        if (outbox != null) {
+            outbox.clear();
+        }
+    }
+
+    /**
+     * @return the number of RMI clients that have an outbox
+     */
+    public int size() {
+        return outboxes.size();
+    }
+}
@@ -1,8 +1,13 @@
 package it.polimi.ingsw.server;
 
+import org.apache.commons.cli.*;
+
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.List;
 
 import static it.polimi.ingsw.utils.CliUtilities.*;
 
@@ -19,16 +24,30 @@ public class Server implements ServerCommunicationInterface, ServerInterface {
      */
     private static final String SHUTDOWN_COMMAND = "exit";
     private ServerRmi rmiServer;
-    private ServerTcp socketServer;
+    private ServerInterface socketServer;
 
     /**
      * Creates a new server.
      * It initializes both the RMI and the socket servers.
      */
     public Server() {
+        this("threads");
+    }
+
+    /**
+     * Creates a new server.
+     * It initializes both the RMI and the socket servers.
+     *
+     * @param tcpMode how the socket server handles the connections:
+     *                <code>threads</code> or <code>virtual</code> threads for each client,
+     *                or <code>nio</code> for a few selector threads serving all of them
+     * @see ServerTcp#ServerTcp(boolean)
+     * @see ServerTcpNio
+     */
+    public Server(String tcpMode) {
         try {
             this.rmiServer = new ServerRmi();
-            this.socketServer = new ServerTcp();
+            this.socketServer = "nio".equals(tcpMode) ? new ServerTcpNio() : new ServerTcp("virtual".equals(tcpMode));
         } catch (IOException e) {
             System.err.println("Another server is already running. Closing this instance...");
             System.exit(0);
@@ -36,7 +55,46 @@ public class Server implements ServerCommunicationInterface, ServerInterface {
     }
 
     public static void main(String[] args) {
-        Server server = new Server();
+        Option tcp = new Option("t", "tcp", true, "handle socket clients with 'threads', 'virtual' threads or 'nio' selectors (default: threads)");
+        Option durability = new Option("d", "durability", true, "save games with 'none', 'flush' or 'fsync' durability (default: flush)");
+        Option help = new Option("h", "help", false, "show this help message");
+
+        Options options = new Options();
+        options.addOption(tcp);
+        options.addOption(durability);
+        options.addOption(help);
+
+        CommandLineParser parser = new DefaultParser();
+        HelpFormatter formatter = new HelpFormatter();
+        CommandLine commandLine = null;
+
+        try {
+            commandLine = parser.parse(options, args);
+        } catch (ParseException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+
+        if (commandLine.hasOption("help")) {
+            formatter.printHelp("java -jar <project-root>/deliverables/JARs/AM13_Server.jar", options);
+            System.exit(0);
+        }
+
+        String tcpMode = commandLine.getOptionValue("tcp", "threads");
+        if (!List.of("threads", "virtual", "nio").contains(tcpMode)) {
+            System.err.println("Invalid TCP mode: " + tcpMode + ". Use 'threads', 'virtual' or 'nio'.");
+            System.exit(1);
+        }
+
+        String durabilityMode = commandLine.getOptionValue("durability", "flush");
+        try {
+            ServerController.getPersister().setDurability(GamePersister.Durability.valueOf(durabilityMode.toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid durability: " + durabilityMode + ". Use 'none', 'flush' or 'fsync'.");
+            System.exit(1);
+        }
+
+        Server server = new Server(tcpMode);
 
         try {
             server.start();
@@ -67,42 +125,39 @@ public class Server implements ServerCommunicationInterface, ServerInterface {
     /**
      * Starts both the RMI and the socket servers.
      * It also sends a message to all clients to notify them that the server is up.
+     * The saved games are indexed in the background, and each of them is loaded
+     * when the first of its players comes back.
      */
     @Override
     public void start() {
+        // Before any player can log in
+        games.restore(ServerController.getPersister());
         rmiServer.start();
-        socketServer.start();
-        System.out.println("Server started.");
-        if (controller.isGameSaved()) {
-            System.out.println("If you answer after players have joined, the answer to this question will be ignored.");
-            boolean load = askYesNoQuestion("A saved game has been found. Do you want to load it?", "n");
-            if (load) {
-                if (controller.numberOfPlayers > 0) {
-                    String message = """
-                            Players have already started playing.
-                            It is no longer possible to load the game.
-                            The new saved game will be this one.
-                            """;
-                    System.out.print(message);
-                } else {
-                    try {
-                        controller.loadLastGame();
-                    } catch (IOException e) {
-                        System.err.println("Unable to load the game.");
-                    }
-                }
-            }
+        try {
+            socketServer.start();
+        } catch (IOException e) {
+            System.err.println("Unable to start the socket server.");
         }
+        System.out.println("Server started.");
     }
 
     /**
      * Stops both the RMI and the socket servers.
-     * It also sends a message to all clients to notify them that the server is shutting down.
+     * It also sends a message to all clients to notify them that the server is shutting down,
+     * and waits for the games to be saved.
      */
     @Override
     public void stop() {
         rmiServer.stop();
-        socketServer.stop();
+        try {
+            socketServer.stop();
+        } catch (RemoteException | NotBoundException e) {
+            System.err.println("Unable to stop the socket server.");
+        }
+        GamePersister persister = ServerController.getPersister();
+        persister.close();
+        System.out.printf("Games saved with %d writes (%d dropped), %.0f µs on average, %.0f µs at most.%n",
+                persister.getWrites(), persister.getCoalesced(), persister.getAverageWriteMicros(), persister.getMaxWriteMicros());
         System.exit(0);
     }
 }
@@ -1,12 +1,15 @@
 package it.polimi.ingsw.server;
 
 import it.polimi.ingsw.client.ClientCommunicationInterface;
+import it.polimi.ingsw.commons.Command;
 import it.polimi.ingsw.commons.Message;
+import it.polimi.ingsw.commons.MessageType;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Here go the methods that the client can call on the server.
@@ -15,11 +18,15 @@ public interface ServerCommunicationInterface extends Remote {
 
     int PORT_RMI = 1099;
     int PORT_SOCKET = 888;
-    ServerController controller = new ServerController();
-
-    // This method's implementation is basically identical to receiveMessage.
-    // I still have to figure out how to unify them: I could create a sendMessageToClient method
-    // in RMI too, but I still (think) I need different signatures for controller.addClient()
+    /**
+     * The games hosted by the server. Every client is routed to the
+     * {@link ServerController} of the game it is playing.
+     */
+    GameRegistry games = new GameRegistry();
+    /**
+     * The senders of the messages to the RMI clients, so that no remote call is made by the thread of a game.
+     */
+    RmiCallbacks callbacks = new RmiCallbacks();
 
     /**
      * Receive a message from a socket client and act accordingly.
@@ -37,379 +44,156 @@ public interface ServerCommunicationInterface extends Remote {
      * @throws RemoteException if something goes wrong.
      */
     default void receiveMessage(Message message, ClientCommunicationInterface client) throws RemoteException {
-        String category = message.getCategory();
+        MessageType type = message.getType();
+        if (type == MessageType.COMPLETE_LOGIN) {
+            login(client, message.getUsername(), message.getFirstGame());
+            return;
+        }
+        ServerController controller = games.getController(client);
+        if (controller == null) {
+            System.err.println("Received " + message.getCategory() + " from a client that is not part of any game.");
+            return;
+        }
+
+        Command command = Command.of(message);
+        if (command != null) {
+            receiveCommand(controller, command, client::getUsername, reply -> callbacks.send(client, reply));
+        } else {
+            System.out.println(message + " requested unknown");
+        }
+    }
+
+    /**
+     * Sends an RMI client to the game it has to join, then checks its username on the thread of that game.
+     *
+     * @param client    the client logging in
+     * @param username  the username of the client
+     * @param firstGame true if it's the first game of the client
+     */
+    private void login(ClientCommunicationInterface client, String username, boolean firstGame) {
+        games.join(username).thenAccept(controller ->
+                controller.execute(() -> checkUsername(controller, client, username, firstGame, controller.checkUsername(username))));
+    }
 
-        switch (category) {
-            case "ping" -> {
-                System.out.println("Received ping from " + client.getUsername());
-                controller.pong(client.getUsername());
-                controller.addPongLost(client.getUsername());
-                try {
-                    client.callBackSendMessage(new Message("pong"));
-                } catch (RemoteException e) {
-                    System.err.println("Error while sending pong to client.");
+    /**
+     * Handles a command sent by a client while playing, whatever its connection.
+     * The command is handled on the thread that received it, and only the changes
+     * to the game are run on the game's thread.
+     *
+     * @param controller the controller of the game the client is playing
+     * @param command    the command
+     * @param username   asks the client for its username, only called by the commands that need it
+     * @param reply      sends a message back to the client
+     * @throws RemoteException if the username can't be asked to the client
+     */
+    default void receiveCommand(ServerController controller, Command command, RemoteSupplier<String> username, Consumer<Message> reply) throws RemoteException {
+        switch (command) {
+            case Command.Ping ping -> {
+                String player = username.get();
+                if (player == null) {
+                    // The client is still logging in
+                    return;
                 }
+                System.out.println("Received ping from " + player);
+                controller.pong(player);
+                controller.addPongLost(player);
+                reply.accept(new Message("pong"));
             }
-            case "numOfPlayersMessage" -> {
-                int numberOfPlayers = message.getNumPlayer();
-                String isOk = controller.checkNumPlayer(numberOfPlayers);
+            case Command.NumberOfPlayers numberOfPlayers -> controller.execute(() -> {
+                String isOk = controller.checkNumPlayer(numberOfPlayers.numberOfPlayers());
                 if (!isOk.equals("ok")) {
-                    try {
-                        client.callBackSendMessage(new Message("numOfPlayersNotOK"));
-                    } catch (RemoteException e) {
-                        System.err.println("Error while sending numOfPlayersNotOK to client.");
-                    }
+                    reply.accept(new Message("numOfPlayersNotOK"));
                 } else {
-                    controller.setNumberOfPlayers(numberOfPlayers);
+                    controller.setNumberOfPlayers(numberOfPlayers.numberOfPlayers());
                     if (controller.checkRoom() == 1) {
-                        startGame();
+                        controller.startGame();
                     } else if (controller.checkRoom() == -1) {
-                        removePlayers();
-                        startGame();
+                        controller.removePlayers();
+                        controller.startGame();
                     } else {
-                        try {
-                            client.callBackSendMessage(new Message("waitingRoom"));
-                        } catch (RemoteException e) {
-                            System.err.println("Error while sending waitingRoom to client.");
-                        }
+                        reply.accept(new Message("waitingRoom"));
                     }
                 }
-            }
-            case "pick" -> {
-                if ("ok".equals(controller.checkPick(message.getPick()))) {
-                    try {
-                        client.callBackSendMessage(new Message(controller.getPicked(message.getPick())));
-                    } catch (RemoteException e) {
-                        System.err.println("Error while sending picked to client.");
-                    }
-                } else {
-                    try {
-                        client.callBackSendMessage(new Message("pickRetry"));
-                    } catch (RemoteException e) {
-                        System.err.println("Error while sending pickRetry to client.");
+            });
+            case Command.Pick pick -> {
+                List<Integer> coordinates = pick.coordinates();
+                controller.execute(() -> {
+                    if ("ok".equals(controller.checkPick(coordinates))) {
+                        reply.accept(new Message(controller.getPicked(coordinates)));
+                    } else {
+                        reply.accept(new Message("pickRetry"));
                     }
-                }
+                });
             }
-            case "insertMessage" -> {
-                if (controller.checkInsert(message.getInsert()) == 1) {
-                    sendUpdate();
-                    nextTurn();
-                } else if (controller.checkInsert(message.getInsert()) == 0) {
-                    try {
-                        client.callBackSendMessage(new Message("insertRetry", "notValidNumber"));
-                    } catch (RemoteException e) {
-                        System.err.println("Error while sending insertRetry to client.");
-                    }
-                } else if (controller.checkInsert(message.getInsert()) == -1) {
-                    try {
-                        client.callBackSendMessage(new Message("insertRetry", "notEnoughFreeCells"));
-                    } catch (RemoteException e) {
-                        System.err.println("Error while sending insertRetry to client.");
-                    }
+            case Command.Insert insert -> controller.execute(() -> {
+                int checkInsert = controller.checkInsert(insert.column());
+                if (checkInsert == 1) {
+                    controller.sendUpdate();
+                    controller.nextTurn();
+                } else if (checkInsert == 0) {
+                    reply.accept(new Message("insertRetry", "notValidNumber"));
+                } else if (checkInsert == -1) {
+                    reply.accept(new Message("insertRetry", "notEnoughFreeCells"));
                 }
-                // TODO: return an error message if the insert is not valid, otherwise the game will freeze
-            }
-            case "sort" -> controller.rearrangePicked(message.getSort());
-            case "completeLogin" -> {
-                String username = message.getUsername();
-                int checkStatus = controller.checkUsername(username);
-                checkUsername(client, message.getUsername(), message.getFirstGame(), checkStatus);
-            }
-            default -> System.out.println(message + " requested unknown");
-        }
-    }
-
-    /**
-     * Starts a Thread that will check periodically (every 20 seconds) if a client is still connected. If a pong is missed, the thread waits ither 10 seconds before checking again. If the client is not connected, it is removed from the rmi/tcp Clients hashMap.
-     *
-     * @param client the client that sent the message.
-     * @throws RemoteException if something goes wrong.
-     */
-
-    default void startPingThread(ClientCommunicationInterface client) throws RemoteException {
-        String username = null;
-        try {
-            username = client.getUsername();
-        } catch (RemoteException e) {
-            System.err.println("Error while getting username from client.");
-        }
-        String finalUsername = username;
-
-        Thread checkThread = new Thread(() -> {
-            while (true) {
-                try {
-                    Thread.sleep(20000);
-                    if (controller.gameModel == null) {
-                        break;
+            });
+            case Command.Sort sort -> controller.execute(() -> controller.rearrangePicked(sort.order()));
+            case Command.SnapshotRequest request -> {
+                String player = username.get();
+                controller.execute(() -> {
+                    // The client has missed a delta
+                    if (controller.isGameStarted() && controller.gameModel != null) {
+                        reply.accept(controller.getSnapshot(player));
                     }
-                    if (!controller.pongReceived.contains(finalUsername) && !controller.disconnectedPlayers.contains(finalUsername)) {
-                        System.err.println("Ping not received from " + finalUsername + ". Disconnecting.");
-                        Thread.sleep(10000);
-                        if (!controller.pongReceived.contains(finalUsername)) {
-                            disconnect(finalUsername);
-                            break;
-                        }
-                    } else {
-                        controller.pongReceived.remove(finalUsername);
-                    }
-                } catch (InterruptedException | RemoteException ignored) {
-
-                }
-            }
-        });
-        controller.addCheckThread(checkThread);
-        checkThread.start();
-    }
-
-    /**
-     * Adds a player to the disconnected players list and changes the turn if the
-     * disconnected player was the current player.
-     *
-     * @param username the username of the disconnected player
-     */
-    default void disconnect(String username) throws RemoteException {
-        System.err.println(username + " disconnected.");
-        controller.disconnect(username);
-        if (controller.disconnectedPlayers.size() == controller.numberOfPlayers - 1) {
-            // If there is only one player left, sendAll actually sends the message to the only player left,
-            // telling him that they are alone. They will wait for the other players to reconnect, and if none of them
-            // reconnects, they will win.
-            sendAll(new Message("youAloneBitch"));
-        } else {
-            if (controller.gameModel != null && controller.getCurrentPlayer().equals(username)) {
-                nextTurn();
+                });
             }
         }
-        controller.removeClientByUsername(username);
     }
 
     /**
-     * Removes the players that have logged in after the game has started.
+     * A value that may have to be asked to an RMI client.
      *
-     * @throws RemoteException if the connection fails
+     * @param <T> the type of the value
      */
-
-    default void removePlayers() throws RemoteException {
-        HashMap<String, ClientCommunicationInterface> rmiClients = controller.getRmiClients();
-        HashMap<String, SocketClientHandler> tcpClients = controller.getTcpClients();
-        List<String> toRemove = controller.getExtraPlayers();
-        for (String username : toRemove) {
-            if (rmiClients.containsKey(username)) {
-                try {
-                    rmiClients.get(username).callBackSendMessage(new Message("removePlayer"));
-                    rmiClients.remove(username);
-                } catch (RemoteException e) {
-                    System.err.println("Error while removing player " + username);
-                }
-            } else {
-                tcpClients.get(username).sendMessageToClient(new Message("removePlayer"));
-                tcpClients.remove(username);
-            }
-            controller.removePlayers(toRemove);
-        }
+    @FunctionalInterface
+    interface RemoteSupplier<T> {
+        T get() throws RemoteException;
     }
 
     /**
      * Sends the game back to the client that has reconnected.
+     * Like the other methods run by the thread of the game, it makes no remote call: the client learns
+     * its username from the message sent to it.
      *
-     * @param client the client that has reconnected
-     * @throws RemoteException if the connection fails
+     * @param controller the controller of the game the client is playing
+     * @param client     the client that has reconnected
+     * @param username   the username of the client
      */
-    default void resendGameToReconnectedClient(ClientCommunicationInterface client) throws RemoteException {
-        int position = controller.getPositionByUsername(client.getUsername());
-        System.out.println("Sending game to " + client.getUsername() + ", who just reconnected.");
+    private void resendGameToReconnectedClient(ServerController controller, ClientCommunicationInterface client, String username) {
+        System.out.println("Sending game to " + username + ", who just reconnected.");
 
-        try {
-            client.callBackSendMessage(new Message("username", client.getUsername()));
-            Message game = new Message(controller.getPersonalGoalCard(position), controller.getCommonGoals(), controller.getBookshelves(), controller.getBoard(), controller.getTopOfScoring(), controller.getFirstPlayer(), controller.getAllCurrentPoints());
-            client.callBackSendMessage(game);
-        } catch (RemoteException e) {
-            e.printStackTrace();
-        }
+        callbacks.send(client, new Message("username", username));
+        callbacks.send(client, controller.getGame(username));
         // This is one of the few differences from the Socket implementation
-        startPingThread(client);
+        controller.startPingCheck(username);
 
-        sendAllExcept(client.getUsername(), new Message("reconnected", client.getUsername(), controller.gameModel.getCurrentPlayer().getUsername()));
-        System.out.println("Sent reconnected message to all clients except " + client.getUsername());
-        sendTurn(client);
+        controller.sendAllExcept(username, new Message("reconnected", username, controller.gameModel.getCurrentPlayer().getUsername()));
+        System.out.println("Sent reconnected message to all clients except " + username);
+        sendTurn(controller, client, username);
     }
 
     /**
      * Tells a client if it's his turn or another player's turn.
      *
-     * @param client the client to whom the message is sent
-     * @throws RemoteException if the connection fails
+     * @param controller the controller of the game the client is playing
+     * @param client     the client to whom the message is sent
+     * @param username   the username of the client
      */
-    default void sendTurn(ClientCommunicationInterface client) throws RemoteException {
+    private void sendTurn(ServerController controller, ClientCommunicationInterface client, String username) {
         String currentPlayer = controller.getCurrentPlayer();
-        if (currentPlayer.equals(client.getUsername())) {
-            try {
-                client.callBackSendMessage(new Message("turn"));
-            } catch (RemoteException e) {
-                System.err.println("Error while sending turn to " + client.getUsername());
-            }
-        } else {
-            try {
-                client.callBackSendMessage(new Message("otherTurn", currentPlayer));
-            } catch (RemoteException e) {
-                System.err.println("Error while sending otherTurn to " + client.getUsername());
-            }
-        }
-    }
-
-    /**
-     * Changes the turn, checks if the game has ended or if it's the
-     * last round and saves the game.
-     *
-     * @throws RemoteException if this connection fails
-     */
-    default void nextTurn() throws RemoteException {
-        controller.saveGame();
-        controller.changeTurn();
-
-        if (controller.checkGameStatus() == -1) {
-            // The game has ended
-            controller.setWinner();
-            sendAll(new Message(controller.getWinners(), controller.getLosers()));
-            controller.resetSavedGame();
-
-        } else if (controller.checkGameStatus() == 0) {
-            // It's the last round
-            sendAll(new Message("lastRound"));
-            turn();
+        if (currentPlayer.equals(username)) {
+            callbacks.send(client, new Message("turn"));
         } else {
-            // The game is still going
-            turn();
-        }
-    }
-
-    /**
-     * Sends the starter game to all the clients.
-     *
-     * @throws RemoteException if the connection fails
-     */
-    default void startGame() throws RemoteException {
-        HashMap<String, ClientCommunicationInterface> rmiClients = controller.getRmiClients();
-        HashMap<String, SocketClientHandler> tcpClients = controller.getTcpClients();
-
-        for (String username : tcpClients.keySet()) {
-            int position = controller.getPositionByUsername(username);
-            Message myGame = new Message(controller.getPersonalGoalCard(position), controller.getCommonGoals(), controller.getBookshelves(), controller.getBoard(), controller.getTopOfScoring(), controller.getFirstPlayer(), controller.getInitialPoints());
-            tcpClients.get(username).sendMessageToClient(myGame);
-        }
-        for (String username : rmiClients.keySet()) {
-            int position = controller.getPositionByUsername(username);
-            Message myGame = new Message(controller.getPersonalGoalCard(position), controller.getCommonGoals(), controller.getBookshelves(), controller.getBoard(), controller.getTopOfScoring(), controller.getFirstPlayer(), controller.getInitialPoints());
-            try {
-                rmiClients.get(username).callBackSendMessage(myGame);
-            } catch (RemoteException e) {
-                // e.printStackTrace();
-                System.err.println("Error while sending game to " + username);
-            }
-        }
-
-        controller.saveGame();
-        turn();
-    }
-
-    /**
-     * Sends a turn message to all client, there are two types:
-     * <ul>
-     *     <li> "turn": sent to the current player</li>
-     *     <li> "otherTurn", username: sent to all the other players</li>
-     * </ul>
-     *
-     * @throws RemoteException if the connection fails
-     */
-    default void turn() throws RemoteException {
-        String currentPlayer = controller.getCurrentPlayer();
-        Message otherTurn = new Message("otherTurn", currentPlayer);
-        Message turn = new Message("turn");
-        System.out.println("sending turn to " + currentPlayer);
-        sendAllExcept(currentPlayer, otherTurn);
-        if (controller.getRmiClients().containsKey(currentPlayer)) {
-            try {
-                controller.getRmiClients().get(currentPlayer).callBackSendMessage(turn);
-            } catch (RemoteException e) {
-                System.err.println("Error while sending turn to " + currentPlayer);
-            }
-        }
-        if (controller.getTcpClients().containsKey(currentPlayer))
-            controller.getTcpClients().get(currentPlayer).sendMessageToClient(turn);
-    }
-
-    /**
-     * Sends an update message to all the clients.
-     *
-     * @throws RemoteException if the connection fails
-     */
-    default void sendUpdate() throws RemoteException {
-        HashMap<String, ClientCommunicationInterface> rmiClients = controller.getRmiClients();
-        HashMap<String, SocketClientHandler> tcpClients = controller.getTcpClients();
-        for (String username : tcpClients.keySet()) {
-            int position = controller.getPositionByUsername(username);
-            Message myGame = new Message("update", controller.getBookshelves(), controller.getBoard(), controller.allPoints(position), controller.getTopOfScoring());
-            tcpClients.get(username).sendMessageToClient(myGame);
-        }
-        for (String username : rmiClients.keySet()) {
-            int position = controller.getPositionByUsername(username);
-            Message myGame = new Message("update", controller.getBookshelves(), controller.getBoard(), controller.allPoints(position), controller.getTopOfScoring());
-            try {
-                rmiClients.get(username).callBackSendMessage(myGame);
-            } catch (RemoteException e) {
-                // e.printStackTrace();
-                System.err.println("Impossible to send update to " + username + " because they probably disconnected.");
-            }
-        }
-    }
-
-    /**
-     * Sends a message to all the clients.
-     *
-     * @param message the message to send
-     * @throws RemoteException if the connection fails
-     */
-    default void sendAll(Message message) throws RemoteException {
-
-        HashMap<String, ClientCommunicationInterface> rmiClients = controller.getRmiClients();
-        HashMap<String, SocketClientHandler> tcpClients = controller.getTcpClients();
-        for (String username : tcpClients.keySet()) {
-            tcpClients.get(username).sendMessageToClient(message);
-        }
-        for (String username : rmiClients.keySet()) {
-            try {
-                rmiClients.get(username).callBackSendMessage(message);
-            } catch (RemoteException e) {
-                System.err.println("Impossible to send message to " + username + " because they probably disconnected.");
-            }
-        }
-    }
-
-    /**
-     * Sends a message to all the clients except the one that identifies
-     * the player's name passed as parameter.
-     *
-     * @param player  the player that won't receive the message
-     * @param message the message to send
-     * @throws RemoteException if the connection fails
-     */
-    default void sendAllExcept(String player, Message message) throws RemoteException {
-        HashMap<String, ClientCommunicationInterface> rmiClients = controller.getRmiClients();
-        HashMap<String, SocketClientHandler> tcpClients = controller.getTcpClients();
-        for (String username : tcpClients.keySet()) {
-            if (!controller.disconnectedPlayers.contains(username) && !username.equals(player)) {
-                tcpClients.get(username).sendMessageToClient(message);
-            }
-        }
-        for (String username : rmiClients.keySet()) {
-            if (!controller.disconnectedPlayers.contains(username) && !username.equals(player)) {
-                try {
-                    rmiClients.get(username).callBackSendMessage(message);
-                } catch (RemoteException e) {
-                    // e.printStackTrace();
-                    System.err.println("Impossible to send message to " + username + " because they probably disconnected.");
-                }
-            }
+            callbacks.send(client, new Message("otherTurn", currentPlayer));
         }
     }
 
@@ -421,104 +205,74 @@ public interface ServerCommunicationInterface extends Remote {
      *     <li> checkStatus 3: the username is not valid butthe player can login because they have disconnected and the server already noticed </li>
      * </ul>
      *
+     * @param controller  the controller of the game the client is joining
      * @param client      the client to send the message to
      * @param username    the username of the client
      * @param firstGame   true if it's the first game of the client
      * @param checkStatus the status of the check
-     * @throws RemoteException if the connection fails
      */
-
-    default void checkUsername(ClientCommunicationInterface client, String username, boolean firstGame, int checkStatus) throws RemoteException {
+    private void checkUsername(ServerController controller, ClientCommunicationInterface client, String username, boolean firstGame, int checkStatus) {
         switch (checkStatus) {
             case 1 -> {
                 if (controller.isGameStarted()) {
-                    try {
-                        client.callBackSendMessage(new Message("gameAlreadyStarted"));
-                    } catch (RemoteException e) {
-                        System.err.println("Error while sending message to " + username);
-                        throw new RemoteException();
-                    }
+                    // The lobby has started since the client was sent to it: the next one is waiting
+                    login(client, username, firstGame);
                 } else {
-                    try {
-                        client.callBackSendMessage(new Message("username", username));
-                    } catch (RemoteException e) {
-                        System.err.println("Error while sending message to " + username);
-                        throw new RemoteException();
-                    }
+                    // The client sets its username when this message reaches it, through its outbox
+                    callbacks.send(client, new Message("username", username));
 
                     controller.addPlayer(username, firstGame);
                     System.out.println(username + " logged in.");
 
-                    client.setUsername(username);
                     controller.addClient(username, client);
+                    games.bind(username, controller);
+                    games.bind(client, controller);
 
                     // This is one of the few differences from the Socket implementation
-                    startPingThread(client);
+                    controller.startPingCheck(username);
 
                     controller.startRoom();
 
                     if (controller.isFirst()) {
                         // Let the first player choose the number of players
-                        try {
-                            client.callBackSendMessage(new Message("chooseNumOfPlayer"));
-                        } catch (RemoteException e) {
-                            System.err.println("Error while sending message to " + username);
-                            throw new RemoteException();
-                        }
+                        callbacks.send(client, new Message("chooseNumOfPlayer"));
                     } else {
-                        try {
-                            client.callBackSendMessage(new Message("waitingRoom"));
-                        } catch (RemoteException e) {
-                            System.err.println("Error while sending message to " + username);
-                            throw new RemoteException();
-                        }
+                        callbacks.send(client, new Message("waitingRoom"));
 
                         if (controller.checkRoom() == 1) {
-                            startGame();
+                            controller.startGame();
                             System.out.println("Game started.");
                         } else if (controller.checkRoom() == -1) {
-                            removePlayers();
+                            controller.removePlayers();
                         }
                     }
                 }
             }
             case 0 -> {
                 // The username is already taken
-                try {
-                    client.callBackSendMessage(new Message("checkingDisconnection"));
-                } catch (RemoteException e) {
-                    System.err.println("Error while sending message to " + username);
-                    throw new RemoteException();
-                }
-                try {
-                    Thread.sleep(60000);
-                } catch (InterruptedException e) {
-                    System.err.println("Error while sleeping.");
-                }
-                if (controller.checkUsername(username) == -1) {
-                    System.out.println(username + " reconnected.");
-                    client.setUsername(username);
-                    controller.addClient(username, client);
-                    resendGameToReconnectedClient(client);
-                } else {
-                    System.out.println(username + " requested login, but the username is already taken.");
-                    try {
-                        client.callBackSendMessage(new Message("UsernameRetry"));
-                        throw new RemoteException();
-                    } catch (RemoteException e) {
-                        System.err.println("Error while sending message to " + username);
+                callbacks.send(client, new Message("checkingDisconnection"));
+                // Wait for the ping check to notice if the old client has disconnected
+                controller.schedule(() -> {
+                    if (controller.checkUsername(username) == -1) {
+                        System.out.println(username + " reconnected.");
+                        controller.addClient(username, client);
+                        games.bind(client, controller);
+                        resendGameToReconnectedClient(controller, client, username);
+                    } else {
+                        System.out.println(username + " requested login, but the username is already taken.");
+                        callbacks.send(client, new Message("UsernameRetry"));
                     }
-                }
+                }, 60, TimeUnit.SECONDS);
             }
             case -1 -> {
                 // The username is already taken, but the player was disconnected and is trying to reconnect
                 System.out.println(username + " reconnected.");
-                client.setUsername(username);
                 controller.addClient(username, client);
+                games.bind(client, controller);
                 if (!controller.isGameLoaded) {
-                    resendGameToReconnectedClient(client);
+                    resendGameToReconnectedClient(controller, client, username);
                 } else {
-                    resendToReconnectAfterServerDown(client);
+                    resendToReconnectAfterServerDown(controller, client, username);
                 }
             }
         }
@@ -527,30 +281,20 @@ public interface ServerCommunicationInterface extends Remote {
     /**
      * Sends the game to the specified client after the server has gone back online.
      *
-     * @param client the client to send the game to
-     * @throws RemoteException if the connection fails
+     * @param controller the controller of the game the client is playing
+     * @param client     the client to send the game to
+     * @param username   the username of the client
      */
-    default void resendToReconnectAfterServerDown(ClientCommunicationInterface client) throws RemoteException {
-        int position = controller.getPositionByUsername(client.getUsername());
-        // System.out.println("Sending game to " + client.getUsername() + ", who just reconnected.");
-        startPingThread(client);
-        try {
-            client.callBackSendMessage(new Message("username", client.getUsername()));
-            Message game = new Message(controller.getPersonalGoalCard(position), controller.getCommonGoals(), controller.getBookshelves(), controller.getBoard(), controller.getTopOfScoring(), controller.getFirstPlayer(), controller.getAllCurrentPoints());
-            client.callBackSendMessage(game);
-        } catch (RemoteException e) {
-            e.printStackTrace();
-        }
-        if (controller.getRmiClients().size() + controller.getTcpClients().size() != controller.numberOfPlayers) {
-            try {
-                client.callBackSendMessage(new Message("waitingRoomForReconnect"));
-            } catch (RemoteException e) {
-                System.err.println("Error while sending message to " + client.getUsername());
-            }
+    private void resendToReconnectAfterServerDown(ServerController controller, ClientCommunicationInterface client, String username) {
+        controller.startPingCheck(username);
+        callbacks.send(client, new Message("username", username));
+        callbacks.send(client, controller.getGame(username));
+        if (controller.countConnectedPlayers() != controller.numberOfPlayers) {
+            callbacks.send(client, new Message("waitingRoomForReconnect"));
         } else {
             controller.setIsLoaded(false);
-            sendAll(new Message("AllIn"));
-            nextTurn();
+            controller.sendAll(new Message("AllIn"));
+            controller.nextTurn();
         }
     }
 }
@@ -1,6 +1,7 @@
 package it.polimi.ingsw.server;
 
 import it.polimi.ingsw.client.ClientCommunicationInterface;
+import it.polimi.ingsw.commons.Broadcast;
 import it.polimi.ingsw.commons.Message;
 import it.polimi.ingsw.server.model.*;
 import it.polimi.ingsw.utils.Coordinates;
@@ -8,65 +9,153 @@ import it.polimi.ingsw.utils.Coordinates;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import static it.polimi.ingsw.server.ServerCommunicationInterface.games;
+
+/**
+ * Controls a single game hosted by the server.
+ * The server can host many games at the same time, each one with its own
+ * controller, which are kept in a {@link GameRegistry}.
+ */
 public class ServerController {
 
     /**
-     * The names of the players that have lost the connection
+     * The directory where the games are saved, by game id.
+     */
+    public static final String SAVES_DIRECTORY = "saves";
+    /**
+     * The number of turns between two saves of the whole game: the turns in between are only added to the journal.
      */
-    public static final String BACKUP_FILE = "backUp.json";
-    public final List<String> disconnectedPlayers;
-    public final HashMap<String, Integer> pongLost;
-    public final List<String> pongReceived;
+    public static final int SNAPSHOT_INTERVAL = 10;
+    /**
+     * The number of seconds a client can go without sending a ping before being disconnected.
+     */
+    public static final int PING_TIMEOUT = 30;
+    /**
+     * Checks the pings of the clients of all the games.
+     */
+    private static final HeartbeatWheel heartbeats = new HeartbeatWheel(1, TimeUnit.SECONDS, 64);
+    /**
+     * Saves the games of the server, away from their threads.
+     */
+    private static final GamePersister persister = new GamePersister(new SnapshotStore(new File(SAVES_DIRECTORY)), GamePersister.Durability.FLUSH);
     public final HashMap<String, Integer> winners = new HashMap<>();
     public final HashMap<String, Integer> losers = new HashMap<>();
     private final List<Player> players;
-    private final HashMap<String, ClientCommunicationInterface> rmiClients;
-    private final HashMap<String, SocketClientHandler> tcpClients;
+    /**
+     * The connections of the players and whether they have lost them.
+     */
+    private final SessionTable sessions;
     private final List<Integer> finalPoints;
-    private final List<Thread> checkThreads;
+    /**
+     * The commands waiting to be run on this game after a delay.
+     */
+    private final List<ScheduledFuture<?>> delayedCommands;
+    /**
+     * The mailbox of this game: every change to the state of the game goes through it.
+     */
+    private final GameExecutor executor;
+    /**
+     * The state of the game last sent to the clients, used to send only what changes after every turn.
+     */
+    private final GameStateTracker stateTracker;
+    /**
+     * The moves played since the game was last saved as a whole.
+     */
+    private final TurnJournal journal;
+    /**
+     * The id of the game controlled by this controller.
+     */
+    private final int id;
     public int numberOfPlayers = 0;
     public boolean isGameLoaded = false;
     public GameModel gameModel;
-    private boolean gameIsStarted = false;
+    /**
+     * Read by the threads that pick the lobby for the players logging in.
+     */
+    private volatile boolean gameIsStarted = false;
     private List<Item> currentPicked;
     private Room room = null;
+    /**
+     * The version of the last save of the whole game, followed by the journal.
+     */
+    private long savedVersion = 0;
+    private int turnsSinceSave = 0;
 
     /**
      * Constructor for the ServerController class
-     * It initializes the lists of players, winners, pings and disconnectedPlayers players
-     * It also initializes the HashMap of RMI clients
+     * It initializes the lists of players and winners
+     * It also initializes the table of the sessions of the players
      */
     public ServerController() {
+        this(0);
+    }
+
+    /**
+     * Creates the controller of the game with the given id.
+     *
+     * @param id the id of the game
+     * @see #ServerController()
+     */
+    public ServerController(int id) {
+        this.id = id;
         players = new ArrayList<>();
         currentPicked = new ArrayList<>();
-        disconnectedPlayers = new ArrayList<>();
-        rmiClients = new HashMap<>();
-        tcpClients = new HashMap<>();
-        pongLost = new HashMap<>();
-        pongReceived = new ArrayList<>();
+        sessions = new SessionTable(this::disconnectSlowConsumer);
         finalPoints = new ArrayList<>();
-        checkThreads = new ArrayList<>();
+        delayedCommands = new ArrayList<>();
+        executor = new GameExecutor();
+        stateTracker = new GameStateTracker();
+        journal = new TurnJournal(id, persister);
     }
 
+    /**
+     * Registers a pong received from a player. Sessions are thread safe,
+     * so this can be called from the thread that received the ping.
+     *
+     * @param username the username of the player
+     */
     public void pong(String username) {
-        if (!pongReceived.contains(username)) {
-            pongReceived.add(username);
+        Session session = sessions.get(username);
+        if (session != null) {
+            session.pong();
         }
-        pongLost.remove(username);
-        pongLost.put(username, 0);
     }
 
     public void addPongLost(String username) {
-        int currentPongLost = pongLost.get(username);
-        pongLost.remove(username);
-        pongLost.put(username, currentPongLost + 1);
+        Session session = sessions.get(username);
+        if (session != null) {
+            session.addPongLost();
+        }
     }
 
     public void removeClientByUsername(String username) {
-        tcpClients.remove(username);
-        rmiClients.remove(username);
+        sessions.dropConnection(username);
+    }
+
+    /**
+     * @return the persister that saves the games of the server
+     */
+    public static GamePersister getPersister() {
+        return persister;
+    }
+
+    /**
+     * @return the id of the game controlled by this controller
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return the usernames of the players of this game
+     */
+    public List<String> getUsernames() {
+        return players.stream().map(Player::getUsername).toList();
     }
 
     public void setIsLoaded(boolean isLoaded) {
@@ -74,38 +163,59 @@ public class ServerController {
     }
 
     /**
-     * Checks whether the game has been saved or not. This is done by
-     * checking if the JSON that contains the state of the game exists.
-     *
-     * @return true if the game has been saved, false otherwise
+     * Keeps the commands submitted to this game waiting, until {@link #resumeCommands()}.
+     * Used while a saved game is loaded, so that the players coming back wait for it.
      */
-    public boolean isGameSaved() {
-        File jsonGame = new File(BACKUP_FILE);
-        return jsonGame.exists();
+    public void suspendCommands() {
+        executor.suspend();
     }
 
     /**
-     * Loads the game saved in the JSON file.
+     * Runs the commands that have been waiting since {@link #suspendCommands()}.
+     */
+    public void resumeCommands() {
+        executor.resume();
+    }
+
+    /**
+     * Loads a saved game, then replays the turns played since in the journal.
+     * If the game was saved with another id, it is saved again with the id of this controller.
+     * Must not run at the same time as the commands of the game.
      *
-     * @throws IOException if the file does not exist
+     * @param savedId the id the game was saved with
+     * @param saved   the game, as read from the store
+     * @throws IOException if the game can't be read
      */
-    public void loadLastGame() throws IOException {
-        File jsonGame = new File(BACKUP_FILE);
-        Message lastGame = new Message(jsonGame);
-        players.addAll(lastGame.getPlayers());
+    public void loadGame(int savedId, SnapshotStore.SavedGame saved) throws IOException {
+        GameSnapshot snapshot;
+        try {
+            snapshot = GameSnapshot.decode(saved.snapshot());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Game " + savedId + " is not valid", e);
+        }
+        players.addAll(snapshot.players());
         numberOfPlayers = players.size();
         System.out.println("Loading last game...");
-        Board board = new Board(lastGame.getBoard().getBoardMatrix(), lastGame.getItemBag(), players.size());
-        gameModel = new GameModel(players, board, Player.getCommonGoals());
-        gameModel.setGame(lastGame.getCommonGoals(players.size()));
-        String currentPlayer = lastGame.getCurrentPlayer();
+        List<CommonGoal> commonGoals = snapshot.commonGoals();
+        gameModel = new GameModel(players, snapshot.board(), commonGoals);
+        gameModel.setGame(commonGoals);
+        gameModel.setLastRound(snapshot.lastRound());
         for (Player player : players) {
-            if (player.getUsername().equals(currentPlayer)) {
+            if (player.getUsername().equals(snapshot.currentPlayer())) {
                 gameModel.setCurrentPlayer(player);
                 break;
             }
         }
-        disconnectedPlayers.addAll(players.stream().map(Player::getUsername).toList());
+        savedVersion = saved.version();
+        turnsSinceSave = journal.replay(saved.version(), saved.journal(), journalReplay());
+        System.out.println("Replayed " + turnsSinceSave + " turns from the journal");
+        if (savedId != id) {
+            saveWholeGame();
+            persister.delete(savedId);
+        }
+        for (Player player : players) {
+            sessions.markDisconnected(player.getUsername());
+        }
         isGameLoaded = true;
         gameIsStarted = true;
         for (Player p : players) {
@@ -116,13 +226,69 @@ public class ServerController {
     }
 
     /**
-     * Adds a player to the list of disconnected players
+     * @return the moves of the journal applied to the game loaded, the same way they were played
+     */
+    private TurnJournal.Replay journalReplay() {
+        return new TurnJournal.Replay() {
+            @Override
+            public void pick(List<Integer> coordinates) {
+                currentPicked = gameModel.getBoard().pickFromBoard(createCoordinateList(coordinates));
+            }
+
+            @Override
+            public void sort(List<Integer> order) {
+                currentPicked = gameModel.getCurrentPlayer().rearrangePickedItems(currentPicked, order);
+            }
+
+            @Override
+            public void insert(int column) {
+                gameModel.move(currentPicked, column);
+            }
+
+            @Override
+            public void refill(List<Integer> draws) {
+                gameModel.getBoard().fill(draws);
+            }
+
+            @Override
+            public void turn(int player) {
+                gameModel.setCurrentPlayer(players.get(player));
+            }
+        };
+    }
+
+    /**
+     * Adds a player to the list of disconnected players and changes the turn if the
+     * disconnected player was the current player.
      *
      * @param username the identifier of the disconnected player
      */
     public void disconnect(String username) {
-        disconnectedPlayers.add(username);
-        removeClientByUsername(username);
+        System.err.println(username + " disconnected.");
+        sessions.markDisconnected(username);
+        if (sessions.countDisconnected() == numberOfPlayers - 1) {
+            // If there is only one player left, sendAll actually sends the message to the only player left,
+            // telling him that they are alone. They will wait for the other players to reconnect, and if none of them
+            // reconnects, they will win.
+            sendAll(new Message("youAloneBitch"));
+        } else {
+            if (gameModel != null && getCurrentPlayer().equals(username)) {
+                nextTurn();
+            }
+        }
+    }
+
+    /**
+     * Disconnects a player whose client can't keep up with the messages of the game.
+     *
+     * @param username the username of the player
+     */
+    private void disconnectSlowConsumer(String username) {
+        execute(() -> {
+            if (!sessions.isDisconnected(username)) {
+                disconnect(username);
+            }
+        });
     }
 
     public void setNumberOfPlayers(int numberOfPlayers) {
@@ -166,7 +332,7 @@ public class ServerController {
      * @param client   is the client associated to the player
      */
     public void addClient(String username, ClientCommunicationInterface client) {
-        rmiClients.put(username, client);
+        sessions.connect(username, ClientConnection.of(client));
     }
 
     /**
@@ -176,21 +342,21 @@ public class ServerController {
      * @param client   the client associated to the player
      */
     public void addClient(String username, SocketClientHandler client) {
-        tcpClients.put(username, client);
+        sessions.connect(username, ClientConnection.of(client));
     }
 
     /**
-     * @return hashmap of RMI clients
+     * @return the sessions of the players of this game
      */
-    public HashMap<String, ClientCommunicationInterface> getRmiClients() {
-        return rmiClients;
+    public SessionTable getSessions() {
+        return sessions;
     }
 
     /**
-     * @return hashmap of TCP clients
+     * @return the number of players connected to this game
      */
-    public HashMap<String, SocketClientHandler> getTcpClients() {
-        return tcpClients;
+    public int countConnectedPlayers() {
+        return sessions.countConnected();
     }
 
     /**
@@ -199,7 +365,7 @@ public class ServerController {
      * <ul>
      *   <li>1: the username is available</li>
      *   <li>0: the username is already taken</li>
-     *   <li>-1: the username was disconnectedPlayers</li>
+     *   <li>-1: the username was disconnected</li>
      *   <li>-2: the username has reconnected after the server went down</li>
      * </ul>
      */
@@ -209,8 +375,7 @@ public class ServerController {
         // }
         for (Player player : players) {
             if (player.getUsername().equals(username)) {
-                if (disconnectedPlayers.contains(username)) {
-                    disconnectedPlayers.remove(username);
+                if (sessions.markReconnected(username)) {
                     return -1;
                 }
                 return 0;
@@ -254,9 +419,7 @@ public class ServerController {
      */
     public void startRoom() {
         if (room == null) {
-            Random random = new Random();
-            int idRoom = random.nextInt(1000);
-            room = new Room(idRoom);
+            room = new Room(id);
             players.get(players.size() - 1).setIsFirstPlayer(true);
             room.addPlayer(players.get(players.size() - 1));
         } else if (!room.full()) {
@@ -332,7 +495,7 @@ public class ServerController {
     }
 
     public List<CommonGoal> getCommonGoals() {
-        return Player.getCommonGoals();
+        return gameModel.getCommonGoals();
     }
 
     /**
@@ -352,7 +515,7 @@ public class ServerController {
      */
     public Board getBoard() {
         if (refill()) {
-            gameModel.getBoard().fill();
+            journal.refill(gameModel.getBoard().fill());
         }
         return gameModel.getBoard();
     }
@@ -408,17 +571,14 @@ public class ServerController {
 
         int currentPlayerIndex = players.indexOf(gameModel.getCurrentPlayer());
         int nextPlayerIndex = (currentPlayerIndex + 1) % players.size();
-        while (disconnectedPlayers.contains(players.get(nextPlayerIndex).getUsername())) {
+        while (sessions.isDisconnected(players.get(nextPlayerIndex).getUsername())) {
             nextPlayerIndex = (nextPlayerIndex + 1) % players.size();
         }
-        if (gameModel.isLastRound()) {
-            if (players.get(nextPlayerIndex).isFirstPlayer()) {
-                gameModel.setHasGameEnded(true);
-            } else {
-                gameModel.setCurrentPlayer(players.get(nextPlayerIndex));
-            }
+        if (gameModel.isLastRound() && players.get(nextPlayerIndex).isFirstPlayer()) {
+            gameModel.setHasGameEnded(true);
         } else {
             gameModel.setCurrentPlayer(players.get(nextPlayerIndex));
+            journal.turn(nextPlayerIndex);
         }
     }
 
@@ -476,6 +636,7 @@ public class ServerController {
             currentPickedCoordinates.add(new Coordinates(picked.get(i), picked.get(i + 1)));
         }
         currentPicked = gameModel.getBoard().pickFromBoard(currentPickedCoordinates);
+        journal.pick(picked);
         return currentPicked;
     }
 
@@ -486,6 +647,7 @@ public class ServerController {
      */
     public void rearrangePicked(List<Integer> sort) {
         currentPicked = gameModel.getCurrentPlayer().rearrangePickedItems(currentPicked, sort);
+        journal.sort(sort);
     }
 
     /**
@@ -511,12 +673,35 @@ public class ServerController {
         }
 
         gameModel.move(currentPicked, column);
+        journal.insert(column);
         System.out.println("You have inserted the picked items in the bookshelf");
         return 1;
     }
 
+    /**
+     * Saves the game at the end of a turn. The whole game is saved only every
+     * {@value #SNAPSHOT_INTERVAL} turns: in between the turn is only ended in the journal,
+     * which already has its moves. The files are written by the {@link GamePersister},
+     * so the game doesn't wait for the disk.
+     */
     public void saveGame() {
-        new Message(players, getCommonGoals(), getBoard(), gameModel.getCurrentPlayer().getUsername());
+        // Refills the board first, if needed
+        getBoard();
+        if (journal.isOpen() && turnsSinceSave < SNAPSHOT_INTERVAL) {
+            journal.checkpoint();
+            turnsSinceSave++;
+            return;
+        }
+        saveWholeGame();
+    }
+
+    /**
+     * Saves the whole game as a {@link GameSnapshot}, starting a new journal.
+     */
+    private void saveWholeGame() {
+        persister.save(id, ++savedVersion, GameSnapshot.of(gameModel).encode());
+        journal.reset(savedVersion);
+        turnsSinceSave = 0;
     }
 
     public List<Coordinates> createCoordinateList(List<Integer> integers) {
@@ -531,7 +716,7 @@ public class ServerController {
      * @return true if the player is the first player, false otherwise
      */
     public boolean isFirst() {
-        return tcpClients.size() + rmiClients.size() == 1;
+        return sessions.countConnected() == 1;
     }
 
     /**
@@ -567,22 +752,12 @@ public class ServerController {
      * Resets information about the game on the server. Used when a game ends.
      */
     public void resetSavedGame() {
-        File file = new File(BACKUP_FILE);
-        boolean deleted = file.delete();
-        if (!deleted) {
-            System.err.println("Error in deleting the saved game.");
-        }
-        for (String username : tcpClients.keySet()) {
-            tcpClients.get(username).listenThread.interrupt();
-        }
-        disconnectedPlayers.clear();
-        pongLost.clear();
-        pongReceived.clear();
+        journal.delete();
+        turnsSinceSave = 0;
+        sessions.clear();
         winners.clear();
         losers.clear();
         players.clear();
-        rmiClients.clear();
-        tcpClients.clear();
         finalPoints.clear();
         numberOfPlayers = 0;
         gameIsStarted = false;
@@ -590,10 +765,11 @@ public class ServerController {
         gameModel = null;
         isGameLoaded = false;
         room = null;
-        for (Thread thread : checkThreads) {
-            thread.interrupt();
+        stateTracker.reset();
+        for (ScheduledFuture<?> delayedCommand : delayedCommands) {
+            delayedCommand.cancel(false);
         }
-        checkThreads.clear();
+        delayedCommands.clear();
 
     }
 
@@ -641,7 +817,232 @@ public class ServerController {
         return allCurrentPoints;
     }
 
-    public void addCheckThread(Thread checkThread) {
-        checkThreads.add(checkThread);
+    /**
+     * Runs a command on this game. Commands are run one at a time, in the order
+     * they are submitted, so they can freely change the state of the game.
+     *
+     * @param command the command to run
+     */
+    public void execute(Runnable command) {
+        executor.execute(command);
+    }
+
+    /**
+     * Runs a command on this game after the given delay.
+     *
+     * @param command the command to run
+     * @param delay   the delay
+     * @param unit    the unit of the delay
+     * @see #execute(Runnable)
+     */
+    public void schedule(Runnable command, long delay, TimeUnit unit) {
+        delayedCommands.removeIf(Future::isDone);
+        delayedCommands.add(executor.schedule(command, delay, unit));
+    }
+
+    /**
+     * Checks if a client is still connected: if no ping arrives from it for
+     * {@value #PING_TIMEOUT} seconds, it is disconnected.
+     *
+     * @param username the username of the player to check
+     */
+    public void startPingCheck(String username) {
+        Session session = sessions.getOrCreate(username);
+        session.setHeartbeat(heartbeats.watch(session, PING_TIMEOUT, TimeUnit.SECONDS, () -> execute(() -> pingTimeout(username))));
+    }
+
+    /**
+     * Disconnects a player whose client has stopped sending pings.
+     *
+     * @param username the username of the player
+     */
+    private void pingTimeout(String username) {
+        Session session = sessions.get(username);
+        if (session == null || session.isDisconnected()) {
+            return;
+        }
+        if (gameModel == null || System.nanoTime() - session.getLastSeen() < TimeUnit.SECONDS.toNanos(PING_TIMEOUT)) {
+            // Still in the waiting room, or a ping arrived while the timeout was waiting to be handled
+            startPingCheck(username);
+            return;
+        }
+        System.err.println("Ping not received from " + username + ". Disconnecting.");
+        disconnect(username);
+    }
+
+    /**
+     * Removes the players that have logged in after the game has started.
+     */
+    public void removePlayers() {
+        List<String> toRemove = getExtraPlayers();
+        for (String username : toRemove) {
+            Session session = sessions.remove(username);
+            if (session == null || !session.send(new Message("removePlayer"))) {
+                System.err.println("Error while removing player " + username);
+            }
+            games.unbind(username);
+            removePlayers(toRemove);
+        }
+    }
+
+    /**
+     * Changes the turn, checks if the game has ended or if it's the
+     * last round and saves the game.
+     */
+    public void nextTurn() {
+        saveGame();
+        changeTurn();
+
+        if (checkGameStatus() == -1) {
+            // The game has ended
+            setWinner();
+            sendAll(new Message(getWinners(), getLosers()));
+            resetSavedGame();
+            games.remove(this);
+
+        } else if (checkGameStatus() == 0) {
+            // It's the last round
+            sendAll(new Message("lastRound"));
+            turn();
+        } else {
+            // The game is still going
+            turn();
+        }
+    }
+
+    /**
+     * Sends the starter game to all the clients.
+     */
+    public void startGame() {
+        Board board = getBoard();
+        HashMap<String, Bookshelf> bookshelves = getBookshelves();
+        List<Integer> topOfScoring = getTopOfScoring();
+        long version = stateTracker.snapshot(board, bookshelves, getInitialPoints(), topOfScoring);
+
+        // Only the personal goal is different for each player
+        Message game = new Message(0, getCommonGoals(), bookshelves, board, topOfScoring, getFirstPlayer(), getInitialPoints());
+        game.setVersion(version);
+        Broadcast broadcast = new Broadcast(game, Message.PERSONAL_GOAL_KEYS);
+        for (Session session : sessions.all()) {
+            int position = getPositionByUsername(session.getUsername());
+            Message myGame = broadcast.to(Message.personalGoalFields(getPersonalGoalCard(position)));
+            if (session.isConnected() && !session.send(myGame)) {
+                System.err.println("Error while sending game to " + session.getUsername());
+            }
+        }
+
+        saveGame();
+        turn();
+    }
+
+    /**
+     * Sends a turn message to all client, there are two types:
+     * <ul>
+     *     <li> "turn": sent to the current player</li>
+     *     <li> "otherTurn", username: sent to all the other players</li>
+     * </ul>
+     */
+    public void turn() {
+        String currentPlayer = getCurrentPlayer();
+        Message otherTurn = new Message("otherTurn", currentPlayer);
+        Message turn = new Message("turn");
+        System.out.println("sending turn to " + currentPlayer);
+        sendAllExcept(currentPlayer, otherTurn);
+        Session session = sessions.get(currentPlayer);
+        if (session != null && session.isConnected() && !session.send(turn)) {
+            System.err.println("Error while sending turn to " + currentPlayer);
+        }
+    }
+
+    /**
+     * Sends what has changed in the last turn to all the clients, with a delta message.
+     * If the clients have not received the whole game yet (because it has been loaded
+     * from a saved game), an update message with the whole game is sent instead.
+     */
+    public void sendUpdate() {
+        Board board = getBoard();
+        HashMap<String, Bookshelf> bookshelves = getBookshelves();
+        List<Integer> topOfScoring = getTopOfScoring();
+        Message delta = stateTracker.delta(board, bookshelves, getAllCurrentPoints(), topOfScoring);
+        if (delta != null) {
+            // Like in the update, each player only gets their own score
+            Broadcast broadcast = new Broadcast(delta);
+            Map<String, List<Integer>> changedScores = stateTracker.getChangedScores();
+            for (Session session : sessions.all()) {
+                if (session.isConnected()) {
+                    List<Integer> score = changedScores.get(session.getUsername());
+                    session.send(score == null ? broadcast.toAll() : broadcast.to(Message.scoreFields(score)));
+                }
+            }
+            return;
+        }
+
+        // Only the score is different for each player
+        long version = stateTracker.snapshot(board, bookshelves, getAllCurrentPoints(), topOfScoring);
+        List<Integer> noScore = List.of(0, 0, 0, 0);
+        Message update = new Message("update", bookshelves, board, noScore, topOfScoring);
+        update.setVersion(version);
+        Broadcast broadcast = new Broadcast(update, Message.SCORE_KEYS);
+        for (Session session : sessions.all()) {
+            if (session.isConnected()) {
+                session.send(broadcast.to(Message.scoreFields(allPoints(getPositionByUsername(session.getUsername())))));
+            }
+        }
+    }
+
+    /**
+     * Returns the whole game as seen by a player, for a client that has missed some delta messages.
+     *
+     * @param username the username of the player
+     * @return the update message with the whole game
+     */
+    public Message getSnapshot(String username) {
+        int position = getPositionByUsername(username);
+        Message snapshot = new Message("update", getBookshelves(), getBoard(), allPoints(position), getTopOfScoring());
+        snapshot.setVersion(stateTracker.getVersion());
+        return snapshot;
+    }
+
+    /**
+     * Returns the game as it is sent at the beginning, for a player who has reconnected.
+     *
+     * @param username the username of the player
+     * @return the start game message
+     */
+    public Message getGame(String username) {
+        int position = getPositionByUsername(username);
+        Message game = new Message(getPersonalGoalCard(position), getCommonGoals(), getBookshelves(), getBoard(), getTopOfScoring(), getFirstPlayer(), getAllCurrentPoints());
+        game.setVersion(stateTracker.getVersion());
+        return game;
+    }
+
+    /**
+     * Sends a message to all the clients. The message is only added to the
+     * outbox of each client, so a slow client doesn't hold up the game,
+     * and it is encoded only once for all of them.
+     *
+     * @param message the message to send
+     */
+    public void sendAll(Message message) {
+        Message shared = new Broadcast(message).toAll();
+        for (Session session : sessions.all()) {
+            session.send(shared);
+        }
+    }
+
+    /**
+     * Sends a message to all the clients except the one that identifies
+     * the player's name passed as parameter.
+     *
+     * @param player  the player that won't receive the message
+     * @param message the message to send
+     */
+    public void sendAllExcept(String player, Message message) {
+        Message shared = new Broadcast(message).toAll();
+        for (Session session : sessions.all()) {
+            if (!session.isDisconnected() && !session.getUsername().equals(player)) {
+                session.send(shared);
+            }
+        }
     }
 }
@@ -1,5 +1,7 @@
 package it.polimi.ingsw.server;
 
+import it.polimi.ingsw.commons.RmiSocketFactory;
+
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
@@ -17,9 +19,10 @@ public class ServerRmi implements ServerCommunicationInterface, ServerInterface
 
     @Override
     public void start() {
+        RmiCallbacks.setCallTimeout();
         try {
             server = new ServerRmi();
-            ServerCommunicationInterface stub = (ServerCommunicationInterface) UnicastRemoteObject.exportObject(server, 0);
+            ServerCommunicationInterface stub = (ServerCommunicationInterface) UnicastRemoteObject.exportObject(server, 0, RmiSocketFactory.INSTANCE, RmiSocketFactory.INSTANCE);
 
             registry = LocateRegistry.createRegistry(PORT_RMI);
             registry.rebind("ServerCommunicationInterface", stub);
@@ -38,22 +38,45 @@ public class ServerTcp implements ServerInterface {
     public Thread acceptConnectionsThread;
 
     public ServerTcp() throws IOException {
+        this(false);
+    }
+
+    /**
+     * Creates the socket server.
+     * <p>
+     * With platform threads, every client is handled by a thread of a cached pool, which
+     * in turn starts the thread that listens for its messages. With virtual threads,
+     * connections are accepted by a virtual thread and each client gets a single virtual
+     * thread that listens for its messages, so that the blocking reads of many idle
+     * clients only use a few carrier threads.
+     *
+     * @param virtualThreads true to handle the connections with virtual threads
+     * @throws IOException if the server socket can't be opened
+     */
+    public ServerTcp(boolean virtualThreads) throws IOException {
         connectedClients = new ArrayList<>();
         connectedPlayers = new HashMap<>();
-        executor = Executors.newCachedThreadPool();
+        executor = virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : Executors.newCachedThreadPool();
+        Thread.Builder acceptThreads = virtualThreads ? Thread.ofVirtual().name("tcp-accept") : Thread.ofPlatform();
+        Thread.Builder clientThreads = virtualThreads ? Thread.ofVirtual().name("tcp-client-", 0) : Thread.ofPlatform();
 
         serverSocket = new ServerSocket(PORT_SOCKET);
-        System.out.println("TCP server started on port " + serverSocket.getLocalPort() + ".");
+        System.out.println("TCP server started on port " + serverSocket.getLocalPort() + (virtualThreads ? " with virtual threads." : "."));
 
-        acceptConnectionsThread = new Thread(() -> {
+        acceptConnectionsThread = acceptThreads.unstarted(() -> {
             while (true) {
                 try {
                     Socket clientSocket = serverSocket.accept();
                     SocketClientHandler clientHandler;
 
-                    clientHandler = new SocketClientHandler(clientSocket);
+                    clientHandler = new SocketClientHandler(clientSocket, clientThreads);
 
-                    executor.submit(clientHandler);
+                    if (virtualThreads) {
+                        // Start the listening thread directly, there's no need for another thread in between
+                        clientHandler.run();
+                    } else {
+                        executor.submit(clientHandler);
+                    }
                     connectedClients.add(clientHandler);
                 } catch (IOException e) {
                     // The server socket has been closed, this thread can be interrupted
@@ -0,0 +1,255 @@
+package it.polimi.ingsw.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static it.polimi.ingsw.server.ServerCommunicationInterface.PORT_SOCKET;
+
+/**
+ * A socket server that serves all the clients with a few selector threads,
+ * instead of using a thread per client like {@link ServerTcp}.
+ * <p>
+ * It speaks the same protocol as {@link ServerTcp}, so the same clients can connect to it.
+ * Connections are accepted by a dedicated thread and spread among the selector threads,
+ * that read and write them without ever blocking.
+ *
+ * @see NioClientHandler
+ */
+public class ServerTcpNio implements ServerInterface {
+
+    /**
+     * The size of the buffers used to read and write the connections.
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final ServerSocketChannel serverChannel;
+    private final SelectorLoop[] loops;
+    private final BufferPool pool;
+    /**
+     * The list of the connected clients.
+     */
+    private final Set<NioClientHandler> connectedClients;
+    /**
+     * The thread that accepts new connections.
+     */
+    private final Thread acceptConnectionsThread;
+
+    public ServerTcpNio() throws IOException {
+        this(PORT_SOCKET, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Creates the socket server.
+     *
+     * @param port      the port to listen on, 0 to pick a free one
+     * @param selectors the number of selector threads
+     * @throws IOException if the server socket can't be opened
+     */
+    public ServerTcpNio(int port, int selectors) throws IOException {
+        pool = new BufferPool(BUFFER_SIZE, 1024);
+        connectedClients = ConcurrentHashMap.newKeySet();
+        loops = new SelectorLoop[selectors];
+        for (int i = 0; i < selectors; i++) {
+            loops[i] = new SelectorLoop(i);
+        }
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        System.out.println("TCP server started on port " + getLocalPort() + " with " + selectors + " selector threads.");
+
+        acceptConnectionsThread = new Thread(() -> {
+            int next = 0;
+            while (true) {
+                try {
+                    SocketChannel channel = serverChannel.accept();
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    SelectorLoop loop = loops[next];
+                    next = (next + 1) % loops.length;
+
+                    NioClientHandler clientHandler = new NioClientHandler(channel, loop, pool);
+                    connectedClients.add(clientHandler);
+                    loop.execute(clientHandler, () -> {
+                        try {
+                            clientHandler.register();
+                        } catch (IOException e) {
+                            clientHandler.close();
+                        }
+                    });
+                } catch (IOException e) {
+                    // The server socket has been closed, this thread can be interrupted
+                    break;
+                }
+            }
+        }, "nio-accept");
+    }
+
+    /**
+     * @return the port the server is listening on
+     */
+    public int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public void start() {
+        for (SelectorLoop loop : loops) {
+            loop.thread.start();
+        }
+        acceptConnectionsThread.start();
+    }
+
+    @Override
+    public void stop() {
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            System.err.println("Unable to stop the socket server.");
+        }
+        closeAllConnections();
+        for (SelectorLoop loop : loops) {
+            loop.stop();
+        }
+        System.out.println("TCP server stopped.");
+        acceptConnectionsThread.interrupt();
+    }
+
+    /**
+     * Closes all the connections with the clients.
+     */
+    public void closeAllConnections() {
+        for (NioClientHandler clientHandler : connectedClients) {
+            clientHandler.close();
+        }
+    }
+
+    /**
+     * A selector thread, serving a part of the clients.
+     */
+    class SelectorLoop {
+        private final Selector selector;
+        private final Thread thread;
+        /**
+         * The tasks submitted by other threads, run by the selector thread at the next wake-up.
+         */
+        private final Queue<Task> tasks;
+        private final ByteBuffer readBuffer;
+        private final byte[] scratch;
+
+        private SelectorLoop(int index) throws IOException {
+            selector = Selector.open();
+            tasks = new ConcurrentLinkedQueue<>();
+            readBuffer = pool.acquire();
+            scratch = new byte[readBuffer.capacity()];
+            thread = new Thread(this::run, "nio-selector-" + index);
+        }
+
+        Selector getSelector() {
+            return selector;
+        }
+
+        /**
+         * Runs a task on the selector thread.
+         *
+         * @param clientHandler the client the task is about, closed if the task fails
+         * @param task          the task to run
+         */
+        void execute(NioClientHandler clientHandler, Runnable task) {
+            tasks.add(new Task(clientHandler, task));
+            selector.wakeup();
+        }
+
+        /**
+         * Called when a client of this selector thread is closed.
+         *
+         * @param clientHandler the closed client
+         */
+        void closed(NioClientHandler clientHandler) {
+            connectedClients.remove(clientHandler);
+        }
+
+        private void run() {
+            while (selector.isOpen()) {
+                try {
+                    selector.select();
+                    Task task;
+                    while ((task = tasks.poll()) != null) {
+                        try {
+                            task.task().run();
+                        } catch (RuntimeException e) {
+                            // The selector thread serves other clients too, only this one is dropped
+                            System.err.println("Error while serving a client: " + e);
+                            task.clientHandler().close();
+                        }
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        handle(key);
+                    }
+                } catch (ClosedSelectorException e) {
+                    break;
+                } catch (IOException e) {
+                    System.err.println("Error in the selector thread: " + e);
+                }
+            }
+        }
+
+        /**
+         * Reads or writes a connection that is ready.
+         *
+         * @param key the key of the connection
+         */
+        private void handle(SelectionKey key) {
+            NioClientHandler clientHandler = (NioClientHandler) key.attachment();
+            try {
+                if (key.isValid() && key.isReadable()) {
+                    clientHandler.read(readBuffer, scratch);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    clientHandler.flush();
+                }
+            } catch (IOException e) {
+                // We are here because the client disconnected (probably)
+                System.err.println("Error while reading from client. IO");
+                clientHandler.close();
+            } catch (RuntimeException e) {
+                // The selector thread serves other clients too, only this one is dropped
+                System.err.println("Error while serving a client: " + e);
+                clientHandler.close();
+            } finally {
+                readBuffer.clear();
+            }
+        }
+
+        private void stop() {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                System.err.println("Unable to close a selector.");
+            }
+        }
+    }
+
+    /**
+     * A task run by a selector thread for a client.
+     *
+     * @param clientHandler the client the task is about
+     * @param task          the task
+     */
+    private record Task(NioClientHandler clientHandler, Runnable task) {
+    }
+}
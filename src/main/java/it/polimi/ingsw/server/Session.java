@@ -0,0 +1,228 @@
+package it.polimi.ingsw.server;
+
+import it.polimi.ingsw.commons.Message;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Everything the server knows about the connection of a player:
+ * how to reach them, whether they are still answering to pings and
+ * whether they have been disconnected.
+ * <p>
+ * A session outlives the connection it wraps: when a player disconnects
+ * the session is kept, so that they can reconnect to the same game.
+ * <p>
+ * Messages are not sent directly, but added to the {@link Outbox} of the
+ * connection. A client whose outbox fills up is a slow consumer: its
+ * connection is closed and the game is told to disconnect it.
+ *
+ * @see SessionTable
+ */
+public class Session {
+
+    private final String username;
+    private final AtomicBoolean disconnected;
+    private final AtomicInteger pongsLost;
+    /**
+     * Called with the username of the player when they can't keep up with their messages.
+     */
+    private final Consumer<String> onSlowConsumer;
+    /**
+     * The connection to the client, <code>null</code> if the player is not connected.
+     */
+    private volatile ClientConnection connection;
+    /**
+     * The messages waiting to be sent through the connection.
+     */
+    private volatile Outbox outbox;
+    /**
+     * The last time something was heard from the client, as given by {@link System#nanoTime()}.
+     */
+    private volatile long lastSeen;
+    /**
+     * The check on the liveness of the client, <code>null</code> if the client is not being checked.
+     */
+    private HeartbeatWheel.Heartbeat heartbeat;
+
+    /**
+     * Creates the session of a player that is not connected yet.
+     *
+     * @param username the username of the player
+     */
+    public Session(String username) {
+        this(username, slowConsumer -> {
+        });
+    }
+
+    /**
+     * Creates the session of a player that is not connected yet.
+     *
+     * @param username       the username of the player
+     * @param onSlowConsumer called with the username of the player if they can't keep up with their messages
+     */
+    public Session(String username, Consumer<String> onSlowConsumer) {
+        this.username = username;
+        this.onSlowConsumer = onSlowConsumer;
+        disconnected = new AtomicBoolean(false);
+        pongsLost = new AtomicInteger(0);
+        lastSeen = System.nanoTime();
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * @return the connection to the client, or <code>null</code> if the player is not connected
+     */
+    public ClientConnection getConnection() {
+        return connection;
+    }
+
+    synchronized void setConnection(ClientConnection connection) {
+        if (outbox != null) {
+            outbox.clear();
+        }
+        if (this.connection != null) {
+            this.connection.release();
+        }
+        this.connection = connection;
+        this.outbox = connection == null ? null : connection.openOutbox(username);
+        if (connection != null) {
+            lastSeen = System.nanoTime();
+        }
+    }
+
+    /**
+     * @return the number of messages waiting to be sent to the client
+     */
+    public int getPendingMessages() {
+        Outbox current = outbox;
+        return current == null ? 0 : current.size();
+    }
+
+    /**
+     * @return true if the player has a connection to the server
+     */
+    public boolean isConnected() {
+        return connection != null;
+    }
+
+    /**
+     * @return true if the server has noticed that the player lost the connection
+     * and is waiting for them to reconnect
+     */
+    public boolean isDisconnected() {
+        return disconnected.get();
+    }
+
+    /**
+     * @param disconnected the new state of the session
+     * @return true if the state has changed
+     */
+    boolean setDisconnected(boolean disconnected) {
+        return this.disconnected.compareAndSet(!disconnected, disconnected);
+    }
+
+    /**
+     * Registers a pong received from the client.
+     */
+    public void pong() {
+        lastSeen = System.nanoTime();
+        pongsLost.set(0);
+    }
+
+    /**
+     * Registers a pong that the client has not answered to yet.
+     */
+    public void addPongLost() {
+        pongsLost.incrementAndGet();
+    }
+
+    /**
+     * @return the number of pongs the client has not answered to
+     */
+    public int getPongsLost() {
+        return pongsLost.get();
+    }
+
+    /**
+     * @return the last time something was heard from the client, as given by {@link System#nanoTime()}
+     */
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    /**
+     * Replaces the check on the liveness of the client, stopping the previous one.
+     *
+     * @param heartbeat the new check, or <code>null</code> to stop checking the client
+     */
+    public synchronized void setHeartbeat(HeartbeatWheel.Heartbeat heartbeat) {
+        if (this.heartbeat != null) {
+            this.heartbeat.cancel();
+        }
+        this.heartbeat = heartbeat;
+    }
+
+    /**
+     * Sends a message to the client, if it is connected. The message is only
+     * added to the outbox of the client, so this method doesn't wait for the client.
+     * While a command of the game is running, the message is held back until the
+     * command ends, and sent together with the other messages of the command.
+     *
+     * @param message the message to send
+     * @return true if the message will be sent
+     * @see OutboundBatch
+     */
+    public boolean send(Message message) {
+        if (outbox == null) {
+            return false;
+        }
+        if (OutboundBatch.hold(this, message)) {
+            return true;
+        }
+        return sendAll(List.of(message));
+    }
+
+    /**
+     * Sends some messages to the client together, if it is connected.
+     *
+     * @param messages the messages to send, in order
+     * @return true if the messages will be sent
+     */
+    boolean sendAll(List<Message> messages) {
+        Outbox current = outbox;
+        if (current == null) {
+            return false;
+        }
+        if (current.offer(messages)) {
+            return true;
+        }
+        dropSlowConsumer(current);
+        return false;
+    }
+
+    /**
+     * Closes the connection of a client that can't keep up with its messages.
+     *
+     * @param full the outbox that has filled up
+     */
+    private void dropSlowConsumer(Outbox full) {
+        ClientConnection slow;
+        synchronized (this) {
+            if (outbox != full) {
+                // Already dropped, or the player has reconnected in the meantime
+                return;
+            }
+            slow = connection;
+            setConnection(null);
+        }
+        System.err.println(username + " can't keep up with the game. Disconnecting.");
+        slow.close();
+        onSlowConsumer.accept(username);
+    }
+}
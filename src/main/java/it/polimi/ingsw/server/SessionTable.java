@@ -0,0 +1,171 @@
+package it.polimi.ingsw.server;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * The sessions of the players of a game, by username.
+ * <p>
+ * Looking up a session takes constant time and the sessions can be iterated
+ * without locking while other threads register pongs or new connections.
+ */
+public class SessionTable {
+
+    private final Map<String, Session> sessions;
+    private final AtomicInteger disconnected;
+    private final Consumer<String> onSlowConsumer;
+
+    /**
+     * Creates an empty table.
+     */
+    public SessionTable() {
+        this(slowConsumer -> {
+        });
+    }
+
+    /**
+     * Creates an empty table.
+     *
+     * @param onSlowConsumer called with the username of a player that can't keep up with their messages
+     * @see Session#send(it.polimi.ingsw.commons.Message)
+     */
+    public SessionTable(Consumer<String> onSlowConsumer) {
+        sessions = new ConcurrentHashMap<>();
+        disconnected = new AtomicInteger(0);
+        this.onSlowConsumer = onSlowConsumer;
+    }
+
+    /**
+     * @param username the username of the player
+     * @return the session of the player, or <code>null</code> if there is none
+     */
+    public Session get(String username) {
+        return sessions.get(username);
+    }
+
+    /**
+     * @param username the username of the player
+     * @return the session of the player, created if there was none
+     */
+    public Session getOrCreate(String username) {
+        return sessions.computeIfAbsent(username, name -> new Session(name, onSlowConsumer));
+    }
+
+    /**
+     * Connects a player, replacing the connection they had before, if any.
+     *
+     * @param username   the username of the player
+     * @param connection the connection to the client
+     * @return the session of the player
+     */
+    public Session connect(String username, ClientConnection connection) {
+        Session session = getOrCreate(username);
+        session.setConnection(connection);
+        return session;
+    }
+
+    /**
+     * Drops the connection of a player, keeping their session so that they can reconnect.
+     *
+     * @param username the username of the player
+     */
+    public void dropConnection(String username) {
+        Session session = sessions.get(username);
+        if (session != null) {
+            session.setConnection(null);
+        }
+    }
+
+    /**
+     * Marks a player as disconnected, dropping their connection.
+     *
+     * @param username the username of the player
+     */
+    public void markDisconnected(String username) {
+        Session session = getOrCreate(username);
+        session.setConnection(null);
+        if (session.setDisconnected(true)) {
+            disconnected.incrementAndGet();
+        }
+    }
+
+    /**
+     * Marks a disconnected player as reconnecting.
+     *
+     * @param username the username of the player
+     * @return true if the player was disconnected
+     */
+    public boolean markReconnected(String username) {
+        Session session = sessions.get(username);
+        if (session != null && session.setDisconnected(false)) {
+            disconnected.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param username the username of the player
+     * @return true if the player is disconnected
+     */
+    public boolean isDisconnected(String username) {
+        Session session = sessions.get(username);
+        return session != null && session.isDisconnected();
+    }
+
+    /**
+     * @return the number of disconnected players
+     */
+    public int countDisconnected() {
+        return disconnected.get();
+    }
+
+    /**
+     * @return the number of players with a connection to the server
+     */
+    public int countConnected() {
+        int connected = 0;
+        for (Session session : sessions.values()) {
+            if (session.isConnected()) {
+                connected++;
+            }
+        }
+        return connected;
+    }
+
+    /**
+     * Removes the session of a player.
+     *
+     * @param username the username of the player
+     * @return the removed session, or <code>null</code> if there was none
+     */
+    public Session remove(String username) {
+        Session session = sessions.remove(username);
+        if (session != null && session.isDisconnected()) {
+            disconnected.decrementAndGet();
+        }
+        return session;
+    }
+
+    /**
+     * Removes all the sessions and stops checking if their clients are alive.
+     */
+    public void clear() {
+        for (Session session : sessions.values()) {
+            session.setHeartbeat(null);
+        }
+        sessions.clear();
+        disconnected.set(0);
+    }
+
+    /**
+     * @return all the sessions, to be iterated without locking
+     */
+    public Collection<Session> all() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+}
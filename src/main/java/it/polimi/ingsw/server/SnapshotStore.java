@@ -0,0 +1,532 @@
+package it.polimi.ingsw.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * The saved games of the server, kept together in a few segment files instead of a file per game.
+ * <p>
+ * Each game is saved as a snapshot of the whole game followed by the turns of its {@link TurnJournal},
+ * all identified by the id of the game and the version of the snapshot. Records are only appended
+ * to the last segment, and a new segment is started when it is full. A new snapshot of a game makes
+ * its older records dead: an index in memory keeps where the live records of each game are, so a
+ * game is read without scanning the segments. The index is rebuilt when the store is opened, reading
+ * the segments through memory maps; a record whose checksum doesn't match, left behind by a crash,
+ * ends the segment.
+ * <p>
+ * The old segments whose records are mostly dead are compacted: the games that still have
+ * records in them are copied to the last segment, and the old segment is deleted once the copies are on the disk.
+ * <p>
+ * The store is opened the first time it is used. It is not thread-safe: it is only used by the
+ * thread of the {@link GamePersister}.
+ */
+public class SnapshotStore {
+
+    /**
+     * The default size of a segment, after which a new one is started.
+     */
+    public static final long SEGMENT_SIZE = 8 * 1024 * 1024;
+    /**
+     * The fraction of live bytes below which an old segment is compacted.
+     */
+    public static final double COMPACTION_THRESHOLD = 0.5;
+    /**
+     * The bytes appended that are kept in memory before they are written, if they are not flushed before.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte SNAPSHOT = 1;
+    private static final byte JOURNAL = 2;
+    private static final byte DELETE = 3;
+    /**
+     * The length, the game, the kind and the version before the payload, the checksum after it.
+     */
+    private static final int HEADER_LENGTH = Integer.BYTES + Integer.BYTES + 1 + Long.BYTES;
+    private static final int OVERHEAD = HEADER_LENGTH + Integer.BYTES;
+
+    /**
+     * A saved game, as read from the store.
+     *
+     * @param version  the version of the snapshot
+     * @param snapshot the snapshot of the whole game
+     * @param journal  the turns of the journal played after the snapshot, in order
+     */
+    public record SavedGame(long version, byte[] snapshot, byte[] journal) {
+    }
+
+    /**
+     * Where a record is: its segment, and the position and length of its payload.
+     */
+    private record Location(int segment, long position, int length) {
+        int size() {
+            return length + OVERHEAD;
+        }
+    }
+
+    /**
+     * The live records of a game.
+     */
+    private static class Game {
+        final long version;
+        final Location snapshot;
+        final List<Location> journal = new ArrayList<>();
+
+        Game(long version, Location snapshot) {
+            this.version = version;
+            this.snapshot = snapshot;
+        }
+
+        List<Location> records() {
+            List<Location> records = new ArrayList<>(journal.size() + 1);
+            records.add(snapshot);
+            records.addAll(journal);
+            return records;
+        }
+    }
+
+    private final File directory;
+    private final long segmentSize;
+    private boolean open;
+
+    private final Map<Integer, Game> games;
+    /**
+     * The deletions of games, by segment: they are kept as long as an older segment may have records of the game.
+     */
+    private final Map<Integer, Set<Integer>> deletions;
+    /**
+     * The size of each segment, and the bytes of its live records, by segment number, in order.
+     */
+    private final TreeMap<Integer, Long> sizes;
+    private final Map<Integer, Long> liveBytes;
+    private final Map<Integer, MappedByteBuffer> maps;
+
+    private int active;
+    private FileChannel channel;
+    /**
+     * The records appended to the active segment that have not been written yet.
+     */
+    private final ByteArrayOutputStream buffer;
+    private final CRC32 crc;
+
+    /**
+     * Creates a store in a directory, with segments of {@value #SEGMENT_SIZE} bytes.
+     *
+     * @param directory the directory of the segments, created when needed
+     */
+    public SnapshotStore(File directory) {
+        this(directory, SEGMENT_SIZE);
+    }
+
+    /**
+     * Creates a store in a directory.
+     *
+     * @param directory   the directory of the segments, created when needed
+     * @param segmentSize the size after which a new segment is started
+     */
+    public SnapshotStore(File directory, long segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        games = new HashMap<>();
+        deletions = new HashMap<>();
+        sizes = new TreeMap<>();
+        liveBytes = new HashMap<>();
+        maps = new HashMap<>();
+        buffer = new ByteArrayOutputStream();
+        crc = new CRC32();
+    }
+
+    /**
+     * Saves the whole game, making its previous snapshot and journal dead.
+     *
+     * @param game     the id of the game
+     * @param version  the version of the snapshot, the one of the journal that follows it
+     * @param snapshot the snapshot
+     * @throws IOException if the segments can't be written
+     */
+    public void save(int game, long version, byte[] snapshot) throws IOException {
+        open();
+        Location location = append(game, SNAPSHOT, version, snapshot);
+        kill(games.put(game, new Game(version, location)));
+        live(location);
+    }
+
+    /**
+     * Appends some turns to the journal of a game.
+     *
+     * @param game    the id of the game
+     * @param version the version of the snapshot the turns follow
+     * @param turns   the turns
+     * @return false if the game has no snapshot with that version, so the turns are useless and were not saved
+     * @throws IOException if the segments can't be written
+     */
+    public boolean append(int game, long version, byte[] turns) throws IOException {
+        open();
+        Game saved = games.get(game);
+        if (saved == null || saved.version != version) {
+            return false;
+        }
+        Location location = append(game, JOURNAL, version, turns);
+        saved.journal.add(location);
+        live(location);
+        return true;
+    }
+
+    /**
+     * Deletes a game, when it ends.
+     *
+     * @param game the id of the game
+     * @throws IOException if the segments can't be written
+     */
+    public void delete(int game) throws IOException {
+        open();
+        Game saved = games.remove(game);
+        if (saved == null) {
+            return;
+        }
+        kill(saved);
+        append(game, DELETE, saved.version, new byte[0]);
+        deletions.computeIfAbsent(active, segment -> new HashSet<>()).add(game);
+    }
+
+    /**
+     * @return the ids of the games saved
+     * @throws IOException if the segments can't be read
+     */
+    public Set<Integer> games() throws IOException {
+        open();
+        return Set.copyOf(games.keySet());
+    }
+
+    /**
+     * Reads a saved game.
+     *
+     * @param game the id of the game
+     * @return the game, or <code>null</code> if it is not saved
+     * @throws IOException if the segments can't be read
+     */
+    public SavedGame load(int game) throws IOException {
+        open();
+        Game saved = games.get(game);
+        if (saved == null) {
+            return null;
+        }
+        flush(false);
+        ByteArrayOutputStream journal = new ByteArrayOutputStream();
+        for (Location location : saved.journal) {
+            journal.write(read(location));
+        }
+        return new SavedGame(saved.version, read(saved.snapshot), journal.toByteArray());
+    }
+
+    /**
+     * Returns the snapshots of the saved games, without their journals, as read-only views of the
+     * memory maps of the segments. Unlike the store, the views can be read by any thread: the records
+     * are never changed once written, and a segment stays mapped even after it has been compacted.
+     *
+     * @return the last snapshot of each saved game, by id
+     * @throws IOException if the segments can't be read
+     */
+    public Map<Integer, ByteBuffer> snapshots() throws IOException {
+        open();
+        flush(false);
+        Map<Integer, ByteBuffer> snapshots = new HashMap<>();
+        for (Map.Entry<Integer, Game> entry : games.entrySet()) {
+            Location location = entry.getValue().snapshot;
+            snapshots.put(entry.getKey(), map(location).slice((int) location.position(), location.length()).asReadOnlyBuffer());
+        }
+        return snapshots;
+    }
+
+    /**
+     * Writes the records appended so far to the active segment.
+     *
+     * @param force true to wait for them to be written to the disk
+     * @throws IOException if the segment can't be written
+     */
+    public void flush(boolean force) throws IOException {
+        if (channel == null) {
+            return;
+        }
+        if (buffer.size() > 0) {
+            ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            buffer.reset();
+        }
+        if (force) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Compacts the oldest segment whose records are mostly dead, if there is one.
+     *
+     * @return true if a segment has been compacted
+     * @throws IOException if the segments can't be read or written
+     */
+    public boolean compact() throws IOException {
+        open();
+        for (Map.Entry<Integer, Long> entry : sizes.entrySet()) {
+            int segment = entry.getKey();
+            if (segment != active && liveBytes.getOrDefault(segment, 0L) < entry.getValue() * COMPACTION_THRESHOLD) {
+                compact(segment);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of segment files
+     */
+    public int getSegmentCount() {
+        return sizes.size();
+    }
+
+    /**
+     * @return the bytes of the live records of all the segments
+     */
+    public long getLiveBytes() {
+        return liveBytes.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * @return the bytes of all the segments
+     */
+    public long getTotalBytes() {
+        return sizes.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Writes the records appended so far and closes the active segment.
+     *
+     * @throws IOException if the segment can't be written
+     */
+    public void close() throws IOException {
+        flush(true);
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        maps.clear();
+        open = false;
+        games.clear();
+        deletions.clear();
+        sizes.clear();
+        liveBytes.clear();
+    }
+
+    /**
+     * Opens the store the first time it is used, rebuilding the index from the segments.
+     */
+    private void open() throws IOException {
+        if (open) {
+            return;
+        }
+        Files.createDirectories(directory.toPath());
+        File[] files = directory.listFiles((dir, name) -> name.startsWith("segment-") && name.endsWith(".dat"));
+        TreeMap<Integer, File> segments = new TreeMap<>();
+        for (File file : files == null ? new File[0] : files) {
+            try {
+                segments.put(Integer.parseInt(file.getName().substring("segment-".length(), file.getName().length() - ".dat".length())), file);
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring " + file + ", which is not a segment.");
+            }
+        }
+        for (Map.Entry<Integer, File> segment : segments.entrySet()) {
+            scan(segment.getKey(), segment.getValue());
+        }
+        active = segments.isEmpty() ? 1 : segments.lastKey();
+        openActive();
+        open = true;
+    }
+
+    /**
+     * Adds the records of a segment to the index.
+     */
+    private void scan(int segment, File file) throws IOException {
+        long valid = 0;
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer map = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            sizes.put(segment, in.size());
+            while (map.remaining() >= OVERHEAD) {
+                int start = map.position();
+                int length = map.getInt(start);
+                if (length < 0 || length > map.remaining() - OVERHEAD) {
+                    break;
+                }
+                crc.reset();
+                crc.update(map.slice(start, HEADER_LENGTH + length));
+                if ((int) crc.getValue() != map.getInt(start + HEADER_LENGTH + length)) {
+                    break;
+                }
+                int game = map.getInt(start + Integer.BYTES);
+                byte kind = map.get(start + 2 * Integer.BYTES);
+                long version = map.getLong(start + 2 * Integer.BYTES + 1);
+                index(game, kind, version, new Location(segment, start + HEADER_LENGTH, length));
+                map.position(start + OVERHEAD + length);
+                valid = map.position();
+            }
+            maps.put(segment, map);
+        }
+        if (valid < sizes.get(segment)) {
+            System.err.println("Dropping the last " + (sizes.get(segment) - valid) + " bytes of " + file + ", not completely written.");
+            try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                out.truncate(valid);
+            }
+            sizes.put(segment, valid);
+            maps.remove(segment);
+        }
+    }
+
+    private void index(int game, byte kind, long version, Location location) {
+        switch (kind) {
+            case SNAPSHOT -> {
+                kill(games.put(game, new Game(version, location)));
+                live(location);
+            }
+            case JOURNAL -> {
+                Game saved = games.get(game);
+                if (saved != null && saved.version == version) {
+                    saved.journal.add(location);
+                    live(location);
+                }
+            }
+            case DELETE -> {
+                kill(games.remove(game));
+                deletions.computeIfAbsent(location.segment(), segment -> new HashSet<>()).add(game);
+            }
+            default -> System.err.println("Unknown record " + kind + " in segment " + location.segment());
+        }
+    }
+
+    private void live(Location location) {
+        liveBytes.merge(location.segment(), (long) location.size(), Long::sum);
+    }
+
+    private void kill(Game game) {
+        if (game != null) {
+            for (Location location : game.records()) {
+                liveBytes.merge(location.segment(), (long) -location.size(), Long::sum);
+            }
+        }
+    }
+
+    private File segmentFile(int segment) {
+        return new File(directory, String.format("segment-%06d.dat", segment));
+    }
+
+    private void openActive() throws IOException {
+        channel = FileChannel.open(segmentFile(active).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        sizes.putIfAbsent(active, channel.size());
+    }
+
+    /**
+     * Appends a record to the active segment, starting a new segment if it is full.
+     *
+     * @return where the record is
+     */
+    private Location append(int game, byte kind, long version, byte[] payload) throws IOException {
+        long size = sizes.get(active);
+        if (size > 0 && size + OVERHEAD + payload.length > segmentSize) {
+            // A full segment may hold records copied by a compaction, which must be on the disk
+            // before the segment they come from is deleted
+            flush(true);
+            channel.close();
+            active++;
+            openActive();
+            size = 0;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(payload.length).putInt(game).put(kind).putLong(version);
+        crc.reset();
+        crc.update(header.array());
+        crc.update(payload);
+        buffer.write(header.array());
+        buffer.write(payload);
+        buffer.write(ByteBuffer.allocate(Integer.BYTES).putInt((int) crc.getValue()).array());
+        sizes.put(active, size + OVERHEAD + payload.length);
+        if (buffer.size() >= BUFFER_SIZE) {
+            flush(false);
+        }
+        return new Location(active, size + HEADER_LENGTH, payload.length);
+    }
+
+    /**
+     * Reads the payload of a record, through the memory map of its segment.
+     */
+    private byte[] read(Location location) throws IOException {
+        byte[] payload = new byte[location.length()];
+        map(location).get((int) location.position(), payload);
+        return payload;
+    }
+
+    /**
+     * @return the memory map of the segment of a record, mapped again if the record was written after it
+     */
+    private MappedByteBuffer map(Location location) throws IOException {
+        MappedByteBuffer map = maps.get(location.segment());
+        if (map == null || map.capacity() < location.position() + location.length()) {
+            try (FileChannel in = FileChannel.open(segmentFile(location.segment()).toPath(), StandardOpenOption.READ)) {
+                map = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            }
+            maps.put(location.segment(), map);
+        }
+        return map;
+    }
+
+    /**
+     * Copies the games with live records in a segment to the active one, then deletes the segment
+     * once the copies have been written to the disk.
+     */
+    private void compact(int segment) throws IOException {
+        flush(false);
+        List<Integer> moved = new ArrayList<>();
+        for (Map.Entry<Integer, Game> entry : games.entrySet()) {
+            if (entry.getValue().records().stream().anyMatch(location -> location.segment() == segment)) {
+                moved.add(entry.getKey());
+            }
+        }
+        for (int game : moved) {
+            Game saved = games.get(game);
+            byte[] snapshot = read(saved.snapshot);
+            List<byte[]> journal = new ArrayList<>();
+            for (Location location : saved.journal) {
+                journal.add(read(location));
+            }
+            save(game, saved.version, snapshot);
+            for (byte[] turns : journal) {
+                append(game, saved.version, turns);
+            }
+        }
+        // The deletions are still needed if an older segment may have records of their games
+        Set<Integer> deleted = deletions.remove(segment);
+        if (deleted != null && sizes.firstKey() < segment) {
+            for (int game : deleted) {
+                append(game, DELETE, -1, new byte[0]);
+                deletions.computeIfAbsent(active, s -> new HashSet<>()).add(game);
+            }
+        }
+        // The copies must be on the disk before the only other copy of the records is deleted
+        flush(true);
+        maps.remove(segment);
+        sizes.remove(segment);
+        liveBytes.remove(segment);
+        Files.deleteIfExists(segmentFile(segment).toPath());
+    }
+}
@@ -1,84 +1,218 @@
 package it.polimi.ingsw.server;
 
+import it.polimi.ingsw.commons.Command;
+import it.polimi.ingsw.commons.CommandDecoder;
+import it.polimi.ingsw.commons.Compression;
+import it.polimi.ingsw.commons.Framing;
 import it.polimi.ingsw.commons.Message;
-import org.json.simple.JSONObject;
+import it.polimi.ingsw.commons.MessageCodec;
+import it.polimi.ingsw.commons.MessageType;
 import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintStream;
+import java.io.*;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class SocketClientHandler implements Runnable, ServerCommunicationInterface {
 
     /**
      * The place to read incoming messages from the client.
      */
-    public final BufferedReader clientBufferedReader;
+    public final DataInputStream clientInputStream;
     private final Socket socket;
     /**
      * The place to write outgoing messages to the client.
      */
-    public PrintStream clientPrintStream;
+    public DataOutputStream clientOutputStream;
+    /**
+     * True if the client and the server have agreed to exchange frames instead of lines.
+     *
+     * @see Framing
+     */
+    private volatile boolean framed;
+    /**
+     * The codec of the frames, agreed with the handshake.
+     */
+    private volatile MessageCodec codec = MessageCodec.JSON;
+    /**
+     * The compression of the frames, <code>null</code> if they are not compressed.
+     */
+    private volatile Compression compression;
     /**
      * The thread that listens for messages coming from the client.
      */
     public Thread listenThread;
-    private String username;
+    private volatile String username;
+    /**
+     * The controller of the game this client is playing, set when the client logs in.
+     */
+    private volatile ServerController controller;
+    /**
+     * The messages waiting to be sent to the client, shared with its session once it has one.
+     */
+    private Outbox outbox;
 
     public SocketClientHandler(Socket socket) throws IOException {
+        this(socket, Thread.ofPlatform());
+    }
+
+    /**
+     * Creates the handler of a client whose connection is not managed through a {@link Socket}.
+     * Subclasses have to override the methods that read and write the connection.
+     *
+     * @see NioClientHandler
+     */
+    protected SocketClientHandler() {
+        socket = null;
+        clientInputStream = null;
+        listenThread = null;
+    }
+
+    /**
+     * Creates the handler of a client.
+     *
+     * @param socket  the socket connected to the client
+     * @param threads the builder of the thread that listens for messages from the client
+     * @throws IOException if the streams of the socket can't be opened
+     */
+    public SocketClientHandler(Socket socket, Thread.Builder threads) throws IOException {
         this.socket = socket;
 
         // To send data to the client
         try {
-            clientPrintStream = new PrintStream(socket.getOutputStream());
+            clientOutputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
         // To read data coming from the client
         try {
-            clientBufferedReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            clientInputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
         // Listen for messages coming from the client
-        listenThread = new Thread(() -> {
-            String clientString;
+        listenThread = threads.unstarted(this::listen);
+    }
+
+    /**
+     * Reads the messages coming from the client, until the connection is closed.
+     * The commands are decoded straight from the bytes received, the other messages are parsed.
+     */
+    private void listen() {
+        JSONParser parser = new JSONParser();
+        CommandDecoder decoder = new CommandDecoder();
+        try {
+            // The client may still send lines after the handshake, until it gets the answer
+            boolean framedInput = false;
             while (true) {
+                if (framed && !framedInput) {
+                    clientInputStream.mark(1);
+                    int first = clientInputStream.read();
+                    clientInputStream.reset();
+                    framedInput = first >= 0 && Framing.startsFrame(first);
+                }
+                Message message;
+                if (framedInput) {
+                    byte[] body = Framing.readBody(clientInputStream, compression);
+                    if (receiveCommand(decoder.decode(body))) {
+                        continue;
+                    }
+                    message = Framing.decode(body);
+                } else {
+                    byte[] line = Framing.readLineBytes(clientInputStream);
+                    if (line == null) {
+                        System.err.println("Error while reading from client.");
+                        break;
+                    }
+                    if (receiveCommand(decoder.decodeJson(line, 0, line.length))) {
+                        continue;
+                    }
+                    message = Framing.parse(new String(line, StandardCharsets.UTF_8), parser);
+                }
+                if (message == null) {
+                    continue;
+                }
+
+                if (!framed && Framing.isHandshake(message)) {
+                    acceptFrames(Framing.codec(message), Framing.isCompressed(message));
+                    continue;
+                }
+
                 try {
-                    synchronized (clientBufferedReader) {
-                        clientString = clientBufferedReader.readLine();
-                        JSONParser parser = new JSONParser();
-                        JSONObject messageFromClient = null;
-                        try {
-                            messageFromClient = (JSONObject) parser.parse(clientString);
-                        } catch (ParseException e) {
-                            System.err.println("Unable to parse message from client");
-                        } catch (NullPointerException e) {
-                            //                            disconnect(username);
-                            System.err.println("Error while reading from client.");
-                            break;
-                        }
+                    receiveMessage(message, this);
+                } catch (IllegalAccessException | RuntimeException e) {
+                    System.err.println("Error while handling message from client: " + e);
+                }
+            }
+        } catch (EOFException e) {
+            System.err.println("Error while reading from client.");
+        } catch (IOException e) {
+            // We are here because the client disconnected (probably)
+            System.err.println("Error while reading from client. IO");
+        } catch (RuntimeException e) {
+            // What the client sends can't be read anymore
+            System.err.println("Error while reading from client: " + e);
+            close();
+        }
+        connectionLost();
+    }
 
-                        Message message = new Message(messageFromClient);
+    /**
+     * Hands a command received from the client over to the game.
+     *
+     * @param command the command, <code>null</code> if the message received is not a command
+     * @return true if the message was a command
+     */
+    protected boolean receiveCommand(Command command) {
+        if (command == null) {
+            return false;
+        }
+        try {
+            receiveCommand(command, this);
+        } catch (RuntimeException e) {
+            System.err.println("Error while handling message from client: " + e);
+        }
+        return true;
+    }
 
-                        try {
-                            receiveMessage(message, this);
-                        } catch (IllegalAccessException e) {
-                            throw new RuntimeException(e);
-                        }
-                    }
-                } catch (IOException e) {
-                    // We are here because the client disconnected (probably)
-                    System.err.println("Error while reading from client. IO");
+    /**
+     * Answers the handshake of a client that wants to exchange frames, and starts using them.
+     *
+     * @param acceptCodec       the codec offered by the client
+     * @param acceptCompression true if the client has offered the {@link Compression}
+     * @throws IOException if the answer can't be sent
+     */
+    private void acceptFrames(MessageCodec acceptCodec, boolean acceptCompression) throws IOException {
+        synchronized (clientOutputStream) {
+            clientOutputStream.write(Framing.encode(Framing.handshake(acceptCodec, acceptCompression), false));
+            clientOutputStream.flush();
+            codec = acceptCodec;
+            compression = acceptCompression ? new Compression() : null;
+            framed = true;
+        }
+    }
 
-                    break;
-                }
+    /**
+     * Tells the game that the connection with the client has been lost, without waiting for the ping
+     * timeout. This is only done once the game has started: before that, the client can't reconnect.
+     */
+    protected void connectionLost() {
+        ServerController lostController = controller;
+        String lostUsername = username;
+        if (lostController == null || lostUsername == null) {
+            return;
+        }
+        lostController.execute(() -> {
+            Session session = lostController.getSessions().get(lostUsername);
+            // The player may have reconnected with another connection in the meantime
+            boolean current = session != null && session.getConnection() instanceof ClientConnection.Tcp tcp && tcp.handler() == this;
+            if (current && lostController.gameModel != null && !session.isDisconnected()) {
+                lostController.disconnect(lostUsername);
             }
         });
     }
@@ -91,6 +225,13 @@ public class SocketClientHandler implements Runnable, ServerCommunicationInterfa
         this.username = username;
     }
 
+    /**
+     * @return the controller of the game this client is playing, or <code>null</code> if the client has not logged in yet
+     */
+    public ServerController getController() {
+        return controller;
+    }
+
     @Override
     public void run() {
         listenThread.start();
@@ -98,9 +239,17 @@ public class SocketClientHandler implements Runnable, ServerCommunicationInterfa
 
     public void close() {
         listenThread.interrupt();
-        clientPrintStream.close();
+        Compression current = compression;
+        if (current != null) {
+            current.end();
+        }
         try {
-            clientBufferedReader.close();
+            clientOutputStream.close();
+        } catch (IOException e) {
+            // The socket is closed below anyway
+        }
+        try {
+            clientInputStream.close();
             socket.close();
         } catch (IOException e) {
             e.printStackTrace();
@@ -110,172 +259,227 @@ public class SocketClientHandler implements Runnable, ServerCommunicationInterfa
 
     @Override
     public void receiveMessage(Message message, SocketClientHandler client) throws IllegalAccessException, RemoteException {
-        String category = message.getCategory();
-
-        switch (category) {
-            case "ping" -> {
-                System.out.println("Received ping from " + client.getUsername());
-                controller.pong(client.getUsername());
-                controller.addPongLost(client.getUsername());
-                client.sendMessageToClient(new Message("pong"));
-            }
-            case "numOfPlayersMessage" -> {
-                int numPlayer = message.getNumPlayer();
-                String isOk = controller.checkNumPlayer(numPlayer);
-                if (!isOk.equals("ok")) {
-                    sendMessageToClient(new Message("numOfPlayersNotOK"));
-                } else {
-                    controller.setNumberOfPlayers(numPlayer);
-                    if (controller.checkRoom() == 1) {
-                        startGame();
-                    } else if (controller.checkRoom() == -1) {
-                        removePlayers();
-                        startGame();
-                    } else {
-                        sendMessageToClient(new Message("waitingRoom"));
-                    }
-                }
-            }
-            case "pick" -> {
-                if ("ok".equals(controller.checkPick(message.getPick()))) {
-                    sendMessageToClient(new Message(controller.getPicked(message.getPick())));
-                } else {
-                    sendMessageToClient(new Message("pickRetry"));
-                }
-            }
-            case "insertMessage" -> {
-                if (controller.checkInsert(message.getInsert()) == 1) {
-                    sendUpdate();
-                    nextTurn();
-                } else if (controller.checkInsert(message.getInsert()) == 0) {
-                    client.sendMessageToClient(new Message("insertRetry", "notValidNumber"));
-                } else if (controller.checkInsert(message.getInsert()) == -1) {
-                    client.sendMessageToClient(new Message("insertRetry", "notEnoughFreeCells"));
-                }
-                // TODO: return an error message if the insert is not valid, otherwise the game will freeze
-            }
-            case "sort" -> controller.rearrangePicked(message.getSort());
-            case "completeLogin" -> {
-                String username = message.getUsername();
-                int checkStatus = controller.checkUsername(username);
-                checkUsername(client, message.getUsername(), message.getFirstGame(), checkStatus);
-            }
-            default -> System.out.println(message + " requested unknown");
+        Command command = Command.of(message);
+        if (command != null) {
+            receiveCommand(command, client);
+            return;
         }
-    }
 
-    public void startPingThread(SocketClientHandler client) throws RemoteException {
-        String finalUsername = client.getUsername();
+        if (message.getType() == MessageType.COMPLETE_LOGIN) {
+            login(client, message.getUsername(), message.getFirstGame());
+            return;
+        }
+        if (controller == null) {
+            System.err.println("Received " + message.getCategory() + " from a client that is not part of any game.");
+            return;
+        }
+        System.out.println(message + " requested unknown");
+    }
 
-        Thread checkThread = new Thread(() -> {
-            while (true) {
-                try {
-                    Thread.sleep(20000);
-                    if (!controller.pongReceived.contains(finalUsername) && !controller.disconnectedPlayers.contains(finalUsername)) {
-                        System.err.println("Ping not received from " + finalUsername + ". Disconnecting.");
-                        Thread.sleep(10000);
-                        if (!controller.pongReceived.contains(finalUsername)) {
-                            disconnect(finalUsername);
-                            break;
-                        }
-                    } else {
-                        controller.pongReceived.remove(finalUsername);
-                    }
-                } catch (InterruptedException | RemoteException ignored) {
-                    System.out.println("Ping thread interrupted.");
-                }
-            }
-        });
-        controller.addCheckThread(checkThread);
-        checkThread.start();
+    /**
+     * Handles a command sent by the client while playing.
+     *
+     * @param command the command
+     * @param client  the client that sent the command
+     */
+    public void receiveCommand(Command command, SocketClientHandler client) {
+        if (controller == null) {
+            System.err.println("Received " + command.getType().getCategory() + " from a client that is not part of any game.");
+            return;
+        }
+        try {
+            receiveCommand(controller, command, client::getUsername, client::reply);
+        } catch (RemoteException e) {
+            // The username is known locally, nothing is asked over the network
+            throw new RuntimeException(e);
+        }
     }
 
     /**
      * Sends the game back to the client that has reconnected.
      *
      * @param client the client that has reconnected
-     * @throws RemoteException if the connection fails
      */
-    public void resendGameToReconnectedClient(SocketClientHandler client) throws RemoteException {
-        int position = controller.getPositionByUsername(getUsername());
+    public void resendGameToReconnectedClient(SocketClientHandler client) {
         System.out.println("Sending game to " + getUsername() + ", who just reconnected.");
-        sendMessageToClient(new Message("username", username));
+        reply(new Message("username", username));
 
-        Message myGame = new Message(controller.getPersonalGoalCard(position), controller.getCommonGoals(), controller.getBookshelves(), controller.getBoard(), controller.getTopOfScoring(), controller.getFirstPlayer(), controller.getAllCurrentPoints());
-        client.sendMessageToClient(myGame);
+        Message myGame = controller.getGame(username);
+        client.reply(myGame);
 
-        sendAllExcept(client.getUsername(), new Message("reconnected", client.getUsername(), controller.gameModel.getCurrentPlayer().getUsername()));
+        controller.sendAllExcept(client.getUsername(), new Message("reconnected", client.getUsername(), controller.gameModel.getCurrentPlayer().getUsername()));
 
-        startPingThread(client);
+        controller.startPingCheck(username);
         sendTurn(client);
     }
 
     public void sendTurn(SocketClientHandler client) {
         String currentPlayer = controller.getCurrentPlayer();
         if (currentPlayer.equals(getUsername())) {
-            client.sendMessageToClient(new Message("turn"));
+            client.reply(new Message("turn"));
         } else {
-            client.sendMessageToClient(new Message("otherTurn", currentPlayer));
+            client.reply(new Message("otherTurn", currentPlayer));
+        }
+    }
+
+    /**
+     * Sends a message to the client without waiting for it to be written, after the messages already waiting
+     * in its {@link Outbox}: the threads of the games never write to the socket. Once the client has a session,
+     * the message goes through it, so while a command of the game is running it is sent together with
+     * the other messages of the command (see {@link OutboundBatch}).
+     * A client that can't keep up with its messages is disconnected.
+     *
+     * @param message the message to send
+     */
+    public void reply(Message message) {
+        Session session = getSession();
+        if (session != null) {
+            session.send(message);
+        } else if (!outbox().offer(message)) {
+            System.err.println("A client can't keep up with its messages. Closing the connection.");
+            close();
+        }
+    }
+
+    /**
+     * @return the session of the game this client is connected to, or <code>null</code> if it has none yet
+     */
+    private Session getSession() {
+        ServerController current = controller;
+        String player = username;
+        if (current == null || player == null) {
+            return null;
+        }
+        Session session = current.getSessions().get(player);
+        return session != null && session.getConnection() instanceof ClientConnection.Tcp tcp && tcp.handler() == this ? session : null;
+    }
+
+    /**
+     * @return the outbox of the client, created the first time it is needed
+     */
+    synchronized Outbox outbox() {
+        if (outbox == null) {
+            outbox = new Outbox(username == null ? "a TCP client" : username, ClientConnection.of(this), Outbox.CAPACITY);
         }
+        return outbox;
     }
 
+    /**
+     * Writes a message to the client. Only called by the {@link Outbox} of the client, and for the answer to the handshake:
+     * everything else is sent with {@link #reply(Message)}.
+     * If the message can't be sent the connection is closed, so that the game notices right away that the client is gone.
+     *
+     * @param message the message to send
+     */
     public void sendMessageToClient(Message message) {
-        clientPrintStream.println(message.getJSONstring());
+        sendMessagesToClient(List.of(message));
     }
 
-    public void checkUsername(SocketClientHandler client, String username, boolean firstGame, int checkStatus) throws RemoteException {
+    /**
+     * Sends some messages to the client with a single write. If the messages can't be
+     * sent the connection is closed, so that the game notices right away that the client is gone.
+     *
+     * @param messages the messages to send, in order
+     */
+    public void sendMessagesToClient(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        try {
+            synchronized (clientOutputStream) {
+                Compression current = compression;
+                byte[][] frames = new byte[messages.size()][];
+                int length = 0;
+                for (int i = 0; i < frames.length; i++) {
+                    byte[] bytes = Framing.encode(messages.get(i), framed, codec);
+                    frames[i] = current == null ? bytes : current.compress(bytes);
+                    length += frames[i].length;
+                }
+                byte[] all = frames[0];
+                if (frames.length > 1) {
+                    all = new byte[length];
+                    int offset = 0;
+                    for (byte[] frame : frames) {
+                        System.arraycopy(frame, 0, all, offset, frame.length);
+                        offset += frame.length;
+                    }
+                }
+                clientOutputStream.write(all);
+                clientOutputStream.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Error while sending message to " + username + ". Closing the connection.");
+            close();
+        }
+    }
+
+    /**
+     * Sends the client to the game it has to join, then checks its username on the thread of that game.
+     *
+     * @param client    the client logging in
+     * @param username  the username of the client
+     * @param firstGame true if it's the first game of the client
+     */
+    private void login(SocketClientHandler client, String username, boolean firstGame) {
+        games.join(username).thenAccept(game -> {
+            controller = game;
+            game.execute(() -> checkUsername(client, username, firstGame, game.checkUsername(username)));
+        });
+    }
+
+    public void checkUsername(SocketClientHandler client, String username, boolean firstGame, int checkStatus) {
         switch (checkStatus) {
             case 1 -> {
                 if (controller.isGameStarted()) {
-                    client.sendMessageToClient(new Message("gameAlreadyStarted"));
+                    // The lobby has started since the client was sent to it: the next one is waiting
+                    login(client, username, firstGame);
                 } else {
-                    client.sendMessageToClient(new Message("username", username));
+                    // The client pings as soon as it has its username, so it must be known first
+                    setUsername(username);
+                    client.reply(new Message("username", username));
 
                     controller.addPlayer(username, firstGame);
                     System.out.println(username + " logged in.");
 
-                    setUsername(username);
                     controller.addClient(username, client);
-                    startPingThread(client);
+                    games.bind(username, controller);
+                    controller.startPingCheck(username);
                     controller.startRoom();
 
                     if (controller.isFirst()) {
                         // Let the first player choose the number of players
-                        client.sendMessageToClient(new Message("chooseNumOfPlayer"));
+                        client.reply(new Message("chooseNumOfPlayer"));
                     } else {
-                        client.sendMessageToClient(new Message("waitingRoom"));
+                        client.reply(new Message("waitingRoom"));
                         if (controller.checkRoom() == 1) {
-                            startGame();
+                            controller.startGame();
                             System.out.println("Game started.");
                         } else if (controller.checkRoom() == -1) {
-                            removePlayers();
+                            controller.removePlayers();
                         }
                     }
                 }
             }
             case 0 -> {
-                // The username has already been taken, retry
-                try {
-                    Thread.sleep(60000);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
-                checkStatus = controller.checkUsername(username);
-                if (checkStatus == 0) {
-                    System.out.println(username + " requested login, but the username is already taken.");
-                    client.sendMessageToClient(new Message("UsernameRetry"));
-                } else {
-                    System.out.println(username + " reconnected.");
-                    setUsername(username);
-                    controller.addClient(username, client);
-                    resendGameToReconnectedClient(client);
-                }
+                // The username has already been taken, wait for the ping check
+                // to notice if the old client has disconnected and retry
+                controller.schedule(() -> {
+                    if (controller.checkUsername(username) == 0) {
+                        System.out.println(username + " requested login, but the username is already taken.");
+                        client.reply(new Message("UsernameRetry"));
+                    } else {
+                        System.out.println(username + " reconnected.");
+                        setUsername(username);
+                        controller.addClient(username, client);
+                        resendGameToReconnectedClient(client);
+                    }
+                }, 60, TimeUnit.SECONDS);
             }
             case -1 -> {
                 // The username is already taken, but the player was disconnected and is trying to reconnect
                 System.out.println(username + " reconnected.");
-                client.sendMessageToClient(new Message("username", username));
                 setUsername(username);
+                client.reply(new Message("username", username));
                 controller.addClient(username, client);
                 if (!controller.isGameLoaded) {
                     resendGameToReconnectedClient(client);
@@ -290,21 +494,18 @@ public class SocketClientHandler implements Runnable, ServerCommunicationInterfa
      * Sends the game to the specified client after the server has gone back online.
      *
      * @param client the client to send the game to
-     * @throws RemoteException if the connection fails
      */
-    public void resendToReconnectAfterServerDown(SocketClientHandler client) throws RemoteException {
-        int position = controller.getPositionByUsername(getUsername());
-
-        sendMessageToClient(new Message("username", username));
-        startPingThread(client);
-        Message myGame = new Message(controller.getPersonalGoalCard(position), controller.getCommonGoals(), controller.getBookshelves(), controller.getBoard(), controller.getTopOfScoring(), controller.getFirstPlayer(), controller.getAllCurrentPoints());
-        client.sendMessageToClient(myGame);
-        if (controller.getRmiClients().size() + controller.getTcpClients().size() != controller.numberOfPlayers) {
-            sendMessageToClient(new Message("waitingRoomForReconnect"));
+    public void resendToReconnectAfterServerDown(SocketClientHandler client) {
+        reply(new Message("username", username));
+        controller.startPingCheck(username);
+        Message myGame = controller.getGame(username);
+        client.reply(myGame);
+        if (controller.countConnectedPlayers() != controller.numberOfPlayers) {
+            reply(new Message("waitingRoomForReconnect"));
         } else {
             controller.setIsLoaded(false);
-            sendAll(new Message("AllIn"));
-            nextTurn();
+            controller.sendAll(new Message("AllIn"));
+            controller.nextTurn();
         }
     }
 }
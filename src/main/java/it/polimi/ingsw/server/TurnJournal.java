@@ -0,0 +1,230 @@
+package it.polimi.ingsw.server;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An append-only journal with the moves played since the game was last saved as a whole.
+ * <p>
+ * Saving the whole game after every turn means writing every bookshelf and the whole item bag,
+ * so the game is saved as a whole only once in a while, in a snapshot, and the turns in between
+ * are appended to the journal as small binary records: the cells picked, their order, the column
+ * they are inserted in, the items drawn to refill the board and the player whose turn it is.
+ * A turn ends with a checkpoint, which hands its records to the {@link GamePersister} that saves them.
+ * <p>
+ * The turns are saved with the version of the snapshot they follow, so the turns left behind by
+ * an older snapshot are never replayed. To load a game the snapshot is loaded and the turns of
+ * the journal are {@link #replay(long, byte[], Replay) replayed} on it, up to the last checkpoint.
+ * <p>
+ * Only used by the thread of the game, like the rest of the controller.
+ */
+public class TurnJournal {
+
+    private static final byte PICK = 1;
+    private static final byte SORT = 2;
+    private static final byte INSERT = 3;
+    private static final byte REFILL = 4;
+    private static final byte TURN = 5;
+    private static final byte CHECKPOINT = 6;
+
+    private final int game;
+    private final GamePersister persister;
+    /**
+     * The records of the turn being played.
+     */
+    private final ByteArrayOutputStream turn;
+    /**
+     * The version of the snapshot the journal follows, -1 if the journal is not open.
+     */
+    private long version;
+
+    /**
+     * Creates a journal, which is not open until it is {@link #reset(long) reset} or {@link #replay(long, byte[], Replay) replayed}.
+     *
+     * @param game      the id of the game
+     * @param persister saves the journal
+     */
+    public TurnJournal(int game, GamePersister persister) {
+        this.game = game;
+        this.persister = persister;
+        turn = new ByteArrayOutputStream();
+        version = -1;
+    }
+
+    /**
+     * Applies the records of a journal to a game.
+     */
+    public interface Replay {
+        /**
+         * @param coordinates the start row, the start column, the final row and the final column of the cells picked
+         */
+        void pick(List<Integer> coordinates);
+
+        /**
+         * @param order the new order of the items picked
+         */
+        void sort(List<Integer> order);
+
+        /**
+         * @param column the column the items picked are inserted in
+         */
+        void insert(int column);
+
+        /**
+         * @param draws the positions in the item bag of the items drawn to refill the board
+         */
+        void refill(List<Integer> draws);
+
+        /**
+         * @param player the position of the player whose turn it is
+         */
+        void turn(int player);
+    }
+
+    /**
+     * @return true if the records are being saved, false if the game has to be saved as a whole
+     */
+    public boolean isOpen() {
+        return version != -1 && !persister.hasFailed(game);
+    }
+
+    /**
+     * @return the version of the snapshot the journal follows, -1 if the journal is not open
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Starts a new journal, after a new snapshot has been saved.
+     *
+     * @param version the version of the snapshot
+     */
+    public void reset(long version) {
+        turn.reset();
+        this.version = version;
+    }
+
+    /**
+     * Records the cells picked from the board.
+     *
+     * @param coordinates the start row, the start column, the final row and the final column
+     */
+    public void pick(List<Integer> coordinates) {
+        write(PICK, coordinates);
+    }
+
+    /**
+     * Records the new order of the items picked.
+     *
+     * @param order the positions of the items, in their new order
+     */
+    public void sort(List<Integer> order) {
+        write(SORT, order);
+    }
+
+    /**
+     * Records the column the items picked are inserted in.
+     *
+     * @param column the column
+     */
+    public void insert(int column) {
+        write(INSERT, List.of(column));
+    }
+
+    /**
+     * Records the items drawn from the bag to refill the board.
+     *
+     * @param draws the positions in the item bag of the items drawn, as returned by {@link it.polimi.ingsw.server.model.Board#fill()}
+     */
+    public void refill(List<Integer> draws) {
+        write(REFILL, draws);
+    }
+
+    /**
+     * Records the player whose turn it is.
+     *
+     * @param player the position of the player
+     */
+    public void turn(int player) {
+        write(TURN, List.of(player));
+    }
+
+    /**
+     * Ends a turn, saving its records.
+     */
+    public void checkpoint() {
+        if (version == -1) {
+            return;
+        }
+        turn.write(CHECKPOINT);
+        persister.append(game, version, turn.toByteArray());
+        turn.reset();
+    }
+
+    /**
+     * Replays the turns of the journal that follow a snapshot, then keeps adding to it.
+     * The records after the last checkpoint were added by a turn that did not end, and are dropped.
+     *
+     * @param version the version of the snapshot that has been loaded
+     * @param journal the journal saved with the snapshot
+     * @param replay  applies the records to the game loaded from the snapshot
+     * @return the number of turns replayed
+     */
+    public int replay(long version, byte[] journal, Replay replay) {
+        reset(version);
+        int turns = 0;
+        List<Runnable> records = new ArrayList<>();
+        int position = 0;
+        while (position < journal.length) {
+            byte type = journal[position++];
+            if (type == CHECKPOINT) {
+                records.forEach(Runnable::run);
+                records.clear();
+                turns++;
+                continue;
+            }
+            if (position >= journal.length || position + 1 + Byte.toUnsignedInt(journal[position]) > journal.length) {
+                break;
+            }
+            int size = Byte.toUnsignedInt(journal[position++]);
+            List<Integer> values = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                values.add(Byte.toUnsignedInt(journal[position++]));
+            }
+            switch (type) {
+                case PICK -> records.add(() -> replay.pick(values));
+                case SORT -> records.add(() -> replay.sort(values));
+                case INSERT -> records.add(() -> replay.insert(values.get(0)));
+                case REFILL -> records.add(() -> replay.refill(values));
+                case TURN -> records.add(() -> replay.turn(values.get(0)));
+                default -> {
+                    System.err.println("Unknown record " + type + " in the journal, ignoring the rest of it.");
+                    return turns;
+                }
+            }
+        }
+        return turns;
+    }
+
+    /**
+     * Stops the journal and deletes the saved game, when the game ends.
+     */
+    public void delete() {
+        version = -1;
+        turn.reset();
+        persister.delete(game);
+    }
+
+    private void write(byte type, List<Integer> values) {
+        if (version == -1) {
+            return;
+        }
+        turn.write(type);
+        turn.write(values.size());
+        for (int value : values) {
+            turn.write(value);
+        }
+    }
+}
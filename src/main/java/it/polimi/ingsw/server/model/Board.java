@@ -11,9 +11,11 @@ import org.json.simple.parser.ParseException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Random;
+import java.util.function.IntUnaryOperator;
 
 import static it.polimi.ingsw.SettingLoader.BASE_PATH;
 import static it.polimi.ingsw.SettingLoader.loadUsableCells;
@@ -184,15 +186,40 @@ public class Board {
     /**
      * Puts all the Items in the usable cells of the board.
      * It is used at the beginning of the game and when the board needs to be refilled.
+     *
+     * @return the positions in the item bag of the items drawn, in order, to draw them again with {@link #fill(List)}
      */
-    public void fill() {
+    public List<Integer> fill() {
         Random randNumberGenerator = new Random();
+        List<Integer> draws = new ArrayList<>();
+        fill(bound -> {
+            int indexRandom = randNumberGenerator.nextInt(bound);
+            draws.add(indexRandom);
+            return indexRandom;
+        });
+        return draws;
+    }
+
+    /**
+     * Fills the board drawing the given items from the bag, to repeat a previous {@link #fill()}.
+     *
+     * @param draws the positions in the item bag of the items to draw, in order
+     */
+    public void fill(List<Integer> draws) {
+        Iterator<Integer> next = draws.iterator();
+        fill(bound -> next.next());
+    }
+
+    /**
+     * @param draw gives the position of the next item to draw, between 0 and the size of the bag
+     */
+    private void fill(IntUnaryOperator draw) {
         for (int row = 0; row < boardSize; row++) {
             for (int column = 0; column < boardSize; column++) {
                 if (itemBag.isEmpty()) {
                     return;
                 } else if (usableCells.contains(new Coordinates(row, column))) {
-                    int indexRandom = randNumberGenerator.nextInt(itemBag.size());
+                    int indexRandom = draw.applyAsInt(itemBag.size());
                     if (boardMatrix[row][column] == null)
                         boardMatrix[row][column] = itemBag.get(indexRandom);
                     itemBag.remove(indexRandom);
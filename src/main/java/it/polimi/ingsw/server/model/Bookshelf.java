@@ -11,32 +11,86 @@ import java.util.Optional;
  * This method represents a bookshelf, where the player can collect items.
  * It has <code>rows</code> (6 by default) and <code>columns</code> (5 by default) columns.
  * Each cell can contain an item.
+ * <p>
+ * The cells are packed in bitboards: the cell <code>(row, column)</code> is the bit
+ * <code>row * columns + column</code> of a mask of the occupied cells and of a mask for each color,
+ * while the numbers of the items are kept in a byte array and the number of items of each column
+ * in a counter. Checking a row, a column or the whole bookshelf is a bit operation, and the grid
+ * of {@link Optional} items of the old representation is only built by {@link #getItems()}.
  *
  * @see Item
  */
 public class Bookshelf implements AbleToGetPoints {
 
-    private static int rows;
-    private static int columns;
-    private final Optional<Item>[][] items;
     /**
-     * Used to check if a cell can be visited (and it has not been visited yet).
-     * <code>booleanMatrix[i][j] = true</code> means that the cell (i, j) can be visited.
+     * The number of rows used for new bookshelves, as configured in the settings.
      */
-    private final boolean[][] booleanMatrix;
+    private static int defaultRows = 6;
+    /**
+     * The number of columns used for new bookshelves, as configured in the settings.
+     */
+    private static int defaultColumns = 5;
+    /**
+     * The largest number of cells that fit in the masks.
+     */
+    private static final int MAX_CELLS = Long.SIZE;
+    private static final Color[] COLORS = Color.values();
+    /**
+     * The items with the most common numbers, shared since they can't be changed.
+     */
+    private static final int SHARED_NUMBERS = 8;
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final Optional<Item>[][] SHARED_ITEMS = new Optional[COLORS.length][SHARED_NUMBERS];
+
+    static {
+        for (Color color : COLORS) {
+            for (int number = 0; number < SHARED_NUMBERS; number++) {
+                SHARED_ITEMS[color.ordinal()][number] = Optional.of(new Item(color, number));
+            }
+        }
+    }
+
+    private final int rows;
+    private final int columns;
+    /**
+     * The cells that contain an item.
+     */
+    private long occupied;
+    /**
+     * The cells that contain an item, for each color.
+     */
+    private final long[] colors;
+    /**
+     * The number of the item in each cell.
+     */
+    private final byte[] numbers;
+    /**
+     * The number of items in each column.
+     */
+    private final byte[] heights;
+    /**
+     * The cells of the top row.
+     */
+    private final long topRow;
+    /**
+     * Used to check if a cell can be visited (and it has not been visited yet):
+     * the bit of a cell is set if the cell can be visited.
+     */
+    private long unvisited;
 
     /**
      * Creates a new bookshelf.
      * <p>
-     * <code>booleanMatrix</code> is used to check if a cell can be visited (and it has not been visited yet).
-     * It is initialized to <code>true</code>.
+     * <code>unvisited</code> is used to check if a cell can be visited (and it has not been visited yet).
+     * All the cells are initially set.
      *
      * @param rows    the number of rows of the bookshelf
      * @param columns the number of columns of the bookshelf
-     * @throws IllegalArgumentException if either <code>rows</code> or <code>columns</code> is less than 1
+     * @throws IllegalArgumentException if either <code>rows</code> or <code>columns</code> is less than 1,
+     *                                  or if the bookshelf has more than {@value #MAX_CELLS} cells
      */
     public Bookshelf(int rows, int columns) {
-        if (rows < 1 || columns < 1) {
+        if (rows < 1 || columns < 1 || rows * columns > MAX_CELLS) {
             String errorMessage = "Bookshelf Constructor: Invalid parameters ";
             if (rows < 1) {
                 errorMessage += "rows set to an invalid value (" + rows + "), 1 or more required";
@@ -44,82 +98,101 @@ public class Bookshelf implements AbleToGetPoints {
             if (columns < 1) {
                 errorMessage += "columns set to an invalid value (" + columns + "), 1 or more required";
             }
+            if (rows * columns > MAX_CELLS) {
+                errorMessage += "too many cells (" + rows * columns + "), at most " + MAX_CELLS + " allowed";
+            }
             throw new IllegalArgumentException(errorMessage);
         }
 
-        Bookshelf.rows = rows;
-        Bookshelf.columns = columns;
+        this.rows = rows;
+        this.columns = columns;
 
-        // noinspection unchecked
-        items = (Optional<Item>[][]) new Optional[Bookshelf.rows][Bookshelf.columns];
-        booleanMatrix = new boolean[Bookshelf.rows][Bookshelf.columns];
+        colors = new long[COLORS.length];
+        numbers = new byte[rows * columns];
+        heights = new byte[columns];
+        topRow = rowMask(rows - 1);
         clearBookshelf();
-        clearBooleanMatrix();
     }
 
     /**
      * Creates a new bookshelf with the default number of rows and columns.
      */
     public Bookshelf() {
-        // noinspection unchecked
-        items = (Optional<Item>[][]) new Optional[Bookshelf.rows][Bookshelf.columns];
-        booleanMatrix = new boolean[Bookshelf.rows][Bookshelf.columns];
-        clearBookshelf();
-        clearBooleanMatrix();
+        this(defaultRows, defaultColumns);
     }
 
     /**
-     * Gets the number of rows in a bookshelf.
+     * Gets the default number of rows in a bookshelf.
      *
-     * @return the number of rows in a bookshelf.
+     * @return the default number of rows in a bookshelf.
      */
     public static int getRows() {
-        return rows;
+        return defaultRows;
     }
 
     /**
-     * Sets the number of rows in a bookshelf.
+     * Sets the default number of rows in a bookshelf.
+     * Bookshelves that have already been created are not affected.
      *
      * @param rows the number of rows to set in a bookshelf.
      */
     public static void setRows(int rows) {
-        Bookshelf.rows = rows;
+        Bookshelf.defaultRows = rows;
     }
 
     /**
-     * Gets the number of columns in a bookshelf.
+     * Gets the default number of columns in a bookshelf.
      *
-     * @return the number of columns in a bookshelf.
+     * @return the default number of columns in a bookshelf.
      */
     public static int getColumns() {
-        return columns;
+        return defaultColumns;
     }
 
     /**
-     * Sets the number of columns in a bookshelf.
+     * Sets the default number of columns in a bookshelf.
+     * Bookshelves that have already been created are not affected.
      *
      * @param columns the number of columns to set in a bookshelf.
      */
     public static void setColumns(int columns) {
-        Bookshelf.columns = columns;
+        Bookshelf.defaultColumns = columns;
     }
 
     /**
-     * Gets the size of the bookshelf.
+     * Gets the default size of a bookshelf.
      *
      * @return the number of cells in a bookshelf
      */
     public static int getSize() {
-        return rows * columns;
+        return defaultRows * defaultColumns;
     }
 
     /**
-     * Gets the number of rows or columns, whichever is smaller.
+     * Gets the default number of rows or columns, whichever is smaller.
      *
      * @return the number of rows or columns, whichever is smaller.
      */
     public static int getDimension() {
-        return Math.min(rows, columns);
+        return Math.min(defaultRows, defaultColumns);
+    }
+
+    /**
+     * Gets the number of rows of this bookshelf.
+     *
+     * @return the number of rows of this bookshelf
+     */
+    public int getNumberOfRows() {
+        return rows;
+    }
+
+    /**
+     * Gets the number of columns of this bookshelf.
+     *
+     * @return the number of columns of this bookshelf
+     */
+    public int getNumberOfColumns() {
+        return columns;
     }
 
     /**
@@ -129,13 +202,7 @@ public class Bookshelf implements AbleToGetPoints {
      * @return the number of free cells in the column with index <code>column</code>.
      */
     public int getFreeCellsInColumn(int column) {
-        int freeCells = 0;
-        for (int i = 0; i < rows; i++) {
-            if (this.items[i][column].isEmpty()) {
-                freeCells++;
-            }
-        }
-        return freeCells;
+        return rows - heights[column];
     }
 
     /**
@@ -167,34 +234,24 @@ public class Bookshelf implements AbleToGetPoints {
      * @return the number of used cells in the column with index <code>column</code>
      */
     public int getCellsInColumn(int column) {
-        int usedCells = 0;
-        for (int i = 0; i < rows; i++) {
-            if (this.items[i][column].isPresent()) {
-                usedCells++;
-            }
-        }
-        return usedCells;
+        return heights[column];
     }
 
     /**
-     * Clears the boolean matrix by setting all the cells to <code>true</code>.
+     * Clears the cells visited, so that all of them can be visited again.
      */
     public void clearBooleanMatrix() {
-        for (boolean[] row : booleanMatrix) {
-            Arrays.fill(row, true);
-        }
+        unvisited = allCells();
     }
 
     /**
-     * Deletes all the items in the bookshelf by setting them to
-     * <code>Optional.empty()</code> and clears the boolean matrix.
+     * Deletes all the items in the bookshelf and clears the cells visited.
      */
     public void clearBookshelf() {
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < columns; j++) {
-                this.items[i][j] = Optional.empty();
-            }
-        }
+        occupied = 0;
+        Arrays.fill(colors, 0);
+        Arrays.fill(numbers, (byte) 0);
+        Arrays.fill(heights, (byte) 0);
         clearBooleanMatrix();
     }
 
@@ -204,12 +261,8 @@ public class Bookshelf implements AbleToGetPoints {
      * @return true if the bookshelf is full, false otherwise.
      */
     public boolean isBookshelfFull() {
-        for (int i = 0; i < columns; i++) {
-            if (!isColumnFull(i)) {
-                return false;
-            }
-        }
-        return true;
+        // Every column is full
+        return (occupied & topRow) == topRow;
     }
 
     /**
@@ -234,9 +287,9 @@ public class Bookshelf implements AbleToGetPoints {
             throw new IllegalArgumentException("No items to insert");
         }
 
-        int freeCells = getFreeCellsInColumn(column);
+        int height = heights[column];
         for (int i = 0; i < items.size(); i++) {
-            this.items[(rows - freeCells) + i][column] = Optional.ofNullable(items.get(i));
+            set(height + i, column, items.get(i));
         }
     }
 
@@ -252,7 +305,7 @@ public class Bookshelf implements AbleToGetPoints {
             throw new ArrayIndexOutOfBoundsException("Invalid row or column for the method getItemAt -row:" + row + " -column: " + column);
         }
 
-        return items[row][column];
+        return get(row * columns + column);
     }
 
     /**
@@ -262,17 +315,11 @@ public class Bookshelf implements AbleToGetPoints {
      * @return true if the row is completely full, false otherwise.
      */
     public boolean isRowFull(int row) throws IllegalArgumentException {
-        int count=0;
         if (row >= rows || row < 0) {
             throw new IllegalArgumentException("Invalid row for the method isRowFull -row:" + row);
         }
-
-        for (int col = 0; col < columns; col++) {
-            if (getItemAt(row, col).isPresent()) {
-                count++;
-            }
-        }
-        return count==columns;
+        long mask = rowMask(row);
+        return (occupied & mask) == mask;
     }
 
     /**
@@ -286,7 +333,7 @@ public class Bookshelf implements AbleToGetPoints {
         if (col >= columns || col < 0) {
             throw new IllegalArgumentException("Invalid column for the method isColumnFull -column:" + col);
         }
-        return getItemAt(rows - 1, col).isPresent();
+        return (occupied & bit(rows - 1, col)) != 0;
     }
 
     /**
@@ -304,9 +351,9 @@ public class Bookshelf implements AbleToGetPoints {
         clearBooleanMatrix();
         for (int j = 0; j < columns; j++) {
             for (int i = 0; i < rows; i++) {
-                if (items[i][j].isPresent()) {
-                    // noinspection OptionalGetWithoutIsPresent
-                    points += calculateGroupPoints(adjacentGroups(items[i][j].get().color(), i, j));
+                long bit = bit(i, j);
+                if ((occupied & bit) != 0) {
+                    points += calculateGroupPoints(adjacentGroups(colorOf(bit), i, j));
                 }
             }
         }
@@ -328,19 +375,15 @@ public class Bookshelf implements AbleToGetPoints {
             return 0;
         }
 
-        if (items[row][column].isEmpty()) {
-            return 0;
-        }
-
-        // noinspection OptionalGetWithoutIsPresent
-        if (items[row][column].get().color() != color) {
+        long bit = bit(row, column);
+        if ((colors[color.ordinal()] & bit) == 0) {
             return 0;
         }
 
-        if (!booleanMatrix[row][column]) {
+        if ((unvisited & bit) == 0) {
             matches = adjacentGroups(color, row + 1, column) + adjacentGroups(color, row, column + 1);
         } else {
-            booleanMatrix[row][column] = false;
+            unvisited &= ~bit;
             matches = 1 + adjacentGroups(color, row + 1, column) + adjacentGroups(color, row, column + 1) + adjacentGroups(color, row - 1, column) + adjacentGroups(color, row, column - 1);
         }
         return matches;
@@ -400,12 +443,12 @@ public class Bookshelf implements AbleToGetPoints {
      * @throws IllegalArgumentException if the row index is not between 0 and the number of rows
      */
     public List<Item> getRowContent(int row) throws IllegalArgumentException {
-        if (row < 0 || row > getRows()) {
+        if (row < 0 || row > rows) {
             throw new IllegalArgumentException("Invalid number of row (" + row + ")");
         }
         List<Item> content = new ArrayList<>();
         Optional<Item> item;
-        for (int j = 0; j < getColumns(); j++) {
+        for (int j = 0; j < columns; j++) {
             item = getItemAt(row, j);
             item.ifPresent(content::add);
         }
@@ -413,11 +456,19 @@ public class Bookshelf implements AbleToGetPoints {
     }
 
     /**
-     * Used to get all the items in the bookshelf.
+     * Used to get all the items in the bookshelf, as a grid indexed by row and column.
+     * The grid is a copy: changing it doesn't change the bookshelf.
      *
      * @return the items in the bookshelf
      */
     public Optional<Item>[][] getItems() {
+        // noinspection unchecked
+        Optional<Item>[][] items = (Optional<Item>[][]) new Optional[rows][columns];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                items[i][j] = get(i * columns + j);
+            }
+        }
         return items;
     }
 
@@ -429,6 +480,83 @@ public class Bookshelf implements AbleToGetPoints {
      * @param item the item to set at the specified position
      */
     public void setItem(int row, int col, Optional<Item> item) {
-        items[row][col] = item;
+        if (row >= rows || col >= columns || row < 0 || col < 0) {
+            throw new ArrayIndexOutOfBoundsException("Invalid row or column for the method setItem -row:" + row + " -column: " + col);
+        }
+        set(row, col, item.orElse(null));
+    }
+
+    /**
+     * Gets the cells that contain an item, the cell <code>(row, column)</code> being the bit <code>row * columns + column</code>.
+     *
+     * @return the mask of the occupied cells
+     */
+    public long getOccupiedMask() {
+        return occupied;
+    }
+
+    /**
+     * Gets the cells that contain an item of a color, the cell <code>(row, column)</code> being the bit <code>row * columns + column</code>.
+     *
+     * @param color the color of the items
+     * @return the mask of the cells with an item of that color
+     */
+    public long getColorMask(Color color) {
+        return colors[color.ordinal()];
+    }
+
+    /**
+     * @return the mask of all the cells of the bookshelf
+     */
+    private long allCells() {
+        return rows * columns == MAX_CELLS ? -1L : (1L << rows * columns) - 1;
+    }
+
+    private long rowMask(int row) {
+        return ((1L << columns) - 1) << row * columns;
+    }
+
+    private long bit(int row, int column) {
+        return 1L << row * columns + column;
+    }
+
+    private Color colorOf(long bit) {
+        for (Color color : COLORS) {
+            if ((colors[color.ordinal()] & bit) != 0) {
+                return color;
+            }
+        }
+        return null;
+    }
+
+    private Optional<Item> get(int cell) {
+        long bit = 1L << cell;
+        if ((occupied & bit) == 0) {
+            return Optional.empty();
+        }
+        Color color = colorOf(bit);
+        int number = numbers[cell];
+        if (number >= 0 && number < SHARED_NUMBERS) {
+            return SHARED_ITEMS[color.ordinal()][number];
+        }
+        return Optional.of(new Item(color, number));
+    }
+
+    /**
+     * Puts an item in a cell, or empties it, keeping the masks and the height of the column up to date.
+     */
+    private void set(int row, int column, Item item) {
+        long bit = bit(row, column);
+        if ((occupied & bit) != 0) {
+            occupied &= ~bit;
+            colors[colorOf(bit).ordinal()] &= ~bit;
+            heights[column]--;
+        }
+        if (item != null) {
+            occupied |= bit;
+            colors[item.color().ordinal()] |= bit;
+            numbers[row * columns + column] = (byte) item.number();
+            heights[column]++;
+        }
     }
 }
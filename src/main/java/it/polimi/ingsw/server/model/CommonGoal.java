@@ -101,6 +101,6 @@ public class CommonGoal {
      * @return true if the bookshelf fulfills the layout, false otherwise
      */
     public boolean check(Bookshelf bookshelf) {
-        return layout.check(bookshelf);
+        return layout.checkMasks(bookshelf);
     }
 }
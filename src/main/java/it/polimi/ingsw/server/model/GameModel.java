@@ -15,6 +15,10 @@ public class GameModel {
     private final List<Integer> topScoringPoints;
     private final Board board;
     private List<CommonGoal> commonGoalDeck;
+    /**
+     * The common goals drawn for this game.
+     */
+    private List<CommonGoal> commonGoals = new ArrayList<>();
     private Player currentPlayer;
     private boolean lastRound;
     private boolean hasGameEnded;
@@ -58,6 +62,7 @@ public class GameModel {
         for (CommonGoal cg : commonGoals) {
             topScoringPoints.add(cg.getScoringList().get(0));
         }
+        setCommonGoals(commonGoals);
     }
 
     /**
@@ -73,10 +78,32 @@ public class GameModel {
     public void setPlayers(List<Player> players) {
         this.players.clear();
         this.players.addAll(players);
+        for (Player player : this.players) {
+            player.setCommonGoal(commonGoals);
+        }
+    }
+
+    /**
+     * @return the common goals drawn for this game.
+     */
+    public List<CommonGoal> getCommonGoals() {
+        return commonGoals;
+    }
+
+    /**
+     * Sets the common goals of this game and shares them with its players.
+     *
+     * @param commonGoals the common goals to set.
+     */
+    private void setCommonGoals(List<CommonGoal> commonGoals) {
+        this.commonGoals = commonGoals;
+        for (Player player : players) {
+            player.setCommonGoal(commonGoals);
+        }
     }
 
     public void setGame(List<CommonGoal> commonGoals) {
-        Player.setCommonGoal(commonGoals);
+        setCommonGoals(commonGoals);
         for (CommonGoal cg : commonGoals) {
             System.out.println("name " + cg.getLayout().getName());
             System.out.println("occurrences " + cg.getLayout().getOccurrences());
@@ -92,7 +119,7 @@ public class GameModel {
      */
     public List<Integer> getTopScoringPoints() {
         topScoringPoints.clear();
-        for (CommonGoal cg : Player.getCommonGoals()) {
+        for (CommonGoal cg : commonGoals) {
             if (cg.getScoringList().size() > 0) {
                 topScoringPoints.add(cg.getScoringList().get(0));
             } else {
@@ -167,7 +194,7 @@ public class GameModel {
             }
         }
         // Draw two common goal cards
-        Player.setCommonGoal(drawCommonGoals(isFirstGame));
+        setCommonGoals(drawCommonGoals(isFirstGame));
 
         board.fill();
     }
@@ -296,4 +323,13 @@ public class GameModel {
     public boolean isLastRound() {
         return lastRound;
     }
+
+    /**
+     * Sets whether the last round has started, for a game that is loaded.
+     *
+     * @param lastRound true if the last round has started.
+     */
+    public void setLastRound(boolean lastRound) {
+        this.lastRound = lastRound;
+    }
 }
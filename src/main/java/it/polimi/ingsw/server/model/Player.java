@@ -10,7 +10,6 @@ import java.util.List;
  */
 public class Player {
 
-    private static List<CommonGoal> commonGoals = new ArrayList<>();
     private final String username;
     private final boolean isFirstGame;
     private final List<Boolean> commonGoalCompleted = new ArrayList<>(2);
@@ -19,6 +18,10 @@ public class Player {
     private Bookshelf bookshelf;
     private boolean hasEndGameCard;
     private PersonalGoal personalGoal;
+    /**
+     * The common goals of the game the player is playing.
+     */
+    private List<CommonGoal> commonGoals = new ArrayList<>();
 
     /**
      * Creates a player.
@@ -55,20 +58,20 @@ public class Player {
     }
 
     /**
-     * Sets the CommonGoals.
+     * Sets the CommonGoals of the game the player is playing.
      *
      * @param commonGoals the common goals to set
      */
-    public static void setCommonGoal(List<CommonGoal> commonGoals) {
-        Player.commonGoals = commonGoals;
+    public void setCommonGoal(List<CommonGoal> commonGoals) {
+        this.commonGoals = commonGoals;
     }
 
     /**
-     * Gets the CommonGoals.
+     * Gets the CommonGoals of the game the player is playing.
      *
      * @return the list of common goals
      */
-    public static List<CommonGoal> getCommonGoals() {
+    public List<CommonGoal> getCommonGoals() {
         return commonGoals;
     }
 
@@ -159,6 +162,15 @@ public class Player {
         return isFirstPlayer;
     }
 
+    /**
+     * Returns whether the player has the end game card.
+     *
+     * @return true if the player has the end game card, false otherwise
+     */
+    public boolean hasEndGameCard() {
+        return hasEndGameCard;
+    }
+
     /**
      * Sets whether the player has the end game card or not.
      *
@@ -9,7 +9,7 @@ import java.util.List;
  */
 public class Room {
 
-    private static int maxPlayers;
+    private int maxPlayers;
     private final List<Player> players = new ArrayList<>();
     private final int roomId;
 
@@ -40,7 +40,7 @@ public class Room {
      * @param maxPlayers the maximum number of players
      */
     public void setNumberOfPlayers(int maxPlayers) {
-        Room.maxPlayers = maxPlayers;
+        this.maxPlayers = maxPlayers;
     }
 
     /**
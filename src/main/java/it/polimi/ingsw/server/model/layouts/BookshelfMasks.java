@@ -0,0 +1,103 @@
+package it.polimi.ingsw.server.model.layouts;
+
+import it.polimi.ingsw.server.model.Bookshelf;
+import it.polimi.ingsw.utils.Color;
+
+/**
+ * The masks of the rows and of the columns of the bookshelves of a size, used by the layouts to check
+ * a bookshelf with bit operations (see {@link Layout#checkMasks(Bookshelf)}).
+ * The cell <code>(row, column)</code> is the bit <code>row * columns + column</code>, as in {@link Bookshelf}.
+ * <p>
+ * The masks are computed once for each size, and shared by all the layouts.
+ */
+final class BookshelfMasks {
+
+    static final Color[] COLORS = Color.values();
+    /**
+     * The masks of the size of the last bookshelf checked, almost always the default one.
+     */
+    private static volatile BookshelfMasks last;
+
+    final int rows;
+    final int columns;
+    /**
+     * All the cells.
+     */
+    final long all;
+    final long[] row;
+    final long[] column;
+    /**
+     * The cells of the first <code>k</code> rows, for each <code>k</code> from 0 to <code>rows</code>.
+     */
+    final long[] rowsBelow;
+    /**
+     * The cells of the first <code>k</code> columns, for each <code>k</code> from 0 to <code>columns</code>.
+     */
+    final long[] columnsBefore;
+
+    private BookshelfMasks(int rows, int columns) {
+        this.rows = rows;
+        this.columns = columns;
+        row = new long[rows];
+        column = new long[columns];
+        rowsBelow = new long[rows + 1];
+        columnsBefore = new long[columns + 1];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                row[i] |= bit(i, j);
+                column[j] |= bit(i, j);
+            }
+            rowsBelow[i + 1] = rowsBelow[i] | row[i];
+        }
+        for (int j = 0; j < columns; j++) {
+            columnsBefore[j + 1] = columnsBefore[j] | column[j];
+        }
+        all = rowsBelow[rows];
+    }
+
+    /**
+     * @param b a bookshelf
+     * @return the masks of the size of the bookshelf
+     */
+    static BookshelfMasks of(Bookshelf b) {
+        BookshelfMasks masks = last;
+        if (masks == null || masks.rows != b.getNumberOfRows() || masks.columns != b.getNumberOfColumns()) {
+            masks = new BookshelfMasks(b.getNumberOfRows(), b.getNumberOfColumns());
+            last = masks;
+        }
+        return masks;
+    }
+
+    long bit(int row, int column) {
+        return 1L << row * columns + column;
+    }
+
+    /**
+     * The cells where a shape can have its bottom left cell without getting out of the bookshelf.
+     *
+     * @param height the number of rows of the shape
+     * @param width  the number of columns of the shape
+     * @return the mask of the cells, empty if the shape is larger than the bookshelf
+     */
+    long origins(int height, int width) {
+        if (height > rows || width > columns) {
+            return 0;
+        }
+        return rowsBelow[rows - height + 1] & columnsBefore[columns - width + 1];
+    }
+
+    /**
+     * @param b     a bookshelf of this size
+     * @param cells some cells of the bookshelf
+     * @return the number of different colors of the items in the cells
+     */
+    static int countColors(Bookshelf b, long cells) {
+        int count = 0;
+        for (Color color : COLORS) {
+            if ((b.getColorMask(color) & cells) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
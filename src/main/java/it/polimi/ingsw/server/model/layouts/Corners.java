@@ -78,4 +78,29 @@ public class Corners extends Layout {
             return colorList.size() >= getMinDifferent() && colorList.size() <= getMaxDifferent();
         }
     }
+
+    /**
+     * Checks the bookshelf like {@link #check(Bookshelf)}: the first and last column must be full,
+     * and the colors of the four corners are the colors whose mask has one of the corners.
+     *
+     * @param b the bookshelf to be checked
+     * @return true if the bookshelf has no free cells in the first and last column and if the number of distinct colors in the four corners is between the minimum and the maximum, false otherwise
+     * @throws IllegalArgumentException if the bookshelf is null
+     */
+    @Override
+    public boolean checkMasks(Bookshelf b) throws IllegalArgumentException {
+        if (b == null) {
+            throw new IllegalArgumentException("The bookshelf cannot be null");
+        }
+        BookshelfMasks masks = BookshelfMasks.of(b);
+        long sides = masks.column[0] | masks.column[masks.columns - 1];
+        if ((b.getOccupiedMask() & sides) != sides) {
+            return false;
+        }
+        int top = masks.rows - 1;
+        int right = masks.columns - 1;
+        long corners = masks.bit(0, 0) | masks.bit(top, 0) | masks.bit(top, right) | masks.bit(0, right);
+        int colors = BookshelfMasks.countColors(b, corners);
+        return colors >= getMinDifferent() && colors <= getMaxDifferent();
+    }
 }
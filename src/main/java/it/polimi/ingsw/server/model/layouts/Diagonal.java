@@ -1,6 +1,7 @@
 package it.polimi.ingsw.server.model.layouts;
 
 import it.polimi.ingsw.server.model.Bookshelf;
+import it.polimi.ingsw.utils.Color;
 
 /**
  * The common goal layout with five cards of the same type in a diagonal.
@@ -107,6 +108,53 @@ public class Diagonal extends Layout {
         return counter == 5;
     }
 
+    /**
+     * Checks the bookshelf like {@link #check(Bookshelf)}, on the masks of the diagonals that start from the same cells.
+     *
+     * @param b the bookshelf to check
+     * @return true if there are 5 cards of the same color in a diagonal, false otherwise
+     * @throws IllegalArgumentException if the bookshelf is null
+     */
+    @Override
+    public boolean checkMasks(Bookshelf b) throws IllegalArgumentException {
+        if (b == null)
+            throw new IllegalArgumentException("The bookshelf cannot be null");
+
+        BookshelfMasks masks = BookshelfMasks.of(b);
+        int last = masks.columns - 1;
+        return checkMask(b, masks, 0, 0, 1) || checkMask(b, masks, 1, 0, 1)
+                || checkMask(b, masks, 0, last, -1) || checkMask(b, masks, 1, last, -1);
+    }
+
+    /**
+     * Checks the diagonal like {@link #checkRight} and {@link #checkLeft}: its first 5 cards have the same color,
+     * and the card after them, if there is one, has another color.
+     *
+     * @param b      the bookshelf to check
+     * @param masks  the masks of the bookshelf
+     * @param row    the row of the first card
+     * @param column the column of the first card
+     * @param step   1 to go to the right, -1 to go to the left
+     * @return true if there are exactly 5 cards of the same color from the first card, false otherwise
+     */
+    private boolean checkMask(Bookshelf b, BookshelfMasks masks, int row, int column, int step) {
+        long diagonal = 0;
+        for (int i = 0; i < 5; i++, row++, column += step) {
+            if (row >= masks.rows || column < 0 || column >= masks.columns) {
+                return false;
+            }
+            diagonal |= masks.bit(row, column);
+        }
+        long next = row < masks.rows && column >= 0 && column < masks.columns ? masks.bit(row, column) : 0;
+        for (Color color : BookshelfMasks.COLORS) {
+            long mask = b.getColorMask(color);
+            if ((mask & diagonal) == diagonal) {
+                return (mask & next) == 0;
+            }
+        }
+        return false;
+    }
+
     /**
      *
      * @return the info of the layout
@@ -105,6 +105,46 @@ public class FullLine extends Layout {
         return counter >= occurrences;
     }
 
+    /**
+     * Checks the layout like {@link #check(Bookshelf)}, on the masks of the rows and of the columns.
+     * As there, the content of a full column is made of the items under the number of items in the column.
+     *
+     * @param b the bookshelf to check
+     * @return true if the layout is satisfied, false otherwise
+     */
+    @Override
+    public boolean checkMasks(Bookshelf b) {
+        if (b == null) {
+            throw new IllegalArgumentException("Bookshelf is null");
+        }
+
+        BookshelfMasks masks = BookshelfMasks.of(b);
+        long occupied = b.getOccupiedMask();
+        int counter = 0;
+        if (horizontal) {
+            for (long row : masks.row) {
+                if ((occupied & row) == row && isValid(BookshelfMasks.countColors(b, row))) {
+                    counter++;
+                }
+            }
+        } else {
+            long top = masks.row[masks.rows - 1];
+            for (long column : masks.column) {
+                if ((occupied & top & column) != 0) {
+                    long content = column & masks.rowsBelow[Long.bitCount(occupied & column)];
+                    if (isValid(BookshelfMasks.countColors(b, content))) {
+                        counter++;
+                    }
+                }
+            }
+        }
+        return counter >= occurrences;
+    }
+
+    private boolean isValid(int differentColors) {
+        return differentColors >= getMinDifferent() && differentColors <= getMaxDifferent();
+    }
+
     /**
      * @return a string containing the representation of the layout
      */
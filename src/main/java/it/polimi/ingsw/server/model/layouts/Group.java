@@ -1,6 +1,7 @@
 package it.polimi.ingsw.server.model.layouts;
 
 import it.polimi.ingsw.server.model.Bookshelf;
+import it.polimi.ingsw.utils.Color;
 
 /**
  *This class includes two different common goals:
@@ -76,6 +77,43 @@ public class Group extends Layout {
         return counter >= occurrences;
     }
 
+    /**
+     * This method checks the layout like {@link #check(Bookshelf)}, growing the groups on the color masks.
+     * There, the first item of a group counts all the items of the group, and the other items of the group count none,
+     * so the layout is valid if there are enough groups with at least <code>size</code> items
+     * (or enough items, when <code>size</code> is 0).
+     *
+     * @param b the bookshelf to check.
+     * @return true if the layout is valid for the bookshelf, false otherwise.
+     */
+    @Override
+    public boolean checkMasks(Bookshelf b) throws IllegalArgumentException {
+        if (size == 0) {
+            return Long.bitCount(b.getOccupiedMask()) >= occurrences;
+        }
+        BookshelfMasks masks = BookshelfMasks.of(b);
+        long notFirstColumn = masks.all & ~masks.column[0];
+        long notLastColumn = masks.all & ~masks.column[masks.columns - 1];
+        int counter = 0;
+        for (Color color : BookshelfMasks.COLORS) {
+            long left = b.getColorMask(color);
+            while (left != 0) {
+                long group = Long.lowestOneBit(left);
+                long grown = group;
+                do {
+                    group = grown;
+                    grown = (group | group << masks.columns | group >>> masks.columns
+                            | (group & notLastColumn) << 1 | (group & notFirstColumn) >>> 1) & left;
+                } while (grown != group);
+                if (Long.bitCount(group) >= size) {
+                    counter++;
+                }
+                left &= ~group;
+            }
+        }
+        return counter >= occurrences;
+    }
+
     /**
      * This method gets the number of occurrences of the layout.
      *
@@ -56,6 +56,24 @@ public class ItemsPerColor extends Layout {
         }
     }
 
+    /**
+     * This method checks the layout like {@link #check(Bookshelf)}, counting the bits of the color masks.
+     *
+     * @param b the bookshelf to check
+     * @return true if the layout is valid for the bookshelf, false otherwise
+     */
+    @Override
+    public boolean checkMasks(Bookshelf b) throws IllegalArgumentException {
+        if (b == null) {
+            throw new IllegalArgumentException("Invalid bookshelf");
+        }
+        for (Color c : BookshelfMasks.COLORS) {
+            if (Long.bitCount(b.getColorMask(c)) >= 8)
+                return true;
+        }
+        return false;
+    }
+
     /**
      * This method checks if there are at least the minimum number of items of the
      * specified color in the bookshelf.
@@ -105,6 +105,16 @@ public abstract class Layout {
      */
     public abstract boolean check(Bookshelf b) throws IllegalArgumentException;
 
+    /**
+     * This method checks if the layout is valid for the bookshelf, like {@link #check(Bookshelf)},
+     * with bit operations on the masks of the bookshelf (see {@link Bookshelf#getColorMask}) instead of reading its cells one by one.
+     * The two methods give the same result for every bookshelf of the default size.
+     *
+     * @param b the bookshelf to check
+     * @return true if the layout is valid for the bookshelf, false otherwise
+     */
+    public abstract boolean checkMasks(Bookshelf b) throws IllegalArgumentException;
+
     /**
      * This method returns a string with the information about the layout.
      *
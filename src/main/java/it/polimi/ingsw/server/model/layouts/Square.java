@@ -123,6 +123,49 @@ public class Square extends Layout {
         }
     }
 
+    /**
+     * This method checks the layout like {@link #check(Bookshelf)}, on the color masks.
+     * There, the squares are taken in the order of the columns, each from its bottom left cell, if none of its cells is
+     * in a square already taken; as squares of different colors never share cells, the squares of each color are taken on their own.
+     * <p>
+     * A square is found when its <code>1 + 3 * (size - 1)</code> cells on the sides and on the diagonal are <code>size * size</code>,
+     * so only squares of 1 or 2 cells per side can be found: the others are left to {@link #check(Bookshelf)}.
+     *
+     * @param b the bookshelf to check
+     * @return true if the layout is valid, false otherwise
+     */
+    @Override
+    public boolean checkMasks(Bookshelf b) {
+        if (size != 1 && size != 2) {
+            return check(b);
+        }
+        BookshelfMasks masks = BookshelfMasks.of(b);
+        long origins = masks.origins(2, 2);
+        long shape = size == 1 ? 1 : 1L | 1L << 1 | 1L << masks.columns | 1L << masks.columns + 1;
+        if (occurrences == 0) {
+            // The first cell is checked before the number of squares found is
+            return (origins & 1) == 0 || Arrays.stream(BookshelfMasks.COLORS).noneMatch(c -> (b.getColorMask(c) & shape) == shape);
+        }
+        int found = 0;
+        for (Color color : BookshelfMasks.COLORS) {
+            long mask = b.getColorMask(color);
+            long used = 0;
+            for (long column : masks.column) {
+                for (long cells = mask & origins & column; cells != 0; cells &= cells - 1) {
+                    long square = shape << Long.numberOfTrailingZeros(cells);
+                    if ((mask & ~used & square) == square) {
+                        used |= square;
+                        found++;
+                    }
+                }
+            }
+            if (found >= occurrences) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * @return the info of the layout
      */
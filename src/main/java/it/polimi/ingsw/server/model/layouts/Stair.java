@@ -92,6 +92,32 @@ public class Stair extends Layout {
         return check_right(b) || check_left(b);
     }
 
+    /**
+     * Checks if there's a stair like {@link #check(Bookshelf)}, counting the items of each column on its mask.
+     *
+     * @param b bookshelf to check
+     * @return true if there's a stair
+     * @throws IllegalArgumentException if the bookshelf is null
+     */
+    @Override
+    public boolean checkMasks(Bookshelf b) throws IllegalArgumentException {
+        if (b == null) {
+            throw new IllegalArgumentException("The bookshelf cannot be null");
+        }
+
+        BookshelfMasks masks = BookshelfMasks.of(b);
+        long occupied = b.getOccupiedMask();
+        int first = Long.bitCount(occupied & masks.column[0]);
+        boolean right = first > 0;
+        boolean left = first > 0;
+        for (int i = 1; i < masks.columns; i++) {
+            int currentCol = Long.bitCount(occupied & masks.column[i]);
+            right &= currentCol == first + i;
+            left &= currentCol == first - i && currentCol > 0;
+        }
+        return right || left;
+    }
+
     /**
      * @return the info of the layout
      */
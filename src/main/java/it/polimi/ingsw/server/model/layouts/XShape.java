@@ -108,6 +108,32 @@ public class XShape extends Layout {
         }
         return false;
     }
+
+    /**
+     * This method checks the layout like {@link #check(Bookshelf)}: a color mask shifted by the offset of each cell of the X
+     * keeps the cells from where the whole X is of that color.
+     *
+     * @param b the bookshelf to check
+     * @return true if there are five items of the same color forming an X shape, false otherwise
+     * @throws IllegalArgumentException if the bookshelf is null
+     */
+    @Override
+    public boolean checkMasks(Bookshelf b) throws IllegalArgumentException {
+        if (b == null)
+            throw new IllegalArgumentException("The bookshelf cannot be null");
+
+        BookshelfMasks masks = BookshelfMasks.of(b);
+        long origins = masks.origins(3, 3);
+        int columns = masks.columns;
+        for (Color color : BookshelfMasks.COLORS) {
+            long mask = b.getColorMask(color);
+            long shapes = mask & (mask >>> 2) & (mask >>> columns + 1) & (mask >>> 2 * columns) & (mask >>> 2 * columns + 2);
+            if ((shapes & origins) != 0)
+                return true;
+        }
+        return false;
+    }
+
     /**
      * @return a string representation of the layout
      */
@@ -0,0 +1,139 @@
+package it.polimi.ingsw;
+
+import it.polimi.ingsw.commons.BinaryCodec;
+import it.polimi.ingsw.commons.Framing;
+import it.polimi.ingsw.commons.Message;
+import it.polimi.ingsw.server.model.Board;
+import it.polimi.ingsw.server.model.Bookshelf;
+import it.polimi.ingsw.server.model.Item;
+import it.polimi.ingsw.utils.Color;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SuppressWarnings("unchecked")
+public class BinaryCodecTest {
+
+    /**
+     * @return an update of a game with 4 players, with a full board and half full bookshelves
+     */
+    private Message update() {
+        Board board = new Board(4);
+        board.fill();
+        HashMap<String, Bookshelf> bookshelves = new HashMap<>();
+        Color[] colors = Color.values();
+        for (int player = 0; player < 4; player++) {
+            Bookshelf bookshelf = new Bookshelf(6, 5);
+            for (int row = 3; row < 6; row++) {
+                for (int column = 0; column < 5; column++) {
+                    bookshelf.setItem(row, column, Optional.of(new Item(colors[(row + column + player) % colors.length], column % 3)));
+                }
+            }
+            bookshelves.put("player" + player, bookshelf);
+        }
+        return new Message("update", bookshelves, board, List.of(6, 8, 3, 17), List.of(8, 4));
+    }
+
+    /**
+     * @return the message as the receiver of its JSON would see it
+     */
+    private JSONObject throughJson(Message message) throws ParseException {
+        return (JSONObject) new JSONParser().parse(message.getJSONstring());
+    }
+
+    @Test
+    void updatesRoundTrip() throws ParseException {
+        Message update = update();
+        Message decoded = BinaryCodec.decode(BinaryCodec.encode(update));
+
+        assertEquals(throughJson(update), decoded.getJson());
+        assertEquals(update.getScore(), decoded.getScore());
+        for (int row = 0; row < 9; row++) {
+            for (int column = 0; column < 9; column++) {
+                assertEquals(update.getBoard().getItem(row, column), decoded.getBoard().getItem(row, column));
+            }
+        }
+        Bookshelf bookshelf = decoded.getAllBookshelves().get("player2");
+        assertEquals(update.getAllBookshelves().get("player2").getItemAt(4, 3), bookshelf.getItemAt(4, 3));
+        assertTrue(bookshelf.getItemAt(0, 0).isEmpty());
+    }
+
+    @Test
+    void cellsTakeOneByte() {
+        Board board = new Board();
+        board.setItem(4, 4, new Item(Color.PINK, 2));
+        Message message = new Message(new JSONObject());
+        message.getJson().put("board", message.boardJson(board));
+
+        // Tag and size of the object, key, tag, rows, columns and the 81 cells
+        assertEquals(1 + 1 + 1 + 1 + 1 + 1 + 81, BinaryCodec.encode(message).length);
+        assertEquals(new Item(Color.PINK, 2), BinaryCodec.decode(BinaryCodec.encode(message)).getBoard().getItem(4, 4));
+    }
+
+    @Test
+    void otherValuesRoundTrip() throws ParseException {
+        JSONObject json = new JSONObject();
+        json.put("category", "Jürgen 李");
+        json.put("numbers", new JSONArray());
+        ((JSONArray) json.get("numbers")).addAll(Arrays.asList(0L, -1L, Long.MAX_VALUE, Long.MIN_VALUE, 2.5, null, true, false));
+        json.put("strings", new JSONArray());
+        ((JSONArray) json.get("strings")).addAll(Arrays.asList("0", "-0", "007", "-12", "", "-", "99999999999999999999"));
+        JSONObject nested = new JSONObject();
+        nested.put("row", "1");
+        json.put("nested", nested);
+        Message message = new Message(json);
+
+        assertEquals(throughJson(message), BinaryCodec.decode(BinaryCodec.encode(message)).getJson());
+    }
+
+    @Test
+    void invalidBytesAreRejected() {
+        byte[] bytes = BinaryCodec.encode(update());
+
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decode(Arrays.copyOf(bytes, bytes.length - 1)));
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decode(new byte[]{42}));
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decode(new byte[0]));
+        assertNull(Framing.decode(Framing.BINARY, new byte[]{7, 2, 1}));
+    }
+
+    /**
+     * Compares the size of an update and the time needed to encode and decode it with the two codecs.
+     * The times are only printed, since they depend on the machine running the tests,
+     * so this benchmark is not part of the default test run.
+     */
+    @Test
+    @Tag("benchmark")
+    void comparedWithJson() throws ParseException {
+        Message update = update();
+        byte[] json = update.getJSONstring().getBytes(StandardCharsets.UTF_8);
+        byte[] binary = BinaryCodec.encode(update);
+        assertTrue(binary.length * 10 < json.length, binary.length + " bytes against " + json.length);
+
+        JSONParser parser = new JSONParser();
+        int rounds = 2000;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            parser.parse(new String(update.getJSONstring().getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+        }
+        long jsonTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            BinaryCodec.decode(BinaryCodec.encode(update));
+        }
+        long binaryTime = System.nanoTime() - start;
+
+        System.out.printf("Update of a 4 players game: JSON %d bytes, %.1f µs; binary %d bytes, %.1f µs%n",
+                json.length, jsonTime / 1000.0 / rounds, binary.length, binaryTime / 1000.0 / rounds);
+    }
+}
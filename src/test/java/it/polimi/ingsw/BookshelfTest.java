@@ -165,4 +165,52 @@ class BookshelfTest {
         bookshelf.setItem(0, 0, Optional.of(new Item(Color.YELLOW, 1)));
         assertEquals(Optional.of(new Item(Color.YELLOW, 1)), bookshelf.getItemAt(0, 0));
     }
+
+    @Test
+    void cellsAreKeptInMasks() {
+        bookshelf.insert(1, List.of(new Item(Color.PINK, 1), new Item(Color.BLUE, 12)));
+        bookshelf.setItem(0, 4, Optional.of(new Item(Color.PINK, 3)));
+        int columns = bookshelf.getNumberOfColumns();
+
+        assertEquals(1L << 1 | 1L << columns + 1 | 1L << 4, bookshelf.getOccupiedMask());
+        assertEquals(1L << 1 | 1L << 4, bookshelf.getColorMask(Color.PINK));
+        assertEquals(Optional.of(new Item(Color.BLUE, 12)), bookshelf.getItemAt(1, 1));
+        assertEquals(2, bookshelf.getCellsInColumn(1));
+
+        // Replacing and removing items keep the columns up to date
+        bookshelf.setItem(1, 1, Optional.of(new Item(Color.GREEN, 2)));
+        assertEquals(0, bookshelf.getColorMask(Color.BLUE));
+        assertEquals(2, bookshelf.getCellsInColumn(1));
+        bookshelf.setItem(0, 4, Optional.empty());
+        assertEquals(Bookshelf.getRows(), bookshelf.getFreeCellsInColumn(4));
+        assertEquals(1L << 1 | 1L << columns + 1, bookshelf.getOccupiedMask());
+    }
+
+    @Test
+    void rowsAndColumnsAreCheckedOnTheMasks() {
+        for (int column = 0; column < bookshelf.getNumberOfColumns(); column++) {
+            bookshelf.insert(column, List.of(new Item(Color.WHITE, 1)));
+        }
+        assertEquals(true, bookshelf.isRowFull(0));
+        assertEquals(false, bookshelf.isRowFull(1));
+        assertEquals(false, bookshelf.isBookshelfFull());
+
+        for (int column = 0; column < bookshelf.getNumberOfColumns(); column++) {
+            while (bookshelf.getFreeCellsInColumn(column) > 0) {
+                bookshelf.insert(column, List.of(new Item(Color.values()[column], 2)));
+            }
+            assertEquals(true, bookshelf.isColumnFull(column));
+        }
+        assertEquals(true, bookshelf.isBookshelfFull());
+
+        // The grid is a copy
+        bookshelf.getItems()[0][0] = Optional.empty();
+        assertEquals(Optional.of(new Item(Color.WHITE, 1)), bookshelf.getItemAt(0, 0));
+        try {
+            new Bookshelf(9, 9);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(true, e.getMessage().contains("too many cells"));
+        }
+    }
 }
@@ -0,0 +1,121 @@
+package it.polimi.ingsw;
+
+import it.polimi.ingsw.commons.BinaryCodec;
+import it.polimi.ingsw.commons.Broadcast;
+import it.polimi.ingsw.commons.Framing;
+import it.polimi.ingsw.commons.Message;
+import it.polimi.ingsw.commons.StartGame;
+import it.polimi.ingsw.server.model.Board;
+import it.polimi.ingsw.server.model.Bookshelf;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SuppressWarnings("unchecked")
+public class BroadcastTest {
+
+    private Message update(List<Integer> score) {
+        Board board = new Board(3);
+        board.fill();
+        HashMap<String, Bookshelf> bookshelves = new HashMap<>();
+        for (String name : List.of("alice", "bob", "carol")) {
+            bookshelves.put(name, new Bookshelf(6, 5));
+        }
+        return new Message("update", bookshelves, board, score, List.of(8, 6));
+    }
+
+    /**
+     * @return the message as the client receives it
+     */
+    private JSONObject received(byte[] line) {
+        String json = new String(line, 0, line.length - 1, StandardCharsets.UTF_8);
+        return Framing.parse(json, new JSONParser()).getJson();
+    }
+
+    @Test
+    void recipientsGetSharedAndPersonalFields() {
+        List<Integer> score = List.of(3, 8, 2, 13);
+        Message update = update(score);
+        assertEquals(Message.SCORE_KEYS, Message.scoreFields(score).keySet());
+        assertEquals(Message.PERSONAL_GOAL_KEYS, Message.personalGoalFields(3).keySet());
+        Broadcast broadcast = new Broadcast(update, Message.SCORE_KEYS);
+        Message mine = broadcast.to(Message.scoreFields(score));
+
+        assertEquals(update.getJson(), mine.getJson());
+        assertEquals(score, mine.getScore());
+        assertEquals(received(Framing.encode(update, false)), received(Framing.encode(mine, false)));
+        assertEquals(BinaryCodec.decode(BinaryCodec.encode(update)).getJson(), BinaryCodec.decode(BinaryCodec.encode(mine)).getJson());
+
+        Message other = broadcast.to(Message.scoreFields(List.of(0, 0, 1, 1)));
+        assertEquals(List.of(0, 0, 1, 1), Framing.parse(new String(Framing.encode(other, false), StandardCharsets.UTF_8), new JSONParser()).getScore());
+    }
+
+    @Test
+    void messagesForAllAreTheSame() {
+        Broadcast broadcast = new Broadcast(new Message("otherTurn", "bob"));
+
+        assertSame(broadcast.toAll(), broadcast.toAll());
+        assertEquals(new Message("otherTurn", "bob").getJson(), received(Framing.encode(broadcast.toAll(), false)));
+        assertEquals("bob", BinaryCodec.decode(BinaryCodec.encode(broadcast.toAll())).getArgument());
+    }
+
+    @Test
+    void broadcastsCantBeChanged() {
+        Broadcast broadcast = new Broadcast(update(List.of(0, 0, 0, 0)), Message.SCORE_KEYS);
+
+        JSONObject category = new JSONObject();
+        category.put("category", "startGame");
+        assertThrows(IllegalArgumentException.class, () -> broadcast.to(category));
+        assertThrows(IllegalStateException.class, () -> broadcast.toAll().setVersion(3));
+    }
+
+    @Test
+    void startGameIsDecodedOnce() {
+        Board board = new Board(2);
+        board.fill();
+        HashMap<String, Bookshelf> bookshelves = new HashMap<>();
+        HashMap<String, List<Integer>> scores = new HashMap<>();
+        for (String name : List.of("alice", "bob")) {
+            bookshelves.put(name, new Bookshelf(6, 5));
+            scores.put(name, List.of(0, 0, 0, 0));
+        }
+        Message game = new Message(0, List.of(), bookshelves, board, List.of(8, 4), "alice", scores);
+        game.setVersion(1);
+        Message mine = new Broadcast(game, Message.PERSONAL_GOAL_KEYS).to(Message.personalGoalFields(7));
+        Message received = Framing.parse(new String(Framing.encode(mine, false), StandardCharsets.UTF_8), new JSONParser());
+
+        StartGame startGame = received.getStartGame();
+        assertSame(startGame, received.getStartGame());
+        assertEquals(1, startGame.version());
+        assertEquals(7, startGame.personalGoal());
+        assertEquals("alice", startGame.firstPlayer());
+        assertEquals(scores, startGame.scores());
+        assertEquals(bookshelves.keySet(), startGame.bookshelves().keySet());
+        assertEquals(List.of(8, 4), startGame.topOfScoringList());
+        assertThrows(UnsupportedOperationException.class, () -> startGame.scores().remove("bob"));
+    }
+
+    @Test
+    void rmiGetsTheWholeMessage() throws IOException, ClassNotFoundException {
+        List<Integer> score = List.of(1, 2, 3, 6);
+        Message mine = new Broadcast(update(score), Message.SCORE_KEYS).to(Message.scoreFields(score));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(mine);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Message received = (Message) in.readObject();
+            assertEquals(mine.getJson(), received.getJson());
+            assertEquals(Arrays.asList(1, 2, 3, 6), received.getScore());
+        }
+    }
+}
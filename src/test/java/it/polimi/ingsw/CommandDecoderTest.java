@@ -0,0 +1,136 @@
+package it.polimi.ingsw;
+
+import it.polimi.ingsw.commons.BinaryCodec;
+import it.polimi.ingsw.commons.Command;
+import it.polimi.ingsw.commons.CommandDecoder;
+import it.polimi.ingsw.commons.Framing;
+import it.polimi.ingsw.commons.Message;
+import it.polimi.ingsw.commons.MessageType;
+import it.polimi.ingsw.utils.Coordinates;
+import org.json.simple.parser.JSONParser;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CommandDecoderTest {
+
+    private final CommandDecoder decoder = new CommandDecoder();
+
+    private List<Message> commands() {
+        return List.of(new Message("ping"), new Message("snapshotRequest"),
+                new Message(new Coordinates(3, 4), new Coordinates(3, 6)),
+                new Message("insertMessage", "insert", 2),
+                new Message("sort", List.of(2, 0, 1)),
+                new Message("numOfPlayersMessage", "numOfPlayers", 4));
+    }
+
+    private byte[] json(Message message) {
+        return message.getJSONstring().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Command decodeJson(String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return decoder.decodeJson(bytes, 0, bytes.length);
+    }
+
+    @Test
+    void commandsAreDecodedLikeTheirMessages() {
+        for (Message message : commands()) {
+            Command expected = Command.of(message);
+            byte[] json = json(message);
+            byte[] binary = BinaryCodec.encode(message);
+            assertEquals(message.getType(), expected.getType());
+            assertEquals(expected, decoder.decodeJson(json, 0, json.length));
+            assertEquals(expected, decoder.decodeBinary(binary, 0, binary.length));
+        }
+
+        Command pick = decodeJson("{\"size\":\"3\",\"finalColumn\":\"6\",\"startRow\":\"3\",\"category\":\"pick\",\"finalRow\":\"3\",\"startColumn\":\"4\"}");
+        assertEquals(new Command.Pick(3, 4, 3, 6), pick);
+        assertEquals(new Command.Insert(5), decodeJson(" { \"insert\" : 5 , \"category\" : \"insertMessage\" } "));
+        assertEquals(new Command.Sort(List.of(1, 0)), decodeJson("{\"category\":\"sort\",\"sort\":[\"1\", 0],\"extra\":{\"a\":[1,{\"b\":\"\\\"}\"}]}}"));
+    }
+
+    @Test
+    void framesAreDecodedFromTheirBody() {
+        Message insert = new Message("insertMessage", "insert", 3);
+        byte[] frame = Framing.encode(insert, true, true);
+        byte[] body = Arrays.copyOfRange(frame, Framing.HEADER_LENGTH - 1, frame.length);
+        assertEquals(new Command.Insert(3), decoder.decode(body));
+
+        frame = Framing.encode(insert, true, false);
+        body = Arrays.copyOfRange(frame, Framing.HEADER_LENGTH - 1, frame.length);
+        assertEquals(new Command.Insert(3), decoder.decode(body));
+        assertEquals(MessageType.INSERT, Framing.decode(body).getType());
+    }
+
+    @Test
+    void otherMessagesAreLeftToTheParser() {
+        for (Message message : List.of(new Message("completeLogin", "bob", 0, true, 0), Framing.handshake(true, true),
+                new Message("username", "pick"), new Message("turn"))) {
+            byte[] json = json(message);
+            byte[] binary = BinaryCodec.encode(message);
+            assertNull(decoder.decodeJson(json, 0, json.length), message.getCategory());
+            assertNull(decoder.decodeBinary(binary, 0, binary.length), message.getCategory());
+        }
+    }
+
+    @Test
+    void brokenCommandsAreLeftToTheParser() {
+        assertNull(decodeJson(""));
+        assertNull(decodeJson("{\"category\":\"insertMessage\"}"));
+        assertNull(decodeJson("{\"category\":\"insertMessage\",\"insert\":\"two\"}"));
+        assertNull(decodeJson("{\"category\":\"insertMessage\",\"insert\":2.5}"));
+        assertNull(decodeJson("{\"category\":\"insertMessage\",\"insert\":99999999999}"));
+        assertNull(decodeJson("{\"category\":\"ping\"} trailing"));
+        assertNull(decodeJson("{\"category\":\"ping\""));
+        assertNull(decodeJson("[\"ping\"]"));
+
+        byte[] binary = BinaryCodec.encode(new Message(new Coordinates(3, 4), new Coordinates(3, 6)));
+        for (int length = 0; length < binary.length; length++) {
+            assertNull(decoder.decodeBinary(binary, 0, length));
+        }
+        assertNull(decoder.decodeBinary(new byte[]{7, 2, 1}, 0, 3));
+
+        // The decoder is still usable after giving up
+        byte[] ping = json(new Message("ping"));
+        assertEquals(new Command.Ping(), decoder.decodeJson(ping, 0, ping.length));
+    }
+
+    /**
+     * Compares the time needed to decode the commands with the decoder and by parsing them.
+     * The times are only printed, since they depend on the machine running the tests,
+     * so this benchmark is not part of the default test run.
+     */
+    @Test
+    @Tag("benchmark")
+    void comparedWithTheParser() {
+        List<byte[]> messages = commands().stream().map(this::json).toList();
+        JSONParser parser = new JSONParser();
+        int rounds = 20_000;
+        for (int warmup = 0; warmup < 2; warmup++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                for (byte[] message : messages) {
+                    Command.of(Framing.parse(new String(message, StandardCharsets.UTF_8), parser));
+                }
+            }
+            long parserTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                for (byte[] message : messages) {
+                    decoder.decodeJson(message, 0, message.length);
+                }
+            }
+            long decoderTime = System.nanoTime() - start;
+            if (warmup == 1) {
+                System.out.printf("Commands: parser %.2f µs, decoder %.2f µs per message%n",
+                        parserTime / 1000.0 / rounds / messages.size(), decoderTime / 1000.0 / rounds / messages.size());
+            }
+        }
+    }
+}
@@ -77,7 +77,7 @@ public class CommonGoalTest {
 
         List<CommonGoal> commonGoals = new ArrayList<>();
         commonGoals.add(new CommonGoal(s, 2));
-        Player.setCommonGoal(commonGoals);
+        p.setCommonGoal(commonGoals);
         p.move(items, 3);
         p.move(items, 2);
     }
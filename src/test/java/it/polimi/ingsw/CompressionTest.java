@@ -0,0 +1,161 @@
+package it.polimi.ingsw;
+
+import it.polimi.ingsw.commons.Compression;
+import it.polimi.ingsw.commons.Framing;
+import it.polimi.ingsw.commons.Message;
+import it.polimi.ingsw.server.GameStateTracker;
+import it.polimi.ingsw.server.model.Board;
+import it.polimi.ingsw.server.model.Bookshelf;
+import it.polimi.ingsw.server.model.CommonGoal;
+import it.polimi.ingsw.server.model.layouts.Diagonal;
+import it.polimi.ingsw.server.model.layouts.FullLine;
+import it.polimi.ingsw.utils.Coordinates;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressionTest {
+
+    private final Board board;
+    private final HashMap<String, Bookshelf> bookshelves;
+    private final HashMap<String, List<Integer>> points;
+
+    public CompressionTest() {
+        board = new Board(4);
+        board.fill();
+        bookshelves = new HashMap<>();
+        points = new HashMap<>();
+        for (String name : List.of("alice", "bob", "carol", "dave")) {
+            bookshelves.put(name, new Bookshelf(6, 5));
+            points.put(name, List.of(0, 0, 0, 0));
+        }
+    }
+
+    private Message startGame() {
+        List<CommonGoal> commonGoals = List.of(new CommonGoal(new Diagonal(1, 1, 5), 4), new CommonGoal(new FullLine(1, 3, 4, true), 4));
+        return new Message(3, commonGoals, bookshelves, board, List.of(8, 8), "alice", points);
+    }
+
+    private Message update() {
+        return new Message("update", bookshelves, board, List.of(0, 0, 0, 0), List.of(8, 8));
+    }
+
+    /**
+     * @return the delta of a turn in which an item of the board is moved to a bookshelf
+     */
+    private Message delta() {
+        GameStateTracker tracker = new GameStateTracker();
+        tracker.snapshot(board, bookshelves, points, List.of(8, 8));
+        HashMap<String, Bookshelf> after = new HashMap<>(bookshelves);
+        Bookshelf bookshelf = new Bookshelf(6, 5);
+        bookshelf.setItem(5, 2, Optional.of(board.getItem(4, 4)));
+        after.put("carol", bookshelf);
+        return tracker.delta(board, after, points, List.of(8, 8));
+    }
+
+    /**
+     * @return the frames sent by one side, read back by the other through the same compressed stream
+     */
+    private List<Message> sendAll(List<Message> messages, boolean binary) throws IOException {
+        Compression sender = new Compression();
+        Compression receiver = new Compression();
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        for (Message message : messages) {
+            wire.write(sender.compress(Framing.encode(message, true, binary)));
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(wire.toByteArray()));
+        List<Message> received = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            received.add(Framing.readMessage(in, receiver));
+        }
+        assertEquals(0, in.available());
+        return received;
+    }
+
+    @Test
+    void framesRoundTripOnTheSameStream() throws IOException {
+        List<Message> messages = List.of(startGame(), new Message("ping"), update(), delta(), update(), new Message("turn", "bob"));
+
+        for (boolean binary : List.of(false, true)) {
+            List<Message> received = sendAll(messages, binary);
+            for (int i = 0; i < messages.size(); i++) {
+                assertEquals(messages.get(i).getCategory(), received.get(i).getCategory());
+            }
+            assertEquals(board.getItem(4, 4), received.get(2).getBoard().getItem(4, 4));
+            assertEquals(Map.of("carol", Collections.singletonMap(new Coordinates(5, 2), board.getItem(4, 4))),
+                    received.get(3).getBookshelfChanges());
+            assertEquals("bob", received.get(5).getArgument());
+        }
+    }
+
+    @Test
+    void smallFramesAreNotCompressed() {
+        byte[] ping = Framing.encode(new Message("ping"), true, false);
+        assertSame(ping, new Compression().compress(ping));
+
+        byte[] update = Framing.encode(update(), true, false);
+        byte[] compressed = new Compression().compress(update);
+        assertEquals(Framing.DEFLATED, compressed[Framing.HEADER_LENGTH - 1]);
+        assertTrue(compressed.length * 4 < update.length, compressed.length + " bytes against " + update.length);
+    }
+
+    @Test
+    void invalidFramesAreRejected() {
+        Compression compression = new Compression();
+        assertThrows(IOException.class, () -> compression.decompress(new byte[]{Framing.JSON, 1, 2, 3, 4, 5, 6}));
+        assertThrows(IOException.class, () -> new Compression().decompress(new byte[0]));
+
+        Compression ended = new Compression();
+        ended.end();
+        byte[] update = Framing.encode(update(), true, false);
+        assertSame(update, ended.compress(update));
+        assertThrows(IOException.class, () -> ended.decompress(new byte[]{Framing.JSON, 0}));
+    }
+
+    /**
+     * Compares, for each category of message, the bytes sent and the time needed to encode,
+     * compress, decompress and decode it, with and without compression. Each message is sent
+     * many times on the same stream, like it happens during a game. The times are only printed,
+     * since they depend on the machine running the tests, so this benchmark is not part of the default test run.
+     */
+    @Test
+    @Tag("benchmark")
+    void comparedWithoutCompression() throws IOException {
+        Map<String, Message> categories = new LinkedHashMap<>();
+        categories.put("ping", new Message("ping"));
+        categories.put("turn", new Message("turn", "alice"));
+        categories.put("otherTurn", new Message("otherTurn", "bob"));
+        categories.put("delta", delta());
+        categories.put("update", update());
+        categories.put("startGame", startGame());
+
+        int rounds = 200;
+        for (Map.Entry<String, Message> category : categories.entrySet()) {
+            StringBuilder line = new StringBuilder(category.getKey());
+            for (boolean binary : List.of(false, true)) {
+                for (boolean compressed : List.of(false, true)) {
+                    Compression sender = compressed ? new Compression() : null;
+                    Compression receiver = compressed ? new Compression() : null;
+                    ByteArrayOutputStream wire = new ByteArrayOutputStream();
+                    long start = System.nanoTime();
+                    for (int i = 0; i < rounds; i++) {
+                        byte[] frame = Framing.encode(category.getValue(), true, binary);
+                        wire.write(sender == null ? frame : sender.compress(frame));
+                    }
+                    DataInputStream in = new DataInputStream(new ByteArrayInputStream(wire.toByteArray()));
+                    for (int i = 0; i < rounds; i++) {
+                        assertEquals(category.getKey(), Framing.readMessage(in, receiver).getCategory());
+                    }
+                    long time = System.nanoTime() - start;
+                    line.append(String.format("; %s%s %d bytes, %.1f µs", binary ? "binary" : "JSON", compressed ? "+deflate" : "",
+                            wire.size() / rounds, time / 1000.0 / rounds));
+                }
+            }
+            System.out.println(line);
+        }
+    }
+}
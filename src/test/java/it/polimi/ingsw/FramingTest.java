@@ -0,0 +1,75 @@
+package it.polimi.ingsw;
+
+import it.polimi.ingsw.commons.Framing;
+import it.polimi.ingsw.commons.Message;
+import org.json.simple.parser.JSONParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FramingTest {
+
+    @Test
+    void linesAreUtf8() throws IOException {
+        byte[] line = Framing.encode(new Message("username", "Jürgen 李"), false);
+
+        assertEquals('\n', line[line.length - 1]);
+        String read = Framing.readLine(new ByteArrayInputStream(line));
+        assertEquals("Jürgen 李", Framing.parse(read, new JSONParser()).getArgument());
+    }
+
+    @Test
+    void linesCanEndWithCarriageReturn() throws IOException {
+        InputStream in = new ByteArrayInputStream("{\"category\":\"turn\"}\r\nlast\r".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("{\"category\":\"turn\"}", Framing.readLine(in));
+        assertEquals("last", Framing.readLine(in));
+        assertNull(Framing.readLine(in));
+    }
+
+    @Test
+    void framesRoundTrip() throws IOException {
+        byte[] frame = Framing.encode(new Message("username", "Jürgen 李"), true);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+
+        byte[] payload = new Message("username", "Jürgen 李").getJSONstring().getBytes(StandardCharsets.UTF_8);
+        assertEquals(Framing.HEADER_LENGTH + payload.length, frame.length);
+        assertEquals(payload.length, Framing.readLength(frame));
+        assertEquals(Framing.JSON, frame[4]);
+        assertEquals("Jürgen 李", Framing.readMessage(in).getArgument());
+    }
+
+    @Test
+    void unknownFramesAreSkipped() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(Framing.frame((byte) 42, new byte[]{1, 2, 3, 4, 5, 6, 7}));
+        out.write(Framing.frame((byte) 43, new byte[0]));
+        out.write(Framing.encode(new Message("turn"), true));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals("turn", Framing.readMessage(in).getCategory());
+        assertThrows(EOFException.class, () -> Framing.readMessage(in));
+    }
+
+    @Test
+    void brokenPeersAreDetected() {
+        byte[] header = new byte[Framing.HEADER_LENGTH];
+        Framing.writeHeader(header, -1, Framing.JSON);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+
+        assertThrows(IOException.class, () -> Framing.readMessage(in));
+        Framing.writeHeader(header, Framing.MAX_LENGTH + 1, Framing.JSON);
+        assertThrows(IOException.class, () -> Framing.readLength(header));
+    }
+
+    @Test
+    void invalidMessagesAreNotParsed() {
+        assertNull(Framing.parse("not json", new JSONParser()));
+        assertNull(Framing.parse("[1, 2]", new JSONParser()));
+        assertTrue(Framing.isHandshake(Framing.handshake()));
+        assertFalse(Framing.isHandshake(new Message(Framing.HANDSHAKE, "length-prefixed-0")));
+    }
+}
@@ -85,7 +85,7 @@ public class FullLineTest {
         List<Item> items = new ArrayList<>();
         Player player = new Player("test", false, false, false);
         player.setBookshelf(bookshelf);
-        Player.setCommonGoal(commonGoals);
+        player.setCommonGoal(commonGoals);
 
         items.add(new Item(Color.BLUE, 1));
         items.add(new Item(Color.WHITE, 1));
@@ -0,0 +1,100 @@
+package it.polimi.ingsw;
+
+import it.polimi.ingsw.server.GameExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameExecutorTest {
+
+    @Test
+    void commandsRunInOrder() throws InterruptedException {
+        GameExecutor executor = new GameExecutor();
+        List<Integer> executed = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        for (int i = 0; i < 1000; i++) {
+            int command = i;
+            executor.execute(() -> executed.add(command));
+        }
+        executor.execute(done::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1000, executed.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, executed.get(i));
+        }
+    }
+
+    @Test
+    void suspendedCommandsWait() throws InterruptedException {
+        GameExecutor executor = new GameExecutor();
+        executor.suspend();
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(done::countDown);
+
+        assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+        executor.resume();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void commandsFromManyThreadsRunOneAtATime() throws InterruptedException {
+        GameExecutor executor = new GameExecutor();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        int[] counter = {0};
+        CountDownLatch done = new CountDownLatch(8 * 500);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    executor.execute(() -> {
+                        if (running.incrementAndGet() != 1) {
+                            overlaps.incrementAndGet();
+                        }
+                        counter[0]++;
+                        running.decrementAndGet();
+                        done.countDown();
+                    });
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, overlaps.get());
+        assertEquals(8 * 500, counter[0]);
+    }
+
+    @Test
+    void failingCommandsDoNotStopTheGame() throws InterruptedException {
+        GameExecutor executor = new GameExecutor();
+        CountDownLatch done = new CountDownLatch(1);
+
+        executor.execute(() -> {
+            throw new IllegalStateException();
+        });
+        executor.execute(done::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void delayedCommands() throws InterruptedException {
+        GameExecutor executor = new GameExecutor();
+        CountDownLatch done = new CountDownLatch(1);
+
+        executor.schedule(done::countDown, 50, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, done.getCount());
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+}
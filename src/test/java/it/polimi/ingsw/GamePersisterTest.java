@@ -0,0 +1,94 @@
+package it.polimi.ingsw;
+
+import it.polimi.ingsw.server.GamePersister;
+import it.polimi.ingsw.server.SnapshotStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GamePersisterTest {
+
+    private File directory;
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("saves").toFile();
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory.toPath())) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String journal(GamePersister persister, int game) throws IOException {
+        return new String(persister.load(game).journal(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void writesAreDoneInOrder() throws IOException {
+        for (GamePersister.Durability durability : GamePersister.Durability.values()) {
+            GamePersister persister = new GamePersister(new SnapshotStore(directory), durability);
+            persister.save(durability.ordinal(), 1, bytes("game"));
+            persister.append(durability.ordinal(), 1, bytes("a"));
+            persister.append(durability.ordinal(), 1, bytes("b"));
+            assertEquals("ab", journal(persister, durability.ordinal()));
+            persister.close();
+        }
+
+        GamePersister persister = new GamePersister(new SnapshotStore(directory), GamePersister.Durability.FLUSH);
+        assertEquals(Set.of(0, 1, 2), persister.getSavedGames());
+        persister.delete(1);
+        assertEquals(Set.of(0, 2), persister.getSavedGames());
+        assertEquals(0, persister.getQueueDepth());
+        assertTrue(persister.getWrites() > 0);
+        assertTrue(persister.getMaxWriteMicros() >= persister.getAverageWriteMicros());
+    }
+
+    @Test
+    void writesOfAGameSavedAgainAreDropped() throws IOException {
+        GamePersister persister = new GamePersister(new SnapshotStore(directory), GamePersister.Durability.FLUSH);
+        // Holding the lock of the persister keeps its writer from taking the writes, as a slow disk would
+        synchronized (persister) {
+            persister.save(1, 1, bytes("old"));
+            persister.append(1, 1, bytes("turn"));
+            assertEquals(2, persister.getQueueDepth());
+            persister.save(1, 2, bytes("new"));
+            persister.append(1, 2, bytes("turn"));
+            assertEquals(2, persister.getQueueDepth());
+        }
+
+        SnapshotStore.SavedGame saved = persister.load(1);
+        assertEquals(2, saved.version());
+        assertEquals("new", new String(saved.snapshot(), StandardCharsets.UTF_8));
+        assertEquals("turn", journal(persister, 1));
+        assertEquals(2, persister.getCoalesced());
+        assertFalse(persister.hasFailed(1));
+    }
+
+    @Test
+    void failedGamesAreReported() throws IOException {
+        File notADirectory = new File(directory, "file");
+        assertTrue(notADirectory.createNewFile());
+        GamePersister persister = new GamePersister(new SnapshotStore(notADirectory), GamePersister.Durability.FLUSH);
+        persister.save(1, 1, bytes("game"));
+        persister.sync();
+        assertTrue(persister.hasFailed(1));
+    }
+}
@@ -0,0 +1,147 @@
+package it.polimi.ingsw;
+
+import it.polimi.ingsw.commons.Message;
+import it.polimi.ingsw.server.GamePersister;
+import it.polimi.ingsw.server.GameRegistry;
+import it.polimi.ingsw.server.SnapshotStore;
+import it.polimi.ingsw.server.ServerController;
+import it.polimi.ingsw.server.model.Room;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameRegistryTest {
+
+    @Test
+    void newPlayersJoinTheLobby() {
+        GameRegistry registry = new GameRegistry();
+        ServerController lobby = registry.join("pippo").join();
+
+        assertSame(lobby, registry.join("pluto").join());
+        assertSame(lobby, registry.getController(lobby.getId()));
+    }
+
+    @Test
+    void playersAreRoutedToTheirGame() {
+        GameRegistry registry = new GameRegistry();
+        ServerController game = startGame(registry, "pippo", "pluto");
+
+        assertTrue(game.isGameStarted());
+        assertSame(game, registry.join("pippo").join());
+        assertSame(game, registry.join("pluto").join());
+
+        ServerController nextGame = registry.join("paperino").join();
+        assertNotSame(game, nextGame);
+        assertNotEquals(game.getId(), nextGame.getId());
+        assertFalse(nextGame.isGameStarted());
+    }
+
+    @Test
+    void gamesRunSideBySide() {
+        GameRegistry registry = new GameRegistry();
+        ServerController first = startGame(registry, "pippo", "pluto");
+        ServerController second = startGame(registry, "qui", "quo");
+
+        assertEquals(2, registry.getGames().size());
+        assertNotSame(first.gameModel, second.gameModel);
+        assertNotSame(first.getCommonGoals(), second.getCommonGoals());
+        assertEquals(first.getCommonGoals(), first.gameModel.getPlayers().get(1).getCommonGoals());
+        assertEquals(second.getCommonGoals(), second.gameModel.getPlayers().get(0).getCommonGoals());
+
+        registry.remove(first);
+        assertEquals(1, registry.getGames().size());
+        assertNotSame(first, registry.join("pippo").join());
+        assertSame(second, registry.join("qui").join());
+    }
+
+    @Test
+    void savedGamesAreLoadedWhenTheirPlayersComeBack() throws IOException, InterruptedException {
+        File directory = Files.createTempDirectory("saves").toFile();
+        GamePersister persister = new GamePersister(new SnapshotStore(directory), GamePersister.Durability.NONE);
+        ServerController played = startGame(new GameRegistry(), "pippo", "pluto");
+        Message backUp = new Message(played.gameModel.getPlayers(), played.getCommonGoals(), played.getBoard(),
+                played.gameModel.getCurrentPlayer().getUsername());
+        persister.save(5, 1, backUp.getJSONstring().getBytes(StandardCharsets.UTF_8));
+
+        GameRegistry registry = new GameRegistry();
+        registry.restore(persister);
+        ServerController game = registry.join("pluto").join();
+        assertEquals(5, game.getId());
+        // The commands wait for the game to be loaded
+        CountDownLatch loaded = new CountDownLatch(1);
+        game.execute(loaded::countDown);
+        assertTrue(loaded.await(5, TimeUnit.SECONDS));
+        assertTrue(game.isGameStarted());
+        assertEquals(List.of("pippo", "pluto"), game.getUsernames());
+        assertSame(game, registry.join("pippo").join());
+
+        ServerController lobby = registry.join("paperino").join();
+        assertEquals(6, lobby.getId());
+        assertFalse(lobby.isGameStarted());
+
+        persister.close();
+        try (Stream<Path> files = Files.walk(directory.toPath())) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    void playersOfAGameThatCantBeLoadedJoinANewOne() throws IOException {
+        File directory = Files.createTempDirectory("saves").toFile();
+        GamePersister persister = new GamePersister(new SnapshotStore(directory), GamePersister.Durability.NONE);
+        // The players can be read, but not the rest of the game
+        persister.save(3, 1, "{\"category\":\"backUp\",\"players\":[{\"username\":\"pippo\"},{\"username\":\"pluto\"}]}".getBytes(StandardCharsets.UTF_8));
+
+        GameRegistry registry = new GameRegistry();
+        registry.restore(persister);
+        ServerController game = registry.join("pippo").join();
+        assertNotEquals(3, game.getId());
+        assertFalse(game.isGameStarted());
+        assertSame(game, registry.join("pluto").join());
+        assertNull(registry.getController(3));
+
+        persister.close();
+        try (Stream<Path> files = Files.walk(directory.toPath())) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    void roomsHaveTheirOwnSize() {
+        Room small = new Room(0);
+        Room big = new Room(1);
+        small.setNumberOfPlayers(2);
+        big.setNumberOfPlayers(4);
+
+        small.addPlayer(null);
+        small.addPlayer(null);
+        big.addPlayer(null);
+        big.addPlayer(null);
+
+        assertTrue(small.full());
+        assertFalse(big.full());
+    }
+
+    private ServerController startGame(GameRegistry registry, String... usernames) {
+        ServerController game = registry.lobby();
+        for (String username : usernames) {
+            game.addPlayer(username, false);
+            game.startRoom();
+            registry.bind(username, game);
+        }
+        game.setNumberOfPlayers(usernames.length);
+        assertEquals(1, game.checkRoom());
+        return game;
+    }
+}
@@ -0,0 +1,191 @@
+package it.polimi.ingsw;
+
+import it.polimi.ingsw.commons.Message;
+import it.polimi.ingsw.commons.MessageCodec;
+import it.polimi.ingsw.server.GameSnapshot;
+import it.polimi.ingsw.server.model.*;
+import it.polimi.ingsw.utils.Color;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameSnapshotTest {
+
+    /**
+     * @return a game with 4 players, halfway through: half full bookshelves, some common goal tokens taken
+     */
+    private GameModel game() throws Exception {
+        return game("player0");
+    }
+
+    /**
+     * @param firstUsername the username of the first player, the others are called <code>player1</code> to <code>player3</code>
+     * @return a game with 4 players, halfway through: half full bookshelves, some common goal tokens taken
+     */
+    private GameModel game(String firstUsername) throws Exception {
+        List<Player> players = new ArrayList<>();
+        Color[] colors = Color.values();
+        for (int i = 0; i < 4; i++) {
+            Player player = new Player(i == 0 ? firstUsername : "player" + i, false, i == 0, false);
+            Bookshelf bookshelf = new Bookshelf(6, 5);
+            for (int row = 3; row < 6; row++) {
+                for (int column = 0; column < 5; column++) {
+                    bookshelf.setItem(row, column, Optional.of(new Item(colors[(row + column + i) % colors.length], column % 3 + 1)));
+                }
+            }
+            player.setBookshelf(bookshelf);
+            player.setPersonalGoal(SettingLoader.loadSpecificPersonalGoal(i + 3));
+            players.add(player);
+        }
+        Board board = new Board(4);
+        board.fill();
+        List<CommonGoal> commonGoals = SettingLoader.commonGoalLoader(4).subList(0, 2);
+        GameModel game = new GameModel(players, board, commonGoals);
+        game.setGame(commonGoals);
+        players.get(2).setCommonGoalPoints(commonGoals.get(1));
+        commonGoals.get(1).getScoringList().remove(0);
+        players.get(3).setHasEndGameCard(true);
+        game.setLastRound(true);
+        game.setCurrentPlayer(players.get(1));
+        return game;
+    }
+
+    private byte[] json(GameModel game) {
+        return new Message(game.getPlayers(), game.getCommonGoals(), game.getBoard(), game.getCurrentPlayer().getUsername())
+                .getJSONstring().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void assertSameGame(GameModel expected, GameSnapshot actual) {
+        assertEquals(expected.getPlayers().size(), actual.players().size());
+        for (int i = 0; i < actual.players().size(); i++) {
+            Player player = expected.getPlayers().get(i);
+            Player decoded = actual.players().get(i);
+            assertEquals(player.getUsername(), decoded.getUsername());
+            assertEquals(player.isFirstPlayer(), decoded.isFirstPlayer());
+            assertEquals(player.getPersonalGoal().getIndex(), decoded.getPersonalGoal().getIndex());
+            assertEquals(player.getCommonGoalScoreList(), decoded.getCommonGoalScoreList());
+            assertEquals(player.getCommonGoalCompleted(), decoded.getCommonGoalCompleted());
+            assertArrayEquals(player.getBookshelf().getItems(), decoded.getBookshelf().getItems());
+        }
+        for (int i = 0; i < actual.commonGoals().size(); i++) {
+            assertEquals(expected.getCommonGoals().get(i).getLayout().getName(), actual.commonGoals().get(i).getLayout().getName());
+            assertEquals(expected.getCommonGoals().get(i).getScoringList(), actual.commonGoals().get(i).getScoringList());
+        }
+        assertArrayEquals(expected.getBoard().getBoardMatrix(), actual.board().getBoardMatrix());
+        assertEquals(expected.getBoard().getItemBag(), actual.board().getItemBag());
+        assertEquals(expected.getCurrentPlayer().getUsername(), actual.currentPlayer());
+    }
+
+    @Test
+    void snapshotsRoundTrip() throws Exception {
+        GameModel game = game();
+        byte[] bytes = GameSnapshot.of(game).encode();
+        GameSnapshot decoded = GameSnapshot.decode(bytes);
+
+        assertSameGame(game, decoded);
+        assertTrue(decoded.lastRound());
+        assertTrue(decoded.players().get(3).hasEndGameCard());
+        assertFalse(decoded.players().get(2).hasEndGameCard());
+        assertEquals(List.of("player0", "player1", "player2", "player3"), GameSnapshot.usernames(bytes));
+        // Encoded again the same way
+        assertArrayEquals(bytes, decoded.encode());
+    }
+
+    @Test
+    void usernamesAreKeptAsTheyAre() throws Exception {
+        String username = "Jürgen \uD83D\uDE00\u0000李";
+        GameModel game = game(username);
+        byte[] bytes = GameSnapshot.of(game).encode();
+
+        assertEquals(username, GameSnapshot.decode(bytes).players().get(0).getUsername());
+        assertEquals(List.of(username, "player1", "player2", "player3"), GameSnapshot.usernames(bytes));
+    }
+
+    @Test
+    void backUpsSavedAsJsonAreRead() throws Exception {
+        GameModel game = game();
+        byte[] json = json(game);
+
+        assertSameGame(game, GameSnapshot.decode(json));
+        assertEquals(List.of("player0", "player1", "player2", "player3"), GameSnapshot.usernames(json));
+    }
+
+    @Test
+    void damagedSnapshotsAreRejected() throws Exception {
+        byte[] bytes = GameSnapshot.of(game()).encode();
+
+        byte[] flipped = bytes.clone();
+        flipped[bytes.length / 2] ^= 1;
+        assertThrows(IllegalArgumentException.class, () -> GameSnapshot.decode(flipped));
+        assertThrows(IllegalArgumentException.class, () -> GameSnapshot.usernames(flipped));
+        assertThrows(IllegalArgumentException.class, () -> GameSnapshot.decode(Arrays.copyOf(bytes, bytes.length - 1)));
+        byte[] newer = bytes.clone();
+        newer[4] = 2;
+        assertThrows(IllegalArgumentException.class, () -> GameSnapshot.decode(newer));
+    }
+
+    @Test
+    void snapshotsAreSmallerThanJson() throws Exception {
+        GameModel game = game();
+        byte[] json = json(game);
+        byte[] binary = GameSnapshot.of(game).encode();
+
+        assertTrue(binary.length * 10 < json.length, binary.length + " bytes against " + json.length);
+    }
+
+    /**
+     * Compares the size of a saved game and the time taken to save and load it, as a snapshot and as JSON.
+     * The times are only printed, since they depend on the machine running the tests,
+     * so this benchmark is not part of the default test run.
+     */
+    @Test
+    @Tag("benchmark")
+    void comparedWithJson() throws Exception {
+        GameModel game = game();
+        int iterations = 200;
+        byte[] json = json(game);
+        byte[] binary = GameSnapshot.of(game).encode();
+
+        // Warm up, then measure
+        long[] jsonNanos = new long[2];
+        long[] binaryNanos = new long[2];
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                json(game);
+            }
+            jsonNanos[0] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                Message backUp = MessageCodec.JSON.decode(json, 0, json.length);
+                backUp.getPlayers();
+                backUp.getBoard();
+                backUp.getItemBag();
+                backUp.getCommonGoals(4);
+            }
+            jsonNanos[1] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                GameSnapshot.of(game).encode();
+            }
+            binaryNanos[0] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                GameSnapshot.decode(binary);
+            }
+            binaryNanos[1] = System.nanoTime() - start;
+        }
+
+        System.out.printf("JSON:     %5d bytes, save %6.1f µs, load %6.1f µs%n", json.length,
+                jsonNanos[0] / 1000.0 / iterations, jsonNanos[1] / 1000.0 / iterations);
+        System.out.printf("Snapshot: %5d bytes, save %6.1f µs, load %6.1f µs%n", binary.length,
+                binaryNanos[0] / 1000.0 / iterations, binaryNanos[1] / 1000.0 / iterations);
+    }
+}
@@ -0,0 +1,133 @@
+package it.polimi.ingsw;
+
+import it.polimi.ingsw.commons.Broadcast;
+import it.polimi.ingsw.commons.Framing;
+import it.polimi.ingsw.commons.Message;
+import it.polimi.ingsw.commons.MessageType;
+import it.polimi.ingsw.commons.StateDelta;
+import it.polimi.ingsw.server.GameStateTracker;
+import it.polimi.ingsw.server.model.Board;
+import it.polimi.ingsw.server.model.Bookshelf;
+import it.polimi.ingsw.server.model.Item;
+import it.polimi.ingsw.utils.Color;
+import it.polimi.ingsw.utils.Coordinates;
+import org.json.simple.parser.JSONParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GameStateTrackerTest {
+
+    /**
+     * @return the message as the client receives it
+     */
+    private Message sent(Message message) {
+        return Framing.parse(message.getJSONstring(), new JSONParser());
+    }
+
+    @Test
+    void noDeltaWithoutBaseline() {
+        GameStateTracker tracker = new GameStateTracker();
+
+        assertFalse(tracker.hasBaseline());
+        assertNull(tracker.delta(new Board(), new HashMap<>(), new HashMap<>(), List.of(8)));
+        assertEquals(0, tracker.getVersion());
+    }
+
+    @Test
+    void deltaContainsOnlyTheChanges() {
+        Board board = new Board(2);
+        board.fill();
+        HashMap<String, Bookshelf> bookshelves = new HashMap<>();
+        bookshelves.put("alice", new Bookshelf(6, 5));
+        bookshelves.put("bob", new Bookshelf(6, 5));
+        Map<String, List<Integer>> points = new HashMap<>();
+        points.put("alice", List.of(0, 0, 0, 0));
+        points.put("bob", List.of(0, 0, 0, 0));
+
+        GameStateTracker tracker = new GameStateTracker();
+        assertEquals(1, tracker.snapshot(board, bookshelves, points, List.of(8, 8)));
+
+        // Alice picks two items and puts them in her first column, completing a common goal
+        Item first = board.getItem(4, 1);
+        Item second = board.getItem(4, 2);
+        board.setItem(4, 1, null);
+        board.setItem(4, 2, null);
+        bookshelves.get("alice").setItem(5, 0, Optional.of(first));
+        bookshelves.get("alice").setItem(4, 0, Optional.of(second));
+        points.put("alice", List.of(1, 8, 0, 9));
+
+        Message delta = sent(tracker.delta(board, bookshelves, points, List.of(6, 8)));
+        assertEquals("delta", delta.getCategory());
+        assertEquals(2, delta.getVersion());
+        assertEquals(2, tracker.getVersion());
+
+        Map<Coordinates, Item> boardChanges = delta.getBoardChanges();
+        assertEquals(2, boardChanges.size());
+        assertTrue(boardChanges.containsKey(new Coordinates(4, 1)));
+        assertNull(boardChanges.get(new Coordinates(4, 1)));
+
+        Map<String, Map<Coordinates, Item>> bookshelfChanges = delta.getBookshelfChanges();
+        assertEquals(Map.of("alice", Map.of(new Coordinates(5, 0), first, new Coordinates(4, 0), second)), bookshelfChanges);
+        // The scores are not shared, each player is sent their own
+        assertTrue(delta.getChangedScore().isEmpty());
+        assertEquals(Map.of("alice", List.of(1, 8, 0, 9)), tracker.getChangedScores());
+        Message toAlice = sent(new Broadcast(delta).to(Message.scoreFields(List.of(1, 8, 0, 9))));
+        assertEquals(List.of(1, 8, 0, 9), toAlice.getChangedScore());
+        assertEquals(bookshelfChanges, toAlice.getBookshelfChanges());
+        assertEquals(List.of(6, 8), delta.getTopOfScoringList());
+        assertEquals(MessageType.DELTA, delta.getType());
+        StateDelta decoded = delta.getStateDelta();
+        assertSame(decoded, delta.getStateDelta());
+        assertEquals(2, decoded.version());
+        assertEquals(bookshelfChanges, decoded.bookshelfChanges());
+
+        // Nothing has changed since
+        Message empty = sent(tracker.delta(board, bookshelves, points, List.of(6, 8)));
+        assertEquals(3, empty.getVersion());
+        assertTrue(empty.getBoardChanges().isEmpty());
+        assertTrue(empty.getBookshelfChanges().isEmpty());
+        assertTrue(tracker.getChangedScores().isEmpty());
+        assertTrue(empty.getTopOfScoringList().isEmpty());
+    }
+
+    @Test
+    void deltaIsMuchSmallerThanAnUpdate() {
+        Board board = new Board(4);
+        board.fill();
+        HashMap<String, Bookshelf> bookshelves = new HashMap<>();
+        Map<String, List<Integer>> points = new HashMap<>();
+        for (String name : List.of("alice", "bob", "carol", "dave")) {
+            bookshelves.put(name, new Bookshelf(6, 5));
+            points.put(name, List.of(0, 0, 0, 0));
+        }
+        GameStateTracker tracker = new GameStateTracker();
+        tracker.snapshot(board, bookshelves, points, List.of(8, 8));
+
+        Item picked = board.getItem(4, 4);
+        board.setItem(4, 4, null);
+        bookshelves.get("carol").setItem(5, 2, Optional.of(picked));
+        points.put("carol", List.of(0, 0, 0, 0));
+
+        String delta = tracker.delta(board, bookshelves, points, List.of(8, 8)).getJSONstring();
+        String update = new Message("update", bookshelves, board, List.of(0, 0, 0, 0), List.of(8, 8)).getJSONstring();
+        assertTrue(delta.length() * 10 < update.length(), delta.length() + " against " + update.length());
+    }
+
+    @Test
+    void resetForgetsTheBaseline() {
+        GameStateTracker tracker = new GameStateTracker();
+        tracker.snapshot(new Board(), new HashMap<>(), new HashMap<>(), List.of(4));
+        tracker.reset();
+
+        assertNull(tracker.delta(new Board(), new HashMap<>(), new HashMap<>(), List.of(4)));
+        Board board = new Board();
+        board.setItem(0, 3, new Item(Color.BLUE, 1));
+        assertEquals(2, tracker.snapshot(board, new HashMap<>(), new HashMap<>(), List.of(4)));
+    }
+}
@@ -0,0 +1,63 @@
+package it.polimi.ingsw;
+
+import it.polimi.ingsw.server.HeartbeatWheel;
+import it.polimi.ingsw.server.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HeartbeatWheelTest {
+
+    private HeartbeatWheel wheel;
+
+    @BeforeEach
+    void setUp() {
+        wheel = new HeartbeatWheel(5, TimeUnit.MILLISECONDS, 8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        wheel.stop();
+    }
+
+    @Test
+    void silentSessionsTimeOut() throws InterruptedException {
+        CountDownLatch timedOut = new CountDownLatch(1);
+        HeartbeatWheel.Heartbeat heartbeat = wheel.watch(new Session("pippo"), 100, TimeUnit.MILLISECONDS, timedOut::countDown);
+
+        assertTrue(timedOut.await(5, TimeUnit.SECONDS));
+        assertTrue(heartbeat.isCancelled());
+    }
+
+    @Test
+    void pongsKeepSessionsAlive() throws InterruptedException {
+        Session session = new Session("pippo");
+        CountDownLatch timedOut = new CountDownLatch(1);
+        long watched = System.nanoTime();
+        wheel.watch(session, 100, TimeUnit.MILLISECONDS, timedOut::countDown);
+
+        // Longer than a full turn of the wheel, and longer than the timeout
+        for (int i = 0; i < 6; i++) {
+            Thread.sleep(40);
+            session.pong();
+        }
+        assertEquals(1, timedOut.getCount());
+
+        assertTrue(timedOut.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - watched >= TimeUnit.MILLISECONDS.toNanos(340));
+    }
+
+    @Test
+    void cancelledSessionsNeverTimeOut() throws InterruptedException {
+        CountDownLatch timedOut = new CountDownLatch(1);
+        HeartbeatWheel.Heartbeat heartbeat = wheel.watch(new Session("pippo"), 20, TimeUnit.MILLISECONDS, timedOut::countDown);
+        heartbeat.cancel();
+
+        assertFalse(timedOut.await(200, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,92 @@
+package it.polimi.ingsw;
+
+import it.polimi.ingsw.server.model.Bookshelf;
+import it.polimi.ingsw.server.model.CommonGoal;
+import it.polimi.ingsw.server.model.Item;
+import it.polimi.ingsw.server.model.layouts.*;
+import it.polimi.ingsw.utils.Color;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LayoutMasksTest {
+
+    @BeforeAll
+    static void setupAll() {
+        SettingLoader.loadBookshelfSettings();
+    }
+
+    /**
+     * @param random the random generator
+     * @return a bookshelf with few colors, or with lines of different colors, to find the layouts often,
+     * filled from the bottom as in a game or with holes, which only {@link Bookshelf#setItem} can leave
+     */
+    private Bookshelf randomBookshelf(Random random) {
+        Bookshelf b = new Bookshelf();
+        int colors = 1 + random.nextInt(3);
+        boolean lines = random.nextInt(4) == 0;
+        int step = random.nextInt(3);
+        boolean holes = random.nextBoolean();
+        double density = 0.5 + random.nextDouble() / 2;
+        for (int column = 0; column < Bookshelf.getColumns(); column++) {
+            int height = random.nextInt(Bookshelf.getRows() + 1);
+            for (int row = 0; row < Bookshelf.getRows(); row++) {
+                if (holes ? random.nextDouble() < density : row < height) {
+                    Color color = Color.values()[lines ? (row + column * step) % Color.values().length : random.nextInt(colors)];
+                    b.setItem(row, column, Optional.of(new Item(color, 1 + random.nextInt(3))));
+                }
+            }
+        }
+        return b;
+    }
+
+    @Test
+    void masksGiveTheSameResultsAsTheCells() {
+        List<Layout> layouts = new ArrayList<>();
+        for (CommonGoal commonGoal : SettingLoader.commonGoalLoader(4)) {
+            layouts.add(commonGoal.getLayout());
+        }
+        int gameLayouts = layouts.size();
+        layouts.addAll(List.of(new Group(1, 1, 0, 0), new Group(1, 1, 20, 0), new Group(1, 1, 2, 1),
+                new Square(1, 1, 0, 2), new Square(1, 1, 0, 1), new Square(1, 1, 5, 1),
+                new FullLine(1, 2, 1, true), new FullLine(2, 3, 1, false), new Corners(2, 4)));
+
+        boolean[][] results = new boolean[layouts.size()][2];
+        Random random = new Random(23);
+        for (int i = 0; i < 3000; i++) {
+            Bookshelf b = randomBookshelf(random);
+            for (int j = 0; j < layouts.size(); j++) {
+                Layout layout = layouts.get(j);
+                boolean expected = layout.check(b);
+                assertEquals(expected, layout.checkMasks(b), layout.getName() + " " + layout.getInfo() + " on bookshelf " + i);
+                results[j][expected ? 1 : 0] = true;
+            }
+        }
+        // Every layout of the game was both found and not found
+        for (int j = 0; j < gameLayouts; j++) {
+            assertTrue(results[j][0] && results[j][1], layouts.get(j).getName());
+        }
+    }
+
+    @Test
+    void emptyAndFullBookshelves() {
+        Bookshelf empty = new Bookshelf();
+        Bookshelf full = new Bookshelf();
+        for (int row = 0; row < Bookshelf.getRows(); row++) {
+            for (int column = 0; column < Bookshelf.getColumns(); column++) {
+                full.setItem(row, column, Optional.of(new Item(Color.GREEN, 1)));
+            }
+        }
+        for (CommonGoal commonGoal : SettingLoader.commonGoalLoader(4)) {
+            Layout layout = commonGoal.getLayout();
+            assertEquals(layout.check(empty), layout.checkMasks(empty), layout.getName());
+            assertEquals(layout.check(full), layout.checkMasks(full), layout.getName());
+        }
+    }
+}
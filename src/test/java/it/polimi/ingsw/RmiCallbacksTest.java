@@ -0,0 +1,116 @@
+package it.polimi.ingsw;
+
+import it.polimi.ingsw.client.ClientCommunicationInterface;
+import it.polimi.ingsw.commons.Message;
+import it.polimi.ingsw.server.ClientConnection;
+import it.polimi.ingsw.server.Outbox;
+import it.polimi.ingsw.server.RmiCallbacks;
+import it.polimi.ingsw.server.ServerCommunicationInterface;
+import it.polimi.ingsw.server.Session;
+import it.polimi.ingsw.server.SessionTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RmiCallbacksTest {
+
+    /**
+     * A client that records the remote calls it receives. The first call blocks until the client is released.
+     */
+    private static class RecordingClient implements ClientCommunicationInterface {
+        final List<List<String>> calls = new ArrayList<>();
+        final CountDownLatch released = new CountDownLatch(1);
+        final CountDownLatch received;
+
+        RecordingClient(int expectedMessages) {
+            received = new CountDownLatch(expectedMessages);
+        }
+
+        @Override
+        public void callBackSendMessage(Message message) {
+            callBackSendMessages(List.of(message));
+        }
+
+        @Override
+        public void callBackSendMessages(List<Message> messages) {
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (calls) {
+                calls.add(messages.stream().map(Message::getCategory).toList());
+            }
+            messages.forEach(message -> received.countDown());
+        }
+
+        @Override
+        public String getUsername() {
+            return "pippo";
+        }
+
+        @Override
+        public void setUsername(String username) {
+        }
+    }
+
+    @Test
+    void waitingMessagesAreSentWithOneCall() throws InterruptedException {
+        RmiCallbacks callbacks = new RmiCallbacks();
+        RecordingClient client = new RecordingClient(4);
+
+        // The first message keeps the sender busy while the others wait in the outbox
+        assertTrue(callbacks.send(client, new Message("username")));
+        Thread.sleep(100);
+        assertTrue(callbacks.send(client, new Message("update")));
+        assertTrue(callbacks.send(client, new Message("lastRound")));
+        assertTrue(callbacks.send(client, new Message("turn")));
+        client.released.countDown();
+
+        assertTrue(client.received.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(List.of("username"), List.of("update", "lastRound", "turn")), client.calls);
+    }
+
+    @Test
+    void sessionSharesTheOutboxOfTheClient() throws InterruptedException {
+        RmiCallbacks callbacks = ServerCommunicationInterface.callbacks;
+        RecordingClient client = new RecordingClient(2);
+        client.released.countDown();
+        SessionTable sessions = new SessionTable();
+
+        assertTrue(callbacks.send(client, new Message("username")));
+        Session session = sessions.connect("pippo", ClientConnection.of(client));
+        Outbox outbox = callbacks.outbox(client);
+        assertTrue(session.send(new Message("waitingRoom")));
+        assertTrue(client.received.await(5, TimeUnit.SECONDS));
+        List<String> categories = new ArrayList<>();
+        client.calls.forEach(categories::addAll);
+        assertEquals(List.of("username", "waitingRoom"), categories);
+
+        // Once the player is gone, the outbox of the client is forgotten
+        sessions.dropConnection("pippo");
+        assertFalse(session.send(new Message("turn")));
+        assertNotSame(outbox, callbacks.outbox(client));
+        callbacks.forget(client);
+    }
+
+    @Test
+    void slowClientsAreForgotten() {
+        RmiCallbacks callbacks = new RmiCallbacks();
+        RecordingClient client = new RecordingClient(1);
+
+        boolean sent = true;
+        for (int i = 0; i < 1000 && sent; i++) {
+            sent = callbacks.send(client, new Message("turn"));
+        }
+        client.released.countDown();
+
+        assertFalse(sent);
+        assertEquals(0, callbacks.size());
+    }
+}
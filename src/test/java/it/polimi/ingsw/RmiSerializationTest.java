@@ -0,0 +1,156 @@
+package it.polimi.ingsw;
+
+import it.polimi.ingsw.commons.BinaryCodec;
+import it.polimi.ingsw.commons.Message;
+import it.polimi.ingsw.commons.RmiSocketFactory;
+import it.polimi.ingsw.server.ServerCommunicationInterface;
+import it.polimi.ingsw.server.model.Board;
+import it.polimi.ingsw.server.model.Bookshelf;
+import it.polimi.ingsw.server.model.Item;
+import it.polimi.ingsw.utils.Color;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RmiSerializationTest {
+
+    public interface Echo extends Remote {
+        Message echo(Message message) throws RemoteException;
+    }
+
+    /**
+     * @return an update of a game with 4 players, with a full board and half full bookshelves
+     */
+    private Message update() {
+        Board board = new Board(4);
+        board.fill();
+        HashMap<String, Bookshelf> bookshelves = new HashMap<>();
+        Color[] colors = Color.values();
+        for (int player = 0; player < 4; player++) {
+            Bookshelf bookshelf = new Bookshelf(6, 5);
+            for (int row = 3; row < 6; row++) {
+                for (int column = 0; column < 5; column++) {
+                    bookshelf.setItem(row, column, Optional.of(new Item(colors[(row + column + player) % colors.length], column % 3)));
+                }
+            }
+            bookshelves.put("player" + player, bookshelf);
+        }
+        return new Message("update", bookshelves, board, List.of(6, 8, 3, 17), List.of(8, 4));
+    }
+
+    private byte[] serialize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    private Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+    private int indexOf(byte[] bytes, byte[] part) {
+        for (int start = 0; start + part.length <= bytes.length; start++) {
+            if (Arrays.equals(bytes, start, start + part.length, part, 0, part.length)) {
+                return start;
+            }
+        }
+        throw new AssertionError("Not found");
+    }
+
+    @Test
+    void messagesRoundTrip() throws IOException, ClassNotFoundException, ParseException {
+        Message update = update();
+        Message received = (Message) deserialize(serialize(update));
+
+        assertEquals(new JSONParser().parse(update.getJSONstring()), received.getJson());
+        assertEquals(update.getScore(), received.getScore());
+        assertEquals(update.getBoard().getItem(4, 4), received.getBoard().getItem(4, 4));
+        assertEquals(update.getAllBookshelves().get("player1").getItemAt(5, 2), received.getAllBookshelves().get("player1").getItemAt(5, 2));
+        assertEquals("bob", ((Message) deserialize(serialize(new Message("otherTurn", "bob")))).getArgument());
+    }
+
+    @Test
+    void invalidMessagesAreRejected() throws IOException {
+        Message message = new Message("otherTurn", "bob");
+        byte[] bytes = serialize(message);
+        // Replace the tag of the encoded message with one that doesn't exist
+        int start = indexOf(bytes, BinaryCodec.encode(message));
+        bytes[start] = 42;
+        assertThrows(InvalidObjectException.class, () -> deserialize(bytes));
+    }
+
+    @Test
+    void messagesAreSmallerThanTheJsonObject() throws IOException {
+        Message update = update();
+        byte[] compact = serialize(update);
+        byte[] json = serialize(update.getJson());
+        assertTrue(compact.length * 10 < json.length, compact.length + " bytes against " + json.length);
+    }
+
+    /**
+     * Compares the bytes and the time needed to serialize a message with those of its JSON object,
+     * which is how messages were serialized before. The times are only printed, since they depend
+     * on the machine running the tests, so this benchmark is not part of the default test run.
+     */
+    @Test
+    @Tag("benchmark")
+    void comparedWithTheJsonObject() throws IOException, ClassNotFoundException {
+        Message update = update();
+        byte[] compact = serialize(update);
+        byte[] json = serialize(update.getJson());
+
+        int rounds = 500;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            deserialize(serialize(update.getJson()));
+        }
+        long jsonTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            deserialize(serialize(update));
+        }
+        long compactTime = System.nanoTime() - start;
+
+        System.out.printf("Update over RMI: JSON object %d bytes, %.1f µs; compact %d bytes, %.1f µs%n",
+                json.length, jsonTime / 1000.0 / rounds, compact.length, compactTime / 1000.0 / rounds);
+    }
+
+    @Test
+    void remoteCallsUseTheSocketFactory() throws RemoteException {
+        Echo echo = message -> message;
+        Echo stub = (Echo) UnicastRemoteObject.exportObject(echo, 0, RmiSocketFactory.INSTANCE, RmiSocketFactory.INSTANCE);
+        try {
+            Message update = update();
+            Message received = stub.echo(update);
+            assertEquals(update.getScore(), received.getScore());
+            assertEquals(update.getBoard().getItem(4, 4), received.getBoard().getItem(4, 4));
+        } finally {
+            UnicastRemoteObject.unexportObject(echo, true);
+        }
+    }
+
+    @Test
+    void serverCanBeExported() throws RemoteException {
+        // Every public method of a remote interface must be callable remotely
+        ServerCommunicationInterface server = new ServerCommunicationInterface() {
+        };
+        assertInstanceOf(ServerCommunicationInterface.class, UnicastRemoteObject.exportObject(server, 0, RmiSocketFactory.INSTANCE, RmiSocketFactory.INSTANCE));
+        UnicastRemoteObject.unexportObject(server, true);
+    }
+}
@@ -0,0 +1,176 @@
+package it.polimi.ingsw;
+
+import it.polimi.ingsw.commons.Compression;
+import it.polimi.ingsw.commons.Framing;
+import it.polimi.ingsw.commons.Message;
+import it.polimi.ingsw.server.ServerTcpNio;
+import org.json.simple.parser.JSONParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ServerTcpNioTest {
+
+    private ServerTcpNio server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new ServerTcpNio(0, 2);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void speaksNewlineJson() throws IOException, InterruptedException {
+        try (Socket socket = new Socket("localhost", server.getLocalPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+            // A message split in two parts must be read as one
+            out.write("{\"category\":\"completeLogin\",".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            Thread.sleep(50);
+            out.write("\"argument\":\"nioTester\",\"bool\":true}\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            assertEquals("{\"argument\":\"nioTester\",\"category\":\"username\"}", in.readLine());
+            String next = in.readLine();
+            assertTrue(next.contains("chooseNumOfPlayer") || next.contains("waitingRoom"), next);
+
+            // Two messages in the same packet, the first one unknown to the server
+            out.write("{\"category\":\"notAMessage\"}\n{\"category\":\"ping\"}\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            assertEquals("{\"category\":\"pong\"}", in.readLine());
+        }
+    }
+
+    @Test
+    void survivesInvalidMessages() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getLocalPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+            out.write("not json\n{\"category\":\"completeLogin\"}\n".getBytes(StandardCharsets.UTF_8));
+            out.write("{\"category\":\"completeLogin\",\"argument\":\"nioSurvivor\",\"bool\":true}\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            assertEquals("{\"argument\":\"nioSurvivor\",\"category\":\"username\"}", in.readLine());
+        }
+    }
+
+    @Test
+    void negotiatesFrames() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getLocalPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            JSONParser parser = new JSONParser();
+
+            out.write(Framing.encode(Framing.handshake(), false));
+            out.flush();
+            Message handshake = Framing.parse(Framing.readLine(in), parser);
+            assertTrue(Framing.isHandshake(handshake));
+            assertFalse(Framing.isBinary(handshake));
+
+            // An unknown frame followed by a login sent one byte at a time
+            ByteArrayOutputStream frames = new ByteArrayOutputStream();
+            frames.write(Framing.frame((byte) 99, new byte[]{1, 2, 3}));
+            frames.write(Framing.encode(new Message("completeLogin", "nioFramé", 0, true, 0), true));
+            for (byte b : frames.toByteArray()) {
+                out.write(b);
+                out.flush();
+            }
+
+            Message answer = Framing.readMessage(in);
+            assertEquals("username", answer.getCategory());
+            assertEquals("nioFramé", answer.getUsername());
+        }
+    }
+
+    @Test
+    void acceptsLinesUntilTheFirstFrame() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getLocalPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            JSONParser parser = new JSONParser();
+
+            // The client doesn't wait for the answer to the handshake
+            out.write(Framing.encode(Framing.handshake(), false));
+            out.write(Framing.encode(new Message("completeLogin", "nioLate", 0, true, 0), false));
+            out.flush();
+            assertTrue(Framing.isHandshake(Framing.parse(Framing.readLine(in), parser)));
+            assertEquals("nioLate", Framing.readMessage(in).getUsername());
+
+            out.write(Framing.encode(new Message("completeLogin", "nioLater", 0, true, 0), true));
+            out.flush();
+            Message answer;
+            do {
+                // The first login is also asked for the number of players
+                answer = Framing.readMessage(in);
+            } while (!"username".equals(answer.getCategory()));
+            assertEquals("nioLater", answer.getUsername());
+        }
+    }
+
+    @Test
+    void negotiatesBinaryCodec() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getLocalPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            JSONParser parser = new JSONParser();
+
+            out.write(Framing.encode(Framing.handshake(true), false));
+            out.flush();
+            assertTrue(Framing.isBinary(Framing.parse(Framing.readLine(in), parser)));
+
+            out.write(Framing.encode(new Message("completeLogin", "nioBinary", 0, true, 0), true, true));
+            out.flush();
+
+            int length = in.readInt();
+            assertEquals(Framing.BINARY, in.readByte());
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            Message answer = Framing.decode(Framing.BINARY, payload);
+            assertEquals("username", answer.getCategory());
+            assertEquals("nioBinary", answer.getUsername());
+        }
+    }
+
+    @Test
+    void negotiatesCompression() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getLocalPort())) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            JSONParser parser = new JSONParser();
+
+            out.write(Framing.encode(Framing.handshake(false, true), false));
+            out.flush();
+            Message handshake = Framing.parse(Framing.readLine(in), parser);
+            assertTrue(Framing.isCompressed(handshake));
+            assertFalse(Framing.isBinary(handshake));
+
+            Compression compression = new Compression();
+            out.write(compression.compress(Framing.encode(new Message("completeLogin", "nioDeflate", 0, true, 0), true, false)));
+            out.flush();
+
+            Message answer = Framing.readMessage(in, compression);
+            assertEquals("username", answer.getCategory());
+            assertEquals("nioDeflate", answer.getUsername());
+        }
+    }
+}
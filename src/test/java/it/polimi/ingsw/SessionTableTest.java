@@ -0,0 +1,156 @@
+package it.polimi.ingsw;
+
+import it.polimi.ingsw.commons.Message;
+import it.polimi.ingsw.server.ClientConnection;
+import it.polimi.ingsw.server.OutboundBatch;
+import it.polimi.ingsw.server.Outbox;
+import it.polimi.ingsw.server.Session;
+import it.polimi.ingsw.server.SessionTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionTableTest {
+
+    @Test
+    void connectAndSend() throws InterruptedException {
+        SessionTable sessions = new SessionTable();
+        List<Message> received = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        ClientConnection connection = message -> {
+            received.add(message);
+            done.countDown();
+        };
+
+        Session session = sessions.connect("pippo", connection);
+
+        assertSame(session, sessions.get("pippo"));
+        assertTrue(session.isConnected());
+        assertEquals(1, sessions.countConnected());
+        assertTrue(session.send(new Message("otherTurn", "pluto")));
+        assertTrue(session.send(new Message("turn")));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("otherTurn", received.get(0).getCategory());
+        assertEquals("turn", received.get(1).getCategory());
+    }
+
+    @Test
+    void slowConsumersAreDropped() throws InterruptedException {
+        List<String> slowConsumers = new ArrayList<>();
+        SessionTable sessions = new SessionTable(slowConsumers::add);
+        CountDownLatch blocked = new CountDownLatch(1);
+        Session slow = sessions.connect("pippo", message -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException ignored) {
+            }
+        });
+
+        // The sender may take the batches waiting before blocking, then the outbox fills up again
+        boolean sent = true;
+        for (int i = 0; i <= 2 * Outbox.CAPACITY + 1 && sent; i++) {
+            sent = slow.send(new Message("turn"));
+        }
+        blocked.countDown();
+
+        assertFalse(sent);
+        assertFalse(slow.isConnected());
+        assertEquals(List.of("pippo"), slowConsumers);
+        assertFalse(slow.send(new Message("turn")));
+        assertEquals(List.of("pippo"), slowConsumers);
+    }
+
+    @Test
+    void disconnectAndReconnect() {
+        SessionTable sessions = new SessionTable();
+        sessions.connect("pippo", message -> {
+        });
+        sessions.connect("pluto", message -> {
+        });
+
+        sessions.markDisconnected("pippo");
+        sessions.markDisconnected("pippo");
+
+        assertTrue(sessions.isDisconnected("pippo"));
+        assertFalse(sessions.isDisconnected("pluto"));
+        assertFalse(sessions.get("pippo").isConnected());
+        assertFalse(sessions.get("pippo").send(new Message("turn")));
+        assertEquals(1, sessions.countDisconnected());
+        assertEquals(1, sessions.countConnected());
+
+        assertTrue(sessions.markReconnected("pippo"));
+        assertFalse(sessions.markReconnected("pippo"));
+        assertEquals(0, sessions.countDisconnected());
+    }
+
+    @Test
+    void pongs() {
+        SessionTable sessions = new SessionTable();
+        Session session = sessions.getOrCreate("pippo");
+        long created = session.getLastSeen();
+
+        session.pong();
+        session.addPongLost();
+        assertEquals(1, session.getPongsLost());
+        assertTrue(session.getLastSeen() - created >= 0);
+        session.pong();
+        assertEquals(0, session.getPongsLost());
+    }
+
+    @Test
+    void removeDisconnectedPlayer() {
+        SessionTable sessions = new SessionTable();
+        sessions.markDisconnected("pippo");
+
+        assertNotNull(sessions.remove("pippo"));
+        assertNull(sessions.get("pippo"));
+        assertEquals(0, sessions.countDisconnected());
+        assertTrue(sessions.all().isEmpty());
+    }
+
+    @Test
+    void messagesOfACommandAreSentTogether() throws InterruptedException {
+        SessionTable sessions = new SessionTable();
+        List<List<Message>> writes = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        ClientConnection connection = new ClientConnection() {
+            @Override
+            public void send(Message message) {
+                sendAll(List.of(message));
+            }
+
+            @Override
+            public void sendAll(List<Message> messages) {
+                synchronized (writes) {
+                    writes.add(messages);
+                }
+                done.countDown();
+            }
+        };
+        Session pippo = sessions.connect("pippo", connection);
+        Session pluto = sessions.connect("pluto", connection);
+
+        OutboundBatch.run(() -> {
+            assertTrue(pippo.send(new Message("update")));
+            assertTrue(pluto.send(new Message("update")));
+            OutboundBatch.run(() -> assertTrue(pippo.send(new Message("lastRound"))));
+            assertTrue(pippo.send(new Message("turn")));
+            assertTrue(pluto.send(new Message("otherTurn", "pippo")));
+            // Nothing is sent until the command ends
+            assertEquals(0, pippo.getPendingMessages());
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        List<List<String>> categories = new ArrayList<>();
+        for (List<Message> write : writes) {
+            categories.add(write.stream().map(Message::getCategory).toList());
+        }
+        assertTrue(categories.contains(List.of("update", "lastRound", "turn")), categories.toString());
+        assertTrue(categories.contains(List.of("update", "otherTurn")), categories.toString());
+    }
+}
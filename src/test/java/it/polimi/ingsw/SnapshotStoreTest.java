@@ -0,0 +1,160 @@
+package it.polimi.ingsw;
+
+import it.polimi.ingsw.server.SnapshotStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotStoreTest {
+
+    private File directory;
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("saves").toFile();
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory.toPath())) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String snapshot(SnapshotStore store, int game) throws IOException {
+        return new String(store.load(game).snapshot(), StandardCharsets.UTF_8);
+    }
+
+    private String journal(SnapshotStore store, int game) throws IOException {
+        return new String(store.load(game).journal(), StandardCharsets.UTF_8);
+    }
+
+    private File[] segments() {
+        return directory.listFiles((dir, name) -> name.startsWith("segment-"));
+    }
+
+    @Test
+    void gamesAreFoundAfterReopening() throws IOException {
+        SnapshotStore store = new SnapshotStore(directory);
+        store.save(1, 1, bytes("first"));
+        assertTrue(store.append(1, 1, bytes("a")));
+        assertTrue(store.append(1, 1, bytes("b")));
+        store.save(2, 1, bytes("second"));
+        store.save(2, 2, bytes("second again"));
+        assertTrue(store.append(2, 2, bytes("c")));
+        // Turns that follow an older snapshot are useless
+        assertFalse(store.append(2, 1, bytes("stale")));
+        assertEquals("ab", journal(store, 1));
+        store.close();
+
+        SnapshotStore reopened = new SnapshotStore(directory);
+        assertEquals(Set.of(1, 2), reopened.games());
+        assertEquals("first", snapshot(reopened, 1));
+        assertEquals("ab", journal(reopened, 1));
+        assertEquals(2, reopened.load(2).version());
+        assertEquals("second again", snapshot(reopened, 2));
+        assertEquals("c", journal(reopened, 2));
+        assertNull(reopened.load(3));
+        assertEquals(1, segments().length);
+    }
+
+    @Test
+    void snapshotsCanBeReadWithoutTheStore() throws IOException {
+        SnapshotStore store = new SnapshotStore(directory);
+        store.save(1, 1, bytes("first"));
+        assertTrue(store.append(1, 1, bytes("a")));
+        store.save(2, 1, bytes("second"));
+        store.save(2, 2, bytes("second again"));
+
+        Map<Integer, ByteBuffer> snapshots = store.snapshots();
+        // The views still show the snapshots after the store has moved on
+        store.save(1, 2, bytes("first again"));
+        store.close();
+        assertEquals(Set.of(1, 2), snapshots.keySet());
+        assertEquals("first", StandardCharsets.UTF_8.decode(snapshots.get(1)).toString());
+        assertEquals("second again", StandardCharsets.UTF_8.decode(snapshots.get(2)).toString());
+    }
+
+    @Test
+    void partialRecordsAreDropped() throws IOException {
+        SnapshotStore store = new SnapshotStore(directory);
+        store.save(1, 1, bytes("game"));
+        store.append(1, 1, bytes("turn"));
+        store.close();
+        File segment = segments()[0];
+        try (RandomAccessFile raw = new RandomAccessFile(segment, "rw")) {
+            raw.setLength(raw.length() - 1);
+        }
+
+        SnapshotStore reopened = new SnapshotStore(directory);
+        assertEquals("game", snapshot(reopened, 1));
+        assertEquals("", journal(reopened, 1));
+        // The store goes on after the last complete record
+        reopened.append(1, 1, bytes("again"));
+        reopened.close();
+        assertEquals("again", journal(new SnapshotStore(directory), 1));
+    }
+
+    @Test
+    void deadSegmentsAreCompacted() throws IOException {
+        SnapshotStore store = new SnapshotStore(directory, 4096);
+        byte[] game = new byte[500];
+        for (int version = 1; version <= 40; version++) {
+            for (int id = 0; id < 4; id++) {
+                store.save(id, version, game);
+                store.append(id, version, bytes("turn " + version));
+            }
+            store.flush(false);
+        }
+        store.delete(3);
+        int segments = store.getSegmentCount();
+        assertTrue(segments > 10);
+
+        while (store.compact()) {
+            assertTrue(store.getSegmentCount() <= segments);
+        }
+        assertTrue(store.getSegmentCount() <= 3, store.getSegmentCount() + " segments");
+        assertTrue(store.getLiveBytes() * 2 >= store.getTotalBytes() - 4096);
+        store.close();
+
+        SnapshotStore reopened = new SnapshotStore(directory, 4096);
+        assertEquals(Set.of(0, 1, 2), reopened.games());
+        assertEquals(40, reopened.load(1).version());
+        assertEquals("turn 40", journal(reopened, 1));
+        assertEquals(segments().length, reopened.getSegmentCount());
+    }
+
+    @Test
+    void thousandsOfGamesShareFewFiles() throws IOException {
+        SnapshotStore store = new SnapshotStore(directory);
+        for (int id = 0; id < 5000; id++) {
+            store.save(id, 1, bytes("game " + id));
+            store.append(id, 1, bytes("turn " + id));
+        }
+        store.close();
+
+        assertEquals(1, segments().length);
+        SnapshotStore reopened = new SnapshotStore(directory);
+        assertEquals(5000, reopened.games().size());
+        assertEquals("game 4321", snapshot(reopened, 4321));
+        assertEquals("turn 4321", journal(reopened, 4321));
+    }
+}
@@ -0,0 +1,153 @@
+package it.polimi.ingsw;
+
+import it.polimi.ingsw.server.GamePersister;
+import it.polimi.ingsw.server.SnapshotStore;
+import it.polimi.ingsw.server.TurnJournal;
+import it.polimi.ingsw.server.model.Board;
+import it.polimi.ingsw.server.model.Item;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TurnJournalTest {
+
+    private static final int GAME = 7;
+    private File directory;
+    private GamePersister persister;
+
+    /**
+     * Writes the records replayed as strings.
+     */
+    private static class Recorder implements TurnJournal.Replay {
+        final List<String> records = new ArrayList<>();
+
+        @Override
+        public void pick(List<Integer> coordinates) {
+            records.add("pick " + coordinates);
+        }
+
+        @Override
+        public void sort(List<Integer> order) {
+            records.add("sort " + order);
+        }
+
+        @Override
+        public void insert(int column) {
+            records.add("insert " + column);
+        }
+
+        @Override
+        public void refill(List<Integer> draws) {
+            records.add("refill " + draws);
+        }
+
+        @Override
+        public void turn(int player) {
+            records.add("turn " + player);
+        }
+    }
+
+    @BeforeEach
+    void createPersister() throws IOException {
+        directory = Files.createTempDirectory("saves").toFile();
+        persister = new GamePersister(new SnapshotStore(directory), GamePersister.Durability.FLUSH);
+        persister.save(GAME, 3, new byte[]{'{', '}'});
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        persister.close();
+        try (Stream<Path> files = Files.walk(directory.toPath())) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private void playTurn(TurnJournal journal, int player) {
+        journal.turn(player);
+        journal.pick(List.of(4, 1, 4, 2));
+        journal.sort(List.of(1, 0));
+        journal.insert(3);
+        journal.refill(List.of(120, 0, 7));
+        journal.checkpoint();
+    }
+
+    @Test
+    void turnsAreReplayedUpToTheLastCheckpoint() throws IOException {
+        TurnJournal journal = new TurnJournal(GAME, persister);
+        journal.reset(3);
+        playTurn(journal, 1);
+        playTurn(journal, 0);
+        SnapshotStore.SavedGame saved = persister.load(GAME);
+        // A turn that did not end
+        byte[] turns = Arrays.copyOf(saved.journal(), saved.journal().length + 6);
+        System.arraycopy(new byte[]{1, 4, 0, 3, 0, 3}, 0, turns, saved.journal().length, 6);
+
+        Recorder recorder = new Recorder();
+        TurnJournal loaded = new TurnJournal(GAME, persister);
+        assertEquals(2, loaded.replay(saved.version(), turns, recorder));
+        assertEquals(List.of("turn 1", "pick [4, 1, 4, 2]", "sort [1, 0]", "insert 3", "refill [120, 0, 7]",
+                "turn 0", "pick [4, 1, 4, 2]", "sort [1, 0]", "insert 3", "refill [120, 0, 7]"), recorder.records);
+
+        // The journal goes on after the turns replayed
+        playTurn(loaded, 1);
+        Recorder again = new Recorder();
+        assertEquals(3, new TurnJournal(GAME, persister).replay(3, persister.load(GAME).journal(), again));
+        assertEquals(15, again.records.size());
+    }
+
+    @Test
+    void turnsOfAnOlderSaveAreIgnored() throws IOException {
+        TurnJournal journal = new TurnJournal(GAME, persister);
+        journal.reset(3);
+        playTurn(journal, 1);
+        persister.save(GAME, 4, new byte[]{'{', '}'});
+        playTurn(journal, 0);
+
+        SnapshotStore.SavedGame saved = persister.load(GAME);
+        assertEquals(4, saved.version());
+        assertEquals(0, saved.journal().length);
+    }
+
+    @Test
+    void deletedWithTheGame() throws IOException {
+        TurnJournal journal = new TurnJournal(GAME, persister);
+        assertFalse(journal.isOpen());
+        assertEquals(0, journal.replay(3, new byte[0], new Recorder()));
+        assertTrue(journal.isOpen());
+
+        journal.delete();
+        assertFalse(journal.isOpen());
+        assertFalse(persister.getSavedGames().contains(GAME));
+    }
+
+    @Test
+    void refillIsRepeatedFromItsDraws() {
+        Board board = new Board(3);
+        Board copy = new Board(copy(board.getBoardMatrix()), new ArrayList<>(board.getItemBag()), 3);
+
+        List<Integer> draws = board.fill();
+        copy.fill(draws);
+        assertArrayEquals(board.getBoardMatrix(), copy.getBoardMatrix());
+        assertEquals(board.getItemBag(), copy.getItemBag());
+    }
+
+    private Item[][] copy(Item[][] matrix) {
+        Item[][] copy = new Item[matrix.length][];
+        for (int row = 0; row < matrix.length; row++) {
+            copy[row] = matrix[row].clone();
+        }
+        return copy;
+    }
+}